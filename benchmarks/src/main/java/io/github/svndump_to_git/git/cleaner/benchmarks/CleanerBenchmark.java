@@ -0,0 +1,266 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.benchmarks;
+
+import io.github.svndump_to_git.git.cleaner.PruneEmptyRewriter;
+import io.github.svndump_to_git.git.cleaner.RepositoryBlobRewriter;
+import io.github.svndump_to_git.git.cleaner.RepositoryCleaner;
+import io.github.svndump_to_git.git.cleaner.RepositoryRemoveMPXRewriter;
+import io.github.svndump_to_git.git.cleaner.model.SyntheticRepositoryGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures AbstractRepositoryCleaner.execute() end to end for the prune empty, blob and mpx rewriters.
+ * 
+ * The repository is generated once per trial by the SyntheticRepositoryGenerator, or given by the 
+ * sourceRepository parameter, and each invocation rewrites a fresh copy of it.  The primary result is 
+ * rewrites per second and the commits counter reports commits per second.
+ * 
+ * The cleaners write their translation files into the working directory so run the benchmarks from a 
+ * scratch directory.
+ * 
+ * @author ocleirig
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 30)
+@Measurement(iterations = 5, time = 30)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class CleanerBenchmark {
+
+	/**
+	 * The git meta directory of the repository to rewrite, it is not modified.  When empty a repository 
+	 * is generated from the parameters below.
+	 */
+	@Param({""})
+	public String sourceRepository;
+	
+	@Param({"2000"})
+	public int generatedCommitCount;
+	
+	@Param({"4"})
+	public int branchFanOut;
+	
+	@Param({"8"})
+	public int treeWidth;
+	
+	@Param({"3"})
+	public int treeDepth;
+	
+	@Param({"4"})
+	public int moduleCount;
+	
+	@Param({"42"})
+	public long seed;
+	
+	private static final int SAMPLE_BLOBS = 50;
+	
+	private int commitCount;
+	
+	private File workDirectory;
+	
+	private File templateRepository;
+	
+	private File repository;
+	
+	private File blobReplacementFile;
+	
+	/**
+	 * Counts the commits walked by the measured rewrites.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class CommitCounter {
+		
+		public long commits;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			commits = 0;
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void prepareRepository() throws IOException {
+		
+		boolean generate = sourceRepository.trim().length() == 0;
+		
+		if (generate)
+			workDirectory = new File ("cleaner-benchmark-" + generatedCommitCount + "-" + branchFanOut + "-" + moduleCount + "-" + treeWidth + "-" + treeDepth).getAbsoluteFile();
+		else
+			workDirectory = new File ("cleaner-benchmark-" + new File (sourceRepository).getName()).getAbsoluteFile();
+		
+		FileUtils.deleteQuietly(workDirectory);
+		
+		repository = new File (workDirectory, "working.git");
+		blobReplacementFile = new File (workDirectory, "blob-replacements.txt");
+		
+		List<ObjectId>blobIds;
+		
+		if (generate) {
+			
+			templateRepository = new File (workDirectory, "template.git");
+			
+			SyntheticRepositoryGenerator generator = new SyntheticRepositoryGenerator();
+			
+			generator.setSeed(seed);
+			generator.setCommitCount(generatedCommitCount);
+			generator.setBranchCount(branchFanOut);
+			generator.setModuleCount(moduleCount);
+			generator.setTreeWidth(treeWidth);
+			generator.setTreeDepth(treeDepth);
+			
+			generator.generate(templateRepository);
+			
+			sampleRepository(templateRepository);
+			
+			blobIds = generator.getSampleBlobIds();
+		}
+		else {
+			templateRepository = new File (sourceRepository).getAbsoluteFile();
+			
+			blobIds = sampleRepository(templateRepository);
+		}
+		
+		List<String>lines = new ArrayList<>();
+		
+		for (ObjectId blobId : blobIds) {
+			lines.add(blobId.name() + "::replaced by the benchmark");
+		}
+		
+		FileUtils.writeLines(blobReplacementFile, lines);
+	}
+	
+	/*
+	 * Count the commits reachable from the branches and pick the first blobs of the newest branch head 
+	 * as the blobs to replace.
+	 */
+	private List<ObjectId> sampleRepository(File gitDir) throws IOException {
+		
+		Repository repo = new FileRepositoryBuilder().setGitDir(gitDir).build();
+		
+		RevWalk rw = new RevWalk(repo);
+		
+		List<ObjectId>blobIds = new ArrayList<>();
+		
+		try {
+			
+			for (Ref ref : repo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+				rw.markStart(rw.parseCommit(ref.getObjectId()));
+			}
+			
+			commitCount = 0;
+			
+			RevCommit newest = null;
+			
+			for (RevCommit commit : rw) {
+				
+				if (newest == null)
+					newest = commit;
+				
+				commitCount++;
+			}
+			
+			if (newest == null)
+				throw new IllegalStateException("no commits in " + gitDir);
+			
+			TreeWalk tw = new TreeWalk(repo);
+			
+			tw.setRecursive(true);
+			tw.addTree(newest.getTree());
+			
+			while (tw.next() && blobIds.size() < SAMPLE_BLOBS) {
+				blobIds.add(tw.getObjectId(0));
+			}
+			
+			tw.close();
+		}
+		finally {
+			rw.close();
+			repo.close();
+		}
+		
+		return blobIds;
+	}
+	
+	@Setup(Level.Invocation)
+	public void copyRepository() throws IOException {
+		
+		FileUtils.deleteQuietly(repository);
+		
+		FileUtils.copyDirectory(templateRepository, repository);
+	}
+	
+	@TearDown(Level.Trial)
+	public void deleteRepository() {
+		FileUtils.deleteQuietly(workDirectory);
+	}
+	
+	private void rewrite(RepositoryCleaner cleaner, CommitCounter counter, String... args) throws Exception {
+		
+		cleaner.validateArgs(Arrays.asList(args));
+		
+		cleaner.execute();
+		
+		counter.commits += commitCount;
+	}
+	
+	@Benchmark
+	public void pruneEmpty(CommitCounter counter) throws Exception {
+		rewrite(new PruneEmptyRewriter(), counter, repository.getAbsolutePath());
+	}
+	
+	@Benchmark
+	public void replaceBlobs(CommitCounter counter) throws Exception {
+		rewrite(new RepositoryBlobRewriter(), counter, repository.getAbsolutePath(), blobReplacementFile.getAbsolutePath());
+	}
+	
+	@Benchmark
+	public void removeMPX(CommitCounter counter) throws Exception {
+		rewrite(new RepositoryRemoveMPXRewriter(), counter, repository.getAbsolutePath(), "mpx removed by the benchmark");
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the cleaner benchmarks with the GC profiler, for the allocation rate, and the peak heap profiler.
+ * 
+ * Accepts the normal JMH command line options, for example:
+ * 
+ * java -jar benchmarks.jar -p generatedCommitCount=10000 -p branchFanOut=16 -p treeWidth=10 -p treeDepth=4 pruneEmpty
+ * 
+ * java -jar benchmarks.jar -p sourceRepository=/path/to/repository.git pruneEmpty
+ * 
+ * @author ocleirig
+ *
+ */
+public class CleanerBenchmarkMain {
+
+	/**
+	 * 
+	 */
+	public CleanerBenchmarkMain() {
+	}
+
+	/**
+	 * @param args the JMH command line options.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.addProfiler(PeakHeapProfiler.class);
+		
+		if (commandLine.getIncludes().isEmpty())
+			options.include(CleanerBenchmark.class.getName());
+		
+		new Runner(options.build()).run();
+	}
+
+}
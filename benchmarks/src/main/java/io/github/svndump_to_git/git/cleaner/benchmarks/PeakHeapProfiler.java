@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Reports the peak heap use of each iteration, summed over the heap memory pools.
+ * 
+ * The pool peaks are reset before the iteration starts so each result only covers that iteration.
+ * 
+ * @author ocleirig
+ *
+ */
+public class PeakHeapProfiler implements InternalProfiler {
+
+	private static final double BYTES_PER_MB = 1024D * 1024D;
+	
+	/* (non-Javadoc)
+	 * @see org.openjdk.jmh.profile.Profiler#getDescription()
+	 */
+	@Override
+	public String getDescription() {
+		return "Peak heap use per iteration";
+	}
+
+	/* (non-Javadoc)
+	 * @see org.openjdk.jmh.profile.InternalProfiler#beforeIteration(org.openjdk.jmh.infra.BenchmarkParams, org.openjdk.jmh.infra.IterationParams)
+	 */
+	@Override
+	public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+		
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.openjdk.jmh.profile.InternalProfiler#afterIteration(org.openjdk.jmh.infra.BenchmarkParams, org.openjdk.jmh.infra.IterationParams, org.openjdk.jmh.results.IterationResult)
+	 */
+	@Override
+	public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+		
+		long peakBytes = 0L;
+		
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			
+			if (pool.getType() == MemoryType.HEAP)
+				peakBytes += pool.getPeakUsage().getUsed();
+		}
+		
+		return Collections.singletonList(new ScalarResult("\u00b7heap.peak", peakBytes / BYTES_PER_MB, "MB", AggregationPolicy.MAX));
+	}
+}
@@ -36,15 +36,30 @@ public class Bitmap {
 		this(indexer, new EWAHCompressedBitmap());
 	}
 
-	private Bitmap (RevCommitBitMapIndex indexer, EWAHCompressedBitmap bitmap) {
+	Bitmap (RevCommitBitMapIndex indexer, EWAHCompressedBitmap bitmap) {
 		super();
 		this.indexer = indexer;
 		this.bitmap = bitmap;
 		
 	}
 	
+	/**
+	 * Set the bit in place when it is past the last bit, which only appends to the compressed bitmap.
+	 * 
+	 * Setting an earlier bit has to copy the whole bitmap so use a BitmapBuilder to set bits out of order.
+	 * 
+	 * @param index
+	 */
 	public void set(Integer index) {
 		
+		if (index >= this.bitmap.sizeInBits()) {
+			this.bitmap.set(index);
+			return;
+		}
+		
+		if (this.bitmap.get(index))
+			return;
+		
 		EWAHCompressedBitmap currentBitmap = new EWAHCompressedBitmap();
 		
 		currentBitmap.set(index);
@@ -68,6 +83,24 @@ public class Bitmap {
 		return new Bitmap(indexer, xorBitmap);
 	}
 
+	/**
+	 * @return the number of bits set.
+	 */
+	public int cardinality() {
+		return this.bitmap.cardinality();
+	}
+	
+	/**
+	 * @return the size of the compressed bitmap in bytes.
+	 */
+	public int sizeInBytes() {
+		return this.bitmap.sizeInBytes();
+	}
+	
+	EWAHCompressedBitmap getCompressedBitmap() {
+		return this.bitmap;
+	}
+	
 	public boolean containsObjectId(ObjectId parentCommitId) {
 		
 		Integer index = indexer.getBitmapElementIndex(parentCommitId);
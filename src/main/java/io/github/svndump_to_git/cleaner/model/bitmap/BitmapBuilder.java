@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner.model.bitmap;
+
+import java.util.BitSet;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
+/**
+ * A mutable bitmap for building up a Bitmap in place.
+ * 
+ * Bits are set in an uncompressed BitSet so setting a bit or or'ing in another bitmap does not copy what 
+ * is already there.  build() freezes the bits into the compressed form by appending them in order.
+ * 
+ * @author ocleirig
+ *
+ */
+public class BitmapBuilder {
+
+	private final BitSet bits;
+	
+	private final RevCommitBitMapIndex indexer;
+	
+	/**
+	 * @param indexer used to find the bit of a commit.
+	 */
+	public BitmapBuilder(RevCommitBitMapIndex indexer) {
+		this.indexer = indexer;
+		this.bits = new BitSet();
+	}
+
+	public void set(int index) {
+		bits.set(index);
+	}
+	
+	public void set(ObjectId commitId) {
+		bits.set(indexer.getBitmapElementIndex(commitId));
+	}
+	
+	public boolean get(int index) {
+		return bits.get(index);
+	}
+	
+	public boolean containsObjectId(ObjectId commitId) {
+		return bits.get(indexer.getBitmapElementIndex(commitId));
+	}
+	
+	/**
+	 * Or the bits of the given bitmap into this builder.
+	 * 
+	 * @param bitmap
+	 */
+	public void or(Bitmap bitmap) {
+		
+		// walk the set bits in place instead of expanding them into an array first
+		IntIterator indexes = bitmap.getCompressedBitmap().intIterator();
+		
+		while (indexes.hasNext()) {
+			bits.set(indexes.next());
+		}
+	}
+	
+	/**
+	 * Or the bits of the given builder into this builder.
+	 * 
+	 * @param builder
+	 */
+	public void or(BitmapBuilder builder) {
+		bits.or(builder.bits);
+	}
+	
+	/**
+	 * @return the number of bits set.
+	 */
+	public int cardinality() {
+		return bits.cardinality();
+	}
+	
+	/**
+	 * @return an immutable compressed copy of the bits set so far.
+	 */
+	public Bitmap build() {
+		
+		EWAHCompressedBitmap compressed = new EWAHCompressedBitmap();
+		
+		// ascending bits are appended to the compressed bitmap without copying it
+		for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+			compressed.set(index);
+		}
+		
+		return new Bitmap(indexer, compressed);
+	}
+}
@@ -0,0 +1,404 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner.model.bitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.svndump_to_git.cleaner.model.sort.FusionAwareTopoSort;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers whether one indexed commit depends, directly or through other commits, on another without 
+ * storing the transitive closure.
+ * 
+ * Each commit gets a generation number, one more than the highest generation of its dependencies, so a 
+ * commit can never depend on one with the same or a higher generation.
+ * 
+ * Each commit also picks one dependency, the one with the highest generation, as its parent in a 
+ * spanning forest.  A depth first walk of the forest numbers the commits in pre-order and records the 
+ * last number used in each subtree, so the commits in the forest subtree of c are those numbered 
+ * pre(c) to end(c).
+ * 
+ * The other dependency edges, merges and fusion references, can make commits outside the subtree 
+ * depend on c.  Their number ranges are kept as a sorted exception list for c, merged so that a linear 
+ * history referenced by a fusion branch only adds a single range.  Most commits have no exceptions.
+ * 
+ * So the memory is a few ints per commit plus the exceptions, and a query is a comparison or two plus 
+ * a binary search of the exceptions of one commit.
+ * 
+ * @author ocleirig
+ *
+ */
+public class ReachabilityIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(ReachabilityIndex.class);
+	
+	private static final int[] NO_INTERVALS = new int[0];
+	
+	private final RevCommitBitMapIndex index;
+	
+	private final int[] generation;
+	
+	private final int[] preOrder;
+	
+	private final int[] subtreeEnd;
+	
+	/*
+	 * Sorted, disjoint [start, end] pre-order ranges, two ints each, for the commits that need them.
+	 */
+	private final Map<Integer, int[]> exceptions = new HashMap<Integer, int[]>();
+	
+	private long exceptionIntervals = 0L;
+	
+	/**
+	 * Build the index over the commits and dependencies of the given index.
+	 * 
+	 * @param index
+	 */
+	public ReachabilityIndex(RevCommitBitMapIndex index) {
+		
+		this.index = index;
+		
+		long start = System.currentTimeMillis();
+		
+		List<RevCommit> sorted = new FusionAwareTopoSort(index).sort();
+		
+		int size = sorted.size();
+		
+		int[] order = new int[size];
+		
+		int[][] dependencies = new int[size][];
+		
+		generation = new int[size];
+		
+		int[] treeParent = new int[size];
+		
+		Arrays.fill(treeParent, -1);
+		
+		for (int i = 0; i < size; i++) {
+			
+			ObjectId commitId = sorted.get(i).getId();
+			
+			int position = index.getBitmapElementIndex(commitId);
+			
+			order[i] = position;
+			
+			dependencies[position] = index.getDependencyPositions(commitId);
+			
+			generation[position] = 1;
+			
+			for (int dependency : dependencies[position]) {
+				
+				if (generation[dependency] + 1 > generation[position]) {
+					generation[position] = generation[dependency] + 1;
+					treeParent[position] = dependency;
+				}
+				else if (generation[dependency] + 1 == generation[position] && dependency < treeParent[position]) 
+					treeParent[position] = dependency;
+			}
+		}
+		
+		/*
+		 * The forest children of p are in treeChildren[childStart[p]] until childStart[p+1], in position order.
+		 */
+		int[] childStart = new int[size + 1];
+		
+		for (int position = 0; position < size; position++) {
+			
+			if (treeParent[position] != -1)
+				childStart[treeParent[position] + 1]++;
+		}
+		
+		for (int position = 0; position < size; position++) {
+			childStart[position + 1] += childStart[position];
+		}
+		
+		int[] treeChildren = new int[childStart[size]];
+		
+		int[] nextChild = Arrays.copyOf(childStart, size);
+		
+		for (int position = 0; position < size; position++) {
+			
+			if (treeParent[position] != -1)
+				treeChildren[nextChild[treeParent[position]]++] = position;
+		}
+		
+		nextChild = null;
+		
+		/*
+		 * Iterative depth first walk from each root, in position order.
+		 */
+		preOrder = new int[size];
+		subtreeEnd = new int[size];
+		
+		int[] stack = new int[size];
+		int[] childCursor = new int[size];
+		
+		int counter = 0;
+		
+		for (int root = 0; root < size; root++) {
+			
+			if (treeParent[root] != -1)
+				continue;
+			
+			int depth = 0;
+			
+			stack[depth++] = root;
+			preOrder[root] = counter++;
+			childCursor[root] = childStart[root];
+			
+			while (depth > 0) {
+				
+				int current = stack[depth - 1];
+				
+				if (childCursor[current] < childStart[current + 1]) {
+					
+					int child = treeChildren[childCursor[current]++];
+					
+					stack[depth++] = child;
+					preOrder[child] = counter++;
+					childCursor[child] = childStart[child];
+				}
+				else {
+					subtreeEnd[current] = counter - 1;
+					depth--;
+				}
+			}
+		}
+		
+		stack = null;
+		childCursor = null;
+		
+		/*
+		 * Visit the dependents before their dependencies so that their exceptions are known.  A commit 
+		 * inherits the exceptions of its forest children and, for the edges outside of the forest, the 
+		 * subtree range and exceptions of the dependent.
+		 */
+		List<int[]> ranges = new ArrayList<int[]>();
+		
+		int[][] nonTreeDependents = invertNonTreeEdges(dependencies, treeParent);
+		
+		for (int i = size - 1; i >= 0; i--) {
+			
+			int position = order[i];
+			
+			ranges.clear();
+			
+			for (int c = childStart[position]; c < childStart[position + 1]; c++) {
+				
+				int[] childExceptions = exceptions.get(treeChildren[c]);
+				
+				if (childExceptions != null)
+					ranges.add(childExceptions);
+			}
+			
+			for (int dependent : nonTreeDependents[position]) {
+				
+				ranges.add(new int[] {preOrder[dependent], subtreeEnd[dependent]});
+				
+				int[] dependentExceptions = exceptions.get(dependent);
+				
+				if (dependentExceptions != null)
+					ranges.add(dependentExceptions);
+			}
+			
+			if (ranges.isEmpty())
+				continue;
+			
+			int[] merged = merge(ranges, preOrder[position], subtreeEnd[position]);
+			
+			if (merged.length > 0) {
+				exceptions.put(position, merged);
+				exceptionIntervals += merged.length / 2;
+			}
+		}
+		
+		log.info("built the reachability index for " + size + " commits with " + exceptions.size() + " commits holding " + exceptionIntervals + " exception ranges in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/*
+	 * For each position the dependents that reach it through an edge outside of the forest.
+	 */
+	private static int[][] invertNonTreeEdges(int[][] dependencies, int[] treeParent) {
+		
+		int size = dependencies.length;
+		
+		int[] counts = new int[size];
+		
+		for (int position = 0; position < size; position++) {
+			
+			for (int dependency : dependencies[position]) {
+				
+				if (dependency != treeParent[position])
+					counts[dependency]++;
+			}
+		}
+		
+		int[][] dependents = new int[size][];
+		
+		for (int position = 0; position < size; position++) {
+			dependents[position] = counts[position] == 0 ? NO_INTERVALS : new int[counts[position]];
+			counts[position] = 0;
+		}
+		
+		for (int position = 0; position < size; position++) {
+			
+			for (int dependency : dependencies[position]) {
+				
+				if (dependency != treeParent[position])
+					dependents[dependency][counts[dependency]++] = position;
+			}
+		}
+		
+		return dependents;
+	}
+	
+	/*
+	 * Merge the ranges into sorted disjoint ranges, dropping what the commit's own subtree already covers.
+	 */
+	private static int[] merge(List<int[]> ranges, int ownStart, int ownEnd) {
+		
+		int total = 0;
+		
+		for (int[] range : ranges) {
+			total += range.length / 2;
+		}
+		
+		long[] packed = new long[total];
+		
+		int count = 0;
+		
+		for (int[] range : ranges) {
+			
+			for (int r = 0; r < range.length; r += 2) {
+				
+				if (range[r] >= ownStart && range[r + 1] <= ownEnd)
+					continue;
+				
+				packed[count++] = ((long) range[r] << 32) | (range[r + 1] & 0xffffffffL);
+			}
+		}
+		
+		Arrays.sort(packed, 0, count);
+		
+		int[] merged = new int[count * 2];
+		
+		int length = 0;
+		
+		for (int i = 0; i < count; i++) {
+			
+			int rangeStart = (int) (packed[i] >>> 32);
+			int rangeEnd = (int) packed[i];
+			
+			if (length > 0 && rangeStart <= merged[length - 1] + 1) {
+				merged[length - 1] = Math.max(merged[length - 1], rangeEnd);
+			}
+			else {
+				merged[length++] = rangeStart;
+				merged[length++] = rangeEnd;
+			}
+		}
+		
+		return Arrays.copyOf(merged, length);
+	}
+	
+	/**
+	 * @param commitId the commit.
+	 * @param dependencyId the possible dependency.
+	 * @return true if the commit is the dependency or depends on it directly or through other commits.
+	 */
+	public boolean dependsOn(ObjectId commitId, ObjectId dependencyId) {
+		
+		Integer position = index.getBitmapElementIndex(commitId);
+		Integer dependencyPosition = index.getBitmapElementIndex(dependencyId);
+		
+		if (position == null || dependencyPosition == null)
+			return false;
+		
+		return dependsOn(position, dependencyPosition);
+	}
+	
+	/**
+	 * @param position the bitmap position of the commit.
+	 * @param dependencyPosition the bitmap position of the possible dependency.
+	 * @return true if the commit is the dependency or depends on it directly or through other commits.
+	 */
+	public boolean dependsOn(int position, int dependencyPosition) {
+		
+		if (position == dependencyPosition)
+			return true;
+		
+		// a dependency always has a lower generation
+		if (generation[dependencyPosition] >= generation[position])
+			return false;
+		
+		int target = preOrder[position];
+		
+		if (target >= preOrder[dependencyPosition] && target <= subtreeEnd[dependencyPosition])
+			return true;
+		
+		int[] ranges = exceptions.get(dependencyPosition);
+		
+		if (ranges == null)
+			return false;
+		
+		// find the last range starting at or before the target
+		int low = 0;
+		int high = ranges.length / 2 - 1;
+		
+		while (low <= high) {
+			
+			int middle = (low + high) >>> 1;
+			
+			if (ranges[middle * 2] <= target)
+				low = middle + 1;
+			else
+				high = middle - 1;
+		}
+		
+		return high >= 0 && target <= ranges[high * 2 + 1];
+	}
+	
+	/**
+	 * @param position the bitmap position of the commit.
+	 * @return the generation number, 1 for a commit without dependencies.
+	 */
+	public int getGeneration(int position) {
+		return generation[position];
+	}
+	
+	/**
+	 * @return the number of exception ranges held over all commits.
+	 */
+	public long getExceptionIntervals() {
+		return exceptionIntervals;
+	}
+	
+	/**
+	 * @return an estimate of the memory held by the index, not counting the RevCommitBitMapIndex.
+	 */
+	public long sizeInBytes() {
+		
+		// three int arrays plus a map entry, array header and the ranges for each exception holder
+		return 12L * generation.length + 64L * exceptions.size() + 8L * exceptionIntervals;
+	}
+}
@@ -16,6 +16,7 @@ package io.github.svndump_to_git.cleaner.model.bitmap;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -23,12 +24,22 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.github.svndump_to_git.cleaner.model.sort.FusionAwareTopoSort;
 import io.github.svndump_to_git.git.cleaner.model.ObjectIdTranslation;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import io.github.svndump_to_git.git.cleaner.model.CommitDependency;
@@ -64,6 +75,15 @@ public class RevCommitBitMapIndex {
 	
 	private Map<ObjectId, Bitmap>objectIdToAggregatedBitmap = new HashMap<ObjectId, Bitmap>();
 	
+	private boolean aggregatesComputed = false;
+	
+	private ReachabilityIndex reachabilityIndex = null;
+	
+	/*
+	 * Levels smaller than this are computed on the calling thread.
+	 */
+	private static final int MIN_PARALLEL_LEVEL_SIZE = 64;
+	
 	/**
 	 * @throws IOException 
 	 * @throws CorruptObjectException 
@@ -72,16 +92,25 @@ public class RevCommitBitMapIndex {
 	 * 
 	 */
 	public RevCommitBitMapIndex(Repository repo, ObjectIdTranslation translationService, Iterator<RevCommit>commits) throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, IOException {
+		this(repo, translationService, commits, NullProgressMonitor.INSTANCE);
+	}
+	
+	/**
+	 * @param monitor updated for each commit indexed.
+	 */
+	public RevCommitBitMapIndex(Repository repo, ObjectIdTranslation translationService, Iterator<RevCommit>commits, ProgressMonitor monitor) throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, IOException {
 		super();
 		this.repo = repo;
 		this.translationService = translationService;
 		
-		index(commits);
+		index(commits, monitor);
 		
 	}
 	
 	
-	private void index (Iterator<RevCommit> iterator) throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, IOException {
+	private void index (Iterator<RevCommit> iterator, ProgressMonitor monitor) throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, IOException {
+		
+		monitor.beginTask("Indexing fusion dependencies", ProgressMonitor.UNKNOWN);
 		
 		List<RevCommit>fusionTopoOrderedList = new ArrayList<RevCommit>();
 		
@@ -130,7 +159,11 @@ public class RevCommitBitMapIndex {
 			
 			index++;
 			
+			monitor.update(1);
+			
 		}
+		
+		monitor.endTask();
 
 		// link the parents
 		
@@ -147,7 +180,9 @@ public class RevCommitBitMapIndex {
 				CommitDependency parentDependency = commitToDependencyMap.get(directDependencyId);
 				
 				if (parentDependency == null) {
+					// not part of this walk so there is nothing to order against
 					log.warn("missing parentDependency");
+					continue;
 				}
 				currentDependencies.add(parentDependency);
 			}
@@ -161,7 +196,7 @@ public class RevCommitBitMapIndex {
 
 	public void computeBitmap(ObjectId forCommit, Set<ObjectId> parentObjectIds) {
 		
-		Bitmap bitmap = new Bitmap(this);
+		BitmapBuilder bitmap = new BitmapBuilder(this);
 		
 		for (ObjectId objectId : parentObjectIds) {
 			
@@ -171,7 +206,7 @@ public class RevCommitBitMapIndex {
 			
 		}
 		
-		this.objectIdToBitmap.put(forCommit, bitmap);
+		this.objectIdToBitmap.put(forCommit, bitmap.build());
 		
 	}
 	
@@ -212,54 +247,247 @@ public class RevCommitBitMapIndex {
 	}
 
 
-	public Bitmap getAggregateBitmap(CommitDependency commitDependency) {
+	/**
+	 * @param commitId an indexed commit.
+	 * @return the bitmap positions of the direct dependencies of the commit that are part of the index.
+	 */
+	public int[] getDependencyPositions(ObjectId commitId) {
 		
-		ObjectId currentCommitId = commitDependency.getCurrentCommitId();
+		CommitDependency commitDependency = this.commitToDependencyMap.get(commitId);
 		
-		Bitmap aggregate = this.objectIdToAggregatedBitmap.get(currentCommitId);
+		List<Integer> positions = new ArrayList<Integer>();
 		
-		if (aggregate != null)
-			return aggregate;
+		for (CommitDependency parentDependency : commitDependency.getParentDependencies()) {
+			
+			Integer position = this.objectIdToBitsetIndexMap.get(parentDependency.getCurrentCommitId());
+			
+			if (position != null)
+				positions.add(position);
+		}
 		
-		Bitmap seen = new Bitmap(this);
+		int[] dependencyPositions = new int[positions.size()];
 		
-		aggregate = new Bitmap(this);
+		for (int i = 0; i < dependencyPositions.length; i++) {
+			dependencyPositions[i] = positions.get(i);
+		}
+		
+		return dependencyPositions;
+	}
+	
+	/**
+	 * Compute the aggregate bitmap of every indexed commit in one pass.
+	 * 
+	 * The commits are grouped into levels where a commit's level is one more than the highest level of its 
+	 * dependencies.  The levels are processed in order and each aggregate is the or of the commit's direct 
+	 * dependencies and their aggregates, so every ancestry is only walked once.  The commits of a level do 
+	 * not depend on each other so a wide level, from independent branches, is split over the threads.
+	 * 
+	 * The commits of a dependency cycle only see the aggregates of the members placed before them by the sort.
+	 * 
+	 * @param threads the number of threads to use, 1 to compute on the calling thread.
+	 * @param monitor updated for each commit.
+	 * @return the compressed size in bytes of all of the aggregate bitmaps.
+	 */
+	public long computeAggregateBitmaps(int threads, ProgressMonitor monitor) {
 		
-		List<CommitDependency>nodesToCheck = new LinkedList<CommitDependency>();
+		long start = System.currentTimeMillis();
 		
-		nodesToCheck.addAll(commitDependency.getParentDependencies());
+		final int size = revCommitList.size();
 		
-		while (nodesToCheck.size() > 0) {
+		final int[][] dependencies = new int[size][];
 		
-			CommitDependency currentNode = nodesToCheck.remove(0);
+		int[] level = new int[size];
+		
+		int maxLevel = 0;
+		
+		for (RevCommit commit : new FusionAwareTopoSort(this).sort()) {
 			
-			if (seen.containsObjectId(currentNode.getCurrentCommitId()))
-				continue; // skip over nodes that have already been seen. 
+			int position = this.objectIdToBitsetIndexMap.get(commit.getId());
 			
-			Bitmap cachedAggregate = this.objectIdToAggregatedBitmap.get(currentNode.getCurrentCommitId());
+			dependencies[position] = getDependencyPositions(commit.getId());
 			
-			if (cachedAggregate != null) {
-				
-				aggregate = aggregate.or(cachedAggregate);
+			for (int dependency : dependencies[position]) {
+				level[position] = Math.max(level[position], level[dependency] + 1);
 			}
-			else {
 			
-				Bitmap currentBitmap = this.getBitmap(currentNode
-						.getCurrentCommitId());
-
-				aggregate = aggregate.or(currentBitmap);
+			maxLevel = Math.max(maxLevel, level[position]);
+		}
+		
+		/*
+		 * Bucket the positions by level, the commits of level l are in byLevel[levelStart[l]] until levelStart[l+1].
+		 */
+		int[] levelStart = new int[maxLevel + 2];
+		
+		for (int position = 0; position < size; position++) {
+			levelStart[level[position] + 1]++;
+		}
+		
+		for (int l = 0; l <= maxLevel; l++) {
+			levelStart[l + 1] += levelStart[l];
+		}
+		
+		final int[] byLevel = new int[size];
+		
+		int[] nextInLevel = Arrays.copyOf(levelStart, maxLevel + 1);
+		
+		for (int position = 0; position < size; position++) {
+			byLevel[nextInLevel[level[position]]++] = position;
+		}
+		
+		final Bitmap[] aggregates = new Bitmap[size];
+		
+		ExecutorService workers = null;
+		
+		if (threads > 1) {
+			workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			
+				private final AtomicInteger counter = new AtomicInteger();
+			
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "aggregate-bitmap-worker-" + counter.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		
+		monitor.beginTask("Computing aggregate bitmaps", size);
+		
+		try {
+			
+			for (int l = 0; l <= maxLevel; l++) {
+				
+				int from = levelStart[l];
+				int to = levelStart[l + 1];
+				
+				if (workers == null || to - from < MIN_PARALLEL_LEVEL_SIZE) {
+					computeAggregateBitmaps(byLevel, from, to, dependencies, aggregates);
+				}
+				else {
+					
+					List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+					
+					int chunkSize = (to - from + threads - 1) / threads;
+					
+					for (int chunkStart = from; chunkStart < to; chunkStart += chunkSize) {
+						
+						final int chunkFrom = chunkStart;
+						final int chunkTo = Math.min(to, chunkStart + chunkSize);
+						
+						chunks.add(new Callable<Void>() {
 
-				nodesToCheck.addAll(currentNode.getParentDependencies());
+							@Override
+							public Void call() throws Exception {
+								computeAggregateBitmaps(byLevel, chunkFrom, chunkTo, dependencies, aggregates);
+								return null;
+							}
+						});
+					}
+					
+					for (Future<Void> chunk : workers.invokeAll(chunks)) {
+						chunk.get();
+					}
+				}
+				
+				monitor.update(to - from);
 			}
 			
-			aggregate.set(currentNode.getCurrentCommitId());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while computing the aggregate bitmaps", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("computing the aggregate bitmaps failed", e.getCause());
+		}
+		finally {
 			
-			seen = seen.or(aggregate);
+			if (workers != null)
+				workers.shutdownNow();
 		}
 		
-		this.objectIdToAggregatedBitmap.put(currentCommitId, aggregate);
-					
-		return aggregate;
+		monitor.endTask();
+		
+		long sizeInBytes = 0L;
+		
+		for (int position = 0; position < size; position++) {
+			
+			this.objectIdToAggregatedBitmap.put(this.bitsetTranslationMap.get(position).getId(), aggregates[position]);
+			
+			sizeInBytes += aggregates[position].sizeInBytes();
+		}
+		
+		aggregatesComputed = true;
+		
+		log.info("computed " + size + " aggregate bitmaps over " + (maxLevel + 1) + " levels using " + Math.max(1, threads) + " threads in " + (System.currentTimeMillis() - start) + " ms, the bitmaps use " + sizeInBytes + " bytes");
+		
+		return sizeInBytes;
+	}
+	
+	/**
+	 * Build the reachability index over the indexed commits.
+	 * 
+	 * @return the reachability index.
+	 */
+	public ReachabilityIndex computeReachabilityIndex() {
+		
+		this.reachabilityIndex = new ReachabilityIndex(this);
+		
+		log.info("the reachability index uses about " + this.reachabilityIndex.sizeInBytes() + " bytes");
+		
+		return this.reachabilityIndex;
+	}
+	
+	/**
+	 * CommitDependency.containsParent answers from the reachability index so that the aggregate bitmaps, 
+	 * which for a long linear history hold a bit for every ancestor of every commit, are not needed.
+	 * 
+	 * @return the reachability index, built on the first call.
+	 */
+	public ReachabilityIndex getReachabilityIndex() {
+		
+		if (reachabilityIndex == null)
+			computeReachabilityIndex();
+		
+		return reachabilityIndex;
+	}
+	
+	/*
+	 * The dependencies of these positions all have their aggregate already.
+	 */
+	private void computeAggregateBitmaps(int[] positions, int from, int to, int[][] dependencies, Bitmap[] aggregates) {
+		
+		for (int i = from; i < to; i++) {
+			
+			int position = positions[i];
+			
+			RevCommit commit = this.bitsetTranslationMap.get(position);
+			
+			// the direct dependencies
+			Bitmap aggregate = getBitmap(commit.getId());
+			
+			for (int dependency : dependencies[position]) {
+				
+				if (aggregates[dependency] != null)
+					aggregate = aggregate.or(aggregates[dependency]);
+			}
+			
+			aggregates[position] = aggregate;
+		}
+	}
+	
+	/**
+	 * The aggregate bitmaps are computed for every commit by computeAggregateBitmaps on the first call, 
+	 * call it first to spread the work over more threads.
+	 * 
+	 * @param commitDependency
+	 * @return the bitmap of every commit the given commit depends on, directly or through other commits.
+	 */
+	public Bitmap getAggregateBitmap(CommitDependency commitDependency) {
+		
+		if (!aggregatesComputed)
+			computeAggregateBitmaps(1, NullProgressMonitor.INSTANCE);
+		
+		return this.objectIdToAggregatedBitmap.get(commitDependency.getCurrentCommitId());
 	}
 	
 	
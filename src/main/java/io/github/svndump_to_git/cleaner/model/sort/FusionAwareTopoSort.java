@@ -0,0 +1,172 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner.model.sort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.svndump_to_git.cleaner.model.bitmap.RevCommitBitMapIndex;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Orders the indexed commits so that each commit comes after its parents and the fusion data heads it 
+ * refers to.
+ * 
+ * This is Kahn's algorithm over the direct CommitDependency edges so it runs in O(commits + dependencies) 
+ * and never computes the aggregate bitmaps.  The commits are visited in the index order and a commit 
+ * whose dependencies are all placed is placed straight away; a commit that is still waiting is placed 
+ * as soon as its last dependency is.  So an index order that already respects the dependencies is kept 
+ * as is and otherwise only the waiting commits move.
+ * 
+ * @author ocleirig
+ *
+ */
+public class FusionAwareTopoSort {
+
+	private static final Logger log = LoggerFactory.getLogger(FusionAwareTopoSort.class);
+	
+	private RevCommitBitMapIndex index;
+
+	/**
+	 * 
+	 */
+	public FusionAwareTopoSort(RevCommitBitMapIndex index) {
+		super();
+		this.index = index;
+	}
+
+	/**
+	 * @return the indexed commits ordered so that dependencies come first.
+	 */
+	public List<RevCommit> sort() {
+		return sort(NullProgressMonitor.INSTANCE);
+	}
+	
+	/**
+	 * @param monitor updated for each commit placed.
+	 * @return the indexed commits ordered so that dependencies come first.
+	 */
+	public List<RevCommit> sort(ProgressMonitor monitor) {
+		
+		RevCommit[] commits = index.getRevCommitList().toArray(new RevCommit[0]);
+		
+		int size = commits.length;
+		
+		/*
+		 * Count the dependencies of each commit and build the reverse edges in one array, with the 
+		 * dependents of position p in dependents[dependentsStart[p]] until dependentsStart[p+1].
+		 */
+		int[] waitingOn = new int[size];
+		
+		int[] dependentsStart = new int[size + 1];
+		
+		int[][] dependencies = new int[size][];
+		
+		for (int position = 0; position < size; position++) {
+			
+			dependencies[position] = index.getDependencyPositions(commits[position].getId());
+			
+			waitingOn[position] = dependencies[position].length;
+			
+			for (int dependency : dependencies[position]) {
+				dependentsStart[dependency + 1]++;
+			}
+		}
+		
+		for (int position = 0; position < size; position++) {
+			dependentsStart[position + 1] += dependentsStart[position];
+		}
+		
+		int[] dependents = new int[dependentsStart[size]];
+		
+		int[] nextDependent = new int[size];
+		
+		System.arraycopy(dependentsStart, 0, nextDependent, 0, size);
+		
+		for (int position = 0; position < size; position++) {
+			
+			for (int dependency : dependencies[position]) {
+				dependents[nextDependent[dependency]++] = position;
+			}
+		}
+		
+		// only needed to build the reverse edges
+		dependencies = null;
+		nextDependent = null;
+		
+		monitor.beginTask("Sorting commits", size);
+		
+		List<RevCommit> sorted = new ArrayList<RevCommit>(size);
+		
+		boolean[] placed = new boolean[size];
+		
+		// the commits whose last dependency has just been placed, used as a stack
+		int[] ready = new int[size];
+		
+		for (int cursor = 0; cursor < size; cursor++) {
+			
+			if (placed[cursor] || waitingOn[cursor] > 0)
+				continue;
+			
+			int readyCount = 0;
+			
+			ready[readyCount++] = cursor;
+			
+			while (readyCount > 0) {
+				
+				int position = ready[--readyCount];
+				
+				placed[position] = true;
+				
+				sorted.add(commits[position]);
+				
+				monitor.update(1);
+				
+				/*
+				 * Dependents after the cursor are placed when the cursor reaches them which keeps the index 
+				 * order.  Those before it have been passed over and are placed now.  They are pushed in 
+				 * reverse so they come off the stack in index order.
+				 */
+				for (int i = dependentsStart[position + 1] - 1; i >= dependentsStart[position]; i--) {
+					
+					int dependent = dependents[i];
+					
+					if (--waitingOn[dependent] == 0 && dependent < cursor)
+						ready[readyCount++] = dependent;
+				}
+			}
+		}
+		
+		monitor.endTask();
+		
+		if (sorted.size() < size) {
+			
+			// only possible with a dependency cycle, keep the rest in index order rather than lose them.
+			log.warn((size - sorted.size()) + " of " + size + " commits are part of a dependency cycle, appending them in index order");
+			
+			for (int position = 0; position < size; position++) {
+				
+				if (!placed[position])
+					sorted.add(commits[position]);
+			}
+		}
+		
+		return sorted;
+	}
+}
@@ -30,9 +30,15 @@ import io.github.svndump_to_git.svn.model.ExternalModuleInfo;
  * 
  * This comparator will also include fusion data dependencies (as if they are parents aswell)
  * 
+ * Unrelated commits compare as equal so this is only a partial order, which the sort contract does not 
+ * allow, and each comparison can compute an aggregate bitmap.
+ * 
+ * @deprecated use FusionAwareTopoSort
+ * 
  * @author ocleirig
  *
  */
+@Deprecated
 public class FusionAwareTopoSortComparator implements
 		Comparator<RevCommit> {
 
@@ -18,11 +18,15 @@ import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
-import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.CoreConfig;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.TagBuilder;
@@ -30,12 +34,35 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.transport.ReceiveCommand;
 import org.eclipse.jgit.transport.ReceiveCommand.Type;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
+import io.github.svndump_to_git.git.cleaner.model.AsyncRecordWriter;
+import io.github.svndump_to_git.git.cleaner.model.BinaryObjectTranslationWriter;
+import io.github.svndump_to_git.git.cleaner.model.CleanerCheckpoint;
+import io.github.svndump_to_git.git.cleaner.model.CleanerMetrics;
+import io.github.svndump_to_git.git.cleaner.model.CleanerMetricsSink;
+import io.github.svndump_to_git.git.cleaner.model.CountingObjectInserter;
+import io.github.svndump_to_git.git.cleaner.model.JsonFileMetricsSink;
+import io.github.svndump_to_git.git.cleaner.model.MemoizingTreeRewriter;
+import io.github.svndump_to_git.git.cleaner.model.MergedRefUpdates;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdMap;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdSet;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdTableStorage;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdTranslationTable;
+import io.github.svndump_to_git.git.cleaner.model.ObjectOutputMode;
+import io.github.svndump_to_git.git.cleaner.model.ObjectTranslationDataSource;
+import io.github.svndump_to_git.git.cleaner.model.PackObjectInserter;
+import io.github.svndump_to_git.git.cleaner.model.PackedRefsWriter;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdMap;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdSet;
+import io.github.svndump_to_git.git.cleaner.model.RefUpdateMode;
 import io.github.svndump_to_git.git.cleaner.model.SkipOverCommitException;
+import io.github.svndump_to_git.git.cleaner.model.ThroughputProgressMonitor;
+import io.github.svndump_to_git.git.cleaner.model.UpdateRefStdin;
 import io.github.svndump_to_git.git.model.graft.GitGraft;
 import io.github.svndump_to_git.git.model.ref.utils.GitRefUtils;
 import io.github.svndump_to_git.git.model.tree.GitTreeData;
@@ -47,8 +74,9 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -57,6 +85,20 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author ocleirig
@@ -65,42 +107,158 @@ import java.util.Set;
 public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 	
 	private static final Logger log = LoggerFactory.getLogger(AbstractRepositoryCleaner.class);
-
+	
 	protected static final DateTimeFormatter formatter = DateTimeFormat.forPattern("YYYY-MM-dd");
 	
 	protected static final DateTimeFormatter includeHourAndMinuteDateFormatter = DateTimeFormat
 			.forPattern("YYYY-MM-dd HH:mm");
 	
+	private static final String CHECKPOINT_COMMIT_TRANSLATIONS = "commit-translations";
+	
+	private static final String CHECKPOINT_PROCESSED_COMMITS = "processed-commits";
+	
+	private static final String CHECKPOINT_DEFERRED_DELETES = "deferred-deletes";
+	
+	private static final String CHECKPOINT_DEFERRED_CREATES = "deferred-creates";
+	
+	private static final String CHECKPOINT_POSITION = "position";
+	
+	private static final String CHECKPOINT_LAST_COMMIT = "last-commit";
+	
+	private static final String CHECKPOINT_DATE = "date";
+	
+	private static final String CHECKPOINT_TRANSLATION_FILE_LENGTH = "translation-file-length";
+	
+	private static final String TIMER_REF_SCAN = "ref-scan";
+	
+	private static final String TIMER_BEFORE_REV_WALK = "before-rev-walk";
+	
+	private static final String TIMER_AFFECTED_COMMITS = "affected-commits";
+	
+	private static final String TIMER_TREE_EXTRACTION = "tree-extraction";
+	
+	private static final String TIMER_PROCESS_COMMIT_TREE = "process-commit-tree";
+	
+	private static final String TIMER_TREE_REWRITE = "tree-rewrite";
+	
+	private static final String TIMER_TREE_BUILD = "tree-build";
+	
+	private static final String TIMER_COMMIT_INSERT = "commit-insert";
+	
+	private static final String TIMER_REF_UPDATE = "ref-update";
+	
+	private static final String TIMER_REPACK = "repack";
+	
+	private static final String COUNTER_REWRITTEN = "commits-rewritten";
+	
+	private static final String COUNTER_SKIPPED = "commits-skipped";
+	
+	private static final String COUNTER_UNCHANGED = "commits-unchanged";
+	
+	private static final String COUNTER_TREE_UNAFFECTED = "commits-tree-unaffected";
+	
 	
 	private Repository repo;
-
+	
 	private String branchRefSpec = Constants.R_HEADS;
-
+	
 	private String externalGitCommandPath = null;
-
+	
 	private Map<ObjectId, GitGraft> grafts = new HashMap<ObjectId, GitGraft>();
-
+	
 	protected ObjectInserter inserter;
-
+	
 	protected Map<String, Ref> branchHeads;
-
+	
 	protected Map<ObjectId, Set<Ref>> commitToBranchMap;
-
+	
 	protected Map<String, Ref> tagHeads;
-
+	
 	protected Map<ObjectId, Set<Ref>> commitToTagMap;
-
+	
 	protected String dateString;
-
-	protected Map<ObjectId, ObjectId> originalCommitIdToNewCommitIdMap;
-
+	
+	protected ObjectIdMap originalCommitIdToNewCommitIdMap;
+	
 	private List<ReceiveCommand> deferredReferenceDeletes;
-
+	
 	private List<ReceiveCommand> deferredReferenceCreates;
-
+	
 	private RevWalk walkRepo;
-
-	protected Set<ObjectId> processedCommits;
+	
+	protected ObjectIdSet processedCommits;
+	
+	private ObjectIdTableStorage translationTableStorage = ObjectIdTableStorage.HEAP;
+	
+	private int treeProcessingThreads = 1;
+	
+	private boolean dagScheduling = false;
+	
+	private int checkpointInterval = 0;
+	
+	private String checkpointDirectory = null;
+	
+	private boolean resume = false;
+	
+	private String previousTranslationFile = null;
+	
+	private int treeCacheSize = 500000;
+	
+	private int objectFlushInterval = 10000;
+	
+	private ObjectOutputMode objectOutput = ObjectOutputMode.LOOSE;
+	
+	private int packSizeLimit = 1024;
+	
+	private RefUpdateMode refUpdateMode = RefUpdateMode.BATCH;
+	
+	private boolean repack = false;
+	
+	private int pruneExpireMinutes = 0;
+	
+	private MemoizingTreeRewriter treeRewriter;
+	
+	/*
+	 * The commits whose tree has something to rewrite or null if every commit tree is looked at.
+	 */
+	private ObjectIdSet affectedCommits;
+	
+	private int metricsReportInterval = 0;
+	
+	private final CleanerMetrics metrics = new CleanerMetrics();
+	
+	private CleanerMetricsSink metricsSink = new JsonFileMetricsSink();
+	
+	private int progressInterval = 30;
+	
+	/*
+	 * Objects inserted by all of the inserters of the run.
+	 */
+	private final AtomicLong insertedObjects = new AtomicLong();
+	
+	private ProgressMonitor commitProgress;
+	
+	/*
+	 * The number of commits taken from the commit iterator and fully rewritten.
+	 */
+	private int rewritePosition;
+	
+	private int lastCheckpointPosition;
+	
+	private File objectTranslationFile;
+	
+	private AsyncRecordWriter objectTranslationWriter;
+	
+	private ScheduledExecutorService metricsReporter;
+	
+	private boolean metricsStarted = false;
+	
+	/*
+	 * Tree ids built ahead of time by the tree processing workers keyed by the original commit id.
+	 */
+	private final Map<ObjectId, ObjectId> preparedTreeIds = new ConcurrentHashMap<ObjectId, ObjectId>();
+	
+	private final ThreadLocal<ObjectInserter> workerInserter = new ThreadLocal<ObjectInserter>();
 	
 	/**
 	 * 
@@ -108,14 +266,14 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 	public AbstractRepositoryCleaner() {
 		
 	}
-
+	
 	/**
 	 * @return the repo
 	 */
 	protected Repository getRepo() {
 		return repo;
 	}
-
+	
 	/**
 	 * @param repo the repo to set
 	 */
@@ -123,331 +281,1667 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 		this.repo = repo;
 		
 	}
-
+	
 	/**
 	 * @return the branchRefSpec
 	 */
 	protected String getBranchRefSpec() {
 		return branchRefSpec;
 	}
-
+	
 	/**
 	 * @param branchRefSpec the branchRefSpec to set
 	 */
 	protected void setBranchRefSpec(String branchRefSpec) {
 		this.branchRefSpec = branchRefSpec;
 	}
-
+	
 	/**
 	 * @return the externalGitCommandPath
 	 */
 	protected String getExternalGitCommandPath() {
 		return externalGitCommandPath;
 	}
-
+	
 	/**
 	 * @param externalGitCommandPath the externalGitCommandPath to set
 	 */
 	protected void setExternalGitCommandPath(String externalGitCommandPath) {
 		this.externalGitCommandPath = externalGitCommandPath;
 	}
-
-	public void close() {
-		
-		if (repo != null)
-			repo.close();
+	
+	/**
+	 * @return the number of threads used to extract, process and build the commit trees.
+	 */
+	public int getTreeProcessingThreads() {
+		return treeProcessingThreads;
 	}
-
-	/*
-	 * Load the grafts from the file name.
+	
+	/**
+	 * When more than one thread is given and the cleaner supports it the
+	 * tree extraction, processCommitTree and tree building happen on a worker
+	 * pool ahead of the commit insertion which stays in topological order.
+	 * 
+	 * @param treeProcessingThreads the number of tree processing threads.
 	 */
-	protected void loadGrafts(String graftsFileName) throws IOException {
-
-		List<String> graftLines = FileUtils.readLines(new File (graftsFileName));
+	public void setTreeProcessingThreads(int treeProcessingThreads) {
+		this.treeProcessingThreads = treeProcessingThreads;
+	}
+	
+	/**
+	 * @return true if commits are scheduled by their parent dependencies instead of strictly in topological order.
+	 */
+	public boolean isDagScheduling() {
+		return dagScheduling;
+	}
+	
+	/**
+	 * When true (and treeProcessingThreads > 1) a commit is rewritten as soon
+	 * as all of its parents have been rewritten or skipped instead of waiting
+	 * for every commit before it in the topological order.
+	 * 
+	 * Only used by cleaners where isCommitRewriteThreadSafe() is true. The
+	 * object translation file is then written in completion order.
+	 * 
+	 * @param dagScheduling
+	 */
+	public void setDagScheduling(boolean dagScheduling) {
+		this.dagScheduling = dagScheduling;
+	}
+	
+	/**
+	 * @return the number of commits between checkpoints, 0 when checkpoints are disabled.
+	 */
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+	
+	/**
+	 * Every checkpointInterval commits the object inserter is flushed and the
+	 * translation table, processed commits, deferred reference updates and
+	 * the position in the commit order are saved so that an interrupted run
+	 * can be continued with resume.
+	 * 
+	 * Not supported with dependency scheduling since there is no single position to resume from.
+	 * 
+	 * @param checkpointInterval the number of commits between checkpoints, 0 to disable.
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+	
+	/**
+	 * @return the directory the checkpoints are written into.
+	 */
+	public String getCheckpointDirectory() {
 		
-		for (String graftLine : graftLines) {
-			
-			String parts[] = graftLine.split(" ");
-			
-			// part zero is the target commit
-			
-			Set<ObjectId>parents = new HashSet<>();
-			
-			for (int i = 1; i < parts.length; i++) {
-				ObjectId parent = ObjectId.fromString(parts[i]);
-				
-				parents.add(parent);
-			}
-			
-			ObjectId targetCommitId = ObjectId.fromString(parts[0]);
-			
-			GitGraft graft = new GitGraft(targetCommitId, parents);
-			
-			grafts.put(targetCommitId, graft);
-			
-		}
+		if (checkpointDirectory == null)
+			return getFileNameSuffix() + "-checkpoint";
 		
+		return checkpointDirectory;
 	}
 	
-	@Override
-	public final void execute() throws IOException {
-
-		onBeforeExecute();
-		
-		inserter = getRepo().newObjectInserter();
-
-		boolean localBranchSource = true;
-
-		if (!getBranchRefSpec().equals(Constants.R_HEADS))
-			localBranchSource = false;
-
-		dateString = formatter.print(new DateTime());
-
-		/*
-		 * Track the commits that are rewritten.
-		 * 
-		 * This is important so that we can update the grafts file to relate to
-		 * the current parent object ids.
-		 */
-		PrintWriter objectTranslationWriter = new PrintWriter(
-				"object-translations-" + getFileNameSuffix() + "-" + dateString + ".txt");
-
-		branchHeads = getRepo().getRefDatabase().getRefs(
-				getBranchRefSpec());
-
-		commitToBranchMap = new HashMap<ObjectId, Set<Ref>>();
-
-		walkRepo = new RevWalk(getRepo());
-
-		for (Ref branchRef : branchHeads.values()) {
-
-			ObjectId branchObjectId = branchRef.getObjectId();
-
-			Set<Ref> refs = commitToBranchMap.get(branchObjectId);
-
-			if (refs == null) {
-				refs = new HashSet<>();
-				commitToBranchMap.put(branchObjectId, refs);
-			}
-
-			refs.add(branchRef);
-
-			walkRepo.markStart(walkRepo.parseCommit(branchObjectId));
-			
-			onBranchHead(branchRef, branchObjectId);
-
-		}
-
-		if (includeTagsInRevWalk()) {
-			
-			tagHeads = getRepo().getRefDatabase().getRefs(
-				Constants.R_TAGS);
-		}
-		else {
-			tagHeads = new HashMap<String, Ref>();
-		}
-
-		commitToTagMap = new HashMap<ObjectId, Set<Ref>>();
-
-		for (Ref tagRef : tagHeads.values()) {
-
-			RevTag tag = walkRepo.parseTag(tagRef.getObjectId());
-
-			ObjectId commitId = tag.getObject().getId();
-
-			Set<Ref> refs = commitToTagMap.get(commitId);
-
-			if (refs == null) {
-				refs = new HashSet<>();
-				commitToTagMap.put(commitId, refs);
-			}
-
-			refs.add(tagRef);
-
-			walkRepo.markStart(walkRepo.parseCommit(commitId));
-			
-			onTag(tag.getId(), commitId);
-		}
-
+	/**
+	 * @param checkpointDirectory defaults to <file name suffix>-checkpoint
+	 */
+	public void setCheckpointDirectory(String checkpointDirectory) {
+		this.checkpointDirectory = checkpointDirectory;
+	}
+	
+	/**
+	 * @return true if the run continues from the latest checkpoint.
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+	
+	/**
+	 * @param resume when true continue from the latest checkpoint in the checkpoint directory instead of from the start.
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+	
+	/**
+	 * @return the object translation file of the previous run, null when not running incrementally.
+	 */
+	public String getPreviousTranslationFile() {
+		return previousTranslationFile;
+	}
+	
+	/**
+	 * Run incrementally on top of a previous run of the same cleaner.
+	 * 
+	 * The commits translated by the previous run (text or binary translation file, the binary file 
+	 * holds every translation of the run) are marked uninteresting so that only the commits added 
+	 * since are walked and rewritten onto their already translated parents.
+	 * 
+	 * The binary file also records the branch and tag heads the previous run walked but left 
+	 * unchanged, as translating to themselves, so that their history is not walked again.  The 
+	 * text file only holds the rewritten commits so with it those branches are walked every run.
+	 * 
+	 * Commits that a previous run skipped over (for example pruned commits) are not recorded in 
+	 * the translation file so new commits must not have them as parents.
+	 * 
+	 * @param previousTranslationFile
+	 */
+	public void setPreviousTranslationFile(String previousTranslationFile) {
+		this.previousTranslationFile = previousTranslationFile;
+	}
+	
+	/**
+	 * @return the number of rewritten subtrees remembered by cleaners that use a MemoizingTreeRewriter.
+	 */
+	public int getTreeCacheSize() {
+		return treeCacheSize;
+	}
+	
+	/**
+	 * @param treeCacheSize the number of original subtree ids and their rewritten ids to remember.
+	 */
+	public void setTreeCacheSize(int treeCacheSize) {
+		this.treeCacheSize = treeCacheSize;
+	}
+	
+	/**
+	 * @return the number of commits between flushes of the object inserter.
+	 */
+	public int getObjectFlushInterval() {
+		return objectFlushInterval;
+	}
+	
+	/**
+	 * The object inserter stays open for the whole run and is flushed every objectFlushInterval 
+	 * commits, at each checkpoint and at the end.
+	 * 
+	 * @param objectFlushInterval the number of commits between flushes, 0 to only flush at checkpoints and the end.
+	 */
+	public void setObjectFlushInterval(int objectFlushInterval) {
+		this.objectFlushInterval = objectFlushInterval;
+	}
+	
+	/**
+	 * @return how the rewritten objects are written into the repository.
+	 */
+	public ObjectOutputMode getObjectOutput() {
+		return objectOutput;
+	}
+	
+	/**
+	 * With PACK the rewritten objects are streamed into pack files as they are created so the repository is 
+	 * compact without a gc afterwards.  The packs are finished at each checkpoint, at the end and when they reach 
+	 * the packSizeLimit so the objectFlushInterval does not apply.
+	 * 
+	 * @param objectOutput LOOSE (default) or PACK.
+	 */
+	public void setObjectOutput(ObjectOutputMode objectOutput) {
+		this.objectOutput = objectOutput;
+	}
+	
+	/**
+	 * @return the size in megabytes at which a new pack is started.
+	 */
+	public int getPackSizeLimit() {
+		return packSizeLimit;
+	}
+	
+	/**
+	 * @param packSizeLimit the size in megabytes at which a new pack is started when the objectOutput is PACK.
+	 */
+	public void setPackSizeLimit(int packSizeLimit) {
+		this.packSizeLimit = packSizeLimit;
+	}
+	
+	/**
+	 * @return how the deferred ref deletes and creates are applied.
+	 */
+	public RefUpdateMode getRefUpdateMode() {
+		return refUpdateMode;
+	}
+	
+	/**
+	 * UPDATE_REF_STDIN and PACKED_REFS turn a delete and create of the same name into one update and apply 
+	 * all of the commands in a single pass.
+	 * 
+	 * @param refUpdateMode BATCH (default), UPDATE_REF_STDIN or PACKED_REFS.
+	 */
+	public void setRefUpdateMode(RefUpdateMode refUpdateMode) {
+		this.refUpdateMode = refUpdateMode;
+	}
+	
+	/**
+	 * @return true if the repository is repacked once the refs have been updated.
+	 */
+	public boolean isRepack() {
+		return repack;
+	}
+	
+	/**
+	 * When enabled a final phase runs the JGit garbage collector: the objects reachable from the refs are packed 
+	 * into a new pack with a reachability bitmap index, and the pre-rewrite objects are pruned.
+	 * 
+	 * Like git gc, objects still referenced from a reflog are kept.
+	 * 
+	 * @param repack true to repack after the rewrite.
+	 */
+	public void setRepack(boolean repack) {
+		this.repack = repack;
+	}
+	
+	/**
+	 * @return the age in minutes an unreachable object needs before the repack prunes it.
+	 */
+	public int getPruneExpireMinutes() {
+		return pruneExpireMinutes;
+	}
+	
+	/**
+	 * @param pruneExpireMinutes the age in minutes an unreachable object or pack needs to be pruned by the 
+	 * repack, 0 (default) prunes them all so nothing else should be writing into the repository.
+	 */
+	public void setPruneExpireMinutes(int pruneExpireMinutes) {
+		this.pruneExpireMinutes = pruneExpireMinutes;
+	}
+	
+	/**
+	 * @return the number of seconds between metrics reports, 0 for only at the end.
+	 */
+	public int getMetricsReportInterval() {
+		return metricsReportInterval;
+	}
+	
+	/**
+	 * The final metrics are always reported at the end of the run, also when it fails.
+	 * 
+	 * @param metricsReportInterval the number of seconds between reporting the metrics and logging a summary during the run.
+	 */
+	public void setMetricsReportInterval(int metricsReportInterval) {
+		this.metricsReportInterval = metricsReportInterval;
+	}
+	
+	/**
+	 * @return where the metrics are reported.
+	 */
+	public CleanerMetricsSink getMetricsSink() {
+		return metricsSink;
+	}
+	
+	/**
+	 * @param metricsSink where the metrics are reported, defaults to the cleaner-metrics JSON file.
+	 */
+	public void setMetricsSink(CleanerMetricsSink metricsSink) {
+		this.metricsSink = metricsSink;
+	}
+	
+	/**
+	 * @return the number of seconds between progress reports.
+	 */
+	public int getProgressInterval() {
+		return progressInterval;
+	}
+	
+	/**
+	 * @param progressInterval the number of seconds between progress reports of the commit rewrite and the other long phases.
+	 */
+	public void setProgressInterval(int progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+	
+	/**
+	 * A progress monitor that logs the rate, the object insertion rate and the time remaining every progressInterval seconds.
+	 * 
+	 * @return a new progress monitor.
+	 */
+	protected final ProgressMonitor createProgressMonitor() {
+		return new ThroughputProgressMonitor(progressInterval, insertedObjects);
+	}
+	
+	/**
+	 * The phase timers and counters of this run, subclasses can add their own.
+	 * 
+	 * @return the metrics of this run.
+	 */
+	protected final CleanerMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * @return where the commit translation tables are kept.
+	 */
+	public ObjectIdTableStorage getTranslationTableStorage() {
+		return translationTableStorage;
+	}
+	
+	/**
+	 * @param translationTableStorage HEAP (default), DIRECT or MAPPED.
+	 */
+	public void setTranslationTableStorage(
+			ObjectIdTableStorage translationTableStorage) {
+		this.translationTableStorage = translationTableStorage;
+	}
+	
+	/**
+	 * Create an object id map using the configured translation table storage.
+	 * 
+	 * @param name used to name the working directory of a MAPPED table.
+	 * @return a new empty map.
+	 */
+	protected ObjectIdMap createObjectIdMap(String name) {
+		return new PrimitiveObjectIdMap(translationTableStorage, new File (getFileNameSuffix() + "-" + name + "-table"));
+	}
+	
+	/**
+	 * Create an object id set using the configured translation table storage.
+	 * 
+	 * @param name used to name the working directory of a MAPPED table.
+	 * @return a new empty set.
+	 */
+	protected ObjectIdSet createObjectIdSet(String name) {
+		return new PrimitiveObjectIdSet(translationTableStorage, new File (getFileNameSuffix() + "-" + name + "-table"));
+	}
+	
+	public void close() {
+		
+		if (affectedCommits != null) {
+			affectedCommits.close();
+			affectedCommits = null;
+		}
+		
+		if (repo != null)
+			repo.close();
+	}
+	
+	/*
+	 * Load the grafts from the file name.
+	 */
+	protected void loadGrafts(String graftsFileName) throws IOException {
+		
+		List<String> graftLines = FileUtils.readLines(new File (graftsFileName));
+		
+		for (String graftLine : graftLines) {
+			
+			String parts[] = graftLine.split(" ");
+			
+			// part zero is the target commit
+			
+			Set<ObjectId>parents = new HashSet<>();
+			
+			for (int i = 1; i < parts.length; i++) {
+				ObjectId parent = ObjectId.fromString(parts[i]);
+				
+				parents.add(parent);
+			}
+			
+			ObjectId targetCommitId = ObjectId.fromString(parts[0]);
+			
+			GitGraft graft = new GitGraft(targetCommitId, parents);
+			
+			grafts.put(targetCommitId, graft);
+			
+		}
+		
+	}
+	
+	@Override
+	public final void execute() throws IOException {
+		
+		try {
+			try {
+				rewriteRepository();
+			} catch (Throwable e) {
+				stopMetrics(e);
+				throw e;
+			}
+			finally {
+				releaseRewriteResources();
+			}
+			
+			stopMetrics(null);
+			
+			recordUnchangedHeads();
+			
+			BinaryObjectTranslationWriter.write(new File ("object-translations-" + getFileNameSuffix() + "-" + dateString + ".bin"), originalCommitIdToNewCommitIdMap);
+		}
+		finally {
+			closeTranslationTables();
+		}
+	}
+	
+	/*
+	 * Walk the branches and tags, rewrite the commits and move the refs.  The resources are released by execute.
+	 */
+	private void rewriteRepository() throws IOException {
+		
+		onBeforeExecute();
+		
+		if (refUpdateMode == RefUpdateMode.UPDATE_REF_STDIN && getExternalGitCommandPath() == null)
+			throw new IllegalStateException("the UPDATE_REF_STDIN ref update mode needs the git command path argument");
+		
+		inserter = newObjectInserter();
+		
+		boolean localBranchSource = true;
+		
+		if (!getBranchRefSpec().equals(Constants.R_HEADS))
+			localBranchSource = false;
+		
+		dateString = formatter.print(new DateTime());
+		
+		CleanerCheckpoint resumeCheckpoint = null;
+		
+		if ((checkpointInterval > 0 || resume) && !isCheckpointSupported()) {
+			
+			log.warn(getClass().getSimpleName() + " does not support checkpoints, running from the beginning without them.");
+			
+			checkpointInterval = 0;
+			resume = false;
+		}
+		
+		if (resume) {
+			
+			resumeCheckpoint = CleanerCheckpoint.latest(new File (getCheckpointDirectory()));
+			
+			if (resumeCheckpoint == null)
+				log.warn("no checkpoint found in " + getCheckpointDirectory() + ", starting from the beginning.");
+			else
+				dateString = resumeCheckpoint.getProperty(CHECKPOINT_DATE);
+		}
+		
+		/*
+		 * Track the commits that are rewritten.
+		 * 
+		 * This is important so that we can update the grafts file to relate to
+		 * the current parent object ids.
+		 */
+		objectTranslationFile = new File ("object-translations-" + getFileNameSuffix() + "-" + dateString + ".txt");
+		
+		if (resumeCheckpoint != null) {
+			
+			// drop the translations written after the checkpoint
+			RandomAccessFile translations = new RandomAccessFile(objectTranslationFile, "rw");
+			
+			try {
+				translations.setLength(Long.parseLong(resumeCheckpoint.getProperty(CHECKPOINT_TRANSLATION_FILE_LENGTH)));
+			}
+			finally {
+				translations.close();
+			}
+			
+			objectTranslationWriter = new AsyncRecordWriter(objectTranslationFile, true);
+		}
+		else
+			objectTranslationWriter = new AsyncRecordWriter(objectTranslationFile, false);
+		
+		metricsSink.begin(getFileNameSuffix(), dateString);
+		
+		metricsReporter = startMetricsReporter();
+		
+		metricsStarted = true;
+		
+		long refScanStart = System.nanoTime();
+		
+		branchHeads = getRepo().getRefDatabase().getRefs(
+				getBranchRefSpec());
+		
+		commitToBranchMap = new HashMap<ObjectId, Set<Ref>>();
+		
+		walkRepo = new RevWalk(getRepo());
+		
+		for (Ref branchRef : branchHeads.values()) {
+			
+			ObjectId branchObjectId = branchRef.getObjectId();
+			
+			Set<Ref> refs = commitToBranchMap.get(branchObjectId);
+			
+			if (refs == null) {
+				refs = new HashSet<>();
+				commitToBranchMap.put(branchObjectId, refs);
+			}
+			
+			refs.add(branchRef);
+			
+			walkRepo.markStart(walkRepo.parseCommit(branchObjectId));
+			
+			onBranchHead(branchRef, branchObjectId);
+			
+		}
+		
+		if (includeTagsInRevWalk()) {
+			
+			tagHeads = getRepo().getRefDatabase().getRefs(
+				Constants.R_TAGS);
+		}
+		else {
+			tagHeads = new HashMap<String, Ref>();
+		}
+		
+		commitToTagMap = new HashMap<ObjectId, Set<Ref>>();
+		
+		for (Ref tagRef : tagHeads.values()) {
+			
+			RevTag tag = walkRepo.parseTag(tagRef.getObjectId());
+			
+			ObjectId commitId = tag.getObject().getId();
+			
+			Set<Ref> refs = commitToTagMap.get(commitId);
+			
+			if (refs == null) {
+				refs = new HashSet<>();
+				commitToTagMap.put(commitId, refs);
+			}
+			
+			refs.add(tagRef);
+			
+			walkRepo.markStart(walkRepo.parseCommit(commitId));
+			
+			onTag(tag.getId(), commitId);
+		}
+		
+		
+		metrics.timer(TIMER_REF_SCAN).stop(refScanStart);
+		
+		long beforeRevWalkStart = System.nanoTime();
+		
+		onBeforeRevWalk();
+		
+		metrics.timer(TIMER_BEFORE_REV_WALK).stop(beforeRevWalkStart);
+		
+		treeRewriter = createTreeRewriter(treeCacheSize);
+		
+		ObjectIdTranslationTable previousTranslations = null;
+		
+		if (previousTranslationFile != null) {
+			
+			previousTranslations = ObjectTranslationDataSource.load(previousTranslationFile);
+			
+			markPreviousTranslationsUninteresting(previousTranslations);
+		}
+		
+		walkRepo.sort(RevSort.TOPO, true);
+		walkRepo.sort(RevSort.REVERSE, true);
+		
+		Iterator<RevCommit> it = provideRevCommitIterator(walkRepo.iterator());
+		
+		/*
+		 * The topological sort has already buffered the whole walk so listing the commits 
+		 * to get the total for the progress reports only costs the references.
+		 */
+		List<RevCommit> commitsToRewrite = new ArrayList<RevCommit>();
+		
+		while (it.hasNext())
+			commitsToRewrite.add(it.next());
+		
+		prepareAffectedCommits(commitsToRewrite);
+		
+		it = commitsToRewrite.iterator();
+		
+		deferredReferenceDeletes = Collections.synchronizedList(new LinkedList<ReceiveCommand>());
+		deferredReferenceCreates = Collections.synchronizedList(new LinkedList<ReceiveCommand>());
+		
+		originalCommitIdToNewCommitIdMap = createObjectIdMap("commit-translations");
+		
+		processedCommits = createObjectIdSet("processed-commits");
+		
+		rewritePosition = 0;
+		
+		if (resumeCheckpoint != null)
+			resumeFromCheckpoint(resumeCheckpoint, it);
+		else
+			objectTranslationWriter
+				.println("# new-object-id <space> original-object-id");
+		
+		if (previousTranslations != null) {
+			
+			// the ref moves are already part of the checkpoint when resuming
+			applyPreviousTranslations(previousTranslations, resumeCheckpoint == null, localBranchSource);
+		}
+		
+		lastCheckpointPosition = rewritePosition;
+		
+		commitProgress = createProgressMonitor();
+		
+		commitProgress.beginTask("Rewriting commits", commitsToRewrite.size() - rewritePosition);
+		
+		commitsToRewrite = null;
+		
+		boolean parallel = treeProcessingThreads > 1 && isTreeProcessingThreadSafe();
+		
+		if (checkpointInterval > 0 && parallel && dagScheduling && isCommitRewriteThreadSafe())
+			log.warn("checkpoints are not written when using dependency scheduling.");
+		
+		if (parallel && dagScheduling && isCommitRewriteThreadSafe()) {
+			
+			rewriteCommitsByDependency(it, objectTranslationWriter, localBranchSource);
+		}
+		else if (parallel) {
+			
+			if (dagScheduling)
+				log.warn(getClass().getSimpleName() + " does not support dependency scheduling, using the topological order.");
+			
+			rewriteCommitsInParallel(it, objectTranslationWriter, localBranchSource);
+		}
+		else {
+			
+			if (treeProcessingThreads > 1)
+				log.warn(getClass().getSimpleName() + " does not support parallel tree processing, using a single thread.");
+			
+			GitTreeProcessor treeProcessor = new GitTreeProcessor(getRepo());
+			
+			while (it.hasNext()) {
+				
+				RevCommit commit = it.next();
+				
+				rewriteCommit(prepareCommit(commit, treeProcessor, false), objectTranslationWriter, localBranchSource);
+				
+				commitProgress.update(1);
+				
+				rewritePosition++;
+				
+				if (isCheckpointDue())
+					writeCheckpoint(commit, objectTranslationWriter, Collections.<ObjectInserter>emptyList());
+				else if (isObjectFlushDue())
+					inserter.flush();
+			}
+		}
+		
+		inserter.flush();
+		
+		commitProgress.endTask();
+		
+		getRepo().getRefDatabase().refresh();
+		
+		log.info("Applying updates: " + deferredReferenceDeletes.size()
+				+ " deletes, " + deferredReferenceCreates.size() + " creates.");
+		
+		long refUpdateStart = System.nanoTime();
+		
+		applyRefUpdates();
+		
+		metrics.timer(TIMER_REF_UPDATE).stop(refUpdateStart);
+		
+		if (checkpointInterval > 0 || resume)
+			CleanerCheckpoint.clear(new File (getCheckpointDirectory()));
+		
+		if (repack) {
+			
+			long repackStart = System.nanoTime();
+			
+			repack();
+			
+			metrics.timer(TIMER_REPACK).stop(repackStart);
+		}
+		
+		if (treeRewriter != null)
+			log.info("tree rewrite cache: " + treeRewriter);
+		
+		log.info("Completed.");
+	}
+	
+	/*
+	 * Release what the rewrite opened, also when it failed part way through.
+	 */
+	private void releaseRewriteResources() throws IOException {
+		
+		try {
+			if (walkRepo != null)
+				walkRepo.close();
+			
+			if (inserter != null)
+				inserter.close();
+			
+			close();
+		}
+		finally {
+			
+			// flushes the translations written so far
+			if (objectTranslationWriter != null)
+				objectTranslationWriter.close();
+		}
+	}
+	
+	private void closeTranslationTables() {
+		
+		if (originalCommitIdToNewCommitIdMap != null)
+			originalCommitIdToNewCommitIdMap.close();
+		
+		if (processedCommits != null)
+			processedCommits.close();
+	}
+	
+	/*
+	 * Rewrite the metrics report and log a summary every metricsReportInterval seconds.
+	 * 
+	 * @return the reporter to shut down at the end or null if not enabled.
+	 */
+	private ScheduledExecutorService startMetricsReporter() {
+		
+		if (metricsReportInterval <= 0)
+			return null;
+		
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				
+				Thread thread = new Thread(r, "metrics-reporter");
+				
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+		
+		reporter.scheduleAtFixedRate(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				try {
+					metricsSink.report(metrics, false);
+				} catch (IOException e) {
+					log.warn("failed to report the metrics", e);
+				}
+				
+				log.info("metrics: " + metrics);
+			}
+		}, metricsReportInterval, metricsReportInterval, TimeUnit.SECONDS);
+		
+		return reporter;
+	}
+	
+	/*
+	 * Stop the periodic reports and make the final one, also when the run failed.
+	 */
+	private void stopMetrics(Throwable runFailure) throws IOException {
+		
+		if (!metricsStarted)
+			return;
+		
+		metricsStarted = false;
+		
+		if (metricsReporter != null) {
+			
+			metricsReporter.shutdownNow();
+			
+			// a periodic report still being written would race the final one
+			try {
+				metricsReporter.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		log.info("metrics: " + metrics);
+		
+		try {
+			metricsSink.report(metrics, true);
+		} catch (IOException e) {
+			
+			if (runFailure == null)
+				throw e;
+			
+			runFailure.addSuppressed(e);
+		}
+	}
+	
+	/*
+	 * Apply the deferred deletes and creates using the configured ref update mode.
+	 */
+	private void applyRefUpdates() throws IOException {
+		
+		if (refUpdateMode == RefUpdateMode.BATCH) {
+			
+			if (getExternalGitCommandPath() != null) {
+				ExternalGitUtils.batchRefUpdate(getExternalGitCommandPath(), getRepo(),
+						deferredReferenceDeletes, System.out);
+			} else {
+				GitRefUtils.batchRefUpdate(getRepo(), deferredReferenceDeletes,
+						createProgressMonitor());
+			}
+			
+			getRepo().getRefDatabase().refresh();
+			
+			if (getExternalGitCommandPath() != null) {
+				ExternalGitUtils.batchRefUpdate(getExternalGitCommandPath(), getRepo(),
+						deferredReferenceCreates, System.out);
+			} else {
+				
+				GitRefUtils.batchRefUpdate(getRepo(), deferredReferenceCreates,
+						createProgressMonitor());
+				
+			}
+			
+			return;
+		}
+		
+		List<ReceiveCommand> commands = MergedRefUpdates.merge(deferredReferenceDeletes, deferredReferenceCreates);
+		
+		ProgressMonitor refProgress = createProgressMonitor();
+		
+		// applied in one step so only the start and the end are reported
+		refProgress.beginTask("Applying merged ref updates", commands.size());
+		
+		if (refUpdateMode == RefUpdateMode.UPDATE_REF_STDIN) {
+			
+			UpdateRefStdin.apply(getExternalGitCommandPath(), getRepo(), commands);
+			
+			getRepo().getRefDatabase().refresh();
+		}
+		else
+			PackedRefsWriter.apply(getRepo(), commands);
+		
+		refProgress.update(commands.size());
+		refProgress.endTask();
+	}
+	
+	/*
+	 * Pack the objects reachable from the updated refs with a bitmap index and prune the rest.
+	 */
+	private void repack() throws IOException {
+		
+		if (!(getRepo() instanceof FileRepository)) {
+			log.warn("repack is only supported for file repositories, skipping it.");
+			return;
+		}
+		
+		GC gc = new GC((FileRepository) getRepo());
+		
+		PackConfig packConfig = new PackConfig(getRepo());
+		
+		packConfig.setBuildBitmaps(true);
+		
+		gc.setPackConfig(packConfig);
+		gc.setExpireAgeMillis(pruneExpireMinutes * 60L * 1000L);
+		gc.setPackExpireAgeMillis(pruneExpireMinutes * 60L * 1000L);
+		gc.setProgressMonitor(createProgressMonitor());
+		
+		GC.RepoStatistics before = gc.getStatistics();
+		
+		try {
+			gc.gc();
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			// an invalid gc expiry configuration
+			throw new IOException("repack failed", e);
+		}
+		
+		GC.RepoStatistics after = gc.getStatistics();
+		
+		long sizeBefore = before.sizeOfLooseObjects + before.sizeOfPackedObjects;
+		long sizeAfter = after.sizeOfLooseObjects + after.sizeOfPackedObjects;
+		
+		log.info("repack: " + before.numberOfLooseObjects + " loose and " + before.numberOfPackedObjects + " packed objects in " + before.numberOfPackFiles + " packs ("
+				+ sizeBefore + " bytes) became " + after.numberOfLooseObjects + " loose and " + after.numberOfPackedObjects + " packed objects in " + after.numberOfPackFiles 
+				+ " packs (" + sizeAfter + " bytes), reclaimed " + (sizeBefore - sizeAfter) + " bytes.");
+	}
+	
+	/*
+	 * Hide the commits rewritten by the previous run, and their ancestors, from the walk.
+	 */
+	private void markPreviousTranslationsUninteresting(ObjectIdTranslationTable previousTranslations) throws IOException {
+		
+		final int[] marked = new int[1];
+		
+		previousTranslations.forEach(new ObjectIdMap.EntryVisitor() {
+			
+			@Override
+			public void visit(ObjectId originalId, ObjectId newId) throws IOException {
+				
+				if (markUninteresting(originalId))
+					marked[0]++;
+				
+				// the refs may already point at the rewritten commits
+				markUninteresting(newId);
+			}
+		});
+		
+		log.info("incremental run: " + marked[0] + " of " + previousTranslations.size() + " previously translated commits marked uninteresting");
+	}
+	
+	private boolean markUninteresting(ObjectId commitId) throws IOException {
+		
+		try {
+			walkRepo.markUninteresting(walkRepo.parseCommit(commitId));
+			return true;
+		} catch (MissingObjectException e) {
+			// no longer in this repository
+			return false;
+		} catch (IncorrectObjectTypeException e) {
+			return false;
+		}
+	}
+	
+	/*
+	 * Seed the translation table with the previous run and move the refs whose commits were translated by it.
+	 */
+	private void applyPreviousTranslations(ObjectIdTranslationTable previousTranslations, final boolean moveRefs, final boolean localBranchSource) throws IOException {
+		
+		previousTranslations.forEach(new ObjectIdMap.EntryVisitor() {
+			
+			@Override
+			public void visit(ObjectId originalId, ObjectId newId) throws IOException {
+				
+				if (originalId.equals(newId)) {
+					// an unchanged head, it must not look like a translated parent
+					processedCommits.add(newId);
+					return;
+				}
+				
+				originalCommitIdToNewCommitIdMap.put(originalId, newId);
+				
+				processedCommits.add(newId);
+				
+				if (moveRefs)
+					moveRefs(originalId, newId, localBranchSource);
+			}
+		});
+	}
+	
+	/*
+	 * Record the heads that were walked, by this or an earlier incremental run, and left unchanged as 
+	 * translating to themselves.  Only called once the rewrite is over so that they are only part of the 
+	 * binary translation file.
+	 */
+	private void recordUnchangedHeads() {
+		
+		Set<ObjectId> heads = new HashSet<ObjectId>(commitToBranchMap.keySet());
+		
+		heads.addAll(commitToTagMap.keySet());
+		
+		int recorded = 0;
+		
+		for (ObjectId head : heads) {
+			
+			if (processedCommits.contains(head) && originalCommitIdToNewCommitIdMap.get(head) == null) {
+				
+				originalCommitIdToNewCommitIdMap.put(head, head);
+				
+				recorded++;
+			}
+		}
+		
+		log.info("recorded " + recorded + " unchanged heads in the binary translations");
+	}
+	
+	/*
+	 * Let the cleaner find the commits whose tree it needs to look at before the rewrite starts.
+	 */
+	private void prepareAffectedCommits(List<RevCommit> commitsToRewrite) throws IOException {
+		
+		affectedCommits = createObjectIdSet("affected-commits");
+		
+		ObjectReader reader = repo.newObjectReader();
+		
+		boolean found;
+		
+		long start = System.nanoTime();
+		
+		try {
+			found = findAffectedCommits(reader, commitsToRewrite, affectedCommits);
+		}
+		finally {
+			reader.close();
+		}
+		
+		if (found) {
+			
+			metrics.timer(TIMER_AFFECTED_COMMITS).stop(start);
+			
+			log.info(affectedCommits.size() + " of " + commitsToRewrite.size() + " commits have a tree to rewrite");
+		}
+		else {
+			affectedCommits.close();
+			affectedCommits = null;
+		}
+	}
+	
+	private boolean isObjectFlushDue() {
+		return objectOutput == ObjectOutputMode.LOOSE && objectFlushInterval > 0 && rewritePosition % objectFlushInterval == 0;
+	}
+	
+	/*
+	 * The inserter for the main thread or a worker according to the objectOutput mode.
+	 */
+	private ObjectInserter newObjectInserter() {
+		
+		ObjectInserter objectInserter;
+		
+		if (objectOutput == ObjectOutputMode.PACK)
+			objectInserter = new PackObjectInserter(getRepo(), packSizeLimit * 1024L * 1024L, getRepo().getConfig().get(CoreConfig.KEY).getCompression());
+		else
+			objectInserter = getRepo().newObjectInserter();
+		
+		return new CountingObjectInserter(objectInserter, insertedObjects);
+	}
+	
+	private boolean isCheckpointDue() {
+		return isCheckpointDue(rewritePosition);
+	}
+	
+	private boolean isCheckpointDue(int position) {
+		return checkpointInterval > 0 && position - lastCheckpointPosition >= checkpointInterval;
+	}
+	
+	/*
+	 * Persist everything needed to continue after the last commit rewritten.
+	 * 
+	 * Must only be called when no commit is being rewritten.
+	 */
+	private void writeCheckpoint(RevCommit lastCommit, AsyncRecordWriter objectTranslationWriter, List<ObjectInserter> workerInserters) throws IOException {
+		
+		for (ObjectInserter threadInserter : workerInserters) {
+			threadInserter.flush();
+		}
+		
+		inserter.flush();
+		
+		// the length recorded below must include every translation written so far
+		objectTranslationWriter.sync();
+		
+		CleanerCheckpoint checkpoint = CleanerCheckpoint.begin(new File (getCheckpointDirectory()), rewritePosition);
+		
+		checkpoint.saveObjectIdMap(CHECKPOINT_COMMIT_TRANSLATIONS, originalCommitIdToNewCommitIdMap);
+		
+		checkpoint.saveObjectIdSet(CHECKPOINT_PROCESSED_COMMITS, processedCommits);
+		
+		checkpoint.saveReceiveCommands(CHECKPOINT_DEFERRED_DELETES, deferredReferenceDeletes);
+		
+		checkpoint.saveReceiveCommands(CHECKPOINT_DEFERRED_CREATES, deferredReferenceCreates);
+		
+		onCheckpoint(checkpoint);
+		
+		checkpoint.setIntProperty(CHECKPOINT_POSITION, rewritePosition);
+		checkpoint.setProperty(CHECKPOINT_LAST_COMMIT, lastCommit.getId().name());
+		checkpoint.setProperty(CHECKPOINT_DATE, dateString);
+		checkpoint.setProperty(CHECKPOINT_TRANSLATION_FILE_LENGTH, String.valueOf(objectTranslationFile.length()));
+		
+		checkpoint.commit();
+		
+		lastCheckpointPosition = rewritePosition;
+		
+		log.info("checkpoint written after " + rewritePosition + " commits into " + checkpoint.getDirectory());
+	}
+	
+	/*
+	 * Restore the state saved in the checkpoint and move the iterator past the commits already rewritten.
+	 */
+	private void resumeFromCheckpoint(CleanerCheckpoint checkpoint, Iterator<RevCommit> it) throws IOException {
+		
+		checkpoint.loadObjectIdMap(CHECKPOINT_COMMIT_TRANSLATIONS, originalCommitIdToNewCommitIdMap);
+		
+		checkpoint.loadObjectIdSet(CHECKPOINT_PROCESSED_COMMITS, processedCommits);
+		
+		deferredReferenceDeletes.addAll(checkpoint.loadReceiveCommands(CHECKPOINT_DEFERRED_DELETES));
+		
+		deferredReferenceCreates.addAll(checkpoint.loadReceiveCommands(CHECKPOINT_DEFERRED_CREATES));
+		
+		onResume(checkpoint);
+		
+		int position = checkpoint.getIntProperty(CHECKPOINT_POSITION);
+		
+		RevCommit lastCommit = null;
+		
+		for (int i = 0; i < position; i++) {
+			
+			if (!it.hasNext())
+				throw new IllegalStateException("the commit walk has fewer commits than the checkpoint position " + position);
+			
+			lastCommit = it.next();
+		}
+		
+		if (lastCommit != null && !lastCommit.getId().name().equals(checkpoint.getProperty(CHECKPOINT_LAST_COMMIT)))
+			throw new IllegalStateException("the commit walk no longer matches the checkpoint, expected " + checkpoint.getProperty(CHECKPOINT_LAST_COMMIT) + " at position " + position + " but found " + lastCommit.getId().name());
+		
+		rewritePosition = position;
+		
+		log.info("resumed from the checkpoint in " + checkpoint.getDirectory() + " after " + position + " commits");
+	}
+	
+	/*
+	 * Extract the tree of the commit and let the cleaner process it.
+	 * 
+	 * When prebuildTree is true a dirty tree is also built so that the ordered stage only needs to insert the commit.
+	 */
+	private PreparedCommit prepareCommit(RevCommit commit, GitTreeProcessor treeProcessor, boolean prebuildTree) throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, IOException {
+		
+		if (!isCommitTreeAffected(commit)) {
+			// rewritten only if a parent is
+			metrics.increment(COUNTER_TREE_UNAFFECTED);
+			return new PreparedCommit(commit, null);
+		}
+		
+		if (treeRewriter != null)
+			return prepareCommitByTreeRewriter(commit);
+		
+		long start = System.nanoTime();
+		
+		GitTreeData tree = treeProcessor
+				.extractExistingTreeDataFromCommit(commit.getId());
+		
+		metrics.timer(TIMER_TREE_EXTRACTION).stop(start);
+		
+		PreparedCommit prepared = new PreparedCommit(commit, tree);
+		
+		start = System.nanoTime();
+		
+		try {
+			prepared.recreate = processCommitTree(commit, tree);
+		} catch (SkipOverCommitException e) {
+			prepared.skipped = true;
+			return prepared;
+		}
+		finally {
+			metrics.timer(TIMER_PROCESS_COMMIT_TREE).stop(start);
+		}
+		
+		if (prebuildTree && prepared.recreate && tree.isTreeDirty()) {
+			
+			start = System.nanoTime();
+			
+			preparedTreeIds.put(commit.getId(), tree.buildTree(getObjectInserter()));
+			
+			metrics.timer(TIMER_TREE_BUILD).stop(start);
+		}
+		
+		return prepared;
+	}
+	
+	/*
+	 * The tree is rewritten by id so there is no GitTreeData and processCommitTree is not called.
+	 */
+	private PreparedCommit prepareCommitByTreeRewriter(RevCommit commit) throws IOException {
+		
+		PreparedCommit prepared = new PreparedCommit(commit, null);
+		
+		ObjectReader reader = getRepo().newObjectReader();
+		
+		long start = System.nanoTime();
+		
+		try {
+			
+			ObjectId rewrittenTreeId = treeRewriter.rewrite(reader, getObjectInserter(), commit.getTree());
+			
+			if (!rewrittenTreeId.equals(commit.getTree())) {
+				
+				prepared.recreate = true;
+				
+				preparedTreeIds.put(commit.getId(), rewrittenTreeId);
+			}
+		}
+		finally {
+			reader.close();
+			
+			metrics.timer(TIMER_TREE_REWRITE).stop(start);
+		}
+		
+		return prepared;
+	}
+	
+	/*
+	 * The tree processing runs ahead on the worker pool but the commits are still taken in the order provided by the iterator. 
+	 */
+	private void rewriteCommitsInParallel(Iterator<RevCommit> it, AsyncRecordWriter objectTranslationWriter, boolean localBranchSource) throws IOException {
+		
+		final List<ObjectInserter> workerInserters = Collections.synchronizedList(new ArrayList<ObjectInserter>());
+		
+		final ThreadLocal<GitTreeProcessor> workerTreeProcessor = new ThreadLocal<GitTreeProcessor>();
+		
+		ExecutorService workers = Executors.newFixedThreadPool(treeProcessingThreads, new ThreadFactory() {
+			
+			private final AtomicInteger counter = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, getFileNameSuffix() + "-tree-worker-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		log.info("processing commit trees using " + treeProcessingThreads + " threads");
+		
+		int maxCommitsAhead = treeProcessingThreads * 4;
+		
+		LinkedList<Future<PreparedCommit>> pending = new LinkedList<Future<PreparedCommit>>();
+		
+		int submitted = rewritePosition;
+		
+		try {
+			
+			try {
+				
+				while (it.hasNext() || !pending.isEmpty()) {
+					
+					// stop reading ahead at a checkpoint so that everything before it has been rewritten
+					while (pending.size() < maxCommitsAhead && it.hasNext() && !isCheckpointDue(submitted)) {
+						
+						final RevCommit commit = it.next();
+						
+						submitted++;
+						
+						pending.add(workers.submit(new Callable<PreparedCommit>() {
+							
+							@Override
+							public PreparedCommit call() throws Exception {
+								
+								return prepareCommit(commit, getWorkerTreeProcessor(workerTreeProcessor, workerInserters), true);
+							}
+						}));
+					}
+					
+					PreparedCommit prepared = pending.removeFirst().get();
+					
+					rewriteCommit(prepared, objectTranslationWriter, localBranchSource);
+					
+					commitProgress.update(1);
+					
+					rewritePosition++;
+					
+					if (isObjectFlushDue())
+						inserter.flush();
+					
+					if (pending.isEmpty() && isCheckpointDue()) {
+						
+						// the workers are idle until the next submission
+						synchronized (workerInserters) {
+							writeCheckpoint(prepared.commit, objectTranslationWriter, workerInserters);
+						}
+					}
+				}
+				
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while waiting on the tree processing workers", e);
+			} catch (ExecutionException e) {
+				
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				
+				throw new RuntimeException("tree processing failed", e.getCause());
+			}
+			
+		} catch (Throwable e) {
+			stopWorkers(workers, workerInserters, e);
+			throw e;
+		}
+		
+		stopWorkers(workers, workerInserters, null);
+	}
+	
+	/*
+	 * Wait for the workers to stop before their object inserters, which are not thread safe, are flushed and closed.
+	 * 
+	 * If the rewrite failed then a failure here is added to it as a suppressed exception instead of hiding it.
+	 */
+	private void stopWorkers(ExecutorService workers, List<ObjectInserter> workerInserters, Throwable rewriteFailure) throws IOException {
+		
+		workers.shutdownNow();
+		
+		try {
+			
+			while (!workers.awaitTermination(1, TimeUnit.MINUTES))
+				log.warn("waiting for the commit rewrite workers to stop");
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			
+			// a worker may still be using its inserter so leave them alone
+			IOException stopFailure = new IOException("interrupted while waiting for the commit rewrite workers to stop", e);
+			
+			if (rewriteFailure == null)
+				throw stopFailure;
+			
+			rewriteFailure.addSuppressed(stopFailure);
+			return;
+		}
+		
+		IOException flushFailure = null;
+		
+		synchronized (workerInserters) {
+			
+			for (ObjectInserter threadInserter : workerInserters) {
+				
+				try {
+					threadInserter.flush();
+				} catch (IOException e) {
+					
+					if (flushFailure == null)
+						flushFailure = e;
+					else
+						flushFailure.addSuppressed(e);
+				}
+				finally {
+					threadInserter.close();
+				}
+			}
+		}
+		
+		if (flushFailure != null) {
+			
+			if (rewriteFailure == null)
+				throw flushFailure;
+			
+			rewriteFailure.addSuppressed(flushFailure);
+		}
+	}
+	
+	/*
+	 * Lazily setup the tree processor and object inserter of the current worker thread.
+	 */
+	private GitTreeProcessor getWorkerTreeProcessor(ThreadLocal<GitTreeProcessor> workerTreeProcessor, List<ObjectInserter> workerInserters) {
+		
+		GitTreeProcessor treeProcessor = workerTreeProcessor.get();
+		
+		if (treeProcessor == null) {
+			treeProcessor = new GitTreeProcessor(getRepo());
+			workerTreeProcessor.set(treeProcessor);
+			
+			ObjectInserter threadInserter = newObjectInserter();
+			workerInserter.set(threadInserter);
+			workerInserters.add(threadInserter);
+		}
+		
+		return treeProcessor;
+	}
+	
+	/*
+	 * Rewrite each commit as soon as all of its parents within the walk have been rewritten or skipped.
+	 * 
+	 * Ready commits are run on a work stealing pool so independent branches are processed concurrently.
+	 */
+	private void rewriteCommitsByDependency(Iterator<RevCommit> it, final AsyncRecordWriter objectTranslationWriter, final boolean localBranchSource) throws IOException {
+		
+		final List<RevCommit> commits = new ArrayList<RevCommit>();
+		
+		Map<ObjectId, Integer> commitIndex = new HashMap<ObjectId, Integer>();
+		
+		while (it.hasNext()) {
+			
+			RevCommit commit = it.next();
+			
+			commitIndex.put(commit.getId(), commits.size());
+			
+			commits.add(commit);
+		}
+		
+		final AtomicIntegerArray pendingParents = new AtomicIntegerArray(commits.size());
+		
+		final List<List<Integer>> children = new ArrayList<List<Integer>>(commits.size());
+		
+		for (int i = 0; i < commits.size(); i++) {
+			children.add(new ArrayList<Integer>(1));
+		}
+		
+		List<Integer> ready = new ArrayList<Integer>();
+		
+		for (int i = 0; i < commits.size(); i++) {
+			
+			int pending = 0;
+			
+			// a parent that is outside of the walk is already complete.
+			for (ObjectId parentId : getParentCommitIds(commits.get(i))) {
+				
+				Integer parentIndex = commitIndex.get(parentId);
+				
+				if (parentIndex != null) {
+					children.get(parentIndex).add(i);
+					pending++;
+				}
+			}
+			
+			pendingParents.set(i, pending);
+			
+			if (pending == 0)
+				ready.add(i);
+		}
+		
+		commitIndex = null;
+		
+		log.info("scheduling " + commits.size() + " commits by dependency using " + treeProcessingThreads + " threads, " + ready.size() + " initially ready");
+		
+		final List<ObjectInserter> workerInserters = Collections.synchronizedList(new ArrayList<ObjectInserter>());
+		
+		final ThreadLocal<GitTreeProcessor> workerTreeProcessor = new ThreadLocal<GitTreeProcessor>();
+		
+		final ForkJoinPool workers = new ForkJoinPool(treeProcessingThreads);
 		
-		onBeforeRevWalk();
+		final AtomicInteger remaining = new AtomicInteger(commits.size());
 		
-		walkRepo.sort(RevSort.TOPO, true);
-		walkRepo.sort(RevSort.REVERSE, true);
-
-		Iterator<RevCommit> it = provideRevCommitIterator(walkRepo.iterator());
-
-		deferredReferenceDeletes = new LinkedList<>();
-		deferredReferenceCreates = new LinkedList<>();
-
-		objectTranslationWriter
-				.println("# new-object-id <space> original-object-id");
-
-		originalCommitIdToNewCommitIdMap = new HashMap<>();
-
-		GitTreeProcessor treeProcessor = new GitTreeProcessor(getRepo());
-
-		processedCommits = new HashSet<ObjectId>();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
 		
-		while (it.hasNext()) {
-
-			RevCommit commit = it.next();
+		final Object completion = new Object();
+		
+		try {
 			
-			boolean recreateCommitByTranslatedParent = determineIfRecreateByTranslatedParent (commit);
-
-			GitTreeData tree = treeProcessor
-					.extractExistingTreeDataFromCommit(commit.getId());
-
 			try {
-				boolean recreate = processCommitTree(commit, tree);
-
-				if (!recreateCommitByTranslatedParent && !recreate) {
-					processedCommits.add(commit.getId());
-					continue;
+				
+				for (final Integer commitIndexToRun : ready) {
+					
+					workers.execute(new Runnable() {
+						
+						@Override
+						public void run() {
+							rewriteScheduledCommit(commitIndexToRun);
+						}
+						
+						private void rewriteScheduledCommit(int index) {
+							
+							if (failure.get() != null)
+								return;
+							
+							try {
+								
+								PreparedCommit prepared = prepareCommit(commits.get(index), getWorkerTreeProcessor(workerTreeProcessor, workerInserters), false);
+								
+								rewriteCommit(prepared, objectTranslationWriter, localBranchSource);
+								
+								commitProgress.update(1);
+								
+							} catch (Throwable e) {
+								
+								failure.compareAndSet(null, e);
+								
+								synchronized (completion) {
+									completion.notifyAll();
+								}
+								return;
+							}
+							
+							for (final Integer child : children.get(index)) {
+								
+								if (pendingParents.decrementAndGet(child) == 0) {
+									
+									// forked from a pool thread so it lands on this worker's own queue
+									workers.execute(new Runnable() {
+										
+										@Override
+										public void run() {
+											rewriteScheduledCommit(child);
+										}
+									});
+								}
+							}
+							
+							if (remaining.decrementAndGet() == 0) {
+								synchronized (completion) {
+									completion.notifyAll();
+								}
+							}
+						}
+					});
 				}
-			} catch (SkipOverCommitException e) {
-				log.info("skipped over commit = " + commit.getId());
-				onSkipOverCommit(commit, tree);
-				continue; // skip to the next commit
+				
+				synchronized (completion) {
+					
+					while (remaining.get() > 0 && failure.get() == null)
+						completion.wait();
+				}
+				
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while waiting on the commit rewrite workers", e);
 			}
 			
-			/*
-			 * Process in reverse order from old to new.
-			 */
-			CommitBuilder builder;
-			try {
-				builder = createCommitBuilder(commit, tree);
-			} catch (SkipOverCommitException e) {
-				log.info("skipped over commit = " + commit.getId());
-				onSkipOverCommit(commit, tree);
-				continue; // skip to the next commit
+			Throwable cause = failure.get();
+			
+			if (cause != null) {
+				
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				
+				throw new RuntimeException("commit rewrite failed", cause);
 			}
-
-			ObjectId newCommitId = inserter.insert(builder);
 			
-			onNewCommit (commit, newCommitId);
-
-			originalCommitIdToNewCommitIdMap.put(commit.getId(), newCommitId);
-
-			objectTranslationWriter.println(newCommitId.name() + " "
-					+ commit.getId().getName());
-
-
-			RevWalk commitWalk = new RevWalk(getRepo());
-
-			RevCommit newCommit = commitWalk.parseCommit(newCommitId);
+		} catch (Throwable e) {
+			stopWorkers(workers, workerInserters, e);
+			throw e;
+		}
+		
+		stopWorkers(workers, workerInserters, null);
+	}
+	
+	/*
+	 * The ordered part of the rewrite: parent translation, commit insertion and ref moves.
+	 */
+	private void rewriteCommit(PreparedCommit prepared, AsyncRecordWriter objectTranslationWriter, boolean localBranchSource) throws IOException {
+		
+		RevCommit commit = prepared.commit;
+		
+		GitTreeData tree = prepared.tree;
+		
+		boolean recreateCommitByTranslatedParent = determineIfRecreateByTranslatedParent (commit);
+		
+		if (prepared.skipped) {
+			log.info("skipped over commit = " + commit.getId());
+			metrics.increment(COUNTER_SKIPPED);
+			onSkipOverCommit(commit, tree);
+			return; // skip to the next commit
+		}
+		
+		if (!recreateCommitByTranslatedParent && !prepared.recreate) {
+			metrics.increment(COUNTER_UNCHANGED);
+			processedCommits.add(commit.getId());
+			return;
+		}
+		
+		/*
+		 * Process in reverse order from old to new.
+		 */
+		CommitBuilder builder;
+		try {
+			builder = createCommitBuilder(commit, tree);
+		} catch (SkipOverCommitException e) {
+			preparedTreeIds.remove(commit.getId());
+			log.info("skipped over commit = " + commit.getId());
+			metrics.increment(COUNTER_SKIPPED);
+			onSkipOverCommit(commit, tree);
+			return; // skip to the next commit
+		}
+		
+		long start = System.nanoTime();
+		
+		ObjectId newCommitId = getObjectInserter().insert(builder);
+		
+		metrics.timer(TIMER_COMMIT_INSERT).stop(start);
+		
+		metrics.increment(COUNTER_REWRITTEN);
+		
+		onNewCommit (commit, newCommitId);
+		
+		originalCommitIdToNewCommitIdMap.put(commit.getId(), newCommitId);
+		
+		objectTranslationWriter.println(newCommitId.name() + " "
+				+ commit.getId().getName());
+		
+		
+		processedCommits.add(newCommitId);
+		
+		moveRefs(commit.getId(), newCommitId, localBranchSource);
+	}
+	
+	/*
+	 * Defer the moves of the tags and branches that point at the original commit onto the new commit.
+	 */
+	private void moveRefs(ObjectId originalCommitId, ObjectId newCommitId, boolean localBranchSource) throws IOException {
+		
+		// check if any tags need to be moved
+		if (commitToTagMap.containsKey(originalCommitId)) {
 			
-			processedCommits.add(newCommitId);
-
-			// check if any tags need to be moved
-			if (commitToTagMap.containsKey(commit.getId())) {
-
-				Set<Ref> tags = commitToTagMap.get(commit.getId());
-
-				Set<TagBuilder> newTagSet = new HashSet<>();
-
+			Set<Ref> tags = commitToTagMap.get(originalCommitId);
+			
+			Set<TagBuilder> newTagSet = new HashSet<>();
+			
+			RevWalk tagWalk = new RevWalk(getRepo());
+			
+			try {
+				
 				for (Ref tagRef : tags) {
-
-					RevTag tag = commitWalk.parseTag(tagRef.getObjectId());
-
+	
+					RevTag tag = tagWalk.parseTag(tagRef.getObjectId());
+	
 					TagBuilder tb = new TagBuilder();
-
+	
 					tb.setMessage(tag.getFullMessage());
-					tb.setObjectId(newCommit);
+					// the new commit may not be readable yet when a worker inserter has not been flushed.
+					tb.setObjectId(newCommitId, Constants.OBJ_COMMIT);
 					tb.setTag(tag.getTagName());
 					tb.setTagger(tag.getTaggerIdent());
-
+	
 					newTagSet.add(tb);
-
+	
 					deferDelete(tagRef.getName(), tagRef.getObjectId());
 					
 				}
-
-				for (TagBuilder tagBuilder : newTagSet) {
-
-					ObjectId tagId = inserter.insert(tagBuilder);
-
-					String tagName = Constants.R_TAGS + tagBuilder.getTag();
-
-					deferCreate(tagName, tagId);
-					
-					onTagRefCreate(tagName, tagId);
-					
-				}
-
 			}
-
-			// check if any branches need to be moved
-			if (commitToBranchMap.containsKey(commit.getId())) {
-
-				Set<Ref> refs = commitToBranchMap.get(commit.getId());
-
-				for (Ref branchRef : refs) {
-
-					if (localBranchSource) {
-
-						deferDelete (branchRef.getName(), branchRef.getObjectId());
-
-					}
-
-					String adjustedBranchName = Constants.R_HEADS
-							+ branchRef.getName().substring(
-									getBranchRefSpec().length());
-
-					deferCreate (adjustedBranchName, newCommitId);
+			finally {
+				tagWalk.close();
+			}
+			
+			for (TagBuilder tagBuilder : newTagSet) {
+				
+				ObjectId tagId = getObjectInserter().insert(tagBuilder);
+				
+				String tagName = Constants.R_TAGS + tagBuilder.getTag();
+				
+				deferCreate(tagName, tagId);
+				
+				onTagRefCreate(tagName, tagId);
+				
+			}
+			
+		}
+		
+		// check if any branches need to be moved
+		if (commitToBranchMap.containsKey(originalCommitId)) {
+			
+			Set<Ref> refs = commitToBranchMap.get(originalCommitId);
+			
+			for (Ref branchRef : refs) {
+				
+				if (localBranchSource) {
 					
-					onBranchRefCreate(adjustedBranchName, newCommitId);
+					deferDelete (branchRef.getName(), branchRef.getObjectId());
 					
 				}
-
+				
+				String adjustedBranchName = Constants.R_HEADS
+						+ branchRef.getName().substring(
+								getBranchRefSpec().length());
+				
+				deferCreate (adjustedBranchName, newCommitId);
+				
+				onBranchRefCreate(adjustedBranchName, newCommitId);
+				
 			}
-
-			commitWalk.close();
-		}
-
-		inserter.flush();
-
-		getRepo().getRefDatabase().refresh();
-
-		log.info("Applying updates: " + deferredReferenceDeletes.size()
-				+ " deletes, " + deferredReferenceCreates.size() + " creates.");
-
-		if (getExternalGitCommandPath() != null) {
-			ExternalGitUtils.batchRefUpdate(getExternalGitCommandPath(), getRepo(),
-					deferredReferenceDeletes, System.out);
-		} else {
-			GitRefUtils.batchRefUpdate(getRepo(), deferredReferenceDeletes,
-					NullProgressMonitor.INSTANCE);
-		}
-
-		getRepo().getRefDatabase().refresh();
-
-		if (getExternalGitCommandPath() != null) {
-			ExternalGitUtils.batchRefUpdate(getExternalGitCommandPath(), getRepo(),
-					deferredReferenceCreates, System.out);
-		} else {
-
-			GitRefUtils.batchRefUpdate(getRepo(), deferredReferenceCreates,
-					NullProgressMonitor.INSTANCE);
-
+			
 		}
-		
-		log.info("Completed.");
-
-		walkRepo.close();
-
-		inserter.close();
-		
-		close();
-
-		objectTranslationWriter.close();
-
 	}
-
+	
 	protected void onSkipOverCommit(RevCommit commit, GitTreeData tree) {
 		
 	}
-
+	
 	protected CommitBuilder createCommitBuilder(RevCommit commit, GitTreeData tree) throws SkipOverCommitException, IOException {
 
         CommitBuilder builder = new CommitBuilder();
@@ -457,15 +1951,7 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 
         builder.setCommitter(commit.getCommitterIdent());
 
-        if (tree.isTreeDirty()) {
-
-            ObjectId newTreeId = tree.buildTree(inserter);
-
-            builder.setTreeId(newTreeId);
-        }
-        else {
-            builder.setTreeId(commit.getTree().getId());
-        }
+        builder.setTreeId(buildTree(commit, tree));
 
         builder.setEncoding("UTF-8");
 
@@ -477,6 +1963,54 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
     }
 
 
+    /**
+     * Build the rewritten tree for the commit.
+     * 
+     * Uses the tree id built ahead of time by a tree processing worker if there is one.
+     * 
+     * @param commit
+     * @param tree
+     * @return the id of the tree to use in the rewritten commit.
+     * @throws IOException
+     */
+    protected final ObjectId buildTree(RevCommit commit, GitTreeData tree) throws IOException {
+    	
+    	ObjectId preparedTreeId = preparedTreeIds.remove(commit.getId());
+    	
+    	if (preparedTreeId != null)
+    		return preparedTreeId;
+    	
+    	if (tree != null && tree.isTreeDirty()) {
+    		
+    		long start = System.nanoTime();
+    		
+    		ObjectId treeId = tree.buildTree(getObjectInserter());
+    		
+    		metrics.timer(TIMER_TREE_BUILD).stop(start);
+    		
+    		return treeId;
+    	}
+    	else
+    		return commit.getTree().getId();
+    }
+    
+    /**
+     * The inserter to use for objects created while processing a commit.
+     * 
+     * Tree processing workers each have their own inserter since ObjectInserter is not thread safe.
+     * 
+     * @return the object inserter for the current thread.
+     */
+    protected final ObjectInserter getObjectInserter() {
+    	
+    	ObjectInserter threadInserter = workerInserter.get();
+    	
+    	if (threadInserter != null)
+    		return threadInserter;
+    	else
+    		return inserter;
+    }
+
     /**
 	 * Provides an extension point to alert that the commit should be recreated based on the fact that a parent has changed.
 	 * 
@@ -486,21 +2020,21 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 	protected boolean determineIfRecreateByTranslatedParent(RevCommit commit) {
 		
 		boolean recreateCommitByTranslatedParent = false;
-
+		
 		for (RevCommit parentCommit : commit.getParents()) {
-
+			
 			if (originalCommitIdToNewCommitIdMap.containsKey(parentCommit.getId())) {
 				recreateCommitByTranslatedParent = true;
 				break;
 			}
-
+			
 		}
 		
 		return recreateCommitByTranslatedParent;
 	}
-
 	
-
+	
+	
 	/**
 	 * An extension point where the ordering of the commits can be changed.
 	 * 
@@ -513,41 +2047,41 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 			Iterator<RevCommit> iterator) {
 		return iterator;
 	}
-
+	
 	protected void onBranchRefCreate(String adjustedBranchName,
 			ObjectId newCommitId) {
 		// TODO Auto-generated method stub
 		
 	}
-
+	
 	protected void onTagRefCreate(String tagName, ObjectId tagId) {
 		
 	}
-
+	
 	protected void deferCreate(String adjustedBranchName, ObjectId newCommitId) {
 		deferredReferenceCreates.add(new ReceiveCommand(null,
 				newCommitId, adjustedBranchName, Type.CREATE));
-
+		
 		
 	}
-
+	
 	protected void deferDelete(String name, ObjectId objectId) {
 		deferredReferenceDeletes.add(new ReceiveCommand(
 				objectId, null, name, Type.DELETE));
 	}
-
+	
 	protected void onNewCommit(RevCommit commit, ObjectId newCommitId) {
 		
 	}
-
+	
 	protected final Set<ObjectId> getParentCommitIds(RevCommit commit) {
 		Set<ObjectId> parentCommitIds = new LinkedHashSet<ObjectId>();
-
+		
 		for (int i = 0; i < commit.getParentCount(); i++) {
 			ObjectId parentCommitId = commit.getParent(i).getId();
 			parentCommitIds.add(parentCommitId);
 		}
-
+		
 		return parentCommitIds;
 	}
 	
@@ -568,10 +2102,10 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 		Set<ObjectId>newParents = new HashSet<ObjectId>();
 		
 		for (ObjectId parentCommitId : originalParentCommitIds) {
-
+			
 			ObjectId adjustedParentId = originalCommitIdToNewCommitIdMap
 					.get(parentCommitId);
-
+			
 			if (adjustedParentId != null)
 				newParents.add(adjustedParentId);
 			else
@@ -580,28 +2114,96 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 		
 		return newParents;
 	}
-
+	
+	/**
+	 * Extension point to save any state a subclass needs to continue from a checkpoint.
+	 * 
+	 * @param checkpoint
+	 * @throws IOException
+	 */
+	protected void onCheckpoint(CleanerCheckpoint checkpoint) throws IOException {
+		
+	}
+	
+	/**
+	 * Extension point to restore the state saved by onCheckpoint.  Called after onBeforeRevWalk.
+	 * 
+	 * @param checkpoint
+	 * @throws IOException
+	 */
+	protected void onResume(CleanerCheckpoint checkpoint) throws IOException {
+		
+	}
+	
+	/**
+	 * Cleaners that keep state outside of what onCheckpoint and onResume can restore should return false.
+	 * 
+	 * @return true if checkpoint and resume are supported.
+	 */
+	protected boolean isCheckpointSupported() {
+		return true;
+	}
+	
 	protected void onBeforeRevWalk() {
 		
 	}
-
+	
 	protected void onTag(ObjectId id, ObjectId commitId) throws MissingObjectException, IncorrectObjectTypeException, IOException {
 		
 	}
-
+	
 	protected void onBranchHead(Ref branchRef, ObjectId branchObjectId) throws MissingObjectException, IncorrectObjectTypeException, IOException {
 		
 	}
-
+	
 	protected boolean processCommitTree(RevCommit commit, GitTreeData tree) throws SkipOverCommitException, MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, IOException {
 		// default is to not change the commit.
 		
 		// the commit might still be rewritten if its parent has changed.
 		return false;
 	}
-
+	
 	protected abstract String getFileNameSuffix();
-
+	
+	/**
+	 * Extension point for cleaners that can tell ahead of time which commits need their tree changed.
+	 * 
+	 * Called once with all of the commits to rewrite before the first one is rewritten.  The tree of a commit 
+	 * that is not added to affectedCommits is neither extracted nor processed, the commit keeps its original 
+	 * tree and is only recreated if one of its parents was.  The GitTreeData given to the other extension 
+	 * points is then null.
+	 * 
+	 * @param reader
+	 * @param commits the commits to rewrite in the order they will be rewritten.
+	 * @param affectedCommits receives the commits whose tree needs to be looked at.
+	 * @return false (the default) to look at the tree of every commit.
+	 * @throws IOException
+	 */
+	protected boolean findAffectedCommits(ObjectReader reader, List<RevCommit> commits, ObjectIdSet affectedCommits) throws IOException {
+		return false;
+	}
+	
+	/**
+	 * @param commit
+	 * @return true if processCommitTree or the tree rewriter should look at the tree of the commit.
+	 */
+	protected final boolean isCommitTreeAffected(RevCommit commit) {
+		return affectedCommits == null || affectedCommits.contains(commit);
+	}
+	
+	/**
+	 * Extension point for cleaners that only change blobs: when a MemoizingTreeRewriter is returned the commit 
+	 * trees are rewritten by it instead of being extracted into GitTreeData, and processCommitTree is not called.
+	 * 
+	 * The GitTreeData given to the other extension points is then null.
+	 * 
+	 * @param cacheSize the number of subtrees the rewriter should remember.
+	 * @return the tree rewriter or null (the default) to use processCommitTree.
+	 */
+	protected MemoizingTreeRewriter createTreeRewriter(int cacheSize) {
+		return null;
+	}
+	
 	/**
 	 * By default include tags in the rev walk
 	 * 
@@ -614,5 +2216,44 @@ public abstract class AbstractRepositoryCleaner implements RepositoryCleaner {
 	
 	protected void onBeforeExecute() throws FileNotFoundException {
 	}
+	
+	/**
+	 * Extension point for cleaners whose processCommitTree only depends on the commit and tree given.
+	 * 
+	 * When true the trees can be processed on multiple threads ahead of the commit insertion.
+	 * 
+	 * @return true by default for cleaners with a tree rewriter since it only looks at the tree, false otherwise.
+	 */
+	protected boolean isTreeProcessingThreadSafe() {
+		return treeRewriter != null;
+	}
+	
+	/**
+	 * Extension point for cleaners that can rewrite unrelated commits concurrently.
+	 * 
+	 * Requires that processCommitTree is thread safe and that the parent processing and commit hooks 
+	 * only depend on the state of the commit's own ancestors.
+	 * 
+	 * @return true by default for cleaners with a tree rewriter, false otherwise.
+	 */
+	protected boolean isCommitRewriteThreadSafe() {
+		return treeRewriter != null;
+	}
+	
+	private static final class PreparedCommit {
+		
+		private final RevCommit commit;
+		
+		private final GitTreeData tree;
+		
+		private boolean recreate = false;
+		
+		private boolean skipped = false;
+		
+		private PreparedCommit(RevCommit commit, GitTreeData tree) {
+			this.commit = commit;
+			this.tree = tree;
+		}
+	}
 }
 	
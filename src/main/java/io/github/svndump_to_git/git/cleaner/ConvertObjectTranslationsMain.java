@@ -0,0 +1,79 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner;
+
+import io.github.svndump_to_git.git.cleaner.model.BinaryObjectTranslationWriter;
+import io.github.svndump_to_git.git.cleaner.model.ObjectTranslationDataSource;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts the object-translations text files written by earlier runs into the binary format.
+ * 
+ * @author ocleirig
+ *
+ */
+public class ConvertObjectTranslationsMain {
+
+	private static final Logger log = LoggerFactory.getLogger(ConvertObjectTranslationsMain.class);
+	
+	/**
+	 * 
+	 */
+	public ConvertObjectTranslationsMain() {
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		
+		if (args.length != 1 && args.length != 2) {
+			log.error("USAGE: <object translations text file> [<binary output file>]");
+			log.error("\t<object translations text file> : object-translations file with new object id <space> original object id lines");
+			log.error("\t<binary output file> : defaults to the text file name with a .bin extension");
+			System.exit(-1);
+		}
+		
+		String textFile = args[0];
+		
+		String binaryFile;
+		
+		if (args.length == 2)
+			binaryFile = args[1];
+		else if (textFile.endsWith(".txt"))
+			binaryFile = textFile.substring(0, textFile.length() - ".txt".length()) + ".bin";
+		else
+			binaryFile = textFile + ".bin";
+		
+		try {
+			
+			ObjectTranslationDataSource dataSource = new ObjectTranslationDataSource(textFile);
+			
+			dataSource.readTextTranslations();
+			
+			BinaryObjectTranslationWriter.write(new File (binaryFile), dataSource.getObjectTranslationMap());
+			
+			log.info("wrote " + dataSource.getObjectTranslationMap().size() + " translations into " + binaryFile);
+			
+		} catch (Exception e) {
+			log.error ("unexpected exception", e);
+		}
+	}
+
+}
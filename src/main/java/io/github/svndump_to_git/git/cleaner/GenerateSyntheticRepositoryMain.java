@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner;
+
+import io.github.svndump_to_git.git.cleaner.model.SyntheticRepositoryGenerator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapperImpl;
+
+/**
+ * Generates a synthetic subversion style repository for load testing the cleaners.
+ * 
+ * @author ocleirig
+ *
+ */
+public class GenerateSyntheticRepositoryMain {
+
+	private static final Logger log = LoggerFactory.getLogger(GenerateSyntheticRepositoryMain.class);
+	
+	/**
+	 * 
+	 */
+	public GenerateSyntheticRepositoryMain() {
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		
+		SyntheticRepositoryGenerator generator = new SyntheticRepositoryGenerator();
+		
+		/*
+		 * Options are applied as properties of the generator.
+		 */
+		BeanWrapperImpl generatorProperties = new BeanWrapperImpl(generator);
+		
+		List<String> arguments = new ArrayList<String>();
+		
+		try {
+			
+			for (String arg : args) {
+				
+				if (arg.startsWith("--")) {
+					
+					String option = arg.substring(2);
+					
+					int equalsIndex = option.indexOf('=');
+					
+					if (equalsIndex == -1)
+						throw new IllegalArgumentException("missing value for option " + arg);
+					
+					generatorProperties.setPropertyValue(option.substring(0, equalsIndex), option.substring(equalsIndex+1));
+				}
+				else
+					arguments.add(arg);
+			}
+			
+		} catch (Exception e) {
+			log.error("invalid option: " + e.getMessage());
+			arguments.clear();
+		}
+		
+		if (arguments.size() != 1) {
+			log.error("USAGE: [--<option>=<value> ...] <target git repository meta directory>");
+			log.error("\t<target git repository meta directory> : the bare repository to create, anything already there is deleted");
+			log.error("\t--seed=<n> : the random seed, the same options and seed always give the same repository");
+			log.error("\t--commitCount=<n> : the number of subversion revisions, default 10000");
+			log.error("\t--branchCount=<n> : the number of branches created from trunk, default 8");
+			log.error("\t--tagCount=<n> : the number of tags, default 4");
+			log.error("\t--moduleCount=<n> : the number of module directories on each branch, default 4");
+			log.error("\t--treeWidth=<n> : the number of files and sub directories in each module directory, default 8");
+			log.error("\t--treeDepth=<n> : the number of directory levels below each module directory, default 2");
+			log.error("\t--changesPerCommit=<n> : the number of files changed by each revision, default 3");
+			log.error("\t--emptyCommitInterval=<n> : every n'th revision keeps the tree of its parent, default 25, 0 for none");
+			log.error("\t--mpxInterval=<n> : every n'th revision adds or changes a .mpx file, default 10, 0 for none");
+			log.error("\t--fusionInterval=<n> : every n'th revision updates the fusion-maven-plugin.dat on aggregate_trunk, default 20, 0 for none");
+			log.error("\t--packSizeLimit=<megabytes> : start a new pack file once the current one reaches this size, default 1024");
+			System.exit(-1);
+		}
+		
+		try {
+			
+			generator.generate(new File (arguments.get(0)).getAbsoluteFile());
+			
+		} catch (Exception e) {
+			log.error ("unexpected exception", e);
+		}
+	}
+
+}
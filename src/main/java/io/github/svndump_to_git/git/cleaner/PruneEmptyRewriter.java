@@ -15,14 +15,15 @@
 package io.github.svndump_to_git.git.cleaner;
 
 import java.io.File;
-import java.util.LinkedHashMap;
+import java.io.IOException;
 import java.util.LinkedHashSet;
-import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
+import io.github.svndump_to_git.git.cleaner.model.CleanerCheckpoint;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdMap;
 import io.github.svndump_to_git.git.cleaner.model.SkipOverCommitException;
 import io.github.svndump_to_git.git.model.GitRepositoryUtils;
 import io.github.svndump_to_git.git.model.tree.GitTreeData;
@@ -36,7 +37,7 @@ public class PruneEmptyRewriter extends AbstractRepositoryCleaner {
 	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
 			.getLogger(PruneEmptyRewriter.class);
 
-	private Map<ObjectId, ObjectId>prunedCommitIdToParentCommitMap = new LinkedHashMap<ObjectId, ObjectId>();
+	private ObjectIdMap prunedCommitIdToParentCommitMap;
 	
     /**
 	 *
@@ -71,6 +72,31 @@ public class PruneEmptyRewriter extends AbstractRepositoryCleaner {
         
 	}
 
+    /* (non-Javadoc)
+     * @see AbstractRepositoryCleaner#onBeforeRevWalk()
+     */
+    @Override
+    protected void onBeforeRevWalk() {
+    	
+    	prunedCommitIdToParentCommitMap = createObjectIdMap("pruned-commits");
+    }
+
+    /* (non-Javadoc)
+     * @see AbstractRepositoryCleaner#onCheckpoint(CleanerCheckpoint)
+     */
+    @Override
+    protected void onCheckpoint(CleanerCheckpoint checkpoint) throws IOException {
+    	checkpoint.saveObjectIdMap("pruned-commits", prunedCommitIdToParentCommitMap);
+    }
+
+    /* (non-Javadoc)
+     * @see AbstractRepositoryCleaner#onResume(CleanerCheckpoint)
+     */
+    @Override
+    protected void onResume(CleanerCheckpoint checkpoint) throws IOException {
+    	checkpoint.loadObjectIdMap("pruned-commits", prunedCommitIdToParentCommitMap);
+    }
+
     @Override
     protected boolean processCommitTree(org.eclipse.jgit.revwalk.RevCommit commit, io.github.svndump_to_git.git.model.tree.GitTreeData tree) throws org.eclipse.jgit.errors.MissingObjectException, org.eclipse.jgit.errors.IncorrectObjectTypeException, org.eclipse.jgit.errors.CorruptObjectException, java.io.IOException, SkipOverCommitException {
 
@@ -147,5 +173,17 @@ public class PruneEmptyRewriter extends AbstractRepositoryCleaner {
 		return "prune-empty";
 	}
 
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#close()
+	 */
+	@Override
+	public void close() {
+		
+		if (prunedCommitIdToParentCommitMap != null)
+			prunedCommitIdToParentCommitMap.close();
+		
+		super.close();
+	}
+
 	
 }
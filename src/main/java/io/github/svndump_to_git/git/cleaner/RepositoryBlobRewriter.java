@@ -21,17 +21,16 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
-import org.eclipse.jgit.errors.CorruptObjectException;
-import org.eclipse.jgit.errors.IncorrectObjectTypeException;
-import org.eclipse.jgit.errors.MissingObjectException;
-import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.revwalk.RevCommit;
+import io.github.svndump_to_git.git.cleaner.model.AsyncRecordWriter;
+import io.github.svndump_to_git.git.cleaner.model.BlobContainmentIndex;
+import io.github.svndump_to_git.git.cleaner.model.MemoizingTreeRewriter;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdSet;
+import io.github.svndump_to_git.git.cleaner.model.ReplacementBlobCache;
 import io.github.svndump_to_git.git.model.GitRepositoryUtils;
-import io.github.svndump_to_git.git.model.ref.utils.GitRefUtils;
-import io.github.svndump_to_git.git.model.tree.GitTreeData;
-import io.github.svndump_to_git.git.model.tree.utils.GitTreeProcessor;
-import io.github.svndump_to_git.git.utils.ExternalGitUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +50,8 @@ public class RepositoryBlobRewriter extends AbstractRepositoryCleaner {
 
 
 	private Map<ObjectId, String> blobIdToReplacementContentMap = new HashMap<>();
+	
+	private final ReplacementBlobCache replacementBlobs = new ReplacementBlobCache();
 
 
 	/**
@@ -72,7 +73,7 @@ public class RepositoryBlobRewriter extends AbstractRepositoryCleaner {
 		if (args.size() != 2 && args.size() != 4) {
 			log.error("USAGE: <source git repository meta directory> <blob replacement input file> [<branchRefSpec> <git command path>]");
 			log.error("\t<git repo meta directory> : the path to the meta directory of the source git repository");
-			log.error("\t<blob replacement input file> : format: blob id <double colon ::> replacement message (single line)");
+			log.error("\t<blob replacement input file> : format: blob id <double colon ::> replacement message (single line) or @<file> to use the content of the file");
 			log.error("\t<branchRefSpec> : git refspec from which to source the graph to be rewritten");
 			log.error("\t<git command path> : the path to a native git ");
 			throw new IllegalArgumentException("invalid arguments");
@@ -84,12 +85,17 @@ public class RepositoryBlobRewriter extends AbstractRepositoryCleaner {
 		List<String> lines = FileUtils.readLines(new File(args.get(1)));
 
 		for (String line : lines) {
+			
+			if (line.trim().length() == 0 || line.startsWith("#"))
+				continue; // skip blank lines and comments.
 
-			String[] parts = line.split("::");
+			String[] parts = line.split("::", 2);
 
 			ObjectId blobId = ObjectId.fromString(parts[0].trim());
 
 			String replacementContent = parts[1].trim();
+			
+			ReplacementBlobCache.validate(replacementContent);
 
 			this.blobIdToReplacementContentMap.put(blobId, replacementContent);
 		}
@@ -103,39 +109,82 @@ public class RepositoryBlobRewriter extends AbstractRepositoryCleaner {
 
 	
 	/* (non-Javadoc)
-	 * @see AbstractRepositoryCleaner#processCommitTree(org.eclipse.jgit.lib.ObjectId, io.github.svndump_to_git.git.model.tree.GitTreeData)
+	 * @see AbstractRepositoryCleaner#createTreeRewriter(int)
 	 */
 	@Override
-	protected boolean processCommitTree(RevCommit commit, GitTreeData tree) throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException, IOException {
-		
-		boolean recreateCommit = false;
+	protected MemoizingTreeRewriter createTreeRewriter(int cacheSize) {
 		
-		for (Map.Entry<ObjectId, String> entry : this.blobIdToReplacementContentMap
-				.entrySet()) {
-
-			ObjectId blobId = entry.getKey();
-
-			List<String> currentPaths = GitRepositoryUtils
-					.findPathsForBlobInCommit(getRepo(), commit.getId(), blobId);
-
-			if (currentPaths.size() > 0) {
+		/*
+		 * One pass over each new subtree checks every blob against all of the target ids. 
+		 * 
+		 * Subtrees seen before, whether or not they held a target, come from the cache so the cost 
+		 * does not depend on the number of blobs being replaced.
+		 */
+		return new MemoizingTreeRewriter(new MemoizingTreeRewriter.EntryRewriter() {
+			
+			@Override
+			public ObjectId rewriteBlob(String path, FileMode mode, ObjectId blobId) throws IOException {
 				
-				recreateCommit = true;
+				String replacementContent = blobIdToReplacementContentMap.get(blobId);
 				
-				ObjectId newBlobId = inserter.insert(Constants.OBJ_BLOB,
-						entry.getValue().getBytes());
-
-				for (String path : currentPaths) {
+				if (replacementContent == null)
+					return blobId;
+				
+				return replacementBlobs.getBlobId(replacementContent, getObjectInserter());
+			}
+		}, false, cacheSize);
+	}
 
-					tree.addBlob(path, newBlobId);
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#findAffectedCommits(org.eclipse.jgit.lib.ObjectReader, java.util.List, io.github.svndump_to_git.git.cleaner.model.ObjectIdSet)
+	 */
+	@Override
+	protected boolean findAffectedCommits(ObjectReader reader, List<RevCommit> commits, ObjectIdSet affectedCommits) throws IOException {
+		
+		// also write the reverse index of the target blobs to the commits and paths that introduce them.
+		BlobContainmentIndex index = new BlobContainmentIndex(blobIdToReplacementContentMap.keySet(), createObjectIdSet("containing-trees"), createObjectIdSet("clean-trees"));
+		
+		AsyncRecordWriter indexWriter = new AsyncRecordWriter(new File ("blob-rewrite-index-" + dateString + ".txt"), false);
+		
+		indexWriter.println("# blob-id <space> introducing-commit-id <space> path");
+		
+		try {
+			
+			for (RevCommit commit : commits) {
+				
+				if (!index.containsTarget(reader, commit.getTree()))
+					continue;
+				
+				affectedCommits.add(commit);
+				
+				Map<String, ObjectId> targetPaths = index.findTargetPaths(reader, commit.getTree());
+				
+				// a target is introduced by the commit unless a parent already had it at the same path
+				for (RevCommit parent : commit.getParents()) {
+					
+					if (!affectedCommits.contains(parent))
+						continue;
+					
+					for (Map.Entry<String, ObjectId> parentEntry : index.findTargetPaths(reader, parent.getTree()).entrySet()) {
+						
+						if (parentEntry.getValue().equals(targetPaths.get(parentEntry.getKey())))
+							targetPaths.remove(parentEntry.getKey());
+					}
+				}
+				
+				for (Map.Entry<String, ObjectId> entry : targetPaths.entrySet()) {
+					indexWriter.println(entry.getValue().name() + " " + commit.getId().name() + " " + entry.getKey());
 				}
-
-				inserter.close();
 			}
-
 		}
+		finally {
+			index.close();
+			indexWriter.close();
+		}
+		
+		log.info(index.getContainingTreeCount() + " containing and " + index.getCleanTreeCount() + " clean trees indexed");
 		
-		return recreateCommit;
+		return true;
 	}
 
 	/* (non-Javadoc)
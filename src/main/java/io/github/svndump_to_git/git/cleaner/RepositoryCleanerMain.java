@@ -14,10 +14,14 @@
  */
 package io.github.svndump_to_git.git.cleaner;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 
@@ -42,8 +46,46 @@ public class RepositoryCleanerMain {
 	 */
 	public static void main(String[] args) {
 		
-		if (args.length < 1) {
-			log.error("USAGE: <module name> [module specific arguments]");
+		Map<String, String> options = new LinkedHashMap<String, String>();
+		
+		List<String> arguments = new ArrayList<String>();
+		
+		for (String arg : args) {
+			
+			if (arg.startsWith("--")) {
+				
+				String option = arg.substring(2);
+				
+				int equalsIndex = option.indexOf('=');
+				
+				if (equalsIndex == -1)
+					options.put(option, "true");
+				else
+					options.put(option.substring(0, equalsIndex), option.substring(equalsIndex+1));
+			}
+			else
+				arguments.add(arg);
+		}
+		
+		if (arguments.size() < 1) {
+			log.error("USAGE: [--<option>[=<value>] ...] <module name> [module specific arguments]");
+			log.error("\t--treeProcessingThreads=<n> : process the commit trees on n threads if the module supports it");
+			log.error("\t--treeCacheSize=<n> : the number of rewritten subtrees remembered by the blob and mpx rewriters");
+			log.error("\t--translationTableStorage=<HEAP|DIRECT|MAPPED> : where the commit translation tables are kept");
+			log.error("\t--composedTranslationFile=<file> : (RewriteFusionPluginData) save the composed object translations into a single binary file");
+			log.error("\t--checkpointInterval=<n> : save a checkpoint every n commits");
+			log.error("\t--checkpointDirectory=<dir> : where the checkpoints are saved, defaults to <module file suffix>-checkpoint");
+			log.error("\t--resume : continue from the latest checkpoint");
+			log.error("\t--previousTranslationFile=<file> : only rewrite the commits added since the run that wrote this object translation file");
+			log.error("\t--objectFlushInterval=<n> : flush the object inserter every n commits, 0 for only at checkpoints and the end");
+			log.error("\t--objectOutput=<LOOSE|PACK> : write the rewritten objects as loose objects or stream them into pack files");
+			log.error("\t--packSizeLimit=<megabytes> : with PACK output start a new pack once the current one reaches this size");
+			log.error("\t--repack : after the ref updates repack the reachable objects with a bitmap index and prune the rest");
+			log.error("\t--pruneExpireMinutes=<n> : with --repack only prune unreachable objects older than n minutes, default 0");
+			log.error("\t--refUpdateMode=<BATCH|UPDATE_REF_STDIN|PACKED_REFS> : apply the ref changes as two batches, one git update-ref --stdin transaction or a new packed-refs file");
+			log.error("\t--metricsReportInterval=<seconds> : also write the cleaner-metrics JSON report and log a summary during the run");
+			log.error("\t--progressInterval=<seconds> : how often the progress, rate and ETA of the long phases is logged, default 30");
+			log.error("\t--dagScheduling : with multiple threads rewrite each commit once its parents are done instead of in topological order");
 			System.exit(-1);
 		}
 		try {
@@ -52,15 +94,25 @@ public class RepositoryCleanerMain {
 
 			applicationContext.registerShutdownHook();
 			
-			String beanName = args[0];
+			String beanName = arguments.get(0);
 			
 			RepositoryCleaner repoCleaner = (RepositoryCleaner) applicationContext.getBean(beanName);
+			
+			/*
+			 * Options are applied as properties of the module bean.
+			 */
+			BeanWrapperImpl moduleProperties = new BeanWrapperImpl(repoCleaner);
+			
+			for (Map.Entry<String, String> option : options.entrySet()) {
+				
+				moduleProperties.setPropertyValue(option.getKey(), option.getValue());
+			}
 
 			/*
 			 * Exclude the module name from the args sent to the module.
 			 */
 			
-			repoCleaner.validateArgs(Arrays.asList(args).subList(1, args.length));
+			repoCleaner.validateArgs(arguments.subList(1, arguments.size()));
 			
 			repoCleaner.execute();
 			
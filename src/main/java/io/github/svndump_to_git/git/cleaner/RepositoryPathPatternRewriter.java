@@ -0,0 +1,185 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import io.github.svndump_to_git.git.cleaner.model.MemoizingTreeRewriter;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdSet;
+import io.github.svndump_to_git.git.cleaner.model.ParentDiffPathTracker;
+import io.github.svndump_to_git.git.cleaner.model.PathPatternRules;
+import io.github.svndump_to_git.git.cleaner.model.PathPatternTreeFilter;
+import io.github.svndump_to_git.git.cleaner.model.ReplacementBlobCache;
+import io.github.svndump_to_git.git.model.GitRepositoryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replace or remove the blobs whose path matches a set of glob or regex rules.
+ * 
+ * The rules are compiled into one regular expression.  The same rules act as a TreeFilter so that subtrees 
+ * where no rule can match are never opened, both when finding the affected commits and when rewriting their trees.
+ * 
+ * Rule file format, the first matching rule wins:
+ * <pre>
+ * replace glob:**&#47;*.mpx This file was removed during the svn to git conversion
+ * replace iglob:**&#47;*.jar @replacement-content.txt
+ * remove regex:docs/.*\.pdf
+ * </pre>
+ * 
+ * @author ocleirig
+ * 
+ */
+public class RepositoryPathPatternRewriter extends AbstractRepositoryCleaner {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(RepositoryPathPatternRewriter.class);
+	
+	private PathPatternRules rules;
+	
+	private final ReplacementBlobCache replacementBlobs = new ReplacementBlobCache();
+
+	/**
+	 * 
+	 */
+	public RepositoryPathPatternRewriter() {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * RepositoryCleaner#validateArgs(java.lang
+	 * .String[])
+	 */
+	@Override
+	public void validateArgs(List<String> args) throws Exception {
+
+		if (args.size() != 2 && args.size() != 4) {
+			log.error("USAGE: <source git repository meta directory> <path rules file> [<branchRefSpec> <git command path>]");
+			log.error("\t<git repo meta directory> : the path to the meta directory of the source git repository");
+			log.error("\t<path rules file> : one rule per line: replace <pattern> <replacement content or @file> | remove <pattern>");
+			log.error("\t\t<pattern> : glob:<glob>, iglob:<case insensitive glob> or regex:<java regex> matched against the full path");
+			log.error("\t<branchRefSpec> : git refspec from which to source the graph to be rewritten");
+			log.error("\t<git command path> : the path to a native git ");
+			throw new IllegalArgumentException("invalid arguments");
+		}
+
+		setRepo(GitRepositoryUtils.buildFileRepository(
+				new File(args.get(0)).getAbsoluteFile(), false));
+
+		setRules(PathPatternRules.parse(FileUtils.readLines(new File(args.get(1)), "UTF-8")));
+		
+		if (args.size() >= 3)
+			setBranchRefSpec(args.get(2).trim());
+
+		if (args.size() == 4)
+			setExternalGitCommandPath(args.get(3).trim());
+	}
+	
+	/**
+	 * @param rules the rules to apply, checked for missing replacement content files.
+	 * @throws IllegalArgumentException if a replacement content file does not exist.
+	 */
+	protected void setRules(PathPatternRules rules) {
+		
+		for (PathPatternRules.Rule rule : rules.getRules()) {
+			
+			if (rule.getAction() == PathPatternRules.Action.REPLACE)
+				ReplacementBlobCache.validate(rule.getReplacementContent());
+			
+			log.info("path rule: " + rule);
+		}
+		
+		this.rules = rules;
+	}
+	
+	private static boolean isBlob (FileMode mode) {
+		return !FileMode.TREE.equals(mode) && !FileMode.GITLINK.equals(mode) && !FileMode.MISSING.equals(mode);
+	}
+
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#findAffectedCommits(org.eclipse.jgit.lib.ObjectReader, java.util.List, io.github.svndump_to_git.git.cleaner.model.ObjectIdSet)
+	 */
+	@Override
+	protected boolean findAffectedCommits(ObjectReader reader, List<RevCommit> commits, ObjectIdSet affectedCommits) throws IOException {
+		
+		ParentDiffPathTracker tracker = new ParentDiffPathTracker(new ParentDiffPathTracker.PathMatcher() {
+			
+			@Override
+			public boolean matches(String path, FileMode mode) {
+				return isBlob(mode) && rules.match(path) != null;
+			}
+		}, new PathPatternTreeFilter(rules));
+		
+		tracker.findAffectedCommits(reader, commits, affectedCommits);
+		
+		log.info(tracker.getDiffedEntries() + " changed entries diffed");
+		
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#createTreeRewriter(int)
+	 */
+	@Override
+	protected MemoizingTreeRewriter createTreeRewriter(int cacheSize) {
+		
+		MemoizingTreeRewriter.EntryRewriter entryRewriter = new MemoizingTreeRewriter.EntryRewriter() {
+			
+			@Override
+			public ObjectId rewriteBlob(String path, FileMode mode, ObjectId blobId) throws IOException {
+				
+				PathPatternRules.Rule rule = rules.match(path);
+				
+				if (rule == null)
+					return blobId;
+				
+				if (rule.getAction() == PathPatternRules.Action.REMOVE)
+					return null;
+				
+				return replacementBlobs.getBlobId(rule.getReplacementContent(), getObjectInserter());
+			}
+		};
+		
+		// only the file name matters so unchanged subtrees are rewritten once for the whole history.
+		if (rules.isNameOnly())
+			return new MemoizingTreeRewriter(entryRewriter, false, cacheSize);
+		
+		// the rules look at the full path so the cache is keyed by the path of the subtree as well.
+		return new MemoizingTreeRewriter(entryRewriter, true, new MemoizingTreeRewriter.SubtreeFilter() {
+			
+			@Override
+			public boolean include(String path) {
+				return rules.couldMatchBelow(path);
+			}
+		}, cacheSize);
+	}
+
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#getFileNameSuffix()
+	 */
+	@Override
+	protected String getFileNameSuffix() {
+		return "path-pattern-rewrite";
+	}
+}
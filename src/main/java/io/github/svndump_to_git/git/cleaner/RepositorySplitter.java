@@ -17,7 +17,6 @@ package io.github.svndump_to_git.git.cleaner;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
@@ -35,6 +34,7 @@ import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
+import io.github.svndump_to_git.git.cleaner.model.AsyncRecordWriter;
 import io.github.svndump_to_git.git.model.GitRepositoryUtils;
 import io.github.svndump_to_git.git.model.ref.utils.GitRefUtils;
 import io.github.svndump_to_git.git.model.tree.GitTreeData;
@@ -58,13 +58,13 @@ public class RepositorySplitter extends AbstractRepositoryCleaner {
 
 	private Date splitDate;
 
-	private PrintWriter leftRefsWriter;
+	private AsyncRecordWriter leftRefsWriter;
 
-	private PrintWriter rightRefsWriter;
+	private AsyncRecordWriter rightRefsWriter;
 
-	private PrintWriter pw;
+	private AsyncRecordWriter pw;
 
-	private PrintWriter refChangeWriter;
+	private AsyncRecordWriter refChangeWriter;
 
 	private RevWalk walkRight;
 
@@ -170,12 +170,12 @@ public class RepositorySplitter extends AbstractRepositoryCleaner {
 	protected void onBeforeExecute() throws FileNotFoundException {
 		super.onBeforeExecute();
 
-		leftRefsWriter = new PrintWriter("left-refs-" + dateString + ".txt");
-		rightRefsWriter = new PrintWriter("right-refs-" + dateString + ".txt");
+		leftRefsWriter = new AsyncRecordWriter(new File ("left-refs-" + dateString + ".txt"), false);
+		rightRefsWriter = new AsyncRecordWriter(new File ("right-refs-" + dateString + ".txt"), false);
 
-		pw = new PrintWriter("grafts-" + dateString + ".txt");
+		pw = new AsyncRecordWriter(new File ("grafts-" + dateString + ".txt"), false);
 
-		refChangeWriter = new PrintWriter("ref-changes-" + dateString + ".txt");
+		refChangeWriter = new AsyncRecordWriter(new File ("ref-changes-" + dateString + ".txt"), false);
 
 		walkRight = new RevWalk(getRepo());
 		walkLeft = new RevWalk(getRepo());
@@ -350,6 +350,14 @@ public class RepositorySplitter extends AbstractRepositoryCleaner {
 	}
 
 	
+	/*
+	 * The side files and the prevent gc branch counter are not part of a checkpoint.
+	 */
+	@Override
+	protected boolean isCheckpointSupported() {
+		return false;
+	}
+
 	/* (non-Javadoc)
 	 * @see AbstractRepositoryCleaner#onTagCreate(java.lang.String, org.eclipse.jgit.lib.ObjectId)
 	 */
@@ -358,4 +366,23 @@ public class RepositorySplitter extends AbstractRepositoryCleaner {
 		rightRefsWriter.println(tagName);
 	}
 
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#close()
+	 */
+	@Override
+	public void close() {
+		
+		try {
+			for (AsyncRecordWriter writer : new AsyncRecordWriter[] {leftRefsWriter, rightRefsWriter, pw, refChangeWriter}) {
+				
+				if (writer != null)
+					writer.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("RepositorySplitter.close(): failed to write the side files", e);
+		}
+		
+		super.close();
+	}
+
 }
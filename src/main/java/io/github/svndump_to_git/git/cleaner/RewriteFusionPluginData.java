@@ -18,19 +18,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import io.github.svndump_to_git.cleaner.model.bitmap.RevCommitBitMapIndex;
-import io.github.svndump_to_git.cleaner.model.sort.FusionAwareTopoSortComparator;
+import io.github.svndump_to_git.cleaner.model.sort.FusionAwareTopoSort;
 import io.github.svndump_to_git.git.cleaner.model.ObjectIdTranslation;
 import io.github.svndump_to_git.git.cleaner.model.ObjectIdTranslationService;
 import io.github.svndump_to_git.git.cleaner.model.ObjectTranslationDataSource;
-import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -57,11 +54,14 @@ import org.slf4j.LoggerFactory;
  * 
  */
 public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
-
+	
 	private static final Logger log = LoggerFactory
 			.getLogger(RewriteFusionPluginData.class);
-
+	
 	private ObjectIdTranslationService translationService;
+	
+	private String composedTranslationFile = null;
+	
 		
 	
 	/**
@@ -70,14 +70,42 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 	public RewriteFusionPluginData() {
 		// TODO Auto-generated constructor stub
 	}
-
+	
+	
+	/**
+	 * @return the file the composed object translations are saved into.
+	 */
+	public String getComposedTranslationFile() {
+		return composedTranslationFile;
+	}
+	
+	/**
+	 * When set the chain of object translation files is saved as a single binary translation file that can be given to later runs.
+	 * 
+	 * @param composedTranslationFile
+	 */
+	public void setComposedTranslationFile(String composedTranslationFile) {
+		this.composedTranslationFile = composedTranslationFile;
+	}
+	
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#close()
+	 */
+	@Override
+	public void close() {
+		
+		super.close();
+		
+		if (translationService != null)
+			translationService.close();
+	}
 	
 	/* (non-Javadoc)
 	 * @see RepositoryCleaner#validateArgs(java.lang.String[])
 	 */
 	@Override
 	public void validateArgs(List<String> args) throws Exception {
-
+		
 		if (args.size() != 2 && args.size() != 4) {
 			log.error("USAGE: <right git repository meta directory> <replaced objects files> [<branchRefSpec> <git command path>]");
 			log.error("\t<right git repo meta directory> : the path to the meta directory of the right (target) git repository");
@@ -99,28 +127,21 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 		
 		for (String objectTranslationDataFile : objectTranslationDataSources) {
 			
-			ObjectTranslationDataSource dataSource = new ObjectTranslationDataSource(objectTranslationDataFile);
-			
-			// format: new object id <space> original object id
-			
-			List<String> newToOriginalObjectLines = FileUtils.readLines(new File (objectTranslationDataFile));
-			
-			for (String rightToLeftObjectLine : newToOriginalObjectLines) {
-				
-				if (rightToLeftObjectLine.trim().length() == 0 || rightToLeftObjectLine.startsWith("#"))
-					continue; // skip blank lines and comments.
-				
-				String parts[] = rightToLeftObjectLine.split(" ");
-				
-				dataSource.storeObjectTranslation(parts[1].trim(), parts[0].trim());
-				
-			}
+			// text or binary translation files are both accepted
+			ObjectIdTranslation dataSource = ObjectTranslationDataSource.load(objectTranslationDataFile);
 			
 			dataSources.add(dataSource);
 		}
 		
 		translationService = new ObjectIdTranslationService(dataSources);
 		
+		if (composedTranslationFile != null) {
+			
+			translationService.save(new File (composedTranslationFile));
+			
+			log.info("saved the composed object translations into " + composedTranslationFile);
+		}
+		
 		if (args.size() >= 3)
 			setBranchRefSpec(args.get(2).trim());
 		
@@ -129,12 +150,12 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 			setExternalGitCommandPath(args.get(3).trim());
 		
 	}
-
+	
 	/*
 	 * If all of the direct dependencies are contained in the aggregated commit map then return true and store the aggregated dependencies  into the set provided.
 	 */
 	private boolean aggregate (Set<ObjectId>aggregateIntoSet, Set<ObjectId>directDependencies, Map<ObjectId, Set<ObjectId>>aggregatedCommitDependenciesMap) {
-
+		
 		boolean aggregateDataExists = true;
 		
 		for (ObjectId objectId : directDependencies) {
@@ -158,7 +179,7 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 		
 		return false;
 	}
-
+	
 	/* (non-Javadoc)
 	 * @see AbstractRepositoryCleaner#provideRevCommitIterator(java.util.Iterator)
 	 */
@@ -168,14 +189,11 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 		
 		try {
 			
-			RevCommitBitMapIndex index = new RevCommitBitMapIndex(getRepo(), translationService, iterator);
-			
-			List<RevCommit>commitList = new LinkedList<RevCommit>(index.getRevCommitList());
+			RevCommitBitMapIndex index = new RevCommitBitMapIndex(getRepo(), translationService, iterator, createProgressMonitor());
 			
-			// compute the aggregated dependencies
-			log.info("sorting " + commitList.size() + " commits"); 
+			log.info("sorting " + index.getRevCommitList().size() + " commits"); 
 			
-			Collections.sort(commitList, new FusionAwareTopoSortComparator(index));
+			List<RevCommit>commitList = new FusionAwareTopoSort(index).sort(createProgressMonitor());
 			
 			PrintWriter orderedCommitsFile = new PrintWriter("rewrite-fusion-data-ordered-commits-"+dateString+".txt");
 			
@@ -191,8 +209,8 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 			throw new RuntimeException ("RewriteFusionPluginData.provideRevCommitIterator(): failed ", e);
 		}
 	}
-
-
+	
+	
 	/* (non-Javadoc)
 	 * @see AbstractRepositoryCleaner#processCommitTree(org.eclipse.jgit.lib.ObjectId, io.github.svndump_to_git.git.model.tree.GitTreeData)
 	 */
@@ -230,7 +248,7 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 				
 				// check where this originates from
 				ObjectId newCommitId = this.translationService.translateObjectId(commitId);
-
+				
 				// will exist if the newCommitId from a previous rewite has been rewritted during the current rewrite
 				ObjectId currentlyChangedId =  this.originalCommitIdToNewCommitIdMap.get(newCommitId);
 				
@@ -250,7 +268,7 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 				else {
 					// make sure that the commitId is still valid if its been changed
 					
-					if (super.originalCommitIdToNewCommitIdMap.keySet().contains(commitId) && !super.processedCommits.contains(commitId)) {
+					if (super.originalCommitIdToNewCommitIdMap.containsKey(commitId) && !super.processedCommits.contains(commitId)) {
 						log.warn("repo is missing a commit for " + commitId);
 					}
 					
@@ -264,7 +282,7 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 				// save it into the tree
 				String updatedFusionData = ExternalModuleUtils.createFusionMavenPluginDataFileString(fusionData);
 				
-				ObjectId updatedBlobId = inserter.insert(Constants.OBJ_BLOB, updatedFusionData.getBytes());
+				ObjectId updatedBlobId = getObjectInserter().insert(Constants.OBJ_BLOB, updatedFusionData.getBytes());
 				
 				tree.addBlob("fusion-maven-plugin.dat", updatedBlobId);
 		
@@ -277,7 +295,7 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 		else
 			return false;
 	}
-
+	
 	/* (non-Javadoc)
 	 * @see AbstractRepositoryCleaner#getFileNameSuffix()
 	 */
@@ -285,8 +303,8 @@ public class RewriteFusionPluginData extends AbstractRepositoryCleaner {
 	protected String getFileNameSuffix() {
 		return "rewrite-fusion-plugin-data";
 	}
-
-
 	
-
+	
+	
+	
 }
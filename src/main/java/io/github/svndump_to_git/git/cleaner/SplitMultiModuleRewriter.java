@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -34,6 +35,7 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
+import io.github.svndump_to_git.git.cleaner.model.CleanerCheckpoint;
 import io.github.svndump_to_git.git.cleaner.model.SkipOverCommitException;
 import io.github.svndump_to_git.git.model.GitRepositoryUtils;
 import io.github.svndump_to_git.git.model.tree.GitTreeData;
@@ -179,17 +181,8 @@ public class SplitMultiModuleRewriter extends AbstractRepositoryCleaner {
 			// else fall through
 		}
 
-		if (setTree) {
-
-			if (tree.isTreeDirty()) {
-
-				ObjectId newTreeId = tree.buildTree(inserter);
-
-				builder.setTreeId(newTreeId);
-			} else {
-				builder.setTreeId(commit.getTree().getId());
-			}
-		}
+		if (setTree)
+			builder.setTreeId(buildTree(commit, tree));
 
 		builder.setEncoding("UTF-8");
 
@@ -312,6 +305,52 @@ public class SplitMultiModuleRewriter extends AbstractRepositoryCleaner {
 		return "split-multi-module";
 	}
 
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#onCheckpoint(CleanerCheckpoint)
+	 */
+	@Override
+	protected void onCheckpoint(CleanerCheckpoint checkpoint) throws IOException {
+		
+		// format: skipped commit id <space> parent commit ids
+		List<String> lines = new ArrayList<String>(skippedCommitIdToParentsCommitIds.size());
+		
+		for (Map.Entry<ObjectId, Set<ObjectId>> entry : skippedCommitIdToParentsCommitIds.entrySet()) {
+			
+			StringBuilder line = new StringBuilder(entry.getKey().name());
+			
+			for (ObjectId parentId : entry.getValue()) {
+				line.append(" ").append(parentId.name());
+			}
+			
+			lines.add(line.toString());
+		}
+		
+		checkpoint.saveLines("skipped-commits", lines);
+	}
+
+	/* (non-Javadoc)
+	 * @see AbstractRepositoryCleaner#onResume(CleanerCheckpoint)
+	 */
+	@Override
+	protected void onResume(CleanerCheckpoint checkpoint) throws IOException {
+		
+		for (String line : checkpoint.loadLines("skipped-commits")) {
+			
+			if (line.trim().length() == 0)
+				continue;
+			
+			String parts[] = line.split(" ");
+			
+			Set<ObjectId> parents = new LinkedHashSet<ObjectId>();
+			
+			for (int i = 1; i < parts.length; i++) {
+				parents.add(ObjectId.fromString(parts[i]));
+			}
+			
+			skippedCommitIdToParentsCommitIds.put(ObjectId.fromString(parts[0]), parents);
+		}
+	}
+
 	@Override
 	public void close() {
 		finder.close();
@@ -0,0 +1,367 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A line oriented file writer that moves the file I/O off of the calling thread.
+ * 
+ * Records are collected into a buffer which is handed to a background thread once full.  At most maxPendingBuffers 
+ * buffers wait to be written, after that println blocks until the background thread catches up.
+ * 
+ * Like a PrintWriter println does not throw; a write failure is reported by the next sync() or close().  If the 
+ * background thread stops the waiting callers are released and the records not yet written are dropped.
+ * 
+ * Safe to use from multiple threads.
+ * 
+ * @author ocleirig
+ *
+ */
+public class AsyncRecordWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncRecordWriter.class);
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	
+	public static final int DEFAULT_MAX_PENDING_BUFFERS = 16;
+	
+	/*
+	 * How often a blocked caller checks that the background thread is still running.
+	 */
+	private static final long LIVENESS_CHECK_SECONDS = 1;
+	
+	private final File file;
+	
+	private final FileOutputStream out;
+	
+	private final int bufferSize;
+	
+	private final BlockingQueue<Object> pending;
+	
+	private final Thread writerThread;
+	
+	private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+	
+	private StringBuilder buffer;
+	
+	private long records;
+	
+	private volatile long bytesWritten;
+	
+	private volatile long writeNanos;
+	
+	private boolean closed = false;
+
+	/**
+	 * 
+	 * @param file the file to write.
+	 * @param append true to add to the end of an existing file.
+	 * @throws FileNotFoundException if the file can't be opened.
+	 */
+	public AsyncRecordWriter(File file, boolean append) throws FileNotFoundException {
+		this(file, append, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_PENDING_BUFFERS);
+	}
+	
+	/**
+	 * 
+	 * @param file the file to write.
+	 * @param append true to add to the end of an existing file.
+	 * @param bufferSize the number of characters collected before the buffer is handed to the background thread.
+	 * @param maxPendingBuffers the number of full buffers that can wait to be written.
+	 * @throws FileNotFoundException if the file can't be opened.
+	 */
+	public AsyncRecordWriter(File file, boolean append, int bufferSize, int maxPendingBuffers) throws FileNotFoundException {
+		
+		this.file = file;
+		this.out = new FileOutputStream(file, append);
+		this.bufferSize = bufferSize;
+		this.pending = new ArrayBlockingQueue<Object>(maxPendingBuffers);
+		this.buffer = new StringBuilder(bufferSize + 256);
+		
+		writerThread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				writePending();
+			}
+		}, "async-record-writer-" + file.getName());
+		
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	
+	/**
+	 * Add the record and a line feed.
+	 * 
+	 * @param record
+	 */
+	public synchronized void println(String record) {
+		
+		if (closed)
+			throw new IllegalStateException(file + " is closed");
+		
+		buffer.append(record).append('\n');
+		
+		records++;
+		
+		if (buffer.length() >= bufferSize)
+			handOff(buffer.toString());
+	}
+	
+	/**
+	 * Wait until everything written so far is in the file and forced to the storage device.
+	 * 
+	 * @throws IOException if any write failed.
+	 */
+	public synchronized void sync() throws IOException {
+		
+		awaitBarrier(new Barrier(true, false));
+	}
+	
+	/**
+	 * Write the remaining records and close the file.
+	 * 
+	 * @throws IOException if any write failed.
+	 */
+	public synchronized void close() throws IOException {
+		
+		if (closed)
+			return;
+		
+		try {
+			awaitBarrier(new Barrier(false, true));
+		}
+		finally {
+			closed = true;
+			
+			// the background thread must be done with the stream before it is closed
+			joinWriterThread();
+			
+			out.close();
+		}
+		
+		log.info(file + ": " + toString());
+	}
+	
+	private void awaitBarrier(Barrier barrier) throws IOException {
+		
+		if (buffer.length() > 0)
+			handOff(buffer.toString());
+		
+		put(barrier);
+		
+		try {
+			while (!barrier.done.await(LIVENESS_CHECK_SECONDS, TimeUnit.SECONDS)) {
+				
+				if (!writerThread.isAlive()) {
+					// queued after the background thread released the pending barriers
+					failure.compareAndSet(null, new IOException("the writer thread stopped"));
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting on the writes to " + file, e);
+		}
+		
+		IOException e = failure.get();
+		
+		if (e != null)
+			throw new IOException("failed to write " + file, e);
+	}
+	
+	private void handOff(String chunk) {
+		
+		put(chunk);
+		
+		buffer = new StringBuilder(bufferSize + 256);
+	}
+	
+	private void put(Object item) {
+		
+		try {
+			while (!pending.offer(item, LIVENESS_CHECK_SECONDS, TimeUnit.SECONDS)) {
+				
+				// nothing will take it, the failure is reported by the next sync() or close()
+				if (!writerThread.isAlive())
+					return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting to write " + file, e);
+		}
+	}
+	
+	private void joinWriterThread() {
+		
+		// only still running when the wait for the last barrier was interrupted
+		if (writerThread.isAlive())
+			writerThread.interrupt();
+		
+		boolean interrupted = false;
+		
+		while (true) {
+			
+			try {
+				writerThread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	/*
+	 * The background thread: encode and write each chunk and release the barriers in order.
+	 * 
+	 * However it stops every barrier still queued is released so that no caller waits forever.
+	 */
+	private void writePending() {
+		
+		boolean finished = false;
+		
+		try {
+			finished = writeUntilLastBarrier();
+		} catch (RuntimeException | Error e) {
+			failure.compareAndSet(null, new IOException("the writer thread failed", e));
+			throw e;
+		} finally {
+			
+			if (!finished)
+				failure.compareAndSet(null, new IOException("the writer thread stopped"));
+			
+			Object item;
+			
+			while ((item = pending.poll()) != null) {
+				
+				if (item instanceof Barrier)
+					((Barrier) item).done.countDown();
+			}
+		}
+	}
+	
+	/*
+	 * @return true once the last barrier is reached, false if interrupted.
+	 */
+	private boolean writeUntilLastBarrier() {
+		
+		while (true) {
+			
+			Object item;
+			
+			try {
+				item = pending.take();
+			} catch (InterruptedException e) {
+				failure.compareAndSet(null, new IOException("writer thread interrupted"));
+				return false;
+			}
+			
+			if (item instanceof Barrier) {
+				
+				Barrier barrier = (Barrier) item;
+				
+				if (barrier.sync && failure.get() == null) {
+					
+					try {
+						out.getFD().sync();
+					} catch (IOException e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+				
+				barrier.done.countDown();
+				
+				if (barrier.last)
+					return true;
+			}
+			else if (failure.get() == null) {
+				
+				// after a failure the chunks are dropped, the next barrier reports it
+				try {
+					long start = System.nanoTime();
+					
+					byte[] bytes = ((String) item).getBytes(UTF_8);
+					
+					out.write(bytes);
+					
+					writeNanos += System.nanoTime() - start;
+					bytesWritten += bytes.length;
+					
+				} catch (IOException e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of records given to println.
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+	
+	/**
+	 * @return the number of bytes written into the file so far.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		
+		long millis = writeNanos / 1000000L;
+		
+		double megabytesPerSecond = writeNanos == 0 ? 0 : (bytesWritten / (1024.0 * 1024.0)) / (writeNanos / 1000000000.0);
+		
+		return getRecords() + " records, " + bytesWritten + " bytes written in " + millis + " ms (" + String.format("%.1f", megabytesPerSecond) + " MB/s)";
+	}
+	
+	private static final class Barrier {
+		
+		private final CountDownLatch done = new CountDownLatch(1);
+		
+		private final boolean sync;
+		
+		private final boolean last;
+
+		private Barrier(boolean sync, boolean last) {
+			this.sync = sync;
+			this.last = last;
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Reads a binary object translation file written by BinaryObjectTranslationWriter.
+ * 
+ * The file is memory mapped and each lookup is a binary search within the fan-out bucket of the original id so 
+ * nothing is loaded onto the heap.
+ * 
+ * @author ocleirig
+ *
+ */
+public class BinaryObjectTranslationDataSource implements ObjectIdTranslationTable {
+
+	private final String dataSource;
+	
+	private final MappedByteBuffer buffer;
+	
+	private final int[] fanout = new int[BinaryObjectTranslationWriter.FANOUT_ENTRIES];
+	
+	/**
+	 * Open the file and verify its checksum.
+	 * 
+	 * @param dataSource the binary translation file.
+	 * @throws IOException if the file is not a binary translation file or is corrupt.
+	 */
+	public BinaryObjectTranslationDataSource(String dataSource) throws IOException {
+		this(dataSource, true);
+	}
+	
+	/**
+	 * @param dataSource the binary translation file.
+	 * @param verifyChecksum if true the SHA-1 trailer is checked against the content, which reads the whole file once.
+	 * @throws IOException if the file is not a binary translation file or the checksum does not match.
+	 */
+	public BinaryObjectTranslationDataSource(String dataSource, boolean verifyChecksum) throws IOException {
+		
+		this.dataSource = dataSource;
+		
+		RandomAccessFile raf = new RandomAccessFile(dataSource, "r");
+		
+		try {
+			
+			long length = raf.length();
+			
+			if (length > Integer.MAX_VALUE)
+				throw new IOException(dataSource + " is too large to map");
+			
+			buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, length);
+			
+		}
+		finally {
+			raf.close();
+		}
+		
+		byte[] magic = new byte[BinaryObjectTranslationWriter.MAGIC.length];
+		
+		buffer.get(magic);
+		
+		if (!Arrays.equals(BinaryObjectTranslationWriter.MAGIC, magic))
+			throw new IOException(dataSource + " is not a binary object translation file");
+		
+		int version = buffer.getInt();
+		
+		if (version != BinaryObjectTranslationWriter.VERSION)
+			throw new IOException(dataSource + " has unsupported version " + version);
+		
+		for (int i = 0; i < fanout.length; i++) {
+			fanout[i] = buffer.getInt();
+		}
+		
+		long expectedLength = BinaryObjectTranslationWriter.HEADER_LENGTH 
+				+ (long)size() * BinaryObjectTranslationWriter.RECORD_LENGTH 
+				+ Constants.OBJECT_ID_LENGTH;
+		
+		if (buffer.capacity() != expectedLength)
+			throw new IOException(dataSource + " is truncated, expected " + expectedLength + " bytes but found " + buffer.capacity());
+		
+		if (verifyChecksum)
+			verifyChecksum();
+	}
+	
+	private void verifyChecksum() throws IOException {
+		
+		int contentLength = buffer.capacity() - Constants.OBJECT_ID_LENGTH;
+		
+		ByteBuffer content = buffer.duplicate();
+		
+		content.position(0);
+		content.limit(contentLength);
+		
+		MessageDigest digest = Constants.newMessageDigest();
+		
+		digest.update(content);
+		
+		byte[] expected = new byte[Constants.OBJECT_ID_LENGTH];
+		
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = buffer.get(contentLength + i);
+		}
+		
+		if (!MessageDigest.isEqual(expected, digest.digest()))
+			throw new IOException(dataSource + " is corrupt, the checksum does not match the content");
+	}
+	
+	/**
+	 * @param file
+	 * @return true if the file starts with the binary translation file magic.
+	 * @throws IOException
+	 */
+	public static boolean isBinaryTranslationFile (File file) throws IOException {
+		
+		byte[] magic = new byte[BinaryObjectTranslationWriter.MAGIC.length];
+		
+		FileInputStream in = new FileInputStream(file);
+		
+		try {
+			
+			if (in.read(magic) != magic.length)
+				return false;
+			
+			return Arrays.equals(BinaryObjectTranslationWriter.MAGIC, magic);
+		}
+		finally {
+			in.close();
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see ObjectIdTranslationTable#size()
+	 */
+	@Override
+	public int size() {
+		return fanout[fanout.length-1];
+	}
+	
+	private int recordOffset (int record) {
+		return BinaryObjectTranslationWriter.HEADER_LENGTH + record * BinaryObjectTranslationWriter.RECORD_LENGTH;
+	}
+	
+	/*
+	 * compare the original id of the record with the id given.
+	 */
+	private int compare (int offset, byte[] raw) {
+		
+		for (int i = 0; i < Constants.OBJECT_ID_LENGTH; i++) {
+			
+			int difference = (buffer.get(offset + i) & 0xff) - (raw[i] & 0xff);
+			
+			if (difference != 0)
+				return difference;
+		}
+		
+		return 0;
+	}
+	
+	private ObjectId readObjectId (int offset) {
+		
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		
+		for (int i = 0; i < raw.length; i++) {
+			raw[i] = buffer.get(offset + i);
+		}
+		
+		return ObjectId.fromRaw(raw);
+	}
+	
+	/**
+	 * 
+	 * @param originalId
+	 * @return the translated id or null if there is no translation.
+	 */
+	public ObjectId find (AnyObjectId originalId) {
+		
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		
+		originalId.copyRawTo(raw, 0);
+		
+		int bucket = originalId.getFirstByte();
+		
+		int low = bucket == 0 ? 0 : fanout[bucket - 1];
+		
+		int high = fanout[bucket];
+		
+		while (low < high) {
+			
+			int middle = (low + high) >>> 1;
+			
+			int offset = recordOffset(middle);
+			
+			int comparison = compare(offset, raw);
+			
+			if (comparison == 0)
+				return readObjectId(offset + Constants.OBJECT_ID_LENGTH);
+			else if (comparison < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see ObjectIdTranslation#translateObjectId(org.eclipse.jgit.lib.ObjectId)
+	 */
+	@Override
+	public ObjectId translateObjectId(ObjectId originalId) {
+		
+		ObjectId translation = find(originalId);
+		
+		if (translation == null)
+			return originalId;
+		else
+			return translation;
+	}
+	
+	/**
+	 * Visit each translation in the order of the original ids.
+	 * 
+	 * @see ObjectIdTranslationTable#forEach(ObjectIdMap.EntryVisitor)
+	 */
+	@Override
+	public void forEach(ObjectIdMap.EntryVisitor visitor) throws IOException {
+		
+		for (int record = 0; record < size(); record++) {
+			
+			int offset = recordOffset(record);
+			
+			visitor.visit(readObjectId(offset), readObjectId(offset + Constants.OBJECT_ID_LENGTH));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BinaryObjectTranslationDataSource [" + dataSource + ", " + size() + " translations]";
+	}
+	
+}
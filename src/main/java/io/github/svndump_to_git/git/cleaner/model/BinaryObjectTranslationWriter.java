@@ -0,0 +1,236 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Writes object translations in the binary format read by BinaryObjectTranslationDataSource.
+ * 
+ * Layout, all integers big endian:
+ * <pre>
+ * magic        4 bytes  0xff 'o' 't' 'x'
+ * version      4 bytes  1
+ * fan-out    256 ints   number of records whose original id starts with a byte less than or equal to the index
+ * records  n * 40 bytes original object id, new object id; sorted by the original object id
+ * checksum    20 bytes  SHA-1 of everything above
+ * </pre>
+ * 
+ * Like a pack .idx the fan-out table narrows a lookup to the records sharing the first byte before the binary search.
+ * 
+ * @author ocleirig
+ *
+ */
+public final class BinaryObjectTranslationWriter {
+
+	static final byte[] MAGIC = new byte[] {(byte) 0xff, 'o', 't', 'x'};
+	
+	static final int VERSION = 1;
+	
+	static final int FANOUT_ENTRIES = 256;
+	
+	static final int RECORD_LENGTH = 2 * Constants.OBJECT_ID_LENGTH;
+	
+	static final int HEADER_LENGTH = MAGIC.length + 4 + FANOUT_ENTRIES * 4;
+	
+	private BinaryObjectTranslationWriter() {
+	}
+
+	/**
+	 * Write the translations of the map into the file given.
+	 * 
+	 * The file is written next to the target and renamed into place once complete.
+	 * 
+	 * @param target
+	 * @param originalToNewObjectIdMap
+	 * @throws IOException
+	 */
+	public static void write (File target, ObjectIdMap originalToNewObjectIdMap) throws IOException {
+		
+		final int[] fanout = new int[FANOUT_ENTRIES];
+		
+		originalToNewObjectIdMap.forEach(new ObjectIdMap.EntryVisitor() {
+			
+			@Override
+			public void visit(ObjectId key, ObjectId value) throws IOException {
+				fanout[key.getFirstByte()]++;
+			}
+		});
+		
+		// bucket start offsets
+		final int[] nextRecord = new int[FANOUT_ENTRIES];
+		
+		int total = 0;
+		
+		for (int i = 0; i < FANOUT_ENTRIES; i++) {
+			nextRecord[i] = total;
+			total += fanout[i];
+			fanout[i] = total;
+		}
+		
+		if ((long)total * RECORD_LENGTH > Integer.MAX_VALUE)
+			throw new IOException("too many translations for one file: " + total);
+		
+		final byte[] records = new byte[total * RECORD_LENGTH];
+		
+		originalToNewObjectIdMap.forEach(new ObjectIdMap.EntryVisitor() {
+			
+			@Override
+			public void visit(ObjectId key, ObjectId value) throws IOException {
+				
+				int offset = nextRecord[key.getFirstByte()]++ * RECORD_LENGTH;
+				
+				key.copyRawTo(records, offset);
+				value.copyRawTo(records, offset + Constants.OBJECT_ID_LENGTH);
+			}
+		});
+		
+		File temporary = new File (target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+		
+		MessageDigest digest = Constants.newMessageDigest();
+		
+		FileOutputStream fileOut = new FileOutputStream(temporary);
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(fileOut, digest), 64 * 1024));
+		
+		try {
+			
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			
+			for (int count : fanout) {
+				out.writeInt(count);
+			}
+			
+			int bucketStart = 0;
+			
+			for (int bucket = 0; bucket < FANOUT_ENTRIES; bucket++) {
+				
+				writeSortedBucket(out, records, bucketStart, fanout[bucket]);
+				
+				bucketStart = fanout[bucket];
+			}
+			
+			out.flush();
+			
+			// the checksum itself is not part of the digest
+			fileOut.write(digest.digest());
+			
+		}
+		finally {
+			out.close();
+		}
+		
+		if (target.exists() && !target.delete())
+			throw new IOException("unable to replace " + target);
+		
+		if (!temporary.renameTo(target))
+			throw new IOException("unable to rename " + temporary + " to " + target);
+	}
+
+	private static void writeSortedBucket(DataOutputStream out, byte[] records, int start, int end) throws IOException {
+		
+		int[] order = new int[end - start];
+		
+		for (int i = 0; i < order.length; i++) {
+			order[i] = (start + i) * RECORD_LENGTH;
+		}
+		
+		sort(records, order, 0, order.length - 1);
+		
+		for (int offset : order) {
+			out.write(records, offset, RECORD_LENGTH);
+		}
+	}
+	
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	
+	/*
+	 * Quicksort of the record offsets by their original object id.  Recursing only into the smaller partition bounds 
+	 * the stack depth and the ids are uniformly distributed so the middle element is a good pivot.
+	 */
+	private static void sort(byte[] records, int[] order, int low, int high) {
+		
+		while (high - low >= INSERTION_SORT_THRESHOLD) {
+			
+			int pivot = order[(low + high) >>> 1];
+			
+			int left = low;
+			int right = high;
+			
+			while (left <= right) {
+				
+				while (compare(records, order[left], pivot) < 0)
+					left++;
+				
+				while (compare(records, order[right], pivot) > 0)
+					right--;
+				
+				if (left <= right) {
+					int swap = order[left];
+					order[left] = order[right];
+					order[right] = swap;
+					left++;
+					right--;
+				}
+			}
+			
+			if (right - low < high - left) {
+				sort(records, order, low, right);
+				low = left;
+			}
+			else {
+				sort(records, order, left, high);
+				high = right;
+			}
+		}
+		
+		for (int i = low + 1; i <= high; i++) {
+			
+			int offset = order[i];
+			
+			int j = i - 1;
+			
+			while (j >= low && compare(records, order[j], offset) > 0) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			
+			order[j + 1] = offset;
+		}
+	}
+	
+	private static int compare(byte[] records, int leftOffset, int rightOffset) {
+		
+		for (int i = 0; i < Constants.OBJECT_ID_LENGTH; i++) {
+			
+			int difference = (records[leftOffset + i] & 0xff) - (records[rightOffset + i] & 0xff);
+			
+			if (difference != 0)
+				return difference;
+		}
+		
+		return 0;
+	}
+}
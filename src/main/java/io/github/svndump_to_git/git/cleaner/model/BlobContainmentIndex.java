@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+
+/**
+ * Answers whether a tree contains any of a set of target blobs.
+ * 
+ * The answer for every subtree is remembered by tree id so a subtree shared by many commits is only read once and 
+ * subtrees without a target are never descended into again.
+ * 
+ * Not thread safe while being built; the object id sets themselves are safe to read concurrently.
+ * 
+ * @author ocleirig
+ *
+ */
+public class BlobContainmentIndex {
+
+	private final Set<ObjectId> targetBlobIds;
+	
+	private final ObjectIdSet containingTrees;
+	
+	private final ObjectIdSet cleanTrees;
+	
+	/**
+	 * 
+	 * @param targetBlobIds the blobs being looked for.
+	 * @param containingTrees receives the ids of the trees that contain a target.
+	 * @param cleanTrees receives the ids of the trees that do not contain a target.
+	 */
+	public BlobContainmentIndex(Set<ObjectId> targetBlobIds, ObjectIdSet containingTrees, ObjectIdSet cleanTrees) {
+		this.targetBlobIds = targetBlobIds;
+		this.containingTrees = containingTrees;
+		this.cleanTrees = cleanTrees;
+	}
+	
+	/**
+	 * 
+	 * @param reader
+	 * @param treeId
+	 * @return true if the tree or any of its subtrees contains a target blob.
+	 * @throws IOException
+	 */
+	public boolean containsTarget (ObjectReader reader, AnyObjectId treeId) throws IOException {
+		
+		if (containingTrees.contains(treeId))
+			return true;
+		
+		if (cleanTrees.contains(treeId))
+			return false;
+		
+		CanonicalTreeParser parser = new CanonicalTreeParser(null, reader, treeId);
+		
+		boolean contains = false;
+		
+		while (!parser.eof() && !contains) {
+			
+			FileMode mode = parser.getEntryFileMode();
+			
+			if (FileMode.TREE.equals(mode))
+				contains = containsTarget(reader, parser.getEntryObjectId());
+			else if (!FileMode.GITLINK.equals(mode))
+				contains = targetBlobIds.contains(parser.getEntryObjectId());
+			
+			parser.next();
+		}
+		
+		if (contains)
+			containingTrees.add(treeId);
+		else
+			cleanTrees.add(treeId);
+		
+		return contains;
+	}
+	
+	/**
+	 * Find where the target blobs are in the tree, only descending into the subtrees that contain one.
+	 * 
+	 * @param reader
+	 * @param treeId
+	 * @return the path of each target blob in the tree and its blob id.
+	 * @throws IOException
+	 */
+	public Map<String, ObjectId> findTargetPaths (ObjectReader reader, AnyObjectId treeId) throws IOException {
+		
+		Map<String, ObjectId> targetPaths = new LinkedHashMap<String, ObjectId>();
+		
+		findTargetPaths(reader, "", treeId, targetPaths);
+		
+		return targetPaths;
+	}
+	
+	private void findTargetPaths (ObjectReader reader, String path, AnyObjectId treeId, Map<String, ObjectId> targetPaths) throws IOException {
+		
+		if (!containsTarget(reader, treeId))
+			return;
+		
+		CanonicalTreeParser parser = new CanonicalTreeParser(null, reader, treeId);
+		
+		while (!parser.eof()) {
+			
+			FileMode mode = parser.getEntryFileMode();
+			
+			ObjectId entryId = parser.getEntryObjectId();
+			
+			String entryPath;
+			
+			if (path.length() == 0)
+				entryPath = parser.getEntryPathString();
+			else
+				entryPath = path + "/" + parser.getEntryPathString();
+			
+			if (FileMode.TREE.equals(mode))
+				findTargetPaths(reader, entryPath, entryId, targetPaths);
+			else if (!FileMode.GITLINK.equals(mode) && targetBlobIds.contains(entryId))
+				targetPaths.put(entryPath, entryId);
+			
+			parser.next();
+		}
+	}
+	
+	/**
+	 * @return the number of distinct trees that contain a target.
+	 */
+	public int getContainingTreeCount() {
+		return containingTrees.size();
+	}
+	
+	/**
+	 * @return the number of distinct trees without a target.
+	 */
+	public int getCleanTreeCount() {
+		return cleanTrees.size();
+	}
+	
+	/**
+	 * Release the tree id sets.
+	 */
+	public void close() {
+		containingTrees.close();
+		cleanTrees.close();
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * A snapshot of the state of a repository cleaner that can be resumed from.
+ * 
+ * Each checkpoint is written into its own directory under the base directory. It only becomes the latest 
+ * checkpoint once checkpoint.properties in the base directory has been replaced to name it, so a crash 
+ * while writing a checkpoint leaves the previous one intact.
+ * 
+ * @author ocleirig
+ *
+ */
+public class CleanerCheckpoint {
+
+	private static final String CHECKPOINT_PROPERTIES = "checkpoint.properties";
+	
+	private static final String DIRECTORY_PROPERTY = "directory";
+	
+	private static final String CHECKPOINT_DIRECTORY_PREFIX = "checkpoint-";
+	
+	private final File baseDirectory;
+	
+	private final File directory;
+	
+	private final Properties properties;
+	
+	private CleanerCheckpoint(File baseDirectory, File directory, Properties properties) {
+		this.baseDirectory = baseDirectory;
+		this.directory = directory;
+		this.properties = properties;
+	}
+	
+	/**
+	 * Start a new checkpoint.  Nothing is visible to latest() until commit() is called.
+	 * 
+	 * @param baseDirectory
+	 * @param position the number of commits processed.
+	 * @return the new checkpoint.
+	 * @throws IOException
+	 */
+	public static CleanerCheckpoint begin (File baseDirectory, int position) throws IOException {
+		
+		File directory = new File (baseDirectory, CHECKPOINT_DIRECTORY_PREFIX + position);
+		
+		if (directory.exists())
+			FileUtils.deleteDirectory(directory);
+		
+		if (!directory.mkdirs())
+			throw new IOException("unable to create checkpoint directory " + directory);
+		
+		return new CleanerCheckpoint(baseDirectory, directory, new Properties());
+	}
+	
+	/**
+	 * 
+	 * @param baseDirectory
+	 * @return the latest committed checkpoint or null if there is none.
+	 * @throws IOException
+	 */
+	public static CleanerCheckpoint latest (File baseDirectory) throws IOException {
+		
+		File propertiesFile = new File (baseDirectory, CHECKPOINT_PROPERTIES);
+		
+		if (!propertiesFile.exists())
+			return null;
+		
+		Properties properties = new Properties();
+		
+		InputStream in = new FileInputStream(propertiesFile);
+		
+		try {
+			properties.load(in);
+		}
+		finally {
+			in.close();
+		}
+		
+		return new CleanerCheckpoint(baseDirectory, new File (baseDirectory, properties.getProperty(DIRECTORY_PROPERTY)), properties);
+	}
+	
+	/**
+	 * Remove all of the checkpoints once they are no longer needed.
+	 * 
+	 * @param baseDirectory
+	 * @throws IOException
+	 */
+	public static void clear (File baseDirectory) throws IOException {
+		
+		if (baseDirectory.exists())
+			FileUtils.deleteDirectory(baseDirectory);
+	}
+	
+	/**
+	 * Make this the latest checkpoint and remove the older ones.
+	 * 
+	 * @throws IOException
+	 */
+	public void commit() throws IOException {
+		
+		properties.setProperty(DIRECTORY_PROPERTY, directory.getName());
+		
+		File temporary = new File (baseDirectory, CHECKPOINT_PROPERTIES + ".tmp");
+		
+		FileOutputStream out = new FileOutputStream(temporary);
+		
+		try {
+			properties.store(out, "repository cleaner checkpoint");
+			
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+		
+		Files.move(temporary.toPath(), new File (baseDirectory, CHECKPOINT_PROPERTIES).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		
+		File[] checkpointDirectories = baseDirectory.listFiles();
+		
+		if (checkpointDirectories == null)
+			return;
+		
+		for (File checkpointDirectory : checkpointDirectories) {
+			
+			if (checkpointDirectory.isDirectory() && checkpointDirectory.getName().startsWith(CHECKPOINT_DIRECTORY_PREFIX) && !checkpointDirectory.equals(directory))
+				FileUtils.deleteDirectory(checkpointDirectory);
+		}
+	}
+	
+	public String getProperty (String key) {
+		return properties.getProperty(key);
+	}
+	
+	public void setProperty (String key, String value) {
+		properties.setProperty(key, value);
+	}
+	
+	public int getIntProperty (String key) {
+		return Integer.parseInt(properties.getProperty(key));
+	}
+	
+	public void setIntProperty (String key, int value) {
+		properties.setProperty(key, String.valueOf(value));
+	}
+	
+	/**
+	 * @return the directory holding the data of this checkpoint.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * Save the map in the binary object translation format.
+	 * 
+	 * @param name
+	 * @param map
+	 * @throws IOException
+	 */
+	public void saveObjectIdMap (String name, ObjectIdMap map) throws IOException {
+		BinaryObjectTranslationWriter.write(new File (directory, name + ".bin"), map);
+	}
+	
+	/**
+	 * Load the saved map into the (normally empty) map given.
+	 * 
+	 * @param name
+	 * @param into
+	 * @throws IOException
+	 */
+	public void loadObjectIdMap (String name, final ObjectIdMap into) throws IOException {
+		
+		new BinaryObjectTranslationDataSource(new File (directory, name + ".bin").getPath()).forEach(new ObjectIdMap.EntryVisitor() {
+			
+			@Override
+			public void visit(ObjectId key, ObjectId value) throws IOException {
+				into.put(key, value);
+			}
+		});
+	}
+	
+	/**
+	 * Save the set as a count followed by the raw object ids.
+	 * 
+	 * @param name
+	 * @param set
+	 * @throws IOException
+	 */
+	public void saveObjectIdSet (String name, ObjectIdSet set) throws IOException {
+		
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File (directory, name + ".ids")), 64 * 1024));
+		
+		try {
+			
+			out.writeInt(set.size());
+			
+			final byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			
+			set.forEach(new ObjectIdSet.Visitor() {
+				
+				@Override
+				public void visit(ObjectId objectId) throws IOException {
+					objectId.copyRawTo(raw, 0);
+					out.write(raw);
+				}
+			});
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Load the saved set into the set given.
+	 * 
+	 * @param name
+	 * @param into
+	 * @throws IOException
+	 */
+	public void loadObjectIdSet (String name, ObjectIdSet into) throws IOException {
+		
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File (directory, name + ".ids")), 64 * 1024));
+		
+		try {
+			
+			int size = in.readInt();
+			
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			
+			for (int i = 0; i < size; i++) {
+				in.readFully(raw);
+				into.add(ObjectId.fromRaw(raw));
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Save text lines, they must not contain line breaks.
+	 * 
+	 * @param name
+	 * @param lines
+	 * @throws IOException
+	 */
+	public void saveLines (String name, List<String> lines) throws IOException {
+		FileUtils.writeLines(new File (directory, name + ".txt"), "UTF-8", lines);
+	}
+	
+	public List<String> loadLines (String name) throws IOException {
+		return FileUtils.readLines(new File (directory, name + ".txt"), "UTF-8");
+	}
+	
+	/**
+	 * Save the deferred reference updates.
+	 * 
+	 * @param name
+	 * @param commands
+	 * @throws IOException
+	 */
+	public void saveReceiveCommands (String name, List<ReceiveCommand> commands) throws IOException {
+		
+		List<String> lines = new ArrayList<String>(commands.size());
+		
+		synchronized (commands) {
+			
+			for (ReceiveCommand command : commands) {
+				
+				lines.add(command.getType().name() + " " + toName(command.getOldId()) + " " + toName(command.getNewId()) + " " + command.getRefName());
+			}
+		}
+		
+		saveLines(name, lines);
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @return the saved reference updates.
+	 * @throws IOException
+	 */
+	public List<ReceiveCommand> loadReceiveCommands (String name) throws IOException {
+		
+		List<ReceiveCommand> commands = new ArrayList<ReceiveCommand>();
+		
+		for (String line : loadLines(name)) {
+			
+			if (line.trim().length() == 0)
+				continue;
+			
+			String parts[] = line.split(" ", 4);
+			
+			commands.add(new ReceiveCommand(fromName(parts[1]), fromName(parts[2]), parts[3], ReceiveCommand.Type.valueOf(parts[0])));
+		}
+		
+		return commands;
+	}
+	
+	private static String toName (ObjectId id) {
+		
+		if (id == null)
+			return "-";
+		else
+			return id.name();
+	}
+	
+	private static ObjectId fromName (String name) {
+		
+		if (name.equals("-"))
+			return null;
+		else
+			return ObjectId.fromString(name);
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Named phase timers and counters collected during a cleaner run.
+ * 
+ * Each timer keeps the count, total and maximum of its latencies and a histogram with power of two 
+ * microsecond buckets.  Everything is safe to update from the tree processing workers.
+ * 
+ * @author ocleirig
+ *
+ */
+public class CleanerMetrics {
+
+	/*
+	 * bucket i counts latencies below 2^i microseconds and at or above 2^(i-1).
+	 */
+	private static final int HISTOGRAM_BUCKETS = 40;
+	
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentSkipListMap<String, Timer>();
+	
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentSkipListMap<String, AtomicLong>();
+	
+	private final long startNanos = System.nanoTime();
+	
+	/**
+	 * A latency recorder for one phase.
+	 */
+	public static final class Timer {
+		
+		private final AtomicLong count = new AtomicLong();
+		
+		private final AtomicLong totalNanos = new AtomicLong();
+		
+		private final AtomicLong maxNanos = new AtomicLong();
+		
+		private final AtomicLongArray buckets = new AtomicLongArray(HISTOGRAM_BUCKETS);
+		
+		private Timer() {
+		}
+		
+		/**
+		 * @param startNanos the System.nanoTime() taken when the phase started.
+		 */
+		public void stop(long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+		
+		/**
+		 * @param nanos the duration of one execution of the phase.
+		 */
+		public void record(long nanos) {
+			
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			
+			long max;
+			
+			while ((max = maxNanos.get()) < nanos && !maxNanos.compareAndSet(max, nanos))
+				;
+			
+			int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000L);
+			
+			buckets.incrementAndGet(Math.min(bucket, HISTOGRAM_BUCKETS - 1));
+		}
+		
+		public long getCount() {
+			return count.get();
+		}
+		
+		public long getTotalNanos() {
+			return totalNanos.get();
+		}
+		
+		/**
+		 * @param percentile between 0 and 100.
+		 * @return the upper bound in microseconds of the histogram bucket holding the percentile.
+		 */
+		public long getPercentileMicros(double percentile) {
+			
+			long total = count.get();
+			
+			long target = (long) Math.ceil(total * percentile / 100.0);
+			
+			long seen = 0;
+			
+			for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+				
+				seen += buckets.get(i);
+				
+				if (seen >= target && seen > 0)
+					return 1L << i;
+			}
+			
+			return 0;
+		}
+		
+		private void appendJson(StringBuilder json) {
+			
+			long n = count.get();
+			
+			json.append("{\"count\": ").append(n)
+				.append(", \"totalMillis\": ").append(totalNanos.get() / 1000000L)
+				.append(", \"meanMicros\": ").append(n == 0 ? 0 : totalNanos.get() / n / 1000L)
+				.append(", \"maxMicros\": ").append(maxNanos.get() / 1000L)
+				.append(", \"p50Micros\": ").append(getPercentileMicros(50))
+				.append(", \"p90Micros\": ").append(getPercentileMicros(90))
+				.append(", \"p99Micros\": ").append(getPercentileMicros(99))
+				.append(", \"histogram\": [");
+			
+			boolean first = true;
+			
+			for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+				
+				long bucketCount = buckets.get(i);
+				
+				if (bucketCount == 0)
+					continue;
+				
+				if (!first)
+					json.append(", ");
+				
+				json.append("{\"belowMicros\": ").append(1L << i).append(", \"count\": ").append(bucketCount).append("}");
+				
+				first = false;
+			}
+			
+			json.append("]}");
+		}
+	}
+	
+	/**
+	 * 
+	 * @param name
+	 * @return the timer of the name, created on first use.
+	 */
+	public Timer timer(String name) {
+		
+		Timer timer = timers.get(name);
+		
+		if (timer == null) {
+			
+			Timer existing = timers.putIfAbsent(name, timer = new Timer());
+			
+			if (existing != null)
+				timer = existing;
+		}
+		
+		return timer;
+	}
+	
+	/**
+	 * Add one to the named counter.
+	 * 
+	 * @param name
+	 */
+	public void increment(String name) {
+		add(name, 1);
+	}
+	
+	/**
+	 * Add to the named counter.
+	 * 
+	 * @param name
+	 * @param delta
+	 */
+	public void add(String name, long delta) {
+		
+		AtomicLong counter = counters.get(name);
+		
+		if (counter == null) {
+			
+			AtomicLong existing = counters.putIfAbsent(name, counter = new AtomicLong());
+			
+			if (existing != null)
+				counter = existing;
+		}
+		
+		counter.addAndGet(delta);
+	}
+	
+	/**
+	 * @param name
+	 * @return the value of the counter, 0 if it was never incremented.
+	 */
+	public long getCount(String name) {
+		
+		AtomicLong counter = counters.get(name);
+		
+		return counter == null ? 0 : counter.get();
+	}
+	
+	/**
+	 * @return the timers and counters as a JSON object.
+	 */
+	public String toJson() {
+		
+		StringBuilder json = new StringBuilder();
+		
+		json.append("{\n  \"elapsedMillis\": ").append((System.nanoTime() - startNanos) / 1000000L).append(",\n  \"counters\": {");
+		
+		boolean first = true;
+		
+		for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+			
+			json.append(first ? "\n" : ",\n").append("    \"").append(counter.getKey()).append("\": ").append(counter.getValue().get());
+			
+			first = false;
+		}
+		
+		json.append("\n  },\n  \"timers\": {");
+		
+		first = true;
+		
+		for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+			
+			json.append(first ? "\n" : ",\n").append("    \"").append(timer.getKey()).append("\": ");
+			
+			timer.getValue().appendJson(json);
+			
+			first = false;
+		}
+		
+		json.append("\n  }\n}\n");
+		
+		return json.toString();
+	}
+	
+	/**
+	 * Write the JSON report next to the target and move it into place so a reader never sees a partial report.
+	 * 
+	 * @param target
+	 * @throws IOException
+	 */
+	public void writeJson(File target) throws IOException {
+		
+		File temporary = new File (target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+		
+		Writer out = new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8");
+		
+		try {
+			out.write(toJson());
+		}
+		finally {
+			out.close();
+		}
+		
+		Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		
+		StringBuilder summary = new StringBuilder();
+		
+		for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+			summary.append(counter.getKey()).append("=").append(counter.getValue().get()).append(" ");
+		}
+		
+		for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+			summary.append(timer.getKey()).append("=").append(timer.getValue().getTotalNanos() / 1000000L).append("ms ");
+		}
+		
+		return summary.toString().trim();
+	}
+}
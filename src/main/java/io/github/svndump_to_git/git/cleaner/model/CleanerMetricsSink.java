@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+
+/**
+ * Receives the metrics of a cleaner run, periodically when a report interval is set and once when the run ends.
+ * 
+ * @author ocleirig
+ *
+ */
+public interface CleanerMetricsSink {
+
+	/**
+	 * Called with the suffix and date that name the other files of the run before the first report.
+	 * 
+	 * @param fileNameSuffix
+	 * @param dateString
+	 * @throws IOException
+	 */
+	public void begin(String fileNameSuffix, String dateString) throws IOException;
+	
+	/**
+	 * 
+	 * @param metrics the metrics collected so far.
+	 * @param finalReport true for the report at the end of the run, also made when the run fails.
+	 * @throws IOException
+	 */
+	public void report(CleanerMetrics metrics, boolean finalReport) throws IOException;
+}
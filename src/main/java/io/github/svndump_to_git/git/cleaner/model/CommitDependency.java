@@ -22,7 +22,6 @@ import java.util.Set;
 
 import io.github.svndump_to_git.cleaner.model.bitmap.RevCommitBitMapIndex;
 import org.eclipse.jgit.lib.ObjectId;
-import io.github.svndump_to_git.cleaner.model.bitmap.Bitmap;
 
 /**
  * @author ocleirig
@@ -77,13 +76,7 @@ public class CommitDependency {
 		if (this.currentCommitId.equals(parentCommitId))
 			return true;
 		
-		Bitmap aggregate = indexer.getAggregateBitmap (this);
-			
-		if (aggregate.containsObjectId (parentCommitId))
-			return true;
-		else
-			return false;
-			
+		return indexer.getReachabilityIndex().dependsOn(this.currentCommitId, parentCommitId);
 	}
 
 	public Collection<CommitDependency> getParentDependencies() {
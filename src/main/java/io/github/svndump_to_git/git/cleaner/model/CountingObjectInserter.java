@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+/**
+ * Counts the objects given to another inserter into a counter that can be shared by several inserters.
+ * 
+ * @author ocleirig
+ *
+ */
+public class CountingObjectInserter extends ObjectInserter.Filter {
+
+	private final ObjectInserter delegate;
+	
+	private final AtomicLong insertedObjects;
+
+	/**
+	 * 
+	 * @param delegate the inserter that stores the objects.
+	 * @param insertedObjects incremented for each object inserted.
+	 */
+	public CountingObjectInserter(ObjectInserter delegate, AtomicLong insertedObjects) {
+		this.delegate = delegate;
+		this.insertedObjects = insertedObjects;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ObjectInserter.Filter#delegate()
+	 */
+	@Override
+	protected ObjectInserter delegate() {
+		return delegate;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ObjectInserter.Filter#insert(int, byte[])
+	 */
+	@Override
+	public ObjectId insert(int type, byte[] data) throws IOException {
+		insertedObjects.incrementAndGet();
+		return delegate.insert(type, data);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ObjectInserter.Filter#insert(int, byte[], int, int)
+	 */
+	@Override
+	public ObjectId insert(int type, byte[] data, int off, int len) throws IOException {
+		insertedObjects.incrementAndGet();
+		return delegate.insert(type, data, off, len);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ObjectInserter.Filter#insert(int, long, java.io.InputStream)
+	 */
+	@Override
+	public ObjectId insert(int type, long length, InputStream in) throws IOException {
+		insertedObjects.incrementAndGet();
+		return delegate.insert(type, length, in);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes each report as the cleaner-metrics-&lt;suffix&gt;-&lt;date&gt;.json file, replacing the previous one.
+ * 
+ * @author ocleirig
+ *
+ */
+public class JsonFileMetricsSink implements CleanerMetricsSink {
+
+	private static final Logger log = LoggerFactory.getLogger(JsonFileMetricsSink.class);
+	
+	private File directory = new File (".");
+	
+	private File metricsFile;
+	
+	/**
+	 * 
+	 */
+	public JsonFileMetricsSink() {
+	}
+	
+	/**
+	 * @return the directory the report is written into.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param directory the directory the report is written into, defaults to the working directory.
+	 */
+	public void setDirectory(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the report file of the current run, null before it begins.
+	 */
+	public File getMetricsFile() {
+		return metricsFile;
+	}
+
+	/* (non-Javadoc)
+	 * @see CleanerMetricsSink#begin(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void begin(String fileNameSuffix, String dateString) throws IOException {
+		metricsFile = new File (directory, "cleaner-metrics-" + fileNameSuffix + "-" + dateString + ".json");
+	}
+
+	/* (non-Javadoc)
+	 * @see CleanerMetricsSink#report(CleanerMetrics, boolean)
+	 */
+	@Override
+	public void report(CleanerMetrics metrics, boolean finalReport) throws IOException {
+		
+		metrics.writeJson(metricsFile);
+		
+		if (finalReport)
+			log.info("metrics written to " + metricsFile);
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+
+/**
+ * Rewrites the blobs of a tree and caches the rewritten id of every subtree by its original id.
+ * 
+ * Consecutive commits of a converted repository share almost all of their subtrees so each distinct 
+ * subtree is read and rewritten once and afterwards reused by id.  Only the subtrees that are new 
+ * to a commit are parsed.
+ * 
+ * The cache is keyed by the original tree id alone so the EntryRewriter must decide only on the entry 
+ * name, mode and blob id unless the rewriter is created as path dependent, in which case the path of 
+ * the subtree is part of the key.
+ * 
+ * Safe for concurrent use; the object reader and inserter are given per call.
+ * 
+ * @author ocleirig
+ *
+ */
+public class MemoizingTreeRewriter {
+
+	/**
+	 * Decides what happens to each blob (and symlink) of the tree.
+	 */
+	public interface EntryRewriter {
+		
+		/**
+		 * 
+		 * @param path the full path of the entry.
+		 * @param mode
+		 * @param blobId
+		 * @return the blob id to use, blobId to keep the entry unchanged or null to remove the entry.
+		 * @throws IOException
+		 */
+		public ObjectId rewriteBlob (String path, FileMode mode, ObjectId blobId) throws IOException;
+	}
+	
+	/**
+	 * Skips subtrees that the EntryRewriter would leave unchanged.
+	 */
+	public interface SubtreeFilter {
+		
+		/**
+		 * 
+		 * @param path the full path of the subtree.
+		 * @return false if nothing below the path can be rewritten.
+		 */
+		public boolean include (String path);
+	}
+	
+	/*
+	 * Cached for a subtree that ends up with no entries, which is then removed from its parent.
+	 */
+	private static final ObjectId REMOVED = ObjectId.zeroId();
+	
+	private final EntryRewriter entryRewriter;
+	
+	private final boolean pathDependent;
+	
+	private final SubtreeFilter subtreeFilter;
+	
+	private final Map<Object, ObjectId> cache;
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * 
+	 * @param entryRewriter
+	 * @param pathDependent true if the entry rewriter looks at the path of the entry and not just its name and id.
+	 * @param maximumCacheSize the number of subtrees to remember, the least recently used are evicted first.
+	 */
+	public MemoizingTreeRewriter(EntryRewriter entryRewriter, boolean pathDependent, final int maximumCacheSize) {
+		this(entryRewriter, pathDependent, null, maximumCacheSize);
+	}
+	
+	/**
+	 * 
+	 * @param entryRewriter
+	 * @param pathDependent true if the entry rewriter looks at the path of the entry and not just its name and id.
+	 * @param subtreeFilter subtrees it excludes are kept as is without being read, may be null.
+	 * @param maximumCacheSize the number of subtrees to remember, the least recently used are evicted first.
+	 */
+	public MemoizingTreeRewriter(EntryRewriter entryRewriter, boolean pathDependent, SubtreeFilter subtreeFilter, final int maximumCacheSize) {
+		
+		this.entryRewriter = entryRewriter;
+		this.pathDependent = pathDependent;
+		this.subtreeFilter = subtreeFilter;
+		
+		this.cache = new LinkedHashMap<Object, ObjectId>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, ObjectId> eldest) {
+				return size() > maximumCacheSize;
+			}
+		};
+	}
+	
+	/**
+	 * 
+	 * @param reader used to read the original trees.
+	 * @param inserter receives the rewritten trees.
+	 * @param treeId the root tree of a commit.
+	 * @return the id of the rewritten tree, treeId if nothing changed.
+	 * @throws IOException
+	 */
+	public ObjectId rewrite (ObjectReader reader, ObjectInserter inserter, AnyObjectId treeId) throws IOException {
+		
+		ObjectId rewrittenTreeId = rewriteTree(reader, inserter, "", treeId.copy());
+		
+		if (rewrittenTreeId == REMOVED)
+			return inserter.insert(new TreeFormatter());
+		
+		return rewrittenTreeId;
+	}
+	
+	private Object cacheKey (String path, ObjectId treeId) {
+		
+		if (pathDependent)
+			return path + "\0" + treeId.name();
+		else
+			return treeId;
+	}
+	
+	private ObjectId rewriteTree (ObjectReader reader, ObjectInserter inserter, String path, ObjectId treeId) throws IOException {
+		
+		Object key = cacheKey(path, treeId);
+		
+		ObjectId cached;
+		
+		synchronized (cache) {
+			cached = cache.get(key);
+		}
+		
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached;
+		}
+		
+		misses.incrementAndGet();
+		
+		CanonicalTreeParser parser = new CanonicalTreeParser(null, reader, treeId);
+		
+		TreeFormatter formatter = new TreeFormatter();
+		
+		boolean changed = false;
+		
+		boolean empty = true;
+		
+		while (!parser.eof()) {
+			
+			FileMode mode = parser.getEntryFileMode();
+			
+			ObjectId entryId = parser.getEntryObjectId();
+			
+			String entryPath;
+			
+			if (path.length() == 0)
+				entryPath = parser.getEntryPathString();
+			else
+				entryPath = path + "/" + parser.getEntryPathString();
+			
+			ObjectId rewrittenId;
+			
+			if (FileMode.TREE.equals(mode) && subtreeFilter != null && !subtreeFilter.include(entryPath)) {
+				rewrittenId = entryId;
+			}
+			else if (FileMode.TREE.equals(mode)) {
+				
+				rewrittenId = rewriteTree(reader, inserter, entryPath, entryId);
+				
+				if (rewrittenId == REMOVED)
+					rewrittenId = null;
+			}
+			else if (FileMode.GITLINK.equals(mode))
+				rewrittenId = entryId;
+			else
+				rewrittenId = entryRewriter.rewriteBlob(entryPath, mode, entryId);
+			
+			if (rewrittenId == null) {
+				changed = true;
+			}
+			else {
+				
+				if (!rewrittenId.equals(entryId))
+					changed = true;
+				
+				formatter.append(parser.getEntryPathBuffer(), 0, parser.getEntryPathLength(), mode, rewrittenId);
+				
+				empty = false;
+			}
+			
+			parser.next();
+		}
+		
+		ObjectId rewrittenTreeId;
+		
+		if (!changed)
+			rewrittenTreeId = treeId;
+		else if (empty)
+			rewrittenTreeId = REMOVED;
+		else
+			rewrittenTreeId = inserter.insert(formatter);
+		
+		synchronized (cache) {
+			cache.put(key, rewrittenTreeId);
+		}
+		
+		return rewrittenTreeId;
+	}
+	
+	/**
+	 * @return the number of subtrees found in the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return the number of subtrees that had to be read and rewritten.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		
+		int cached;
+		
+		synchronized (cache) {
+			cached = cache.size();
+		}
+		
+		return "MemoizingTreeRewriter [hits=" + hits + ", misses=" + misses + ", cached=" + cached + "]";
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceiveCommand.Type;
+
+/**
+ * Combines the deferred deletes and creates into one command per ref name.
+ * 
+ * A delete and a create of the same name become a single update from the deleted id to the created id so the 
+ * ref can be moved in one pass.
+ * 
+ * @author ocleirig
+ *
+ */
+public final class MergedRefUpdates {
+
+	private MergedRefUpdates() {
+	}
+	
+	/**
+	 * 
+	 * @param deletes the deferred deletes.
+	 * @param creates the deferred creates, a later create of the same name wins.
+	 * @return one command per ref name with the deletes first.
+	 */
+	public static List<ReceiveCommand> merge (List<ReceiveCommand> deletes, List<ReceiveCommand> creates) {
+		
+		Map<String, ObjectId> deletedIds = new LinkedHashMap<String, ObjectId>();
+		
+		for (ReceiveCommand delete : deletes) {
+			deletedIds.put(delete.getRefName(), delete.getOldId());
+		}
+		
+		Map<String, ObjectId> createdIds = new LinkedHashMap<String, ObjectId>();
+		
+		for (ReceiveCommand create : creates) {
+			createdIds.put(create.getRefName(), create.getNewId());
+		}
+		
+		List<ReceiveCommand> commands = new ArrayList<ReceiveCommand>(deletedIds.size() + createdIds.size());
+		
+		for (Map.Entry<String, ObjectId> deleted : deletedIds.entrySet()) {
+			
+			ObjectId createdId = createdIds.remove(deleted.getKey());
+			
+			if (createdId == null)
+				commands.add(new ReceiveCommand(deleted.getValue(), ObjectId.zeroId(), deleted.getKey(), Type.DELETE));
+			else
+				commands.add(new ReceiveCommand(deleted.getValue(), createdId, deleted.getKey(), Type.UPDATE_NONFASTFORWARD));
+		}
+		
+		for (Map.Entry<String, ObjectId> created : createdIds.entrySet()) {
+			commands.add(new ReceiveCommand(ObjectId.zeroId(), created.getValue(), created.getKey(), Type.CREATE));
+		}
+		
+		return commands;
+	}
+}
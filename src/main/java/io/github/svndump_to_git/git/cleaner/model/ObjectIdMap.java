@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A small map interface for object id to object id associations like the commit translations.
+ * 
+ * Implementations are expected to be safe for concurrent use.
+ * 
+ * @author ocleirig
+ *
+ */
+public interface ObjectIdMap {
+
+	/**
+	 * 
+	 * @param key
+	 * @return the value stored for the key or null if there isn't one.
+	 */
+	public ObjectId get(AnyObjectId key);
+	
+	/**
+	 * Store the value for the key replacing any existing value.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	public void put(AnyObjectId key, AnyObjectId value);
+	
+	public boolean containsKey(AnyObjectId key);
+	
+	public int size();
+	
+	/**
+	 * Visit each of the entries in no particular order.
+	 * 
+	 * @param visitor
+	 * @throws IOException
+	 */
+	public void forEach(EntryVisitor visitor) throws IOException;
+	
+	/**
+	 * Release any resources held by the map.
+	 */
+	public void close();
+	
+	public interface EntryVisitor {
+		
+		public void visit (ObjectId key, ObjectId value) throws IOException;
+	}
+}
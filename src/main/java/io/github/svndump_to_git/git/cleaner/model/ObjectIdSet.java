@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A small set interface for tracking object ids like the processed commits.
+ * 
+ * Implementations are expected to be safe for concurrent use.
+ * 
+ * @author ocleirig
+ *
+ */
+public interface ObjectIdSet {
+
+	/**
+	 * 
+	 * @param objectId
+	 * @return true if the object id was not already contained.
+	 */
+	public boolean add(AnyObjectId objectId);
+	
+	public boolean contains(AnyObjectId objectId);
+	
+	public int size();
+	
+	/**
+	 * Visit each of the object ids in no particular order.
+	 * 
+	 * @param visitor
+	 * @throws IOException
+	 */
+	public void forEach(Visitor visitor) throws IOException;
+	
+	/**
+	 * Release any resources held by the set.
+	 */
+	public void close();
+	
+	public interface Visitor {
+		
+		public void visit (ObjectId objectId) throws IOException;
+	}
+}
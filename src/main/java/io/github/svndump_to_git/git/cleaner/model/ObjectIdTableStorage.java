@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+/**
+ * Where the slots of a primitive object id table are kept.
+ * 
+ * @author ocleirig
+ *
+ */
+public enum ObjectIdTableStorage {
+
+	/**
+	 * int[] arrays on the java heap.
+	 */
+	HEAP,
+	
+	/**
+	 * Direct byte buffers outside of the java heap.
+	 */
+	DIRECT,
+	
+	/**
+	 * Memory mapped files in a working directory so the operating system can page the table out.
+	 */
+	MAPPED;
+}
@@ -14,6 +14,10 @@
  */
 package io.github.svndump_to_git.git.cleaner.model;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 
 import org.eclipse.jgit.lib.ObjectId;
@@ -26,6 +30,11 @@ import org.eclipse.jgit.lib.ObjectId;
  * 
  * looking up each translation in turn will result in the final or current object id which can then be used.
  * 
+ * When every data source can enumerate its translations the chain is composed once into a single table of 
+ * original id to final id so that each lookup is a single probe regardless of the number of data sources.
+ * 
+ * The composed table is written in the binary translation format and memory mapped so it is not held on the heap.
+ * 
  * @author ocleirig
  *
  */
@@ -33,12 +42,104 @@ public class ObjectIdTranslationService implements ObjectIdTranslation {
 
 	private final List<ObjectIdTranslation>dataSources;
 	
+	private final File workingDirectory;
+	
+	private ObjectIdTranslation composedTranslation;
+	
+	private File composedFile;
+	
 	/**
-	 * @param dataSources2 
+	 * The composed table is written into the default temporary directory.
+	 * 
+	 * @param dataSources the translations in the order they were applied.
+	 * @throws IOException if a data source could not be enumerated.
 	 * 
 	 */
-	public ObjectIdTranslationService(List<ObjectIdTranslation> dataSources) {
+	public ObjectIdTranslationService(List<ObjectIdTranslation> dataSources) throws IOException {
+		this(dataSources, null);
+	}
+	
+	/**
+	 * @param dataSources the translations in the order they were applied.
+	 * @param workingDirectory where the composed table is written, null for the default temporary directory.
+	 * @throws IOException if a data source could not be enumerated or the composed table could not be written.
+	 */
+	public ObjectIdTranslationService(List<ObjectIdTranslation> dataSources, File workingDirectory) throws IOException {
 		this.dataSources = dataSources;
+		this.workingDirectory = workingDirectory;
+		
+		compose();
+	}
+	
+	private void compose() throws IOException {
+		
+		if (dataSources.size() == 1) {
+			// a single source is already composed
+			composedTranslation = dataSources.get(0);
+			return;
+		}
+		
+		for (ObjectIdTranslation delegate : dataSources) {
+			
+			if (!(delegate instanceof ObjectIdTranslationTable))
+				return; // use the chain
+		}
+		
+		if (workingDirectory != null)
+			workingDirectory.mkdirs();
+		
+		File file = File.createTempFile("composed-translations-", ".bin", workingDirectory);
+		
+		final PrimitiveObjectIdMap map = new PrimitiveObjectIdMap(ObjectIdTableStorage.MAPPED, new File (file.getPath() + ".slots"));
+		
+		try {
+			/*
+			 * An id that is not the key of any data source is never translated so the keys of all of the sources 
+			 * are the only ids that need to be composed.
+			 */
+			for (ObjectIdTranslation delegate : dataSources) {
+				
+				((ObjectIdTranslationTable)delegate).forEach(new ObjectIdMap.EntryVisitor() {
+					
+					@Override
+					public void visit(ObjectId key, ObjectId value) throws IOException {
+						
+						if (map.containsKey(key))
+							return;
+						
+						ObjectId finalId = translateByChain(key);
+						
+						if (!finalId.equals(key))
+							map.put(key, finalId);
+					}
+				});
+			}
+			
+			BinaryObjectTranslationWriter.write(file, map);
+		}
+		catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		finally {
+			map.close();
+		}
+		
+		composedFile = file;
+		
+		composedTranslation = new BinaryObjectTranslationDataSource(file.getPath(), false);
+	}
+	
+	private ObjectId translateByChain (ObjectId originalId) {
+		
+		ObjectId currentTranslation = originalId;
+		
+		for (ObjectIdTranslation delegate : dataSources) {
+		
+			currentTranslation = delegate.translateObjectId(currentTranslation);
+		}
+		
+		return currentTranslation;
 	}
 
 	/* (non-Javadoc)
@@ -47,14 +148,67 @@ public class ObjectIdTranslationService implements ObjectIdTranslation {
 	@Override
 	public ObjectId translateObjectId(ObjectId originalId) {
 		
-		ObjectId currentTranslation = originalId;
-		
-		for (ObjectIdTranslation delegate : dataSources) {
+		if (composedTranslation != null)
+			return composedTranslation.translateObjectId(originalId);
+		else
+			return translateByChain(originalId);
+	}
+	
+	/**
+	 * 
+	 * @return true if lookups use a single composed table.
+	 */
+	public boolean isComposed() {
+		return composedTranslation != null;
+	}
+	
+	/**
+	 * Save the composed translations in the binary translation format so that a later run can load a single file instead of the chain.
+	 * 
+	 * @param target
+	 * @throws IOException
+	 */
+	public void save (File target) throws IOException {
 		
-			currentTranslation = delegate.translateObjectId(currentTranslation);
+		if (composedFile != null) {
+			
+			File temporary = new File (target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+			
+			Files.copy(composedFile.toPath(), temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		else if (composedTranslation instanceof ObjectIdTranslationTable) {
+			
+			final PrimitiveObjectIdMap map = new PrimitiveObjectIdMap();
+			
+			((ObjectIdTranslationTable)composedTranslation).forEach(new ObjectIdMap.EntryVisitor() {
+				
+				@Override
+				public void visit(ObjectId key, ObjectId value) throws IOException {
+					map.put(key, value);
+				}
+			});
+			
+			BinaryObjectTranslationWriter.write(target, map);
+			
+			map.close();
 		}
+		else
+			throw new IllegalStateException("the translations can only be saved when every data source can be enumerated");
+	}
+	
+	/**
+	 * Release the composed table.
+	 */
+	public void close() {
 		
-		return currentTranslation;
+		composedTranslation = null;
+		
+		if (composedFile != null && !composedFile.delete())
+			composedFile.deleteOnExit();
+		
+		composedFile = null;
 	}
 
 }
@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+
+/**
+ * An ObjectIdTranslation whose translations can be enumerated.
+ * 
+ * @author ocleirig
+ *
+ */
+public interface ObjectIdTranslationTable extends ObjectIdTranslation {
+
+	/**
+	 * 
+	 * @return the number of translations.
+	 */
+	public int size();
+	
+	/**
+	 * Visit each original object id and its translation.
+	 * 
+	 * @param visitor
+	 * @throws IOException
+	 */
+	public void forEach(ObjectIdMap.EntryVisitor visitor) throws IOException;
+}
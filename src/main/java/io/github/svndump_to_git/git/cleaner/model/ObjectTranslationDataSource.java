@@ -14,8 +14,11 @@
  */
 package io.github.svndump_to_git.git.cleaner.model;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 
 import org.eclipse.jgit.lib.ObjectId;
 
@@ -23,11 +26,11 @@ import org.eclipse.jgit.lib.ObjectId;
  * @author ocleirig
  *
  */
-public class ObjectTranslationDataSource implements ObjectIdTranslation {
+public class ObjectTranslationDataSource implements ObjectIdTranslationTable {
 
 	private String dataSource;
 	
-	private Map<ObjectId, ObjectId>objectTranslationMap = new HashMap<ObjectId, ObjectId>();
+	private ObjectIdMap objectTranslationMap = new PrimitiveObjectIdMap();
 	
 	/**
 	 * 
@@ -35,6 +38,57 @@ public class ObjectTranslationDataSource implements ObjectIdTranslation {
 	public ObjectTranslationDataSource(String dataSource) {
 		this.dataSource = dataSource;
 	}
+	
+	/**
+	 * Load the translations held in the file given.
+	 * 
+	 * Binary translation files are memory mapped, text files (new object id <space> original object id) are read into a primitive table.
+	 * 
+	 * @param objectTranslationDataFile
+	 * @return the translations held in the file.
+	 * @throws IOException
+	 */
+	public static ObjectIdTranslationTable load (String objectTranslationDataFile) throws IOException {
+		
+		if (BinaryObjectTranslationDataSource.isBinaryTranslationFile(new File (objectTranslationDataFile)))
+			return new BinaryObjectTranslationDataSource(objectTranslationDataFile);
+		
+		ObjectTranslationDataSource dataSource = new ObjectTranslationDataSource(objectTranslationDataFile);
+		
+		dataSource.readTextTranslations();
+		
+		return dataSource;
+	}
+
+	/**
+	 * Read the text format written during a rewrite.
+	 * 
+	 * format: new object id <space> original object id
+	 * 
+	 * @throws IOException
+	 */
+	public void readTextTranslations() throws IOException {
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(dataSource), "UTF-8"));
+		
+		try {
+			
+			String line;
+			
+			while ((line = reader.readLine()) != null) {
+				
+				if (line.trim().length() == 0 || line.startsWith("#"))
+					continue; // skip blank lines and comments.
+				
+				String parts[] = line.split(" ");
+				
+				storeObjectTranslation(parts[1].trim(), parts[0].trim());
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
 
 	public void storeObjectTranslation(String originalObjectId, String newObjectId) {
 		
@@ -44,6 +98,23 @@ public class ObjectTranslationDataSource implements ObjectIdTranslation {
 		
 		this.objectTranslationMap.put(original, translated);
 	}
+	
+	/**
+	 * @return the original to new object id translations.
+	 */
+	public ObjectIdMap getObjectTranslationMap() {
+		return objectTranslationMap;
+	}
+
+	@Override
+	public int size() {
+		return objectTranslationMap.size();
+	}
+
+	@Override
+	public void forEach(ObjectIdMap.EntryVisitor visitor) throws IOException {
+		objectTranslationMap.forEach(visitor);
+	}
 
 	@Override
 	public ObjectId translateObjectId(ObjectId originalId) {
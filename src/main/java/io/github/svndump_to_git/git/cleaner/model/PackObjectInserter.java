@@ -0,0 +1,584 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.util.IO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An object inserter that streams the objects into pack files instead of writing loose objects.
+ * 
+ * Each object is stored whole and deflated (no deltas) in a version 2 pack with a version 2 .idx.  A pack is 
+ * finished, and its objects become readable through the repository, on flush(), newReader() or once it grows past the 
+ * size limit, after which the next object starts a new pack.
+ * 
+ * Objects already in the repository or already written by this inserter are skipped.
+ * 
+ * Objects larger than the streaming threshold are deflated from their stream in chunks so they are never held in 
+ * memory whole.
+ * 
+ * Not thread safe; like the other inserters use one per thread.
+ * 
+ * @author ocleirig
+ *
+ */
+public class PackObjectInserter extends ObjectInserter {
+
+	private static final Logger log = LoggerFactory.getLogger(PackObjectInserter.class);
+	
+	private static final byte[] PACK_SIGNATURE = new byte[] {'P', 'A', 'C', 'K'};
+	
+	private static final int PACK_VERSION = 2;
+	
+	private static final int PACK_HEADER_LENGTH = 12;
+	
+	private static final byte[] IDX_SIGNATURE = new byte[] {(byte) 0xff, 't', 'O', 'c'};
+	
+	private static final int IDX_VERSION = 2;
+	
+	/*
+	 * Offsets past this are stored in the 64 bit offset table of the .idx.
+	 */
+	private static final long MAX_32_BIT_OFFSET = 0x7fffffffL;
+	
+	/*
+	 * Smaller objects are read into memory so that the id is known, and a duplicate skipped, before anything is written.
+	 */
+	private static final int STREAMING_THRESHOLD = 1024 * 1024;
+	
+	private final Repository repo;
+	
+	private final File packDirectory;
+	
+	private final long packSizeLimit;
+	
+	private final Deflater deflater;
+	
+	private final ObjectReader existingObjects;
+	
+	private final byte[] deflateBuffer = new byte[8192];
+	
+	private final byte[] readBuffer = new byte[8192];
+	
+	/*
+	 * The objects of the current pack.  Once a pack is renamed into place its objects are found by existingObjects.
+	 */
+	private final ObjectIdOwnerMap<PackEntry> writtenObjects = new ObjectIdOwnerMap<PackEntry>();
+	
+	private final List<PackEntry> packEntries = new ArrayList<PackEntry>();
+	
+	private final CRC32 entryCrc = new CRC32();
+	
+	private File packFile;
+	
+	private FileOutputStream packFileOut;
+	
+	private OutputStream packOut;
+	
+	private long packOffset;
+	
+	private int packCount;
+	
+	private long objectCount;
+	
+	private ObjectInserter packParserInserter;
+
+	/**
+	 * 
+	 * @param repo the repository whose objects/pack directory receives the packs.
+	 * @param packSizeLimit the size in bytes after which a pack is finished and a new one started.
+	 * @param compressionLevel the zlib compression level.
+	 */
+	public PackObjectInserter(Repository repo, long packSizeLimit, int compressionLevel) {
+		
+		this.repo = repo;
+		this.packDirectory = new File (new File (repo.getDirectory(), Constants.OBJECTS), "pack");
+		this.packSizeLimit = packSizeLimit;
+		this.deflater = new Deflater(compressionLevel);
+		this.existingObjects = repo.newObjectReader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ObjectInserter#insert(int, long, java.io.InputStream)
+	 */
+	@Override
+	public ObjectId insert(int objectType, long length, InputStream in) throws IOException {
+		
+		if (length <= STREAMING_THRESHOLD) {
+			
+			byte[] data = new byte[(int) length];
+			
+			IO.readFully(in, data, 0, data.length);
+			
+			return insert(objectType, data, 0, data.length);
+		}
+		
+		if (packOut == null)
+			beginPack();
+		
+		long entryOffset = beginEntry(objectType, length);
+		
+		MessageDigest digest = Constants.newMessageDigest();
+		
+		digest.update(Constants.encodedTypeString(objectType));
+		digest.update((byte) ' ');
+		digest.update(Constants.encodeASCII(length));
+		digest.update((byte) 0);
+		
+		deflater.reset();
+		
+		try {
+			
+			long remaining = length;
+			
+			while (remaining > 0) {
+				
+				int read = in.read(readBuffer, 0, (int) Math.min(readBuffer.length, remaining));
+				
+				if (read <= 0)
+					throw new EOFException("object stream ended " + remaining + " bytes early");
+				
+				digest.update(readBuffer, 0, read);
+				
+				deflater.setInput(readBuffer, 0, read);
+				
+				while (!deflater.needsInput())
+					writeDeflated();
+				
+				remaining -= read;
+			}
+			
+			deflater.finish();
+			
+			while (!deflater.finished())
+				writeDeflated();
+			
+		} catch (IOException e) {
+			rollbackTo(entryOffset);
+			throw e;
+		}
+		
+		ObjectId id = ObjectId.fromRaw(digest.digest());
+		
+		// only known once the whole object has been written
+		if (writtenObjects.contains(id) || existingObjects.has(id)) {
+			rollbackTo(entryOffset);
+			return id;
+		}
+		
+		return endEntry(id, entryOffset);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ObjectInserter#insert(int, byte[], int, int)
+	 */
+	@Override
+	public ObjectId insert(int objectType, byte[] data, int offset, int length) throws IOException {
+		
+		ObjectId id = idFor(objectType, data, offset, length);
+		
+		if (writtenObjects.contains(id) || existingObjects.has(id))
+			return id;
+		
+		if (packOut == null)
+			beginPack();
+		
+		long entryOffset = beginEntry(objectType, length);
+		
+		deflater.reset();
+		deflater.setInput(data, offset, length);
+		deflater.finish();
+		
+		while (!deflater.finished())
+			writeDeflated();
+		
+		return endEntry(id, entryOffset);
+	}
+	
+	/*
+	 * Start an entry at the end of the pack.
+	 * 
+	 * @return the offset of the entry.
+	 */
+	private long beginEntry(int objectType, long length) throws IOException {
+		
+		long entryOffset = packOffset;
+		
+		entryCrc.reset();
+		
+		writeEntryHeader(objectType, length);
+		
+		return entryOffset;
+	}
+	
+	private void writeDeflated() throws IOException {
+		
+		int deflated = deflater.deflate(deflateBuffer);
+		
+		writePackBytes(deflateBuffer, 0, deflated);
+	}
+	
+	private ObjectId endEntry(ObjectId id, long entryOffset) throws IOException {
+		
+		PackEntry entry = new PackEntry(id, entryOffset);
+		
+		entry.crc = (int) entryCrc.getValue();
+		
+		packEntries.add(entry);
+		writtenObjects.add(entry);
+		
+		objectCount++;
+		
+		if (packOffset >= packSizeLimit)
+			finishPack();
+		
+		return id;
+	}
+	
+	/*
+	 * Drop the partly written or duplicate entry at the end of the pack.
+	 */
+	private void rollbackTo(long entryOffset) throws IOException {
+		
+		packOut.flush();
+		
+		packFileOut.getChannel().truncate(entryOffset);
+		packFileOut.getChannel().position(entryOffset);
+		
+		packOffset = entryOffset;
+	}
+	
+	/*
+	 * type and inflated size: 3 bits of type and 4 bits of size in the first byte, then 7 bits of size per byte.
+	 */
+	private void writeEntryHeader(int objectType, long size) throws IOException {
+		
+		byte[] header = new byte[10];
+		
+		int n = 0;
+		
+		int c = (objectType << 4) | (int) (size & 0x0f);
+		
+		size >>>= 4;
+		
+		while (size > 0) {
+			header[n++] = (byte) (c | 0x80);
+			c = (int) (size & 0x7f);
+			size >>>= 7;
+		}
+		
+		header[n++] = (byte) c;
+		
+		writePackBytes(header, 0, n);
+	}
+	
+	private void writePackBytes(byte[] bytes, int offset, int length) throws IOException {
+		
+		packOut.write(bytes, offset, length);
+		
+		entryCrc.update(bytes, offset, length);
+		
+		packOffset += length;
+	}
+	
+	private void beginPack() throws IOException {
+		
+		packDirectory.mkdirs();
+		
+		packFile = File.createTempFile("tmp_cleaner_", ".pack", packDirectory);
+		
+		packFileOut = new FileOutputStream(packFile);
+		
+		packOut = new BufferedOutputStream(packFileOut, 64 * 1024);
+		
+		// the object count is written into the header once the pack is finished
+		DataOutputStream header = new DataOutputStream(packOut);
+		
+		header.write(PACK_SIGNATURE);
+		header.writeInt(PACK_VERSION);
+		header.writeInt(0);
+		header.flush();
+		
+		packOffset = PACK_HEADER_LENGTH;
+		
+		packEntries.clear();
+	}
+	
+	/*
+	 * Patch the object count, append the trailer, write the .idx and rename both into place.
+	 */
+	private void finishPack() throws IOException {
+		
+		packOut.close();
+		packOut = null;
+		packFileOut = null;
+		
+		byte[] packChecksum;
+		
+		RandomAccessFile pack = new RandomAccessFile(packFile, "rw");
+		
+		try {
+			pack.seek(8);
+			pack.writeInt(packEntries.size());
+			
+			MessageDigest digest = Constants.newMessageDigest();
+			
+			byte[] buffer = new byte[64 * 1024];
+			
+			pack.seek(0);
+			
+			int read;
+			
+			while ((read = pack.read(buffer)) != -1)
+				digest.update(buffer, 0, read);
+			
+			packChecksum = digest.digest();
+			
+			pack.write(packChecksum);
+			
+			pack.getFD().sync();
+		}
+		finally {
+			pack.close();
+		}
+		
+		Collections.sort(packEntries);
+		
+		File indexFile = new File (packDirectory, packFile.getName().replaceFirst("\\.pack$", ".idx"));
+		
+		writeIndex(indexFile, packChecksum);
+		
+		String packName = "pack-" + ObjectId.fromRaw(packChecksum).name();
+		
+		File finalPackFile = new File (packDirectory, packName + ".pack");
+		File finalIndexFile = new File (packDirectory, packName + ".idx");
+		
+		// the .idx makes the pack visible so it goes last
+		if (!packFile.renameTo(finalPackFile) || !indexFile.renameTo(finalIndexFile))
+			throw new IOException("failed to rename " + packFile + " to " + finalPackFile);
+		
+		finalPackFile.setReadOnly();
+		finalIndexFile.setReadOnly();
+		
+		packCount++;
+		
+		log.info("wrote " + finalPackFile + " with " + packEntries.size() + " objects");
+		
+		packEntries.clear();
+		writtenObjects.clear();
+		packFile = null;
+	}
+	
+	private void discardPack() {
+		
+		try {
+			packOut.close();
+		} catch (IOException e) {
+			log.warn("failed to close " + packFile, e);
+		}
+		
+		packOut = null;
+		packFileOut = null;
+		
+		if (!packFile.delete())
+			log.warn("failed to delete " + packFile);
+		
+		packEntries.clear();
+		writtenObjects.clear();
+		packFile = null;
+	}
+	
+	private void writeIndex(File indexFile, byte[] packChecksum) throws IOException {
+		
+		MessageDigest digest = Constants.newMessageDigest();
+		
+		FileOutputStream fileOut = new FileOutputStream(indexFile);
+		
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(fileOut, digest)));
+			
+			out.write(IDX_SIGNATURE);
+			out.writeInt(IDX_VERSION);
+			
+			int[] fanout = new int[256];
+			
+			for (PackEntry entry : packEntries)
+				fanout[entry.getFirstByte()]++;
+			
+			int total = 0;
+			
+			for (int i = 0; i < fanout.length; i++) {
+				total += fanout[i];
+				out.writeInt(total);
+			}
+			
+			byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+			
+			for (PackEntry entry : packEntries) {
+				entry.copyRawTo(rawId, 0);
+				out.write(rawId);
+			}
+			
+			for (PackEntry entry : packEntries)
+				out.writeInt(entry.crc);
+			
+			List<Long> largeOffsets = new ArrayList<Long>();
+			
+			for (PackEntry entry : packEntries) {
+				
+				if (entry.offset > MAX_32_BIT_OFFSET) {
+					out.writeInt(0x80000000 | largeOffsets.size());
+					largeOffsets.add(entry.offset);
+				}
+				else
+					out.writeInt((int) entry.offset);
+			}
+			
+			for (Long largeOffset : largeOffsets)
+				out.writeLong(largeOffset);
+			
+			out.write(packChecksum);
+			
+			out.flush();
+			
+			fileOut.write(digest.digest());
+			
+			fileOut.getFD().sync();
+		}
+		finally {
+			fileOut.close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ObjectInserter#newPackParser(java.io.InputStream)
+	 */
+	@Override
+	public PackParser newPackParser(InputStream in) throws IOException {
+		
+		// a received pack is indexed and kept as is by the repository's own inserter
+		if (packParserInserter == null)
+			packParserInserter = repo.newObjectInserter();
+		
+		return packParserInserter.newPackParser(in);
+	}
+
+	/**
+	 * The current pack is finished first so that every object inserted so far is readable.
+	 * 
+	 * @see org.eclipse.jgit.lib.ObjectInserter#newReader()
+	 */
+	@Override
+	public ObjectReader newReader() {
+		
+		try {
+			flush();
+		} catch (IOException e) {
+			throw new RuntimeException("PackObjectInserter.newReader(): failed to finish " + packFile, e);
+		}
+		
+		return existingObjects.newReader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ObjectInserter#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		
+		if (packOut == null)
+			return;
+		
+		// a streamed object that turned out to be a duplicate can leave the pack empty
+		if (packEntries.isEmpty())
+			discardPack();
+		else
+			finishPack();
+	}
+
+	/**
+	 * Discards the objects written since the last flush.
+	 * 
+	 * @see org.eclipse.jgit.lib.ObjectInserter#close()
+	 */
+	@Override
+	public void close() {
+		
+		if (packOut != null)
+			discardPack();
+		
+		deflater.end();
+		
+		existingObjects.close();
+		
+		if (packParserInserter != null)
+			packParserInserter.close();
+	}
+	
+	/**
+	 * @return the number of packs finished.
+	 */
+	public int getPackCount() {
+		return packCount;
+	}
+	
+	/**
+	 * @return the number of objects written into packs.
+	 */
+	public long getObjectCount() {
+		return objectCount;
+	}
+	
+	private static final class PackEntry extends ObjectIdOwnerMap.Entry {
+		
+		private final long offset;
+		
+		private int crc;
+
+		private PackEntry(ObjectId id, long offset) {
+			super(id);
+			this.offset = offset;
+		}
+	}
+}
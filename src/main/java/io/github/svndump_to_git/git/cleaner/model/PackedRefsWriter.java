@@ -0,0 +1,183 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * Applies ref commands by writing a new packed-refs file.
+ * 
+ * The current refs with the commands applied are written into packed-refs.lock, which is then moved over 
+ * packed-refs.  The refs are read while holding the lock and if the current id of any ref differs from the old id 
+ * of its command nothing is written.
+ * 
+ * The loose ref files of the names changed are removed after the move since a loose ref takes precedence over the 
+ * packed one.  Like git's own packed ref transaction this is not atomic: until the loose file of a ref is deleted 
+ * readers still see its old id, and if the process dies in between the old id stays visible.  Deleting the loose 
+ * files first would instead expose the previous packed id, or no ref at all, if the move failed.
+ * 
+ * Nothing else may be updating the refs of the repository at the same time.
+ * 
+ * @author ocleirig
+ *
+ */
+public final class PackedRefsWriter {
+
+	private static final String PACKED_REFS_HEADER = "# pack-refs with: peeled fully-peeled sorted \n";
+	
+	private PackedRefsWriter() {
+	}
+
+	/**
+	 * 
+	 * @param repo the repository whose refs are updated.
+	 * @param commands the merged commands.
+	 * @throws IOException if packed-refs is locked or could not be written.
+	 */
+	public static void apply (Repository repo, List<ReceiveCommand> commands) throws IOException {
+		
+		File packedRefs = new File (repo.getDirectory(), Constants.PACKED_REFS);
+		File lock = new File (repo.getDirectory(), Constants.PACKED_REFS + ".lock");
+		
+		if (!lock.createNewFile())
+			throw new IOException(lock + " exists, is another process updating the refs?");
+		
+		try {
+			// read under the lock so that the old ids are compared against what gets rewritten
+			repo.getRefDatabase().refresh();
+			
+			// sorted by name as required by the sorted trait
+			Map<String, ObjectId> refs = new TreeMap<String, ObjectId>();
+			
+			for (Ref ref : repo.getRefDatabase().getRefs(RefDatabase.ALL).values()) {
+				
+				if (ref.isSymbolic() || ref.getObjectId() == null)
+					continue;
+				
+				refs.put(ref.getName(), ref.getObjectId());
+			}
+			
+			checkOldIds(refs, commands);
+			
+			for (ReceiveCommand command : commands) {
+				
+				if (command.getType() == ReceiveCommand.Type.DELETE)
+					refs.remove(command.getRefName());
+				else
+					refs.put(command.getRefName(), command.getNewId());
+			}
+			
+			writePackedRefs(repo, lock, refs);
+			
+			Files.move(lock.toPath(), packedRefs.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			lock.delete();
+		}
+		
+		for (ReceiveCommand command : commands) {
+			
+			File looseRef = new File (repo.getDirectory(), command.getRefName());
+			
+			if (looseRef.isFile() && !looseRef.delete())
+				throw new IOException("failed to delete the loose ref " + looseRef);
+			
+			command.setResult(ReceiveCommand.Result.OK);
+		}
+		
+		repo.getRefDatabase().refresh();
+	}
+	
+	/*
+	 * Compare and swap: each ref must still be at the old id of its command, a create needs the ref to be absent.
+	 */
+	private static void checkOldIds(Map<String, ObjectId> refs, List<ReceiveCommand> commands) throws IOException {
+		
+		StringBuilder mismatches = new StringBuilder();
+		
+		for (ReceiveCommand command : commands) {
+			
+			ObjectId currentId = refs.get(command.getRefName());
+			
+			if (currentId == null)
+				currentId = ObjectId.zeroId();
+			
+			if (currentId.equals(command.getOldId()))
+				continue;
+			
+			command.setResult(ReceiveCommand.Result.LOCK_FAILURE);
+			
+			if (mismatches.length() > 0)
+				mismatches.append(", ");
+			
+			mismatches.append(command.getRefName() + " is at " + currentId.name() + " not " + command.getOldId().name());
+		}
+		
+		if (mismatches.length() > 0)
+			throw new IOException("refs changed since the commands were prepared, no refs were changed: " + mismatches);
+	}
+
+	private static void writePackedRefs(Repository repo, File target, Map<String, ObjectId> refs) throws IOException {
+		
+		RevWalk walk = new RevWalk(repo);
+		
+		FileOutputStream fileOut = new FileOutputStream(target);
+		
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(fileOut, "UTF-8"));
+			
+			out.write(PACKED_REFS_HEADER);
+			
+			for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+				
+				out.write(ref.getValue().name() + " " + ref.getKey() + "\n");
+				
+				RevObject object = walk.parseAny(ref.getValue());
+				
+				// fully-peeled: every annotated tag is followed by the object it points at
+				if (object instanceof RevTag)
+					out.write("^" + walk.peel(object).name() + "\n");
+			}
+			
+			out.flush();
+			
+			fileOut.getFD().sync();
+		}
+		finally {
+			fileOut.close();
+			walk.close();
+		}
+	}
+}
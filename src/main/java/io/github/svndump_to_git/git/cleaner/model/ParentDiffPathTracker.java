@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Finds the commits that have at least one matching path.
+ * 
+ * The matching paths of each commit are the paths of its first parent adjusted by a diff of the two trees so only 
+ * the changed subtrees are read.  Unchanged path sets are shared with the parent and the set of a parent is dropped 
+ * once all of its children have been visited.
+ * 
+ * @author ocleirig
+ *
+ */
+public class ParentDiffPathTracker {
+
+	/**
+	 * Decides which paths are tracked.
+	 */
+	public interface PathMatcher {
+		
+		/**
+		 * 
+		 * @param path
+		 * @param mode the mode of the entry in the commit, FileMode.MISSING if it was removed.
+		 * @return true if the entry matches.
+		 */
+		public boolean matches (String path, FileMode mode);
+	}
+	
+	private final PathMatcher matcher;
+	
+	private final TreeFilter pushdownFilter;
+	
+	private long diffedEntries = 0;
+	
+	/**
+	 * 
+	 * @param matcher
+	 */
+	public ParentDiffPathTracker(PathMatcher matcher) {
+		this(matcher, null);
+	}
+	
+	/**
+	 * 
+	 * @param matcher
+	 * @param pushdownFilter optional filter that skips subtrees which cannot contain a match, null to read every changed subtree.
+	 */
+	public ParentDiffPathTracker(PathMatcher matcher, TreeFilter pushdownFilter) {
+		this.matcher = matcher;
+		this.pushdownFilter = pushdownFilter;
+	}
+	
+	/**
+	 * 
+	 * @param reader
+	 * @param commits in topological order, parents before children.
+	 * @param affectedCommits receives the commits with at least one matching path.
+	 * @throws IOException
+	 */
+	public void findAffectedCommits (ObjectReader reader, List<RevCommit> commits, ObjectIdSet affectedCommits) throws IOException {
+		
+		// the number of children still to be visited
+		Map<ObjectId, Integer> pendingChildren = new HashMap<ObjectId, Integer>();
+		
+		for (RevCommit commit : commits) {
+			
+			if (commit.getParentCount() > 0) {
+				
+				ObjectId firstParentId = commit.getParent(0).getId();
+				
+				Integer pending = pendingChildren.get(firstParentId);
+				
+				pendingChildren.put(firstParentId, pending == null ? 1 : pending + 1);
+			}
+		}
+		
+		Map<ObjectId, Set<String>> pathsByCommit = new HashMap<ObjectId, Set<String>>();
+		
+		for (RevCommit commit : commits) {
+			
+			Set<String> parentPaths = null;
+			
+			ObjectId firstParentId = null;
+			
+			if (commit.getParentCount() > 0) {
+				
+				firstParentId = commit.getParent(0).getId();
+				
+				parentPaths = pathsByCommit.get(firstParentId);
+			}
+			
+			TreeWalk tw = new TreeWalk(reader);
+			
+			tw.setRecursive(true);
+			
+			Set<String> paths;
+			
+			if (parentPaths != null) {
+				
+				// only descend into what differs from the first parent
+				if (pushdownFilter != null)
+					tw.setFilter(AndTreeFilter.create(TreeFilter.ANY_DIFF, pushdownFilter));
+				else
+					tw.setFilter(TreeFilter.ANY_DIFF);
+				
+				tw.addTree(commit.getParent(0).getTree());
+				tw.addTree(commit.getTree());
+				
+				paths = parentPaths;
+			}
+			else {
+				// a root commit or a parent outside of the walk
+				if (pushdownFilter != null)
+					tw.setFilter(pushdownFilter);
+				
+				tw.addTree(new EmptyTreeIterator());
+				tw.addTree(commit.getTree());
+				
+				paths = Collections.emptySet();
+			}
+			
+			boolean copied = false;
+			
+			while (tw.next()) {
+				
+				diffedEntries++;
+				
+				String path = tw.getPathString();
+				
+				boolean wasMatch = paths.contains(path);
+				
+				boolean isMatch = matcher.matches(path, tw.getFileMode(1));
+				
+				if (wasMatch == isMatch)
+					continue;
+				
+				if (!copied) {
+					paths = new HashSet<String>(paths);
+					copied = true;
+				}
+				
+				if (isMatch)
+					paths.add(path);
+				else
+					paths.remove(path);
+			}
+			
+			tw.close();
+			
+			if (!paths.isEmpty())
+				affectedCommits.add(commit);
+			
+			if (pendingChildren.containsKey(commit.getId()))
+				pathsByCommit.put(commit.getId(), paths);
+			
+			if (parentPaths != null) {
+				
+				int pending = pendingChildren.get(firstParentId) - 1;
+				
+				if (pending == 0) {
+					pendingChildren.remove(firstParentId);
+					pathsByCommit.remove(firstParentId);
+				}
+				else
+					pendingChildren.put(firstParentId, pending);
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of changed entries looked at.
+	 */
+	public long getDiffedEntries() {
+		return diffedEntries;
+	}
+}
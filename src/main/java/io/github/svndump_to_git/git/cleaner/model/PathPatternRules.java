@@ -0,0 +1,295 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An ordered list of path rules compiled into a single regular expression.
+ * 
+ * Each rule is a glob (glob: case sensitive, iglob: case insensitive) or a java regular expression (regex:) 
+ * matched against the full path of a blob.  The first rule that matches decides the action.
+ * 
+ * Glob syntax: ** matches across directories, * and ? match within a single path element.
+ * 
+ * @author ocleirig
+ *
+ */
+public class PathPatternRules {
+
+	/**
+	 * What happens to a blob whose path matches the rule.
+	 */
+	public static enum Action {
+		/** replace the content of the blob */
+		REPLACE, 
+		/** remove the blob from the tree */
+		REMOVE;
+	}
+	
+	/**
+	 * A single path rule.
+	 */
+	public static final class Rule {
+		
+		private final Action action;
+		
+		private final String pattern;
+		
+		private final String replacementContent;
+		
+		private final int group;
+		
+		private Rule(Action action, String pattern, String replacementContent, int group) {
+			this.action = action;
+			this.pattern = pattern;
+			this.replacementContent = replacementContent;
+			this.group = group;
+		}
+
+		public Action getAction() {
+			return action;
+		}
+
+		/**
+		 * @return the pattern as given including its glob:, iglob: or regex: prefix.
+		 */
+		public String getPattern() {
+			return pattern;
+		}
+
+		/**
+		 * @return the replacement content for a REPLACE rule, null for a REMOVE rule.
+		 */
+		public String getReplacementContent() {
+			return replacementContent;
+		}
+
+		@Override
+		public String toString() {
+			return action + " " + pattern;
+		}
+	}
+	
+	private final List<Rule> rules;
+	
+	private final Pattern compiledPattern;
+	
+	private PathPatternRules(List<Rule> rules, Pattern compiledPattern) {
+		this.rules = rules;
+		this.compiledPattern = compiledPattern;
+	}
+	
+	/**
+	 * Parse the rule lines.
+	 * 
+	 * format: replace <space> pattern <space> replacement content | remove <space> pattern
+	 * 
+	 * Blank lines and lines whose first non blank character is # are ignored.
+	 * 
+	 * @param lines
+	 * @return the compiled rules.
+	 * @throws IllegalArgumentException if a line is not a valid rule.
+	 */
+	public static PathPatternRules parse (List<String> lines) {
+		
+		List<Rule> rules = new ArrayList<Rule>();
+		
+		StringBuilder combinedPattern = new StringBuilder();
+		
+		// group zero is the whole match
+		int nextGroup = 1;
+		
+		for (String line : lines) {
+			
+			String trimmedLine = line.trim();
+			
+			if (trimmedLine.length() == 0 || trimmedLine.startsWith("#"))
+				continue; // skip blank lines and comments, indented or not.
+			
+			String parts[] = trimmedLine.split("\\s+", 3);
+			
+			if (parts.length < 2)
+				throw new IllegalArgumentException("invalid path rule: " + line);
+			
+			Action action = Action.valueOf(parts[0].toUpperCase());
+			
+			String replacementContent = null;
+			
+			if (action == Action.REPLACE) {
+				
+				if (parts.length != 3)
+					throw new IllegalArgumentException("missing replacement content: " + line);
+				
+				replacementContent = parts[2];
+			}
+			else if (parts.length != 2)
+				throw new IllegalArgumentException("unexpected content after a remove rule: " + line);
+			
+			String regex = toRegex(parts[1]);
+			
+			// the groups of the rule's own expression shift the groups of the rules after it
+			int ruleGroups = Pattern.compile(regex).matcher("").groupCount();
+			
+			if (combinedPattern.length() > 0)
+				combinedPattern.append("|");
+			
+			combinedPattern.append("(").append(regex).append(")");
+			
+			rules.add(new Rule(action, parts[1], replacementContent, nextGroup));
+			
+			nextGroup += 1 + ruleGroups;
+		}
+		
+		if (rules.isEmpty())
+			throw new IllegalArgumentException("no path rules given");
+		
+		return new PathPatternRules(Collections.unmodifiableList(rules), Pattern.compile(combinedPattern.toString()));
+	}
+	
+	/**
+	 * A single replace rule whose replacement content is used as given rather than parsed from a rule line.
+	 * 
+	 * @param typedPattern glob:, iglob: or regex: pattern.
+	 * @param replacementContent the content or @<file>
+	 * @return the compiled rule.
+	 */
+	public static PathPatternRules replace (String typedPattern, String replacementContent) {
+		
+		Rule rule = new Rule(Action.REPLACE, typedPattern, replacementContent, 1);
+		
+		return new PathPatternRules(Collections.singletonList(rule), Pattern.compile("(" + toRegex(typedPattern) + ")"));
+	}
+	
+	/*
+	 * Convert the typed pattern into a regular expression for the full path.
+	 */
+	private static String toRegex (String typedPattern) {
+		
+		if (typedPattern.startsWith("regex:"))
+			return typedPattern.substring("regex:".length());
+		else if (typedPattern.startsWith("glob:"))
+			return globToRegex(typedPattern.substring("glob:".length()));
+		else if (typedPattern.startsWith("iglob:"))
+			return "(?i:" + globToRegex(typedPattern.substring("iglob:".length())) + ")";
+		else
+			throw new IllegalArgumentException("path patterns must start with glob:, iglob: or regex: " + typedPattern);
+	}
+	
+	static String globToRegex (String glob) {
+		
+		StringBuilder regex = new StringBuilder();
+		
+		int i = 0;
+		
+		while (i < glob.length()) {
+			
+			char c = glob.charAt(i);
+			
+			if (glob.startsWith("**/", i)) {
+				regex.append("(?:.*/)?");
+				i += 3;
+			}
+			else if (glob.startsWith("**", i)) {
+				regex.append(".*");
+				i += 2;
+			}
+			else if (c == '*') {
+				regex.append("[^/]*");
+				i++;
+			}
+			else if (c == '?') {
+				regex.append("[^/]");
+				i++;
+			}
+			else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+				i++;
+			}
+		}
+		
+		return regex.toString();
+	}
+	
+	/**
+	 * 
+	 * @param path the full path of a blob.
+	 * @return the first rule that matches the path or null.
+	 */
+	public Rule match (String path) {
+		
+		Matcher matcher = compiledPattern.matcher(path);
+		
+		if (!matcher.matches())
+			return null;
+		
+		for (Rule rule : rules) {
+			
+			if (matcher.group(rule.group) != null)
+				return rule;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * A rule set that only looks at file names rewrites a subtree the same way wherever it is found.
+	 * 
+	 * @return true if every rule is a glob of the form **&#47;name-pattern.
+	 */
+	public boolean isNameOnly () {
+		
+		for (Rule rule : rules) {
+			
+			String glob;
+			
+			if (rule.pattern.startsWith("glob:"))
+				glob = rule.pattern.substring("glob:".length());
+			else if (rule.pattern.startsWith("iglob:"))
+				glob = rule.pattern.substring("iglob:".length());
+			else
+				return false;
+			
+			if (!glob.startsWith("**/") || glob.indexOf('/', 3) != -1 || glob.indexOf("**", 3) != -1)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Whether any path below the directory could match.
+	 * 
+	 * Uses the matcher's hitEnd: if matching the directory prefix fails without reaching the end of the input 
+	 * then no longer path starting with it can match either.
+	 * 
+	 * @param directoryPath the full path of a directory.
+	 * @return false if no blob below the directory can match any rule.
+	 */
+	public boolean couldMatchBelow (String directoryPath) {
+		
+		Matcher matcher = compiledPattern.matcher(directoryPath + "/");
+		
+		return matcher.matches() || matcher.hitEnd();
+	}
+	
+	public List<Rule> getRules() {
+		return rules;
+	}
+}
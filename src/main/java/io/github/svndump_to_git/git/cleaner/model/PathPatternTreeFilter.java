@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * TreeFilter for the path rules: subtrees are only entered if a path below them could match a rule.
+ * 
+ * @author ocleirig
+ *
+ */
+public class PathPatternTreeFilter extends TreeFilter {
+
+	private final PathPatternRules rules;
+	
+	/**
+	 * @param rules
+	 */
+	public PathPatternTreeFilter(PathPatternRules rules) {
+		this.rules = rules;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.treewalk.filter.TreeFilter#include(org.eclipse.jgit.treewalk.TreeWalk)
+	 */
+	@Override
+	public boolean include(TreeWalk walker) throws MissingObjectException,
+			IncorrectObjectTypeException, IOException {
+		
+		if (walker.isSubtree())
+			return rules.couldMatchBelow(walker.getPathString());
+		
+		return rules.match(walker.getPathString()) != null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.treewalk.filter.TreeFilter#shouldBeRecursive()
+	 */
+	@Override
+	public boolean shouldBeRecursive() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.treewalk.filter.TreeFilter#clone()
+	 */
+	@Override
+	public TreeFilter clone() {
+		// no state beyond the immutable rules
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "PathPatternTreeFilter " + rules.getRules();
+	}
+}
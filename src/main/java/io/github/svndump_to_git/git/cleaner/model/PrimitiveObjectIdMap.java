@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * ObjectIdMap that keeps the key and value ids inline in a primitive table.
+ * 
+ * Each entry costs 40 bytes per slot instead of the two ObjectId instances and the hash map entry of a java.util.HashMap.
+ * 
+ * @author ocleirig
+ *
+ */
+public class PrimitiveObjectIdMap extends PrimitiveObjectIdTable implements ObjectIdMap {
+
+	/**
+	 * A map held on the java heap.
+	 */
+	public PrimitiveObjectIdMap() {
+		this(ObjectIdTableStorage.HEAP, null);
+	}
+	
+	/**
+	 * 
+	 * @param storage where the slots are kept.
+	 * @param directory the working directory for a MAPPED table, ignored otherwise.
+	 */
+	public PrimitiveObjectIdMap(ObjectIdTableStorage storage, File directory) {
+		super(5, storage, directory);
+	}
+
+	@Override
+	public ObjectId get(AnyObjectId key) {
+		
+		int[] value = find(toKeyWords(key));
+		
+		if (value == null)
+			return null;
+		else
+			return toObjectId(value, 0);
+	}
+
+	@Override
+	public void put(AnyObjectId key, AnyObjectId value) {
+		store(toKeyWords(key), toValueWords(value));
+	}
+
+	@Override
+	public boolean containsKey(AnyObjectId key) {
+		return find(toKeyWords(key)) != null;
+	}
+
+	@Override
+	public void forEach(final EntryVisitor visitor) throws IOException {
+		
+		visitSlots(new SlotVisitor() {
+			
+			@Override
+			public void visit(int[] slots, int offset) throws IOException {
+				visitor.visit(toObjectId(slots, offset), toObjectId(slots, offset + 5));
+			}
+		});
+	}
+	
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+
+/**
+ * ObjectIdSet that keeps the ids inline in a primitive table at 20 bytes per slot.
+ * 
+ * @author ocleirig
+ *
+ */
+public class PrimitiveObjectIdSet extends PrimitiveObjectIdTable implements ObjectIdSet {
+
+	private static final int[] NO_VALUE = new int[0];
+	
+	/**
+	 * A set held on the java heap.
+	 */
+	public PrimitiveObjectIdSet() {
+		this(ObjectIdTableStorage.HEAP, null);
+	}
+	
+	/**
+	 * 
+	 * @param storage where the slots are kept.
+	 * @param directory the working directory for a MAPPED table, ignored otherwise.
+	 */
+	public PrimitiveObjectIdSet(ObjectIdTableStorage storage, File directory) {
+		super(0, storage, directory);
+	}
+
+	@Override
+	public boolean add(AnyObjectId objectId) {
+		return store(toKeyWords(objectId), NO_VALUE);
+	}
+
+	@Override
+	public boolean contains(AnyObjectId objectId) {
+		return find(toKeyWords(objectId)) != null;
+	}
+
+	@Override
+	public void forEach(final Visitor visitor) throws IOException {
+		
+		visitSlots(new SlotVisitor() {
+			
+			@Override
+			public void visit(int[] slots, int offset) throws IOException {
+				visitor.visit(toObjectId(slots, offset));
+			}
+		});
+	}
+	
+}
@@ -0,0 +1,479 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Open addressing hash table that stores the 20 byte object ids inline as 5 ints per key.
+ * 
+ * The slots of each segment are held in one flat IntBuffer which can be backed by an int[], a direct byte buffer or a 
+ * memory mapped file.  An all zero key marks an empty slot so the zero id can't be stored.
+ * 
+ * The table is split into segments that are locked independently so that it can be shared by the rewrite workers.
+ * 
+ * A MAPPED table keeps its segment files in a new directory below the working directory it is given, so the files 
+ * left behind by a run that was killed are never mapped back in by the next one.
+ * 
+ * @author ocleirig
+ *
+ */
+abstract class PrimitiveObjectIdTable {
+	
+	private static final int KEY_INTS = 5;
+	
+	private static final int SEGMENT_BITS = 6;
+	
+	private static final int INITIAL_SEGMENT_CAPACITY = 256;
+	
+	/*
+	 * Keeps a mapped segment under the 2 GB limit of a single mapping.
+	 */
+	private static final int MAX_SEGMENT_CAPACITY = 1 << 25;
+	
+	private final int valueInts;
+	
+	private final int slotInts;
+	
+	private final ObjectIdTableStorage storage;
+	
+	private final File parentDirectory;
+	
+	private final File directory;
+	
+	private final Segment[] segments;
+	
+	protected PrimitiveObjectIdTable(int valueInts, ObjectIdTableStorage storage, File directory) {
+		
+		this.valueInts = valueInts;
+		this.slotInts = KEY_INTS + valueInts;
+		this.storage = storage;
+		this.parentDirectory = directory;
+		
+		if (storage == ObjectIdTableStorage.MAPPED) {
+			
+			if (directory == null)
+				throw new IllegalArgumentException("a directory is required for a memory mapped table");
+			
+			directory.mkdirs();
+			
+			try {
+				this.directory = Files.createTempDirectory(directory.toPath(), "table-").toFile();
+			} catch (IOException e) {
+				throw new RuntimeException("PrimitiveObjectIdTable: failed to create a table directory in " + directory, e);
+			}
+			
+			// deleted in the reverse order so the segment files registered later go first
+			directory.deleteOnExit();
+			this.directory.deleteOnExit();
+		}
+		else
+			this.directory = null;
+		
+		segments = new Segment[1 << SEGMENT_BITS];
+		
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment(i);
+		}
+	}
+	
+	/*
+	 * Per thread scratch space so that converting an id for a lookup doesn't allocate.
+	 */
+	private static final ThreadLocal<WordBuffers> WORD_BUFFERS = new ThreadLocal<WordBuffers>() {
+		
+		/* (non-Javadoc)
+		 * @see java.lang.ThreadLocal#initialValue()
+		 */
+		@Override
+		protected WordBuffers initialValue() {
+			return new WordBuffers();
+		}
+	};
+	
+	private static final int[] NO_WORDS = new int[0];
+	
+	/**
+	 * The words of the id held in a per thread buffer.  The buffer is reused by the next call on the same thread so it 
+	 * must not be retained; find and store only read it.
+	 * 
+	 * @param objectId
+	 * @return the 5 words of the object id.
+	 */
+	protected static int[] toKeyWords(AnyObjectId objectId) {
+		
+		WordBuffers buffers = WORD_BUFFERS.get();
+		
+		return buffers.decode(objectId, buffers.key);
+	}
+	
+	/**
+	 * Like {@link #toKeyWords(AnyObjectId)} but into a second buffer so that a key and an object id value can be 
+	 * passed to store together.
+	 * 
+	 * @param objectId
+	 * @return the 5 words of the object id.
+	 */
+	protected static int[] toValueWords(AnyObjectId objectId) {
+		
+		WordBuffers buffers = WORD_BUFFERS.get();
+		
+		return buffers.decode(objectId, buffers.value);
+	}
+	
+	private static final class WordBuffers {
+		
+		private final byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		
+		private final int[] key = new int[KEY_INTS];
+		
+		private final int[] value = new int[KEY_INTS];
+		
+		private int[] decode(AnyObjectId objectId, int[] words) {
+			
+			objectId.copyRawTo(raw, 0);
+			
+			for (int i = 0; i < KEY_INTS; i++) {
+				words[i] = NB.decodeInt32(raw, i * 4);
+			}
+			
+			return words;
+		}
+	}
+	
+	private static boolean isZero(int[] key) {
+		return key[0] == 0 && key[1] == 0 && key[2] == 0 && key[3] == 0 && key[4] == 0;
+	}
+	
+	private Segment segmentFor(int[] key) {
+		return segments[key[0] >>> (32 - SEGMENT_BITS)];
+	}
+	
+	/**
+	 * @param key
+	 * @return the value words stored for the key, an empty array for a key only table, or null if the key is absent.
+	 */
+	protected final int[] find(int[] key) {
+		
+		if (isZero(key))
+			return null;
+		
+		return segmentFor(key).find(key);
+	}
+	
+	/**
+	 * Store or replace the value for the key.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return true if the key was not already in the table.
+	 */
+	protected final boolean store(int[] key, int[] value) {
+		
+		if (isZero(key))
+			throw new IllegalArgumentException("the zero object id can't be stored in the table");
+		
+		return segmentFor(key).store(key, value);
+	}
+	
+	public int size() {
+		
+		int size = 0;
+		
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * @return the number of bytes used by the slots of the table.
+	 */
+	public long sizeInBytes() {
+		
+		long bytes = 0;
+		
+		for (Segment segment : segments) {
+			bytes += segment.sizeInBytes();
+		}
+		
+		return bytes;
+	}
+	
+	protected final void visitSlots(SlotVisitor visitor) throws IOException {
+		
+		for (Segment segment : segments) {
+			segment.visit(visitor);
+		}
+	}
+	
+	public void close() {
+		
+		for (Segment segment : segments) {
+			segment.release();
+		}
+		
+		if (storage == ObjectIdTableStorage.MAPPED) {
+			
+			directory.delete();
+			
+			// only removed once the other tables sharing it are closed
+			parentDirectory.delete();
+		}
+	}
+	
+	protected interface SlotVisitor {
+		
+		void visit (int[] slots, int offset) throws IOException;
+	}
+	
+	private final class Segment {
+		
+		private final int index;
+		
+		private IntBuffer slots;
+		
+		private File file;
+		
+		private int generation = 0;
+		
+		private int capacity;
+		
+		private int count = 0;
+		
+		private Segment(int index) {
+			this.index = index;
+			this.capacity = INITIAL_SEGMENT_CAPACITY;
+			this.slots = allocate(capacity);
+		}
+		
+		private IntBuffer allocate(int slotCapacity) {
+			
+			int ints = slotCapacity * slotInts;
+			
+			switch (storage) {
+			case DIRECT:
+				return ByteBuffer.allocateDirect(ints * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+				
+			case MAPPED:
+				
+				file = new File (directory, "segment-" + index + "-" + (generation++) + ".tbl");
+				
+				file.deleteOnExit();
+				
+				try {
+					
+					RandomAccessFile raf = new RandomAccessFile(file, "rw");
+					
+					try {
+						// the slots must start out empty
+						raf.setLength(0L);
+						raf.setLength(ints * 4L);
+						
+						return raf.getChannel().map(MapMode.READ_WRITE, 0, ints * 4L).order(ByteOrder.nativeOrder()).asIntBuffer();
+					}
+					finally {
+						raf.close();
+					}
+					
+				} catch (IOException e) {
+					throw new RuntimeException("PrimitiveObjectIdTable: failed to map " + file, e);
+				}
+				
+			default:
+				return IntBuffer.wrap(new int[ints]);
+			}
+		}
+		
+		/*
+		 * the slot offset of the key or of the empty slot where it belongs.
+		 */
+		private int probe(int[] key) {
+			
+			int mask = capacity - 1;
+			
+			int slot = key[1] & mask;
+			
+			while (true) {
+				
+				int offset = slot * slotInts;
+				
+				int w1 = slots.get(offset);
+				
+				if (w1 == 0 && isEmpty(offset))
+					return offset;
+				
+				if (w1 == key[0] 
+						&& slots.get(offset+1) == key[1] 
+						&& slots.get(offset+2) == key[2] 
+						&& slots.get(offset+3) == key[3] 
+						&& slots.get(offset+4) == key[4])
+					return offset;
+				
+				slot = (slot + 1) & mask;
+			}
+		}
+		
+		private boolean isEmpty (int offset) {
+			
+			for (int i = 0; i < KEY_INTS; i++) {
+				if (slots.get(offset+i) != 0)
+					return false;
+			}
+			
+			return true;
+		}
+		
+		private synchronized int[] find(int[] key) {
+			
+			int offset = probe(key);
+			
+			if (isEmpty(offset))
+				return null;
+			
+			if (valueInts == 0)
+				return NO_WORDS;
+			
+			int[] value = new int[valueInts];
+			
+			for (int i = 0; i < valueInts; i++) {
+				value[i] = slots.get(offset + KEY_INTS + i);
+			}
+			
+			return value;
+		}
+		
+		private synchronized boolean store(int[] key, int[] value) {
+			
+			int offset = probe(key);
+			
+			boolean added = isEmpty(offset);
+			
+			if (added) {
+				
+				if ((count + 1) * 4L > capacity * 3L) {
+					grow();
+					offset = probe(key);
+				}
+				
+				for (int i = 0; i < KEY_INTS; i++) {
+					slots.put(offset + i, key[i]);
+				}
+				
+				count++;
+			}
+			
+			for (int i = 0; i < valueInts; i++) {
+				slots.put(offset + KEY_INTS + i, value[i]);
+			}
+			
+			return added;
+		}
+		
+		private void grow() {
+			
+			if (capacity >= MAX_SEGMENT_CAPACITY)
+				throw new IllegalStateException("PrimitiveObjectIdTable: segment " + index + " is full at " + count + " entries");
+			
+			IntBuffer oldSlots = slots;
+			
+			int oldCapacity = capacity;
+			
+			File oldFile = file;
+			
+			capacity = capacity * 2;
+			
+			slots = allocate(capacity);
+			
+			int[] key = new int[KEY_INTS];
+			
+			for (int slot = 0; slot < oldCapacity; slot++) {
+				
+				int oldOffset = slot * slotInts;
+				
+				boolean empty = true;
+				
+				for (int i = 0; i < KEY_INTS; i++) {
+					key[i] = oldSlots.get(oldOffset + i);
+					
+					if (key[i] != 0)
+						empty = false;
+				}
+				
+				if (empty)
+					continue;
+				
+				int offset = probe(key);
+				
+				for (int i = 0; i < slotInts; i++) {
+					slots.put(offset + i, oldSlots.get(oldOffset + i));
+				}
+			}
+			
+			if (oldFile != null && !oldFile.delete())
+				oldFile.deleteOnExit();
+		}
+		
+		private synchronized int size() {
+			return count;
+		}
+		
+		private synchronized long sizeInBytes() {
+			return capacity * (long)slotInts * 4L;
+		}
+		
+		private synchronized void visit(SlotVisitor visitor) throws IOException {
+			
+			int[] slot = new int[slotInts];
+			
+			for (int offset = 0; offset < capacity * slotInts; offset += slotInts) {
+				
+				if (isEmpty(offset))
+					continue;
+				
+				for (int i = 0; i < slotInts; i++) {
+					slot[i] = slots.get(offset + i);
+				}
+				
+				visitor.visit(slot, 0);
+			}
+		}
+		
+		private synchronized void release() {
+			
+			slots = null;
+			
+			if (file != null && !file.delete())
+				file.deleteOnExit();
+		}
+	}
+	
+	protected static ObjectId toObjectId(int[] words, int offset) {
+		return ObjectId.fromRaw(words, offset);
+	}
+}
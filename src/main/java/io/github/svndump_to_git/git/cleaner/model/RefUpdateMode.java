@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+/**
+ * How the deferred ref deletes and creates are applied at the end of a cleaner run.
+ * 
+ * @author ocleirig
+ *
+ */
+public enum RefUpdateMode {
+
+	/**
+	 * A batch of deletes followed by a batch of creates through JGit, or the external git when configured.
+	 */
+	BATCH,
+	
+	/**
+	 * One transaction streamed into git update-ref --stdin, needs the external git command path.
+	 */
+	UPDATE_REF_STDIN,
+	
+	/**
+	 * A new packed-refs file written and moved into place, replacing the loose refs that were updated.
+	 */
+	PACKED_REFS;
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+/**
+ * Inserts each distinct replacement content once and afterwards reuses its blob id.
+ * 
+ * A replacement content of @<file> is streamed from the file instead of being held in memory.
+ * 
+ * Worker threads share the cache, the first to ask for a content inserts it through its own inserter
+ * and the others wait for its blob id rather than inserting it again.
+ * 
+ * @author ocleirig
+ *
+ */
+public class ReplacementBlobCache {
+	
+	private final Map<String, ObjectId> replacementContentToBlobIdMap = new ConcurrentHashMap<String, ObjectId>();
+	
+	/**
+	 * 
+	 */
+	public ReplacementBlobCache() {
+	}
+	
+	/**
+	 * Check that a replacement file exists before the rewrite starts.
+	 * 
+	 * @param replacementContent
+	 * @throws IllegalArgumentException if the replacement names a file that does not exist.
+	 */
+	public static void validate (String replacementContent) {
+		
+		if (replacementContent.startsWith("@") && !new File (replacementContent.substring(1)).isFile())
+			throw new IllegalArgumentException("missing replacement content file: " + replacementContent.substring(1));
+	}
+	
+	/**
+	 * 
+	 * @param replacementContent the content or @<file>
+	 * @param inserter used if the content has not been inserted yet.
+	 * @return the blob id of the replacement content.
+	 * @throws IOException
+	 */
+	public ObjectId getBlobId (String replacementContent, ObjectInserter inserter) throws IOException {
+		
+		ObjectId replacementBlobId = replacementContentToBlobIdMap.get(replacementContent);
+		
+		if (replacementBlobId != null)
+			return replacementBlobId;
+		
+		synchronized (this) {
+			
+			// another thread may have inserted it while this one waited
+			replacementBlobId = replacementContentToBlobIdMap.get(replacementContent);
+			
+			if (replacementBlobId != null)
+				return replacementBlobId;
+			
+			replacementBlobId = insert(replacementContent, inserter);
+			
+			replacementContentToBlobIdMap.put(replacementContent, replacementBlobId);
+		}
+		
+		return replacementBlobId;
+	}
+	
+	private ObjectId insert (String replacementContent, ObjectInserter inserter) throws IOException {
+		
+		if (!replacementContent.startsWith("@"))
+			return inserter.insert(Constants.OBJ_BLOB, replacementContent.getBytes());
+		
+		File replacementFile = new File (replacementContent.substring(1));
+		
+		InputStream in = new FileInputStream(replacementFile);
+		
+		try {
+			return inserter.insert(Constants.OBJ_BLOB, replacementFile.length(), in);
+		}
+		finally {
+			in.close();
+		}
+	}
+}
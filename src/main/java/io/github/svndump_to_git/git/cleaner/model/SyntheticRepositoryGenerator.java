@@ -0,0 +1,627 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import io.github.svndump_to_git.git.model.ExternalModuleUtils;
+import io.github.svndump_to_git.svn.model.ExternalModuleInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceiveCommand.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates a bare repository that looks like a large subversion conversion, for load and scale testing.
+ * 
+ * Each commit is one subversion revision with a git-svn-id line.  The branches follow the trunk, 
+ * branches/&lt;name&gt; and tags/&lt;name&gt; layout and are named with the slashes replaced by underscores.  
+ * Branches and tags are created by a copy commit that keeps the tree of the source.
+ * 
+ * The development lines hold moduleCount module directories.  Every module directory holds treeWidth 
+ * files and, above treeDepth, treeWidth sub directories.
+ * 
+ * With a fusionInterval the aggregate_trunk branch gets a commit every fusionInterval revisions with a 
+ * fusion-maven-plugin.dat file.  Each module in the file refers to the current head of one of the 
+ * development lines of the same repository.
+ * 
+ * Every emptyCommitInterval'th revision keeps the tree of its parent, like a property only change, and 
+ * every mpxInterval'th revision adds or changes a .mpx file.
+ * 
+ * The output only depends on the properties, so the same seed always gives the same object ids.  The 
+ * objects are streamed into pack files and the unchanged sub trees are shared between commits, so the 
+ * memory needed grows with the number of objects and not with the size of the trees.
+ * 
+ * @author ocleirig
+ *
+ */
+public class SyntheticRepositoryGenerator {
+
+	private static final Logger log = LoggerFactory.getLogger(SyntheticRepositoryGenerator.class);
+	
+	public static final String SVN_URL = "http://svn.example.com/repo";
+	
+	public static final String FUSION_DATA_FILE = "fusion-maven-plugin.dat";
+	
+	private static final String AGGREGATE_PATH = "aggregate/trunk";
+	
+	private static final int MAX_SAMPLE_BLOBS = 50;
+	
+	private static final int MPX_FILE_NAMES = 7;
+	
+	private static final long BASE_TIME = 1000000000000L;
+	
+	private long seed = 1L;
+	
+	private int commitCount = 10000;
+	
+	private int branchCount = 8;
+	
+	private int tagCount = 4;
+	
+	private int moduleCount = 4;
+	
+	private int treeWidth = 8;
+	
+	private int treeDepth = 2;
+	
+	private int changesPerCommit = 3;
+	
+	private int emptyCommitInterval = 25;
+	
+	private int mpxInterval = 10;
+	
+	private int fusionInterval = 20;
+	
+	private int packSizeLimit = 1024;
+	
+	private Random random;
+	
+	private ObjectInserter inserter;
+	
+	private String svnUuid;
+	
+	private long blobCount;
+	
+	private final List<ObjectId>sampleBlobs = new ArrayList<>();
+	
+	/*
+	 * A directory of the generated tree.  Nodes are never changed once their id is known; a change 
+	 * copies the nodes along the path so that the lines can share the unchanged sub trees.
+	 * 
+	 * Sub directory keys end with a slash so that the map iterates in git tree order.
+	 */
+	private static class Node {
+		
+		private final TreeMap<String, Object> entries;
+		
+		private ObjectId id;
+
+		public Node() {
+			this.entries = new TreeMap<>();
+		}
+		
+		public Node(Node copyFrom) {
+			this.entries = new TreeMap<>(copyFrom.entries);
+		}
+	}
+	
+	/*
+	 * A subversion branch, tag or trunk and its git branch.
+	 */
+	private static class Line {
+		
+		private final String svnPath;
+		
+		private Node root;
+		
+		private ObjectId head;
+
+		public Line(String svnPath, Node root, ObjectId head) {
+			this.svnPath = svnPath;
+			this.root = root;
+			this.head = head;
+		}
+		
+		public String getBranchName() {
+			return svnPath.replace('/', '_');
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public SyntheticRepositoryGenerator() {
+	}
+
+	/**
+	 * @return the random seed, the same seed gives the same repository.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param seed the random seed, the same seed gives the same repository.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the number of subversion revisions, one commit each.
+	 */
+	public int getCommitCount() {
+		return commitCount;
+	}
+
+	/**
+	 * @param commitCount the number of subversion revisions, one commit each.
+	 */
+	public void setCommitCount(int commitCount) {
+		this.commitCount = commitCount;
+	}
+
+	/**
+	 * @return the number of branches created from trunk in the first half of the history.
+	 */
+	public int getBranchCount() {
+		return branchCount;
+	}
+
+	/**
+	 * @param branchCount the number of branches created from trunk in the first half of the history.
+	 */
+	public void setBranchCount(int branchCount) {
+		this.branchCount = branchCount;
+	}
+
+	/**
+	 * @return the number of tags, spread over the history.
+	 */
+	public int getTagCount() {
+		return tagCount;
+	}
+
+	/**
+	 * @param tagCount the number of tags, spread over the history.
+	 */
+	public void setTagCount(int tagCount) {
+		this.tagCount = tagCount;
+	}
+
+	/**
+	 * @return the number of module directories on each development line.
+	 */
+	public int getModuleCount() {
+		return moduleCount;
+	}
+
+	/**
+	 * @param moduleCount the number of module directories on each development line.
+	 */
+	public void setModuleCount(int moduleCount) {
+		this.moduleCount = moduleCount;
+	}
+
+	/**
+	 * @return the number of files and sub directories in each module directory.
+	 */
+	public int getTreeWidth() {
+		return treeWidth;
+	}
+
+	/**
+	 * @param treeWidth the number of files and sub directories in each module directory.
+	 */
+	public void setTreeWidth(int treeWidth) {
+		this.treeWidth = treeWidth;
+	}
+
+	/**
+	 * @return the number of directory levels below each module directory.
+	 */
+	public int getTreeDepth() {
+		return treeDepth;
+	}
+
+	/**
+	 * @param treeDepth the number of directory levels below each module directory.
+	 */
+	public void setTreeDepth(int treeDepth) {
+		this.treeDepth = treeDepth;
+	}
+
+	/**
+	 * @return the number of files changed by each normal revision.
+	 */
+	public int getChangesPerCommit() {
+		return changesPerCommit;
+	}
+
+	/**
+	 * @param changesPerCommit the number of files changed by each normal revision.
+	 */
+	public void setChangesPerCommit(int changesPerCommit) {
+		this.changesPerCommit = changesPerCommit;
+	}
+
+	/**
+	 * @return every n'th revision keeps the tree of its parent, 0 for none.
+	 */
+	public int getEmptyCommitInterval() {
+		return emptyCommitInterval;
+	}
+
+	/**
+	 * @param emptyCommitInterval every n'th revision keeps the tree of its parent, 0 for none.
+	 */
+	public void setEmptyCommitInterval(int emptyCommitInterval) {
+		this.emptyCommitInterval = emptyCommitInterval;
+	}
+
+	/**
+	 * @return every n'th revision adds or changes a .mpx file, 0 for none.
+	 */
+	public int getMpxInterval() {
+		return mpxInterval;
+	}
+
+	/**
+	 * @param mpxInterval every n'th revision adds or changes a .mpx file, 0 for none.
+	 */
+	public void setMpxInterval(int mpxInterval) {
+		this.mpxInterval = mpxInterval;
+	}
+
+	/**
+	 * @return every n'th revision updates the fusion-maven-plugin.dat file on aggregate_trunk, 0 for no aggregate branch.
+	 */
+	public int getFusionInterval() {
+		return fusionInterval;
+	}
+
+	/**
+	 * @param fusionInterval every n'th revision updates the fusion-maven-plugin.dat file on aggregate_trunk, 0 for no aggregate branch.
+	 */
+	public void setFusionInterval(int fusionInterval) {
+		this.fusionInterval = fusionInterval;
+	}
+
+	/**
+	 * @return the size in megabytes after which a new pack file is started.
+	 */
+	public int getPackSizeLimit() {
+		return packSizeLimit;
+	}
+
+	/**
+	 * @param packSizeLimit the size in megabytes after which a new pack file is started.
+	 */
+	public void setPackSizeLimit(int packSizeLimit) {
+		this.packSizeLimit = packSizeLimit;
+	}
+
+	/**
+	 * Generate the repository into the given git directory, replacing anything already there.
+	 * 
+	 * @param gitDirectory the bare repository directory.
+	 * @throws IOException
+	 */
+	public void generate(File gitDirectory) throws IOException {
+		
+		random = new Random(seed);
+		
+		svnUuid = new UUID(random.nextLong(), random.nextLong()).toString();
+		
+		blobCount = 0L;
+		sampleBlobs.clear();
+		
+		FileUtils.deleteQuietly(gitDirectory);
+		
+		Repository repo = new FileRepositoryBuilder().setGitDir(gitDirectory).build();
+		
+		repo.create(true);
+		
+		inserter = new PackObjectInserter(repo, packSizeLimit * 1024L * 1024L, 1);
+		
+		List<Line>developmentLines = new ArrayList<>();
+		List<Line>tagLines = new ArrayList<>();
+		
+		Line trunk = new Line("trunk", createModules(), null);
+		
+		developmentLines.add(trunk);
+		
+		Line aggregate = null;
+		
+		if (fusionInterval > 0) {
+			
+			Node aggregateRoot = new Node();
+			
+			aggregateRoot.entries.put("pom.xml", insertBlob("<project>aggregate</project>\n"));
+			
+			aggregate = new Line(AGGREGATE_PATH, aggregateRoot, null);
+		}
+		
+		long start = System.currentTimeMillis();
+		
+		for (int i = 0; i < commitCount; i++) {
+			
+			int revision = i + 1;
+			
+			if (i > 0 && developmentLines.size() <= branchCount && i >= (developmentLines.size() * (long)commitCount) / (2 * (branchCount + 1))) {
+				
+				Line branch = new Line("branches/branch-" + developmentLines.size(), trunk.root, trunk.head);
+				
+				developmentLines.add(branch);
+				
+				commit(branch, revision, "Create " + branch.svnPath + " from trunk");
+			}
+			else if (i > 0 && tagLines.size() < tagCount && i >= ((tagLines.size() + 1) * (long)commitCount) / (tagCount + 1)) {
+				
+				Line source = developmentLines.get(random.nextInt(developmentLines.size()));
+				
+				Line tag = new Line("tags/tag-" + (tagLines.size() + 1), source.root, source.head);
+				
+				tagLines.add(tag);
+				
+				commit(tag, revision, "Tag " + source.svnPath + " as " + tag.svnPath);
+			}
+			else if (aggregate != null && i % fusionInterval == fusionInterval - 1) {
+				
+				aggregate.root = setEntry(aggregate.root, new String[0], 0, FUSION_DATA_FILE, insertBlob(createFusionData(developmentLines)));
+				
+				commit(aggregate, revision, "Update the module references");
+			}
+			else {
+				
+				Line line = developmentLines.get(random.nextInt(developmentLines.size()));
+				
+				if (emptyCommitInterval > 0 && i % emptyCommitInterval == emptyCommitInterval - 1) {
+					commit(line, revision, "Change the svn:ignore property");
+				}
+				else {
+					
+					for (int c = 0; c < changesPerCommit; c++)
+						line.root = changeFile(line.root, revision, "f" + random.nextInt(treeWidth) + ".txt");
+					
+					if (mpxInterval > 0 && i % mpxInterval == 0)
+						line.root = changeFile(line.root, revision, "plan-" + random.nextInt(MPX_FILE_NAMES) + ".mpx");
+					
+					commit(line, revision, "Change " + changesPerCommit + " files");
+				}
+			}
+			
+			if (revision % 100000 == 0) 
+				log.info("generated " + revision + " of " + commitCount + " revisions in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		
+		inserter.flush();
+		inserter.close();
+		
+		List<Line>lines = new ArrayList<>(developmentLines);
+		
+		lines.addAll(tagLines);
+		
+		if (aggregate != null)
+			lines.add(aggregate);
+		
+		List<ReceiveCommand>commands = new ArrayList<>();
+		
+		for (Line line : lines) {
+			
+			if (line.head != null)
+				commands.add(new ReceiveCommand(ObjectId.zeroId(), line.head, Constants.R_HEADS + line.getBranchName(), Type.CREATE));
+		}
+		
+		PackedRefsWriter.apply(repo, commands);
+		
+		repo.updateRef(Constants.HEAD).link(Constants.R_HEADS + trunk.getBranchName());
+		
+		repo.close();
+		
+		log.info("generated " + commitCount + " revisions on " + commands.size() + " branches with " + blobCount + " blobs into " + gitDirectory + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * @return up to 50 of the generated blob ids, spread over the history.
+	 */
+	public List<ObjectId> getSampleBlobIds() {
+		return Collections.unmodifiableList(sampleBlobs);
+	}
+
+	private void commit(Line line, int revision, String summary) throws IOException {
+		
+		PersonIdent ident = new PersonIdent("user" + (revision % 10), "user" + (revision % 10) + "@example.com", new Date(BASE_TIME + revision * 60000L), TimeZone.getTimeZone("UTC"));
+		
+		CommitBuilder builder = new CommitBuilder();
+		
+		builder.setTreeId(writeTree(line.root));
+		
+		if (line.head != null)
+			builder.setParentId(line.head);
+		
+		builder.setAuthor(ident);
+		builder.setCommitter(ident);
+		builder.setMessage(summary + " r" + revision + "\n\ngit-svn-id: " + SVN_URL + "/" + line.svnPath + "@" + revision + " " + svnUuid + "\n");
+		
+		line.head = inserter.insert(builder);
+	}
+	
+	/*
+	 * Each module refers to one of the development lines.  Lines without a commit yet are left out.
+	 */
+	private String createFusionData(List<Line> developmentLines) {
+		
+		List<ExternalModuleInfo>modules = new ArrayList<>();
+		
+		for (int m = 0; m < moduleCount; m++) {
+			
+			Line line = developmentLines.get(m % developmentLines.size());
+			
+			if (line.head == null)
+				continue;
+			
+			ExternalModuleInfo module = new ExternalModuleInfo("module-" + m, line.svnPath);
+			
+			module.setBranchHeadId(line.head);
+			
+			modules.add(module);
+		}
+		
+		return ExternalModuleUtils.createFusionMavenPluginDataFileString(modules);
+	}
+	
+	private Node createModules() throws IOException {
+		
+		Node root = new Node();
+		
+		root.entries.put("pom.xml", insertBlob("<project>parent</project>\n"));
+		
+		for (int m = 0; m < moduleCount; m++) {
+			
+			Node module = createDirectory(0, "module-" + m + "/");
+			
+			module.entries.put("pom.xml", insertBlob("<project>module-" + m + "</project>\n"));
+			
+			root.entries.put("module-" + m + "/", module);
+		}
+		
+		return root;
+	}
+	
+	private Node createDirectory(int depth, String path) throws IOException {
+		
+		Node node = new Node();
+		
+		for (int i = 0; i < treeWidth; i++) {
+			
+			String fileName = "f" + i + ".txt";
+			
+			node.entries.put(fileName, insertBlob(path + fileName + " initial\n"));
+			
+			if (depth < treeDepth) {
+				String dirName = "d" + i;
+				node.entries.put(dirName + "/", createDirectory(depth + 1, path + dirName + "/"));
+			}
+		}
+		
+		return node;
+	}
+	
+	/*
+	 * Set the named file in a random directory of a random module.
+	 */
+	private Node changeFile(Node root, int revision, String fileName) throws IOException {
+		
+		int depth = random.nextInt(treeDepth + 1);
+		
+		String[]directories = new String[depth + 1];
+		
+		directories[0] = "module-" + random.nextInt(moduleCount);
+		
+		StringBuilder path = new StringBuilder(directories[0]).append("/");
+		
+		for (int i = 1; i <= depth; i++) {
+			directories[i] = "d" + random.nextInt(treeWidth);
+			path.append(directories[i]).append("/");
+		}
+		
+		path.append(fileName);
+		
+		return setEntry(root, directories, 0, fileName, insertBlob(path + " r" + revision + "\n"));
+	}
+	
+	/*
+	 * Copy the nodes along the path and set the blob in the last one.
+	 */
+	private Node setEntry(Node node, String[] directories, int level, String fileName, ObjectId blobId) {
+		
+		Node copy = new Node(node);
+		
+		if (level == directories.length) 
+			copy.entries.put(fileName, blobId);
+		else {
+			String key = directories[level] + "/";
+			copy.entries.put(key, setEntry((Node) node.entries.get(key), directories, level + 1, fileName, blobId));
+		}
+		
+		return copy;
+	}
+	
+	/*
+	 * Reservoir sample the blob ids so that the sample is spread over the whole history.
+	 */
+	private ObjectId insertBlob(String content) throws IOException {
+		
+		ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, Constants.encode(content));
+		
+		blobCount++;
+		
+		if (sampleBlobs.size() < MAX_SAMPLE_BLOBS)
+			sampleBlobs.add(blobId);
+		else {
+			long slot = (long) (random.nextDouble() * blobCount);
+			
+			if (slot < MAX_SAMPLE_BLOBS)
+				sampleBlobs.set((int) slot, blobId);
+		}
+		
+		return blobId;
+	}
+	
+	private ObjectId writeTree(Node node) throws IOException {
+		
+		if (node.id != null)
+			return node.id;
+		
+		TreeFormatter formatter = new TreeFormatter();
+		
+		for (Entry<String, Object> entry : node.entries.entrySet()) {
+			
+			String key = entry.getKey();
+			
+			if (entry.getValue() instanceof Node)
+				formatter.append(key.substring(0, key.length() - 1), FileMode.TREE, writeTree((Node) entry.getValue()));
+			else
+				formatter.append(key, FileMode.REGULAR_FILE, (ObjectId) entry.getValue());
+		}
+		
+		node.id = inserter.insert(formatter);
+		
+		return node.id;
+	}
+}
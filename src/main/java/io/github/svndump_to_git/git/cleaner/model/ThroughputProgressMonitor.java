@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A progress monitor that logs the completed work, the rate and the estimated time remaining at a fixed interval.
+ * 
+ * If given an inserted object counter the object insertion rate is reported as well.
+ * 
+ * Updates may come from several threads.
+ * 
+ * @author ocleirig
+ *
+ */
+public class ThroughputProgressMonitor implements ProgressMonitor {
+
+	private static final Logger log = LoggerFactory.getLogger(ThroughputProgressMonitor.class);
+	
+	private final long intervalMillis;
+	
+	private final AtomicLong insertedObjects;
+	
+	private final AtomicInteger completed = new AtomicInteger();
+	
+	private final AtomicLong lastReportMillis = new AtomicLong();
+	
+	private volatile String title;
+	
+	private volatile int totalWork;
+	
+	private volatile long startMillis;
+	
+	private volatile long startObjects;
+
+	/**
+	 * 
+	 * @param intervalSeconds the seconds between progress reports.
+	 * @param insertedObjects the count of objects inserted or null to not report the object rate.
+	 */
+	public ThroughputProgressMonitor(int intervalSeconds, AtomicLong insertedObjects) {
+		this.intervalMillis = intervalSeconds * 1000L;
+		this.insertedObjects = insertedObjects;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ProgressMonitor#start(int)
+	 */
+	@Override
+	public void start(int totalTasks) {
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ProgressMonitor#beginTask(java.lang.String, int)
+	 */
+	@Override
+	public void beginTask(String title, int totalWork) {
+		
+		this.title = title;
+		this.totalWork = totalWork;
+		this.startMillis = System.currentTimeMillis();
+		this.startObjects = insertedObjects == null ? 0 : insertedObjects.get();
+		
+		completed.set(0);
+		lastReportMillis.set(startMillis);
+		
+		log.info(title + ": " + (totalWork == UNKNOWN ? "started" : totalWork + " to process"));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ProgressMonitor#update(int)
+	 */
+	@Override
+	public void update(int work) {
+		
+		int done = completed.addAndGet(work);
+		
+		long now = System.currentTimeMillis();
+		
+		long last = lastReportMillis.get();
+		
+		// only the thread that moves the report time forward logs
+		if (now - last >= intervalMillis && lastReportMillis.compareAndSet(last, now))
+			log.info(title + ": " + describe(done, now));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ProgressMonitor#endTask()
+	 */
+	@Override
+	public void endTask() {
+		log.info(title + ": finished, " + describe(completed.get(), System.currentTimeMillis()));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jgit.lib.ProgressMonitor#isCancelled()
+	 */
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	/**
+	 * @return the work completed since the current task began.
+	 */
+	public int getCompleted() {
+		return completed.get();
+	}
+	
+	private String describe(int done, long now) {
+		
+		double seconds = Math.max(now - startMillis, 1L) / 1000.0;
+		
+		double rate = done / seconds;
+		
+		StringBuilder report = new StringBuilder();
+		
+		report.append(done);
+		
+		if (totalWork != UNKNOWN && totalWork > 0)
+			report.append("/").append(totalWork).append(String.format(" (%.1f%%)", 100.0 * done / totalWork));
+		
+		report.append(String.format(", %.1f/s", rate));
+		
+		if (insertedObjects != null)
+			report.append(String.format(", %.1f objects/s", (insertedObjects.get() - startObjects) / seconds));
+		
+		report.append(", elapsed ").append(formatDuration((long) seconds));
+		
+		if (totalWork != UNKNOWN && done < totalWork && rate > 0)
+			report.append(", ETA ").append(formatDuration((long) ((totalWork - done) / rate)));
+		
+		return report.toString();
+	}
+	
+	static String formatDuration(long seconds) {
+		return String.format("%02d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.git.cleaner.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.List;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * Applies ref commands as a single transaction streamed into git update-ref --stdin.
+ * 
+ * Either every command is applied or, if any old value does not match, none of them are.
+ * 
+ * @author ocleirig
+ *
+ */
+public final class UpdateRefStdin {
+
+	private UpdateRefStdin() {
+	}
+	
+	/**
+	 * 
+	 * @param gitCommandPath the path to the native git.
+	 * @param repo the repository whose refs are updated.
+	 * @param commands the merged commands.
+	 * @throws IOException if git fails to apply the transaction.
+	 */
+	public static void apply (String gitCommandPath, Repository repo, List<ReceiveCommand> commands) throws IOException {
+		
+		ProcessBuilder builder = new ProcessBuilder(gitCommandPath, "--git-dir=" + repo.getDirectory().getAbsolutePath(), "update-ref", "--stdin");
+		
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(Redirect.INHERIT);
+		
+		Process process = builder.start();
+		
+		Writer out = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), "UTF-8"));
+		
+		IOException writeFailure = null;
+		
+		try {
+			for (ReceiveCommand command : commands) {
+				
+				switch (command.getType()) {
+				case CREATE:
+					out.write("create " + command.getRefName() + " " + command.getNewId().name() + "\n");
+					break;
+				case DELETE:
+					out.write("delete " + command.getRefName() + " " + command.getOldId().name() + "\n");
+					break;
+				default:
+					out.write("update " + command.getRefName() + " " + command.getNewId().name() + " " + command.getOldId().name() + "\n");
+					break;
+				}
+			}
+			
+			out.close();
+			
+		} catch (IOException e) {
+			// git stops reading at the first invalid command so its exit code is the better explanation
+			writeFailure = e;
+			
+			try {
+				out.close();
+			} catch (IOException closeFailure) {
+				writeFailure.addSuppressed(closeFailure);
+			}
+		}
+		
+		int exitCode;
+		
+		try {
+			exitCode = process.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting on git update-ref", e);
+		}
+		
+		if (exitCode != 0)
+			throw new IOException("git update-ref --stdin failed with exit code " + exitCode + ", no refs were changed", writeFailure);
+		
+		// git did not see every command so the transaction may be incomplete
+		if (writeFailure != null)
+			throw new IOException("failed to write the ref commands to git update-ref --stdin, which exited with code " + exitCode, writeFailure);
+	}
+}
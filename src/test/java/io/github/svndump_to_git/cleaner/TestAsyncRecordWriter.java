@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import io.github.svndump_to_git.git.cleaner.model.AsyncRecordWriter;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Write records through the background writer with small buffers so that the hand off is exercised.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestAsyncRecordWriter {
+
+	@Test
+	public void testWriteSyncAndAppend() throws IOException {
+		
+		File file = new File ("target/test-async-record-writer.txt");
+		
+		file.getParentFile().mkdirs();
+		
+		AsyncRecordWriter writer = new AsyncRecordWriter(file, false, 64, 2);
+		
+		for (int i = 0; i < 1000; i++) {
+			writer.println("record " + i);
+		}
+		
+		writer.sync();
+		
+		long syncedLength = file.length();
+		
+		Assert.assertEquals(writer.getBytesWritten(), syncedLength);
+		
+		writer.close();
+		
+		Assert.assertEquals(syncedLength, file.length());
+		
+		writer = new AsyncRecordWriter(file, true);
+		
+		writer.println("appended");
+		
+		writer.close();
+		
+		List<String> lines = FileUtils.readLines(file, "UTF-8");
+		
+		Assert.assertEquals(1001, lines.size());
+		Assert.assertEquals("record 0", lines.get(0));
+		Assert.assertEquals("record 999", lines.get(999));
+		Assert.assertEquals("appended", lines.get(1000));
+	}
+	
+	@Test(timeout = 60000)
+	public void testStoppedWriterThreadReleasesCallers() throws Exception {
+		
+		File file = new File ("target/test-async-record-writer-stopped.txt");
+		
+		file.getParentFile().mkdirs();
+		
+		AsyncRecordWriter writer = new AsyncRecordWriter(file, false, 64, 2);
+		
+		writer.println("before the writer thread stops");
+		
+		writer.sync();
+		
+		Thread writerThread = null;
+		
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			
+			if (thread.getName().equals("async-record-writer-" + file.getName()))
+				writerThread = thread;
+		}
+		
+		Assert.assertNotNull(writerThread);
+		
+		writerThread.interrupt();
+		writerThread.join();
+		
+		// more than the pending buffers can hold, nothing takes them any more
+		for (int i = 0; i < 100; i++) {
+			writer.println("record " + i);
+		}
+		
+		try {
+			writer.sync();
+			
+			Assert.fail("the stopped writer thread was not reported");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		try {
+			writer.close();
+			
+			Assert.fail("the stopped writer thread was not reported");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		Assert.assertEquals("before the writer thread stops", FileUtils.readFileToString(file, "UTF-8").trim());
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import io.github.svndump_to_git.git.cleaner.model.BinaryObjectTranslationDataSource;
+import io.github.svndump_to_git.git.cleaner.model.BinaryObjectTranslationWriter;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdMap;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdTranslation;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdTranslationService;
+import io.github.svndump_to_git.git.cleaner.model.ObjectTranslationDataSource;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdMap;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Round trip translations through the binary object translation file.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestBinaryObjectTranslation {
+
+	private static ObjectId randomId(Random random) {
+		
+		byte[] raw = new byte[20];
+		
+		random.nextBytes(raw);
+		
+		return ObjectId.fromRaw(raw);
+	}
+	
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		
+		Random random = new Random(7);
+		
+		ObjectIdMap map = new PrimitiveObjectIdMap();
+		
+		Map<ObjectId, ObjectId> expected = new HashMap<ObjectId, ObjectId>();
+		
+		for (int i = 0; i < 10000; i++) {
+			
+			ObjectId key = randomId(random);
+			ObjectId value = randomId(random);
+			
+			map.put(key, value);
+			expected.put(key, value);
+		}
+		
+		File target = new File ("target/test-translations.bin");
+		
+		target.getParentFile().mkdirs();
+		
+		BinaryObjectTranslationWriter.write(target, map);
+		
+		map.close();
+		
+		BinaryObjectTranslationDataSource dataSource = new BinaryObjectTranslationDataSource(target.getPath());
+		
+		Assert.assertEquals(expected.size(), dataSource.size());
+		
+		for (Map.Entry<ObjectId, ObjectId> entry : expected.entrySet()) {
+			Assert.assertEquals(entry.getValue(), dataSource.translateObjectId(entry.getKey()));
+		}
+		
+		ObjectId missing = randomId(random);
+		
+		Assert.assertNull(dataSource.find(missing));
+		Assert.assertEquals(missing, dataSource.translateObjectId(missing));
+		
+		final ObjectId[] previous = new ObjectId[1];
+		
+		dataSource.forEach(new ObjectIdMap.EntryVisitor() {
+			
+			@Override
+			public void visit(ObjectId key, ObjectId value) throws IOException {
+				
+				if (previous[0] != null)
+					Assert.assertTrue(previous[0].compareTo(key) < 0);
+				
+				previous[0] = key;
+			}
+		});
+	}
+	
+	@Test
+	public void testLoadTextAndBinary() throws IOException {
+		
+		Random random = new Random(11);
+		
+		ObjectId original = randomId(random);
+		ObjectId translated = randomId(random);
+		
+		File textFile = new File ("target/test-translations.txt");
+		
+		textFile.getParentFile().mkdirs();
+		
+		PrintWriter writer = new PrintWriter(textFile);
+		
+		writer.println("# new-object-id <space> original-object-id");
+		writer.println(translated.name() + " " + original.name());
+		writer.close();
+		
+		ObjectIdTranslation text = ObjectTranslationDataSource.load(textFile.getPath());
+		
+		Assert.assertTrue(text instanceof ObjectTranslationDataSource);
+		Assert.assertEquals(translated, text.translateObjectId(original));
+		
+		File binaryFile = new File ("target/test-translations-converted.bin");
+		
+		BinaryObjectTranslationWriter.write(binaryFile, ((ObjectTranslationDataSource)text).getObjectTranslationMap());
+		
+		ObjectIdTranslation binary = ObjectTranslationDataSource.load(binaryFile.getPath());
+		
+		Assert.assertTrue(binary instanceof BinaryObjectTranslationDataSource);
+		Assert.assertEquals(translated, binary.translateObjectId(original));
+	}
+	
+	@Test
+	public void testComposedTranslationService() throws IOException {
+		
+		Random random = new Random(13);
+		
+		ObjectId a = randomId(random);
+		ObjectId b = randomId(random);
+		ObjectId c = randomId(random);
+		ObjectId d = randomId(random);
+		
+		// first generation a -> b, d -> c; second generation b -> c
+		ObjectTranslationDataSource first = new ObjectTranslationDataSource("first");
+		first.storeObjectTranslation(a.name(), b.name());
+		first.storeObjectTranslation(d.name(), c.name());
+		
+		ObjectTranslationDataSource second = new ObjectTranslationDataSource("second");
+		second.storeObjectTranslation(b.name(), c.name());
+		
+		List<ObjectIdTranslation> dataSources = new ArrayList<ObjectIdTranslation>();
+		dataSources.add(first);
+		dataSources.add(second);
+		
+		ObjectIdTranslationService service = new ObjectIdTranslationService(dataSources);
+		
+		Assert.assertTrue(service.isComposed());
+		Assert.assertEquals(c, service.translateObjectId(a));
+		Assert.assertEquals(c, service.translateObjectId(b));
+		Assert.assertEquals(c, service.translateObjectId(d));
+		Assert.assertEquals(c, service.translateObjectId(c));
+		
+		File composedFile = new File ("target/test-translations-composed.bin");
+		
+		composedFile.getParentFile().mkdirs();
+		
+		service.save(composedFile);
+		
+		service.close();
+		
+		BinaryObjectTranslationDataSource composed = new BinaryObjectTranslationDataSource(composedFile.getPath());
+		
+		Assert.assertEquals(3, composed.size());
+		Assert.assertEquals(c, composed.translateObjectId(a));
+	}
+	
+	@Test
+	public void testCorruptFileIsRejected() throws IOException {
+		
+		Random random = new Random(17);
+		
+		ObjectIdMap map = new PrimitiveObjectIdMap();
+		
+		for (int i = 0; i < 100; i++) {
+			map.put(randomId(random), randomId(random));
+		}
+		
+		File target = new File ("target/test-translations-corrupt.bin");
+		
+		target.getParentFile().mkdirs();
+		
+		BinaryObjectTranslationWriter.write(target, map);
+		
+		map.close();
+		
+		RandomAccessFile raf = new RandomAccessFile(target, "rw");
+		
+		try {
+			// flip a bit in the last record
+			long offset = raf.length() - 21;
+			
+			raf.seek(offset);
+			
+			int value = raf.read();
+			
+			raf.seek(offset);
+			
+			raf.write(value ^ 1);
+		}
+		finally {
+			raf.close();
+		}
+		
+		try {
+			new BinaryObjectTranslationDataSource(target.getPath());
+			
+			Assert.fail("the corrupt file was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		Assert.assertEquals(100, new BinaryObjectTranslationDataSource(target.getPath(), false).size());
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import io.github.svndump_to_git.cleaner.model.bitmap.Bitmap;
+import io.github.svndump_to_git.cleaner.model.bitmap.BitmapBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Build bitmaps in place out of order and check the frozen compressed form.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestBitmapBuilder {
+
+	@Test
+	public void testBuildOutOfOrderAndOr() {
+		
+		BitmapBuilder builder = new BitmapBuilder(null);
+		
+		builder.set(499999);
+		builder.set(5);
+		builder.set(1);
+		builder.set(5);
+		
+		Bitmap first = builder.build();
+		
+		Assert.assertEquals(3, first.cardinality());
+		
+		// the builder stays usable after a build
+		builder.set(250000);
+		
+		Assert.assertEquals(3, first.cardinality());
+		Assert.assertEquals(4, builder.build().cardinality());
+		
+		BitmapBuilder other = new BitmapBuilder(null);
+		
+		for (int i = 0; i < 500000; i += 2) {
+			other.set(i);
+		}
+		
+		other.or(first);
+		
+		Assert.assertTrue(other.get(1));
+		Assert.assertTrue(other.get(499999));
+		Assert.assertFalse(other.get(3));
+		
+		Assert.assertEquals(250000 + 3, other.build().cardinality());
+		
+		// appending past the last bit and setting an earlier one
+		Bitmap appended = new Bitmap(null);
+		
+		appended.set(10);
+		appended.set(20);
+		appended.set(15);
+		appended.set(20);
+		
+		Assert.assertEquals(3, appended.cardinality());
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
+import io.github.svndump_to_git.git.cleaner.model.BlobContainmentIndex;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdSet;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare the commits the blob containment index finds against a walk of every file of every commit.
+ *
+ * @author ocleirig
+ *
+ */
+public class TestBlobContainmentIndex extends AbstractGitRespositoryTestCase {
+	
+	public TestBlobContainmentIndex() {
+		super("test-blob-containment");
+	}
+	
+	/* (non-Javadoc)
+	 * @see io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase#onBefore()
+	 */
+	@Override
+	protected void onBefore() throws Exception {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(repo);
+		
+		builder.writeBranchingHistory(31L, 250, 3, 8);
+		
+		builder.close();
+	}
+	
+	/*
+	 * The path to blob id of every file in the tree.
+	 */
+	private Map<String, ObjectId> listFiles(RevCommit commit) throws IOException {
+		
+		Map<String, ObjectId> files = new HashMap<String, ObjectId>();
+		
+		TreeWalk treeWalk = new TreeWalk(repo);
+		
+		try {
+			treeWalk.addTree(commit.getTree());
+			treeWalk.setRecursive(true);
+			
+			while (treeWalk.next()) {
+				files.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+			}
+		}
+		finally {
+			treeWalk.close();
+		}
+		
+		return files;
+	}
+	
+	@Test
+	public void testAffectedCommitsMatchBruteForce() throws IOException {
+		
+		for (Ref ref : repo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+			rw.markStart(rw.parseCommit(ref.getObjectId()));
+		}
+		
+		List<RevCommit> commits = new ArrayList<RevCommit>();
+		
+		Map<RevCommit, Map<String, ObjectId>> commitFiles = new HashMap<RevCommit, Map<String, ObjectId>>();
+		
+		Set<ObjectId> allBlobs = new HashSet<ObjectId>();
+		
+		for (RevCommit commit : rw) {
+			
+			commits.add(commit);
+			
+			Map<String, ObjectId> files = listFiles(commit);
+			
+			commitFiles.put(commit, files);
+			
+			allBlobs.addAll(files.values());
+		}
+		
+		// every fifth blob in id order is a target
+		List<ObjectId> sortedBlobs = new ArrayList<ObjectId>(allBlobs);
+		
+		Collections.sort(sortedBlobs);
+		
+		Set<ObjectId> targets = new HashSet<ObjectId>();
+		
+		for (int i = 0; i < sortedBlobs.size(); i += 5) {
+			targets.add(sortedBlobs.get(i));
+		}
+		
+		BlobContainmentIndex index = new BlobContainmentIndex(targets, new PrimitiveObjectIdSet(), new PrimitiveObjectIdSet());
+		
+		ObjectReader reader = repo.newObjectReader();
+		
+		int affected = 0;
+		
+		try {
+			for (RevCommit commit : commits) {
+				
+				Map<String, ObjectId> expectedPaths = new HashMap<String, ObjectId>();
+				
+				for (Map.Entry<String, ObjectId> file : commitFiles.get(commit).entrySet()) {
+					
+					if (targets.contains(file.getValue()))
+						expectedPaths.put(file.getKey(), file.getValue());
+				}
+				
+				Assert.assertEquals(commit.name(), !expectedPaths.isEmpty(), index.containsTarget(reader, commit.getTree()));
+				
+				Assert.assertEquals(commit.name(), expectedPaths, index.findTargetPaths(reader, commit.getTree()));
+				
+				if (!expectedPaths.isEmpty())
+					affected++;
+			}
+			
+			// some but not all of the commits are affected
+			Assert.assertTrue(affected > 0);
+			Assert.assertTrue(affected < commits.size());
+			
+			// the cached answers are the same the second time
+			for (RevCommit commit : commits) {
+				
+				boolean expected = false;
+				
+				for (ObjectId blobId : commitFiles.get(commit).values()) {
+					
+					if (targets.contains(blobId))
+						expected = true;
+				}
+				
+				Assert.assertEquals(commit.name(), expected, index.containsTarget(reader, commit.getTree()));
+			}
+		}
+		finally {
+			reader.close();
+			index.close();
+		}
+	}
+}
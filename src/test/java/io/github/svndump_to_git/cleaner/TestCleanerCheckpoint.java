@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.svndump_to_git.git.cleaner.model.CleanerCheckpoint;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdMap;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdSet;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdMap;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdSet;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceiveCommand.Type;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Save and restore the cleaner state through a checkpoint.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestCleanerCheckpoint {
+
+	private static final ObjectId A = ObjectId.fromString("1111111111111111111111111111111111111111");
+	
+	private static final ObjectId B = ObjectId.fromString("2222222222222222222222222222222222222222");
+	
+	@Test
+	public void testCheckpointRoundTrip() throws IOException {
+		
+		File baseDirectory = new File ("target/test-checkpoint");
+		
+		CleanerCheckpoint.clear(baseDirectory);
+		
+		Assert.assertNull(CleanerCheckpoint.latest(baseDirectory));
+		
+		ObjectIdMap map = new PrimitiveObjectIdMap();
+		map.put(A, B);
+		
+		ObjectIdSet set = new PrimitiveObjectIdSet();
+		set.add(B);
+		
+		List<ReceiveCommand> creates = new ArrayList<ReceiveCommand>();
+		creates.add(new ReceiveCommand(ObjectId.zeroId(), B, "refs/heads/master", Type.CREATE));
+		
+		// the first checkpoint is replaced by the second
+		CleanerCheckpoint.begin(baseDirectory, 10).commit();
+		
+		CleanerCheckpoint checkpoint = CleanerCheckpoint.begin(baseDirectory, 20);
+		
+		checkpoint.saveObjectIdMap("map", map);
+		checkpoint.saveObjectIdSet("set", set);
+		checkpoint.saveReceiveCommands("creates", creates);
+		checkpoint.setIntProperty("position", 20);
+		checkpoint.commit();
+		
+		Assert.assertFalse(new File (baseDirectory, "checkpoint-10").exists());
+		
+		CleanerCheckpoint latest = CleanerCheckpoint.latest(baseDirectory);
+		
+		Assert.assertEquals(20, latest.getIntProperty("position"));
+		
+		ObjectIdMap restoredMap = new PrimitiveObjectIdMap();
+		latest.loadObjectIdMap("map", restoredMap);
+		Assert.assertEquals(B, restoredMap.get(A));
+		
+		ObjectIdSet restoredSet = new PrimitiveObjectIdSet();
+		latest.loadObjectIdSet("set", restoredSet);
+		Assert.assertTrue(restoredSet.contains(B));
+		Assert.assertEquals(1, restoredSet.size());
+		
+		List<ReceiveCommand> restoredCreates = latest.loadReceiveCommands("creates");
+		Assert.assertEquals(1, restoredCreates.size());
+		Assert.assertEquals("refs/heads/master", restoredCreates.get(0).getRefName());
+		Assert.assertEquals(B, restoredCreates.get(0).getNewId());
+		Assert.assertEquals(Type.CREATE, restoredCreates.get(0).getType());
+		
+		CleanerCheckpoint.clear(baseDirectory);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import io.github.svndump_to_git.git.cleaner.model.CleanerMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Record some latencies and counts and check the histogram percentiles and the JSON report.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestCleanerMetrics {
+
+	@Test
+	public void testTimersAndCounters() {
+		
+		CleanerMetrics metrics = new CleanerMetrics();
+		
+		CleanerMetrics.Timer timer = metrics.timer("tree-build");
+		
+		Assert.assertTrue(timer == metrics.timer("tree-build"));
+		
+		// 90 fast and 10 slow executions
+		for (int i = 0; i < 90; i++)
+			timer.record(3000L);
+		
+		for (int i = 0; i < 10; i++)
+			timer.record(1000000L);
+		
+		Assert.assertEquals(100, timer.getCount());
+		
+		Assert.assertEquals(4, timer.getPercentileMicros(50));
+		Assert.assertEquals(4, timer.getPercentileMicros(90));
+		Assert.assertEquals(1024, timer.getPercentileMicros(99));
+		
+		metrics.increment("commits-rewritten");
+		metrics.add("commits-rewritten", 2);
+		
+		Assert.assertEquals(3, metrics.getCount("commits-rewritten"));
+		Assert.assertEquals(0, metrics.getCount("commits-skipped"));
+		
+		String json = metrics.toJson();
+		
+		Assert.assertTrue(json.contains("\"commits-rewritten\": 3"));
+		Assert.assertTrue(json.contains("\"tree-build\": {\"count\": 100"));
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.svndump_to_git.cleaner.model.CleanerOutputFiles;
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
+import io.github.svndump_to_git.git.cleaner.RepositoryRemoveMPXRewriter;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.Assert;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Rewrite the same history sequentially and with the commits scheduled by their parent dependencies, check 
+ * that the results are the same and that no commit is written before its rewritten parents.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestDependencyScheduling extends AbstractGitRespositoryTestCase {
+	
+	private static final String FILE_NAME_SUFFIX = "remove-mpx-files";
+	
+	/**
+	 * The translations written and the branch heads after a rewrite.
+	 */
+	private static class RewriteResult {
+		
+		private List<String> translations;
+		
+		private Map<String, ObjectId> branchHeads = new HashMap<String, ObjectId>();
+	}
+	
+	public TestDependencyScheduling() {
+		super("test-dependency-scheduling");
+	}
+	
+	/* (non-Javadoc)
+	 * @see io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase#onBefore()
+	 */
+	@Override
+	protected void onBefore() throws Exception {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(repo);
+		
+		builder.writeBranchingHistory(11L, 300, 4, 9);
+		
+		builder.close();
+	}
+	
+	@After
+	public void deleteRewrites() {
+		
+		for (String name : new String[] {"sequential", "scheduled"}) {
+			FileUtils.deleteQuietly(getRewriteDirectory(name));
+		}
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+	}
+	
+	private File getRewriteDirectory(String name) {
+		return new File ("target/test-dependency-scheduling-" + name + ".git");
+	}
+	
+	/*
+	 * Rewrite a copy of the test repository.
+	 */
+	private RewriteResult rewrite(String name, int threads, boolean dagScheduling) throws Exception {
+		
+		File gitDir = getRewriteDirectory(name);
+		
+		FileUtils.deleteQuietly(gitDir);
+		
+		FileUtils.copyDirectory(repo.getDirectory(), gitDir);
+		
+		RepositoryRemoveMPXRewriter rewriter = new RepositoryRemoveMPXRewriter();
+		
+		rewriter.setTreeProcessingThreads(threads);
+		rewriter.setDagScheduling(dagScheduling);
+		
+		rewriter.validateArgs(Arrays.asList(gitDir.getAbsolutePath(), "mpx removed"));
+		
+		rewriter.execute();
+		
+		RewriteResult result = new RewriteResult();
+		
+		result.translations = CleanerOutputFiles.readTranslationLines(FILE_NAME_SUFFIX);
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+		
+		Repository rewrittenRepo = new FileRepositoryBuilder().setGitDir(gitDir).build();
+		
+		try {
+			for (Ref ref : rewrittenRepo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+				result.branchHeads.put(ref.getName(), ref.getObjectId());
+			}
+		}
+		finally {
+			rewrittenRepo.close();
+		}
+		
+		return result;
+	}
+	
+	@Test
+	public void testDependencySchedulingMatchesSequential() throws Exception {
+		
+		RewriteResult sequential = rewrite("sequential", 1, false);
+		
+		RewriteResult scheduled = rewrite("scheduled", 4, true);
+		
+		// independent branches finish in any order so only the set of translations is the same
+		List<String> sequentialTranslations = new ArrayList<String>(sequential.translations);
+		List<String> scheduledTranslations = new ArrayList<String>(scheduled.translations);
+		
+		Collections.sort(sequentialTranslations);
+		Collections.sort(scheduledTranslations);
+		
+		Assert.assertEquals(sequentialTranslations, scheduledTranslations);
+		
+		Assert.assertEquals(sequential.branchHeads, scheduled.branchHeads);
+		
+		// each commit is written after all of its rewritten parents
+		Map<ObjectId, ObjectId> written = new HashMap<ObjectId, ObjectId>();
+		
+		int merges = 0;
+		
+		for (String line : scheduled.translations) {
+			
+			String[] parts = line.split(" ");
+			
+			ObjectId newCommitId = ObjectId.fromString(parts[0]);
+			
+			RevCommit originalCommit = rw.parseCommit(ObjectId.fromString(parts[1]));
+			
+			if (originalCommit.getParentCount() > 1)
+				merges++;
+			
+			for (RevCommit parent : originalCommit.getParents()) {
+				
+				if (findTranslation(scheduled.translations, parent) != null)
+					Assert.assertTrue("parent " + parent.name() + " written after " + originalCommit.name(), written.containsKey(parent.getId()));
+			}
+			
+			written.put(originalCommit.getId(), newCommitId);
+		}
+		
+		Assert.assertTrue(merges > 0);
+	}
+	
+	/*
+	 * @return the translation line of the original commit or null if it was not rewritten.
+	 */
+	private String findTranslation(List<String> translations, ObjectId originalCommitId) {
+		
+		for (String line : translations) {
+			
+			if (line.endsWith(" " + originalCommitId.name()))
+				return line;
+		}
+		
+		return null;
+	}
+}
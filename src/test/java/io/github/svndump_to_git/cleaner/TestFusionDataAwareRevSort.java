@@ -17,13 +17,19 @@ package io.github.svndump_to_git.cleaner;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
+import io.github.svndump_to_git.cleaner.model.bitmap.Bitmap;
+import io.github.svndump_to_git.cleaner.model.bitmap.ReachabilityIndex;
 import io.github.svndump_to_git.cleaner.model.bitmap.RevCommitBitMapIndex;
+import io.github.svndump_to_git.git.cleaner.model.CommitDependency;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.RefUpdate.Result;
@@ -32,7 +38,9 @@ import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.junit.Assert;
 import org.junit.Test;
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
 import io.github.svndump_to_git.cleaner.model.ObjectIdTranslationMapImpl;
+import io.github.svndump_to_git.cleaner.model.sort.FusionAwareTopoSort;
 import io.github.svndump_to_git.cleaner.model.sort.FusionAwareTopoSortComparator;
 import io.github.svndump_to_git.git.model.DummyGitTreeNodeInitializer;
 import io.github.svndump_to_git.git.model.ExternalModuleUtils;
@@ -424,6 +432,188 @@ public class TestFusionDataAwareRevSort extends AbstractGitRespositoryTestCase {
 	}
 	
 	
+	@Test
+	public void testKahnSortPlacesFusionDependenciesFirst() throws IOException {
+		
+		GitTreeProcessor treeProcessor = new GitTreeProcessor(repo);
+		
+		ObjectId initialAggregateHeadId = aggregateHeadRevCommit.getId();
+		
+		GitTreeData tree = treeProcessor.extractExistingTreeDataFromCommit(initialAggregateHeadId);
+		
+		ObjectInserter inserter = repo.newObjectInserter();
+		
+		super.storeFile(inserter, tree, "Readme.txt", "test file content");
+		
+		ObjectId newCommit = commit(repo.newObjectInserter(), tree, "second commit on aggregate branch", initialAggregateHeadId);
+		
+		createBranch(newCommit, "aggregate");
+		
+		aggregateHeadRevCommit = rw.parseCommit(newCommit);
+		
+		/*
+		 * The default walk order puts the aggregate commits ahead of the module commits they depend on.
+		 */
+		RevWalk rw = new RevWalk (repo);
+		
+		rw.markStart(branch1HeadRevCommit);
+		rw.markStart(branch2HeadRevCommit);
+		rw.markStart(aggregateHeadRevCommit);
+		
+		RevCommitBitMapIndex index = new RevCommitBitMapIndex(repo, new ObjectIdTranslationMapImpl(), rw.iterator());
+		
+		List<RevCommit> commits = new FusionAwareTopoSort(index).sort();
+		
+		Assert.assertEquals(4, commits.size());
+		
+		Set<ObjectId> modules = new HashSet<ObjectId>();
+		
+		modules.add(commits.get(0).getId());
+		modules.add(commits.get(1).getId());
+		
+		Assert.assertTrue(modules.contains(branch1HeadRevCommit.getId()));
+		Assert.assertTrue(modules.contains(branch2HeadRevCommit.getId()));
+		
+		Assert.assertEquals(initialAggregateHeadId, commits.get(2).getId());
+		Assert.assertEquals(aggregateHeadRevCommit.getId(), commits.get(3).getId());
+		
+		// an order that already respects the dependencies is kept
+		
+		Assert.assertEquals(commits, new FusionAwareTopoSort(new RevCommitBitMapIndex(repo, new ObjectIdTranslationMapImpl(), commits.iterator())).sort());
+		
+		rw.close();
+	}
+	
+	@Test
+	public void testComputeAggregateBitmapsInOnePass() throws IOException {
+		
+		RevWalk rw = new RevWalk (repo);
+		
+		rw.markStart(branch1HeadRevCommit);
+		rw.markStart(branch2HeadRevCommit);
+		rw.markStart(aggregateHeadRevCommit);
+		
+		RevCommitBitMapIndex index = new RevCommitBitMapIndex(repo, new ObjectIdTranslationMapImpl(), rw.iterator());
+		
+		Assert.assertTrue(index.computeAggregateBitmaps(2, NullProgressMonitor.INSTANCE) > 0);
+		
+		Bitmap aggregate = index.getAggregateBitmap(index.getCommitDependency(aggregateHeadRevCommit.getId()));
+		
+		Assert.assertTrue(aggregate.containsObjectId(branch1HeadRevCommit.getId()));
+		Assert.assertTrue(aggregate.containsObjectId(branch2HeadRevCommit.getId()));
+		
+		Bitmap branch1 = index.getAggregateBitmap(index.getCommitDependency(branch1HeadRevCommit.getId()));
+		
+		Assert.assertFalse(branch1.containsObjectId(branch2HeadRevCommit.getId()));
+		Assert.assertFalse(branch1.containsObjectId(aggregateHeadRevCommit.getId()));
+		
+		rw.close();
+	}
+	
+	@Test
+	public void testAggregateBitmapsComputedOnFirstQuery() throws IOException {
+		
+		RevWalk rw = new RevWalk (repo);
+		
+		rw.markStart(branch1HeadRevCommit);
+		rw.markStart(branch2HeadRevCommit);
+		rw.markStart(aggregateHeadRevCommit);
+		
+		RevCommitBitMapIndex index = new RevCommitBitMapIndex(repo, new ObjectIdTranslationMapImpl(), rw.iterator());
+		
+		CommitDependency aggregate = index.getCommitDependency(aggregateHeadRevCommit.getId());
+		
+		// the two module branches referenced by the fusion data
+		Bitmap aggregateBitmap = index.getAggregateBitmap(aggregate);
+		
+		Assert.assertEquals(2, aggregateBitmap.cardinality());
+		
+		Assert.assertTrue(aggregateBitmap.containsObjectId(branch1HeadRevCommit.getId()));
+		Assert.assertTrue(aggregateBitmap.containsObjectId(branch2HeadRevCommit.getId()));
+		
+		Assert.assertEquals(0, index.getAggregateBitmap(index.getCommitDependency(branch1HeadRevCommit.getId())).cardinality());
+		
+		rw.close();
+	}
+	
+	@Test
+	public void testReachabilityIndexMatchesAggregateBitmaps() throws IOException {
+		
+		RevWalk rw = new RevWalk (repo);
+		
+		rw.markStart(branch1HeadRevCommit);
+		rw.markStart(branch2HeadRevCommit);
+		rw.markStart(aggregateHeadRevCommit);
+		
+		RevCommitBitMapIndex index = new RevCommitBitMapIndex(repo, new ObjectIdTranslationMapImpl(), rw.iterator());
+		
+		ReachabilityIndex reachabilityIndex = index.computeReachabilityIndex();
+		
+		Assert.assertTrue(reachabilityIndex.dependsOn(aggregateHeadRevCommit.getId(), branch1HeadRevCommit.getId()));
+		Assert.assertTrue(reachabilityIndex.dependsOn(aggregateHeadRevCommit.getId(), branch2HeadRevCommit.getId()));
+		
+		Assert.assertFalse(reachabilityIndex.dependsOn(branch1HeadRevCommit.getId(), branch2HeadRevCommit.getId()));
+		Assert.assertFalse(reachabilityIndex.dependsOn(branch1HeadRevCommit.getId(), aggregateHeadRevCommit.getId()));
+		Assert.assertFalse(reachabilityIndex.dependsOn(branch2HeadRevCommit.getId(), aggregateHeadRevCommit.getId()));
+		
+		// containsParent answers from the same index and agrees with the aggregate bitmaps for every pair
+		for (RevCommit commit : index.getRevCommitList()) {
+			
+			CommitDependency commitDependency = index.getCommitDependency(commit.getId());
+			
+			Bitmap aggregate = index.getAggregateBitmap(commitDependency);
+			
+			for (RevCommit dependency : index.getRevCommitList()) {
+				
+				boolean expected = commit.equals(dependency) || aggregate.containsObjectId(dependency.getId());
+				
+				Assert.assertEquals(expected, reachabilityIndex.dependsOn(commit.getId(), dependency.getId()));
+				Assert.assertEquals(expected, commitDependency.containsParent(dependency.getId()));
+			}
+		}
+		
+		Assert.assertSame(reachabilityIndex, index.getReachabilityIndex());
+		
+		rw.close();
+	}
+	
+	@Test
+	public void testReachabilityIndexMatchesAggregateBitmapsWithMerges() throws IOException {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(repo);
+		
+		builder.writeBranchingHistory(31L, 150, 4, 5);
+		
+		RevWalk rw = new RevWalk (repo);
+		
+		for (int b = 0; b < 4; b++) {
+			rw.markStart(rw.parseCommit(builder.getBranchHead("branch-" + b)));
+		}
+		
+		builder.close();
+		
+		RevCommitBitMapIndex index = new RevCommitBitMapIndex(repo, new ObjectIdTranslationMapImpl(), rw.iterator());
+		
+		// the merges add dependencies outside of the spanning forest
+		Assert.assertTrue(index.getReachabilityIndex().getExceptionIntervals() > 0);
+		
+		for (RevCommit commit : index.getRevCommitList()) {
+			
+			CommitDependency commitDependency = index.getCommitDependency(commit.getId());
+			
+			Bitmap aggregate = index.getAggregateBitmap(commitDependency);
+			
+			for (RevCommit dependency : index.getRevCommitList()) {
+				
+				boolean expected = commit.equals(dependency) || aggregate.containsObjectId(dependency.getId());
+				
+				Assert.assertEquals(commit.name() + " " + dependency.name(), expected, commitDependency.containsParent(dependency.getId()));
+			}
+		}
+		
+		rw.close();
+	}
+	
 	@Test
 	public void testTopoEquivilence() throws MissingObjectException, IncorrectObjectTypeException, IOException {
 		
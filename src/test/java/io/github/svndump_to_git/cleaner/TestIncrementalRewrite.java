@@ -0,0 +1,342 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.github.svndump_to_git.cleaner.model.CleanerOutputFiles;
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
+import io.github.svndump_to_git.git.cleaner.RepositoryRemoveMPXRewriter;
+import io.github.svndump_to_git.git.cleaner.model.BinaryObjectTranslationDataSource;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Rewrite a history, add commits to it and rewrite it again incrementally on top of the translations of the first run.
+ *
+ * The test repository holds the whole history, the first run rewrites the same history before the last commits were added.
+ *
+ * @author ocleirig
+ *
+ */
+public class TestIncrementalRewrite extends AbstractGitRespositoryTestCase {
+	
+	private static final String FILE_NAME_SUFFIX = "remove-mpx-files";
+	
+	private static final long SEED = 23L;
+	
+	private static final int FIRST_RUN_COMMITS = 150;
+	
+	private static final int ALL_COMMITS = 200;
+	
+	private static final String UNCHANGED_BRANCH = "no-mpx";
+	
+	private static final File FIRST_HISTORY = new File ("target/test-incremental-first.git");
+	
+	private static final File INCREMENTAL = new File ("target/test-incremental-rewrite-copy.git");
+	
+	private static final File FULL = new File ("target/test-incremental-full-rewrite.git");
+	
+	private static final File PREVIOUS_TRANSLATIONS = new File ("target/test-incremental-previous.bin");
+	
+	/**
+	 * Records the commits it is given to rewrite.
+	 */
+	private static class WalkRecordingRewriter extends RepositoryRemoveMPXRewriter {
+		
+		private final Set<ObjectId> walkedCommits = new HashSet<ObjectId>();
+		
+		/* (non-Javadoc)
+		 * @see io.github.svndump_to_git.git.cleaner.AbstractRepositoryCleaner#provideRevCommitIterator(java.util.Iterator)
+		 */
+		@Override
+		protected Iterator<RevCommit> provideRevCommitIterator(Iterator<RevCommit> iterator) {
+			
+			List<RevCommit> commits = new ArrayList<RevCommit>();
+			
+			while (iterator.hasNext()) {
+				
+				RevCommit commit = iterator.next();
+				
+				commits.add(commit);
+				walkedCommits.add(commit.getId());
+			}
+			
+			return super.provideRevCommitIterator(commits.iterator());
+		}
+	}
+	
+	/**
+	 * The original to new commit translations, the branch heads and the walked commits of a rewrite.
+	 */
+	private static class RewriteResult {
+		
+		private Map<ObjectId, ObjectId> translations;
+		
+		private Map<String, ObjectId> branchHeads = new HashMap<String, ObjectId>();
+		
+		private Set<ObjectId> walkedCommits;
+	}
+	
+	public TestIncrementalRewrite() {
+		super("test-incremental-rewrite");
+	}
+	
+	/* (non-Javadoc)
+	 * @see io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase#onBefore()
+	 */
+	@Override
+	protected void onBefore() throws Exception {
+		writeHistory(repo, ALL_COMMITS);
+	}
+	
+	@After
+	public void deleteRewrites() {
+		
+		FileUtils.deleteQuietly(FIRST_HISTORY);
+		FileUtils.deleteQuietly(INCREMENTAL);
+		FileUtils.deleteQuietly(FULL);
+		FileUtils.deleteQuietly(PREVIOUS_TRANSLATIONS);
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+	}
+	
+	/*
+	 * The same seed writes the same commits so the longer history extends the shorter one.  Both also have a
+	 * branch without mpx files that the rewrite leaves unchanged.
+	 */
+	private void writeHistory(Repository target, int commitCount) throws IOException {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(target);
+		
+		builder.writeBranchingHistory(SEED, commitCount, 3, 7);
+		
+		builder.close();
+		
+		// a new builder starts from the same commit time so these commits are the same in both histories
+		builder = new GitHistoryBuilder(target);
+		
+		Map<String, String> files = new TreeMap<String, String>();
+		
+		files.put("readme.txt", "no mpx files");
+		
+		builder.commit(UNCHANGED_BRANCH, "first commit without mpx files", files);
+		
+		files.put("module-0/notes.txt", "still no mpx files");
+		
+		builder.commit(UNCHANGED_BRANCH, "second commit without mpx files", files);
+		
+		builder.close();
+	}
+	
+	private RewriteResult rewrite(File gitDir, String previousTranslationFile, File keepBinaryTranslations) throws Exception {
+		
+		WalkRecordingRewriter rewriter = new WalkRecordingRewriter();
+		
+		rewriter.setPreviousTranslationFile(previousTranslationFile);
+		
+		rewriter.validateArgs(Arrays.asList(gitDir.getAbsolutePath(), "mpx removed"));
+		
+		rewriter.execute();
+		
+		RewriteResult result = new RewriteResult();
+		
+		result.walkedCommits = rewriter.walkedCommits;
+		
+		result.translations = CleanerOutputFiles.readTranslations(FILE_NAME_SUFFIX);
+		
+		if (keepBinaryTranslations != null)
+			FileUtils.copyFile(CleanerOutputFiles.findTranslationFile(FILE_NAME_SUFFIX, "bin"), keepBinaryTranslations);
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+		
+		Repository rewrittenRepo = new FileRepositoryBuilder().setGitDir(gitDir).build();
+		
+		try {
+			for (Ref ref : rewrittenRepo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+				result.branchHeads.put(ref.getName(), ref.getObjectId());
+			}
+		}
+		finally {
+			rewrittenRepo.close();
+		}
+		
+		return result;
+	}
+	
+	private Set<ObjectId> listCommits(Repository source) throws IOException {
+		
+		Set<ObjectId> commits = new HashSet<ObjectId>();
+		
+		RevWalk walk = new RevWalk(source);
+		
+		try {
+			for (Ref ref : source.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+				walk.markStart(walk.parseCommit(ref.getObjectId()));
+			}
+			
+			for (RevCommit commit : walk) {
+				commits.add(commit.getId());
+			}
+		}
+		finally {
+			walk.close();
+		}
+		
+		return commits;
+	}
+	
+	@Test
+	public void testIncrementalRunOnlyRewritesNewCommits() throws Exception {
+		
+		FileUtils.deleteQuietly(FIRST_HISTORY);
+		
+		Repository firstRepo = new FileRepositoryBuilder().setGitDir(FIRST_HISTORY).build();
+		
+		Set<ObjectId> firstCommits;
+		
+		try {
+			firstRepo.create(true);
+			
+			writeHistory(firstRepo, FIRST_RUN_COMMITS);
+			
+			firstCommits = listCommits(firstRepo);
+		}
+		finally {
+			firstRepo.close();
+		}
+		
+		Set<ObjectId> newCommits = listCommits(repo);
+		
+		Assert.assertTrue(newCommits.containsAll(firstCommits));
+		
+		newCommits.removeAll(firstCommits);
+		
+		Assert.assertFalse(newCommits.isEmpty());
+		
+		ObjectId unchangedHead = repo.resolve(Constants.R_HEADS + UNCHANGED_BRANCH);
+		
+		Assert.assertTrue(firstCommits.contains(unchangedHead));
+		
+		RewriteResult firstRun = rewrite(FIRST_HISTORY, null, PREVIOUS_TRANSLATIONS);
+		
+		Assert.assertTrue(firstRun.walkedCommits.contains(unchangedHead));
+		
+		Assert.assertFalse(firstRun.translations.containsKey(unchangedHead));
+		
+		// the binary translations record the unchanged head as translating to itself
+		BinaryObjectTranslationDataSource binaryTranslations = new BinaryObjectTranslationDataSource(PREVIOUS_TRANSLATIONS.getPath());
+		
+		Assert.assertEquals(unchangedHead, binaryTranslations.find(unchangedHead));
+		
+		// the original branches with the new commits on top, plus the objects written by the first run
+		FileUtils.deleteQuietly(INCREMENTAL);
+		FileUtils.copyDirectory(repo.getDirectory(), INCREMENTAL);
+		FileUtils.copyDirectory(new File (FIRST_HISTORY, "objects"), new File (INCREMENTAL, "objects"));
+		
+		RewriteResult incrementalRun = rewrite(INCREMENTAL, PREVIOUS_TRANSLATIONS.getPath(), null);
+		
+		// only the new commits are walked, including none of the branch the first run left unchanged
+		Assert.assertFalse(incrementalRun.walkedCommits.isEmpty());
+		
+		for (ObjectId walkedId : incrementalRun.walkedCommits) {
+			Assert.assertTrue(walkedId.name() + " was walked by the first run", newCommits.contains(walkedId));
+		}
+		
+		Assert.assertFalse(incrementalRun.translations.isEmpty());
+		
+		// and they sit on the parents translated by either run
+		Map<ObjectId, ObjectId> allTranslations = new HashMap<ObjectId, ObjectId>(firstRun.translations);
+		
+		allTranslations.putAll(incrementalRun.translations);
+		
+		Repository incrementalRepo = new FileRepositoryBuilder().setGitDir(INCREMENTAL).build();
+		
+		RevWalk walk = new RevWalk(incrementalRepo);
+		
+		boolean parentFromFirstRun = false;
+		
+		try {
+			for (Map.Entry<ObjectId, ObjectId> translation : incrementalRun.translations.entrySet()) {
+				
+				RevCommit originalCommit = walk.parseCommit(translation.getKey());
+				
+				RevCommit newCommit = walk.parseCommit(translation.getValue());
+				
+				// processParents does not keep the order of merge parents
+				Set<ObjectId> expectedParents = new HashSet<ObjectId>();
+				
+				for (RevCommit originalParent : originalCommit.getParents()) {
+					
+					ObjectId expectedParent = allTranslations.get(originalParent);
+					
+					if (expectedParent == null)
+						expectedParent = originalParent.getId();
+					
+					expectedParents.add(expectedParent);
+					
+					if (firstRun.translations.containsKey(originalParent))
+						parentFromFirstRun = true;
+				}
+				
+				Set<ObjectId> newParents = new HashSet<ObjectId>();
+				
+				for (RevCommit newParent : newCommit.getParents()) {
+					newParents.add(newParent.getId());
+				}
+				
+				Assert.assertEquals(expectedParents, newParents);
+			}
+		}
+		finally {
+			walk.close();
+			incrementalRepo.close();
+		}
+		
+		Assert.assertTrue(parentFromFirstRun);
+		
+		// rewriting everything at once gives the same commits
+		FileUtils.deleteQuietly(FULL);
+		FileUtils.copyDirectory(repo.getDirectory(), FULL);
+		
+		RewriteResult fullRun = rewrite(FULL, null, null);
+		
+		Assert.assertEquals(fullRun.translations, allTranslations);
+		
+		Assert.assertEquals(fullRun.branchHeads, incrementalRun.branchHeads);
+		
+		Assert.assertEquals(unchangedHead, incrementalRun.branchHeads.get(Constants.R_HEADS + UNCHANGED_BRANCH));
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.IOException;
+
+import io.github.svndump_to_git.git.cleaner.model.MemoizingTreeRewriter;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Rewrite trees through the MemoizingTreeRewriter and check that shared subtrees are only rewritten once.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestMemoizingTreeRewriter {
+
+	private ObjectId blob (ObjectInserter inserter, String content) throws IOException {
+		return inserter.insert(Constants.OBJ_BLOB, Constants.encode(content));
+	}
+	
+	private ObjectId tree (ObjectInserter inserter, String name, ObjectId id, FileMode mode) throws IOException {
+		
+		TreeFormatter formatter = new TreeFormatter();
+		
+		formatter.append(name, mode, id);
+		
+		return inserter.insert(formatter);
+	}
+	
+	@Test
+	public void testRewriteAndMemoize() throws IOException {
+		
+		InMemoryRepository repo = new InMemoryRepository(new DfsRepositoryDescription("test"));
+		
+		ObjectInserter inserter = repo.newObjectInserter();
+		
+		final ObjectId replacement = blob(inserter, "removed");
+		
+		ObjectId plan = blob(inserter, "plan");
+		ObjectId readme = blob(inserter, "readme");
+		
+		// module/plan.mpx is shared by both roots
+		ObjectId module = tree(inserter, "plan.mpx", plan, FileMode.REGULAR_FILE);
+		
+		TreeFormatter firstRoot = new TreeFormatter();
+		firstRoot.append("README", FileMode.REGULAR_FILE, readme);
+		firstRoot.append("module", FileMode.TREE, module);
+		ObjectId first = inserter.insert(firstRoot);
+		
+		TreeFormatter secondRoot = new TreeFormatter();
+		secondRoot.append("module", FileMode.TREE, module);
+		ObjectId second = inserter.insert(secondRoot);
+		
+		ObjectId unchanged = tree(inserter, "README", readme, FileMode.REGULAR_FILE);
+		
+		inserter.flush();
+		
+		MemoizingTreeRewriter rewriter = new MemoizingTreeRewriter(new MemoizingTreeRewriter.EntryRewriter() {
+			
+			@Override
+			public ObjectId rewriteBlob(String path, FileMode mode, ObjectId blobId) {
+				
+				if (path.endsWith(".mpx"))
+					return replacement;
+				
+				return blobId;
+			}
+		}, false, 100);
+		
+		ObjectReader reader = repo.newObjectReader();
+		
+		ObjectId rewrittenFirst = rewriter.rewrite(reader, inserter, first);
+		ObjectId rewrittenSecond = rewriter.rewrite(reader, inserter, second);
+		
+		inserter.flush();
+		
+		Assert.assertFalse(first.equals(rewrittenFirst));
+		Assert.assertFalse(second.equals(rewrittenSecond));
+		
+		// the module subtree was found in the cache for the second root
+		Assert.assertEquals(1, rewriter.getHits());
+		Assert.assertEquals(3, rewriter.getMisses());
+		
+		Assert.assertEquals(unchanged, rewriter.rewrite(reader, inserter, unchanged));
+		
+		TreeWalk tw = TreeWalk.forPath(repo, "module/plan.mpx", rewrittenFirst);
+		
+		Assert.assertEquals(replacement, tw.getObjectId(0));
+		
+		tw.close();
+		
+		tw = TreeWalk.forPath(repo, "README", rewrittenFirst);
+		
+		Assert.assertEquals(readme, tw.getObjectId(0));
+		
+		tw.close();
+		
+		reader.close();
+		inserter.close();
+		repo.close();
+	}
+}
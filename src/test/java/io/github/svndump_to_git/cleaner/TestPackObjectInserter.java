@@ -0,0 +1,151 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import io.github.svndump_to_git.git.cleaner.model.PackObjectInserter;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Write objects through the PackObjectInserter and read them back from the packs.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestPackObjectInserter {
+
+	@Test
+	public void testWriteAndRollPacks() throws IOException {
+		
+		File gitDirectory = new File ("target/test-pack-inserter.git");
+		
+		FileUtils.deleteQuietly(gitDirectory);
+		
+		Repository repo = new FileRepositoryBuilder().setGitDir(gitDirectory).build();
+		
+		repo.create(true);
+		
+		// small enough that every few objects start a new pack
+		PackObjectInserter inserter = new PackObjectInserter(repo, 200, Deflater.DEFAULT_COMPRESSION);
+		
+		ObjectId[] blobIds = new ObjectId[20];
+		
+		for (int i = 0; i < blobIds.length; i++) {
+			blobIds[i] = inserter.insert(Constants.OBJ_BLOB, Constants.encode("blob content number " + i + "\n"));
+		}
+		
+		// inserting the same content again is a no-op
+		Assert.assertEquals(blobIds[0], inserter.insert(Constants.OBJ_BLOB, Constants.encode("blob content number 0\n")));
+		
+		TreeFormatter formatter = new TreeFormatter();
+		formatter.append("a.txt", FileMode.REGULAR_FILE, blobIds[0]);
+		
+		ObjectId treeId = inserter.insert(formatter);
+		
+		inserter.flush();
+		
+		Assert.assertTrue(inserter.getPackCount() > 1);
+		Assert.assertEquals(21, inserter.getObjectCount());
+		
+		inserter.close();
+		
+		// only the info and pack directories, no loose objects
+		Assert.assertEquals(2, new File (gitDirectory, "objects").list().length);
+		
+		ObjectReader reader = repo.newObjectReader();
+		
+		for (int i = 0; i < blobIds.length; i++) {
+			Assert.assertEquals("blob content number " + i + "\n", new String (reader.open(blobIds[i], Constants.OBJ_BLOB).getBytes(), "UTF-8"));
+		}
+		
+		Assert.assertEquals(Constants.OBJ_TREE, reader.open(treeId).getType());
+		
+		reader.close();
+		
+		repo.close();
+	}
+	
+	@Test
+	public void testStreamLargeObjects() throws IOException {
+		
+		File gitDirectory = new File ("target/test-pack-inserter-stream.git");
+		
+		FileUtils.deleteQuietly(gitDirectory);
+		
+		Repository repo = new FileRepositoryBuilder().setGitDir(gitDirectory).build();
+		
+		repo.create(true);
+		
+		PackObjectInserter inserter = new PackObjectInserter(repo, 100 * 1024 * 1024, Deflater.DEFAULT_COMPRESSION);
+		
+		// larger than the streaming threshold
+		byte[] large = new byte[3 * 1024 * 1024 + 17];
+		
+		new Random(5).nextBytes(large);
+		
+		ObjectId smallId = inserter.insert(Constants.OBJ_BLOB, Constants.encode("small\n"));
+		
+		ObjectId largeId = inserter.insert(Constants.OBJ_BLOB, large.length, new ByteArrayInputStream(large));
+		
+		Assert.assertEquals(new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, large), largeId);
+		
+		// the duplicate is written and then dropped from the pack
+		Assert.assertEquals(largeId, inserter.insert(Constants.OBJ_BLOB, large.length, new ByteArrayInputStream(large)));
+		
+		Assert.assertEquals(2, inserter.getObjectCount());
+		
+		// a reader sees the objects of the unfinished pack
+		ObjectReader reader = inserter.newReader();
+		
+		Assert.assertArrayEquals(large, reader.open(largeId, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE));
+		Assert.assertTrue(reader.has(smallId));
+		
+		reader.close();
+		
+		Assert.assertEquals(1, inserter.getPackCount());
+		
+		// already in the finished pack
+		Assert.assertEquals(largeId, inserter.insert(Constants.OBJ_BLOB, large.length, new ByteArrayInputStream(large)));
+		
+		inserter.flush();
+		
+		Assert.assertEquals(1, inserter.getPackCount());
+		Assert.assertEquals(2, inserter.getObjectCount());
+		
+		inserter.close();
+		
+		// only the finished pack and its index
+		Assert.assertEquals(2, new File (gitDirectory, "objects/pack").list().length);
+		
+		repo.close();
+		
+		FileUtils.deleteQuietly(gitDirectory);
+	}
+}
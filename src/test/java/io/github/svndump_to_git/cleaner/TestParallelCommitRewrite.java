@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.svndump_to_git.cleaner.model.CleanerOutputFiles;
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
+import io.github.svndump_to_git.git.cleaner.RepositoryRemoveMPXRewriter;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.Assert;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Rewrite the same history sequentially and with the parallel stages and check that the results are the same.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestParallelCommitRewrite extends AbstractGitRespositoryTestCase {
+	
+	private static final String FILE_NAME_SUFFIX = "remove-mpx-files";
+	
+	/**
+	 * The translations written and the branch heads after a rewrite.
+	 */
+	private static class RewriteResult {
+		
+		private List<String> translations;
+		
+		private Map<String, ObjectId> branchHeads = new HashMap<String, ObjectId>();
+	}
+	
+	public TestParallelCommitRewrite() {
+		super("test-parallel-rewrite");
+	}
+	
+	/* (non-Javadoc)
+	 * @see io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase#onBefore()
+	 */
+	@Override
+	protected void onBefore() throws Exception {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(repo);
+		
+		builder.writeBranchingHistory(11L, 300, 4, 9);
+		
+		builder.close();
+	}
+	
+	@After
+	public void deleteRewrites() {
+		
+		for (String name : new String[] {"sequential", "parallel"}) {
+			FileUtils.deleteQuietly(getRewriteDirectory(name));
+		}
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+	}
+	
+	private File getRewriteDirectory(String name) {
+		return new File ("target/test-parallel-rewrite-" + name + ".git");
+	}
+	
+	/*
+	 * Rewrite a copy of the test repository.
+	 */
+	private RewriteResult rewrite(String name, int threads, boolean dagScheduling) throws Exception {
+		
+		File gitDir = getRewriteDirectory(name);
+		
+		FileUtils.deleteQuietly(gitDir);
+		
+		FileUtils.copyDirectory(repo.getDirectory(), gitDir);
+		
+		RepositoryRemoveMPXRewriter rewriter = new RepositoryRemoveMPXRewriter();
+		
+		rewriter.setTreeProcessingThreads(threads);
+		rewriter.setDagScheduling(dagScheduling);
+		
+		rewriter.validateArgs(Arrays.asList(gitDir.getAbsolutePath(), "mpx removed"));
+		
+		rewriter.execute();
+		
+		RewriteResult result = new RewriteResult();
+		
+		result.translations = CleanerOutputFiles.readTranslationLines(FILE_NAME_SUFFIX);
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+		
+		Repository rewrittenRepo = new FileRepositoryBuilder().setGitDir(gitDir).build();
+		
+		try {
+			for (Ref ref : rewrittenRepo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+				result.branchHeads.put(ref.getName(), ref.getObjectId());
+			}
+		}
+		finally {
+			rewrittenRepo.close();
+		}
+		
+		return result;
+	}
+	
+	@Test
+	public void testParallelTreeProcessingMatchesSequential() throws Exception {
+		
+		RewriteResult sequential = rewrite("sequential", 1, false);
+		
+		RewriteResult parallel = rewrite("parallel", 4, false);
+		
+		// the mpx files are removed so most of the history is rewritten
+		Assert.assertTrue(sequential.translations.size() > 100);
+		
+		// the commits are still rewritten in the topological order so the translations are in the same order
+		Assert.assertEquals(sequential.translations, parallel.translations);
+		
+		Assert.assertEquals(sequential.branchHeads, parallel.branchHeads);
+	}
+}
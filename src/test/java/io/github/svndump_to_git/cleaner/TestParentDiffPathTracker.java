@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdSet;
+import io.github.svndump_to_git.git.cleaner.model.ParentDiffPathTracker;
+import io.github.svndump_to_git.git.cleaner.model.ParentDiffPathTracker.PathMatcher;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdSet;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare the commits found by diffing against the first parent with a full walk of every commit's tree.
+ *
+ * @author ocleirig
+ *
+ */
+public class TestParentDiffPathTracker extends AbstractGitRespositoryTestCase {
+	
+	private static final PathMatcher MPX_MATCHER = new PathMatcher() {
+		
+		@Override
+		public boolean matches(String path, FileMode mode) {
+			return path.endsWith(".mpx") && FileMode.REGULAR_FILE.equals(mode);
+		}
+	};
+	
+	/*
+	 * Files are added to, deleted from and renamed into the module directories so this follows every kind of change.
+	 */
+	private static final PathMatcher MODULE_MATCHER = new PathMatcher() {
+		
+		@Override
+		public boolean matches(String path, FileMode mode) {
+			return path.startsWith("module-1/") && !FileMode.MISSING.equals(mode);
+		}
+	};
+	
+	public TestParentDiffPathTracker() {
+		super("test-parent-diff");
+	}
+	
+	/* (non-Javadoc)
+	 * @see io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase#onBefore()
+	 */
+	@Override
+	protected void onBefore() throws Exception {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(repo);
+		
+		builder.writeBranchingHistory(41L, 300, 4, 6);
+		
+		builder.close();
+	}
+	
+	private boolean hasMatch(RevCommit commit, PathMatcher matcher) throws IOException {
+		
+		TreeWalk treeWalk = new TreeWalk(repo);
+		
+		treeWalk.addTree(commit.getTree());
+		treeWalk.setRecursive(true);
+		
+		try {
+			while (treeWalk.next()) {
+				
+				if (matcher.matches(treeWalk.getPathString(), treeWalk.getFileMode(0)))
+					return true;
+			}
+			
+			return false;
+		}
+		finally {
+			treeWalk.close();
+		}
+	}
+	
+	private void checkTracker(List<RevCommit> commits, PathMatcher matcher, TreeFilter pushdownFilter) throws IOException {
+		
+		ParentDiffPathTracker tracker = new ParentDiffPathTracker(matcher, pushdownFilter);
+		
+		ObjectIdSet affectedCommits = new PrimitiveObjectIdSet();
+		
+		ObjectReader reader = repo.newObjectReader();
+		
+		try {
+			tracker.findAffectedCommits(reader, commits, affectedCommits);
+			
+			int affected = 0;
+			
+			for (RevCommit commit : commits) {
+				
+				boolean expected = hasMatch(commit, matcher);
+				
+				Assert.assertEquals(commit.name() + " " + commit.getShortMessage(), expected, affectedCommits.contains(commit));
+				
+				if (expected)
+					affected++;
+			}
+			
+			Assert.assertEquals(affected, affectedCommits.size());
+			
+			// the history moves in and out of matching
+			Assert.assertTrue(affected > 0);
+			Assert.assertTrue(affected < commits.size());
+		}
+		finally {
+			reader.close();
+			affectedCommits.close();
+		}
+	}
+	
+	@Test
+	public void testTrackerMatchesFullTreeWalk() throws IOException {
+		
+		for (Ref ref : repo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+			rw.markStart(rw.parseCommit(ref.getObjectId()));
+		}
+		
+		rw.sort(RevSort.TOPO, true);
+		rw.sort(RevSort.REVERSE, true);
+		
+		List<RevCommit> commits = new ArrayList<RevCommit>();
+		
+		for (RevCommit commit : rw) {
+			commits.add(commit);
+		}
+		
+		checkTracker(commits, MPX_MATCHER, null);
+		checkTracker(commits, MPX_MATCHER, PathSuffixFilter.create(".mpx"));
+		
+		checkTracker(commits, MODULE_MATCHER, null);
+		checkTracker(commits, MODULE_MATCHER, PathFilter.create("module-1"));
+		
+		// starting part way through the history, the first commits have parents outside of the list
+		List<RevCommit> laterCommits = commits.subList(commits.size() / 2, commits.size());
+		
+		checkTracker(laterCommits, MPX_MATCHER, null);
+		checkTracker(laterCommits, MODULE_MATCHER, null);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.util.Arrays;
+
+import io.github.svndump_to_git.git.cleaner.model.PathPatternRules;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check the glob and regex path rules including the subtree pruning.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestPathPatternRules {
+
+	@Test
+	public void testMatchAndPrune() {
+		
+		PathPatternRules rules = PathPatternRules.parse(Arrays.asList(
+				"# comment", 
+				"", 
+				"remove regex:docs/.*\\.pdf", 
+				"replace glob:**/*.mpx removed mpx file", 
+				"replace iglob:lib/*.JAR removed jar"));
+		
+		Assert.assertEquals(3, rules.getRules().size());
+		
+		Assert.assertEquals(PathPatternRules.Action.REMOVE, rules.match("docs/a/b.pdf").getAction());
+		
+		PathPatternRules.Rule mpx = rules.match("trunk/plan/project.mpx");
+		
+		Assert.assertEquals(PathPatternRules.Action.REPLACE, mpx.getAction());
+		Assert.assertEquals("removed mpx file", mpx.getReplacementContent());
+		
+		Assert.assertNotNull(rules.match("project.mpx"));
+		Assert.assertEquals("removed jar", rules.match("lib/commons.jar").getReplacementContent());
+		
+		Assert.assertNull(rules.match("lib/sub/commons.jar"));
+		Assert.assertNull(rules.match("src/Main.java"));
+		
+		// the mpx glob can match anywhere
+		Assert.assertTrue(rules.couldMatchBelow("src"));
+		
+		PathPatternRules anchored = PathPatternRules.parse(Arrays.asList("remove glob:docs/*.pdf"));
+		
+		Assert.assertTrue(anchored.couldMatchBelow("docs"));
+		Assert.assertFalse(anchored.couldMatchBelow("src"));
+		Assert.assertFalse(anchored.couldMatchBelow("docs/nested"));
+	}
+	
+	@Test
+	public void testFirstRuleWins() {
+		
+		PathPatternRules rules = PathPatternRules.parse(Arrays.asList(
+				"remove glob:a/*.txt", 
+				"replace glob:**/*.txt replaced"));
+		
+		Assert.assertEquals(PathPatternRules.Action.REMOVE, rules.match("a/b.txt").getAction());
+		Assert.assertEquals(PathPatternRules.Action.REPLACE, rules.match("b/b.txt").getAction());
+	}
+	
+	@Test
+	public void testReplaceRuleKeepsContent() {
+		
+		PathPatternRules rules = PathPatternRules.replace("iglob:**/*.mpx", "  removed during the conversion ");
+		
+		Assert.assertEquals("  removed during the conversion ", rules.match("a/b/Plan.MPX").getReplacementContent());
+		Assert.assertEquals("  removed during the conversion ", rules.match("plan.mpx").getReplacementContent());
+		Assert.assertNull(rules.match("plan.mpx.txt"));
+	}
+	
+	@Test
+	public void testNameOnlyRules() {
+		
+		Assert.assertTrue(PathPatternRules.replace("iglob:**/*.mpx", "removed").isNameOnly());
+		
+		Assert.assertTrue(PathPatternRules.parse(Arrays.asList("remove glob:**/*.jar", "replace iglob:**/secret-?.txt removed")).isNameOnly());
+		
+		Assert.assertFalse(PathPatternRules.parse(Arrays.asList("remove glob:**/*.jar", "remove glob:docs/*.pdf")).isNameOnly());
+		Assert.assertFalse(PathPatternRules.parse(Arrays.asList("remove glob:**/docs/*.pdf")).isNameOnly());
+		Assert.assertFalse(PathPatternRules.parse(Arrays.asList("remove glob:**/docs/**")).isNameOnly());
+		Assert.assertFalse(PathPatternRules.parse(Arrays.asList("remove regex:.*\\.jar")).isNameOnly());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidPatternType() {
+		PathPatternRules.parse(Arrays.asList("remove *.pdf"));
+	}
+}
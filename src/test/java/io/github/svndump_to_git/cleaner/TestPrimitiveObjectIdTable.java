@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdMap;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdSet;
+import io.github.svndump_to_git.git.cleaner.model.ObjectIdTableStorage;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdMap;
+import io.github.svndump_to_git.git.cleaner.model.PrimitiveObjectIdSet;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check the primitive object id tables against java.util.HashMap for each of the storage types.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestPrimitiveObjectIdTable {
+
+	private static ObjectId randomId(Random random) {
+		
+		byte[] raw = new byte[20];
+		
+		random.nextBytes(raw);
+		
+		return ObjectId.fromRaw(raw);
+	}
+	
+	private void checkMap(ObjectIdMap map) throws IOException {
+		
+		Random random = new Random(42);
+		
+		final Map<ObjectId, ObjectId> expected = new HashMap<ObjectId, ObjectId>();
+		
+		// enough entries to force the segments to grow a few times
+		for (int i = 0; i < 50000; i++) {
+			
+			ObjectId key = randomId(random);
+			ObjectId value = randomId(random);
+			
+			map.put(key, value);
+			expected.put(key, value);
+		}
+		
+		// replace some of the values
+		for (ObjectId key : expected.keySet().toArray(new ObjectId[0])) {
+			
+			if (random.nextInt(10) == 0) {
+				ObjectId value = randomId(random);
+				map.put(key, value);
+				expected.put(key, value);
+			}
+		}
+		
+		Assert.assertEquals(expected.size(), map.size());
+		
+		for (Map.Entry<ObjectId, ObjectId> entry : expected.entrySet()) {
+			
+			Assert.assertTrue(map.containsKey(entry.getKey()));
+			Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+		
+		Assert.assertNull(map.get(randomId(random)));
+		Assert.assertFalse(map.containsKey(ObjectId.zeroId()));
+		
+		final int[] visited = new int[1];
+		
+		map.forEach(new ObjectIdMap.EntryVisitor() {
+			
+			@Override
+			public void visit(ObjectId key, ObjectId value) throws IOException {
+				Assert.assertEquals(expected.get(key), value);
+				visited[0]++;
+			}
+		});
+		
+		Assert.assertEquals(expected.size(), visited[0]);
+		
+		map.close();
+	}
+	
+	@Test
+	public void testHeapMap() throws IOException {
+		checkMap(new PrimitiveObjectIdMap());
+	}
+	
+	@Test
+	public void testDirectMap() throws IOException {
+		checkMap(new PrimitiveObjectIdMap(ObjectIdTableStorage.DIRECT, null));
+	}
+	
+	@Test
+	public void testMappedMap() throws IOException {
+		
+		File directory = new File ("target/primitive-object-id-map-test");
+		
+		checkMap(new PrimitiveObjectIdMap(ObjectIdTableStorage.MAPPED, directory));
+		
+		Assert.assertFalse(directory.exists());
+	}
+	
+	@Test
+	public void testMappedMapIgnoresLeftoverSegments() throws IOException {
+		
+		File directory = new File ("target/primitive-object-id-map-leftover-test");
+		
+		Random random = new Random(11);
+		
+		// not closed, as if the run had been killed
+		ObjectIdMap crashed = new PrimitiveObjectIdMap(ObjectIdTableStorage.MAPPED, directory);
+		
+		ObjectId[] ids = new ObjectId[1000];
+		
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = randomId(random);
+			crashed.put(ids[i], randomId(random));
+		}
+		
+		ObjectIdMap map = new PrimitiveObjectIdMap(ObjectIdTableStorage.MAPPED, directory);
+		
+		try {
+			Assert.assertEquals(0, map.size());
+			
+			for (ObjectId id : ids) {
+				Assert.assertNull(map.get(id));
+			}
+		}
+		finally {
+			map.close();
+			crashed.close();
+		}
+		
+		Assert.assertFalse(directory.exists());
+	}
+	
+	@Test
+	public void testSet() throws IOException {
+		
+		Random random = new Random(7);
+		
+		ObjectIdSet set = new PrimitiveObjectIdSet();
+		
+		ObjectId[] ids = new ObjectId[10000];
+		
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = randomId(random);
+			Assert.assertTrue(set.add(ids[i]));
+		}
+		
+		for (ObjectId id : ids) {
+			Assert.assertFalse(set.add(id));
+			Assert.assertTrue(set.contains(id));
+		}
+		
+		Assert.assertEquals(ids.length, set.size());
+		Assert.assertFalse(set.contains(randomId(random)));
+		
+		set.close();
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.svndump_to_git.git.cleaner.model.MergedRefUpdates;
+import io.github.svndump_to_git.git.cleaner.model.PackedRefsWriter;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceiveCommand.Type;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Merge the deferred ref commands and apply them by writing packed-refs.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestRefUpdates {
+
+	private ObjectId commit (ObjectInserter inserter, ObjectId treeId, String message) throws IOException {
+		
+		CommitBuilder builder = new CommitBuilder();
+		
+		PersonIdent ident = new PersonIdent("test", "test@example.com");
+		
+		builder.setTreeId(treeId);
+		builder.setAuthor(ident);
+		builder.setCommitter(ident);
+		builder.setMessage(message);
+		
+		return inserter.insert(builder);
+	}
+	
+	@Test
+	public void testMergeAndWritePackedRefs() throws IOException {
+		
+		File gitDirectory = new File ("target/test-ref-updates.git");
+		
+		FileUtils.deleteQuietly(gitDirectory);
+		
+		Repository repo = new FileRepositoryBuilder().setGitDir(gitDirectory).build();
+		
+		repo.create(true);
+		
+		ObjectInserter inserter = repo.newObjectInserter();
+		
+		ObjectId treeId = inserter.insert(new TreeFormatter());
+		
+		ObjectId original = commit(inserter, treeId, "original");
+		ObjectId rewritten = commit(inserter, treeId, "rewritten");
+		
+		inserter.flush();
+		inserter.close();
+		
+		for (String name : new String[] {"refs/heads/master", "refs/heads/removed"}) {
+			
+			RefUpdate update = repo.updateRef(name);
+			
+			update.setNewObjectId(original);
+			update.forceUpdate();
+		}
+		
+		List<ReceiveCommand> deletes = new ArrayList<ReceiveCommand>();
+		deletes.add(new ReceiveCommand(original, ObjectId.zeroId(), "refs/heads/master", Type.DELETE));
+		deletes.add(new ReceiveCommand(original, ObjectId.zeroId(), "refs/heads/removed", Type.DELETE));
+		
+		List<ReceiveCommand> creates = new ArrayList<ReceiveCommand>();
+		creates.add(new ReceiveCommand(ObjectId.zeroId(), rewritten, "refs/heads/master", Type.CREATE));
+		creates.add(new ReceiveCommand(ObjectId.zeroId(), rewritten, "refs/heads/added", Type.CREATE));
+		
+		List<ReceiveCommand> commands = MergedRefUpdates.merge(deletes, creates);
+		
+		Assert.assertEquals(3, commands.size());
+		
+		Assert.assertEquals("refs/heads/master", commands.get(0).getRefName());
+		Assert.assertEquals(Type.UPDATE_NONFASTFORWARD, commands.get(0).getType());
+		Assert.assertEquals(Type.DELETE, commands.get(1).getType());
+		Assert.assertEquals(Type.CREATE, commands.get(2).getType());
+		
+		PackedRefsWriter.apply(repo, commands);
+		
+		Assert.assertTrue(new File (gitDirectory, Constants.PACKED_REFS).isFile());
+		Assert.assertFalse(new File (gitDirectory, "refs/heads/master").exists());
+		
+		Assert.assertEquals(rewritten, repo.resolve("refs/heads/master"));
+		Assert.assertEquals(rewritten, repo.resolve("refs/heads/added"));
+		Assert.assertNull(repo.getRefDatabase().exactRef("refs/heads/removed"));
+		
+		repo.close();
+	}
+	
+	@Test
+	public void testStaleOldIdChangesNothing() throws IOException {
+		
+		File gitDirectory = new File ("target/test-ref-updates-stale.git");
+		
+		FileUtils.deleteQuietly(gitDirectory);
+		
+		Repository repo = new FileRepositoryBuilder().setGitDir(gitDirectory).build();
+		
+		repo.create(true);
+		
+		ObjectInserter inserter = repo.newObjectInserter();
+		
+		ObjectId treeId = inserter.insert(new TreeFormatter());
+		
+		ObjectId original = commit(inserter, treeId, "original");
+		ObjectId moved = commit(inserter, treeId, "moved by someone else");
+		ObjectId rewritten = commit(inserter, treeId, "rewritten");
+		
+		inserter.flush();
+		inserter.close();
+		
+		RefUpdate update = repo.updateRef("refs/heads/master");
+		
+		update.setNewObjectId(moved);
+		update.forceUpdate();
+		
+		List<ReceiveCommand> commands = new ArrayList<ReceiveCommand>();
+		
+		// prepared when master was still at the original commit
+		commands.add(new ReceiveCommand(original, rewritten, "refs/heads/master", Type.UPDATE_NONFASTFORWARD));
+		commands.add(new ReceiveCommand(ObjectId.zeroId(), rewritten, "refs/heads/added", Type.CREATE));
+		
+		try {
+			PackedRefsWriter.apply(repo, commands);
+			
+			Assert.fail("the stale old id was not detected");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		Assert.assertEquals(ReceiveCommand.Result.LOCK_FAILURE, commands.get(0).getResult());
+		
+		Assert.assertFalse(new File (gitDirectory, Constants.PACKED_REFS + ".lock").exists());
+		
+		repo.getRefDatabase().refresh();
+		
+		Assert.assertEquals(moved, repo.resolve("refs/heads/master"));
+		Assert.assertNull(repo.getRefDatabase().exactRef("refs/heads/added"));
+		
+		// a create of a ref that already exists is rejected too
+		commands.clear();
+		commands.add(new ReceiveCommand(ObjectId.zeroId(), rewritten, "refs/heads/master", Type.CREATE));
+		
+		try {
+			PackedRefsWriter.apply(repo, commands);
+			
+			Assert.fail("the existing ref was not detected");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		Assert.assertEquals(moved, repo.resolve("refs/heads/master"));
+		
+		repo.close();
+		
+		FileUtils.deleteQuietly(gitDirectory);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import io.github.svndump_to_git.cleaner.model.CleanerOutputFiles;
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
+import io.github.svndump_to_git.git.cleaner.RepositoryRemoveMPXRewriter;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Rewrite with the repack enabled and check that the replaced history is pruned and a bitmap index written.
+ *
+ * @author ocleirig
+ *
+ */
+public class TestRepack extends AbstractGitRespositoryTestCase {
+	
+	private static final String FILE_NAME_SUFFIX = "remove-mpx-files";
+	
+	private static final File REWRITE = new File ("target/test-repack-copy.git");
+	
+	public TestRepack() {
+		super("test-repack");
+	}
+	
+	/* (non-Javadoc)
+	 * @see io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase#onBefore()
+	 */
+	@Override
+	protected void onBefore() throws Exception {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(repo);
+		
+		builder.writeBranchingHistory(53L, 120, 3, 10);
+		
+		builder.close();
+	}
+	
+	@After
+	public void deleteRewrite() {
+		
+		FileUtils.deleteQuietly(REWRITE);
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+	}
+	
+	@Test
+	public void testRepackPrunesAndWritesBitmaps() throws Exception {
+		
+		FileUtils.deleteQuietly(REWRITE);
+		FileUtils.copyDirectory(repo.getDirectory(), REWRITE);
+		
+		RepositoryRemoveMPXRewriter rewriter = new RepositoryRemoveMPXRewriter();
+		
+		rewriter.setRepack(true);
+		
+		rewriter.validateArgs(Arrays.asList(REWRITE.getAbsolutePath(), "mpx removed"));
+		
+		rewriter.execute();
+		
+		Map<ObjectId, ObjectId> translations = CleanerOutputFiles.readTranslations(FILE_NAME_SUFFIX);
+		
+		Assert.assertFalse(translations.isEmpty());
+		
+		Repository rewrittenRepo = new FileRepositoryBuilder().setGitDir(REWRITE).build();
+		
+		try {
+			for (Map.Entry<ObjectId, ObjectId> translation : translations.entrySet()) {
+				
+				// nothing refers to the original commits once the refs have moved
+				Assert.assertFalse(translation.getKey().name() + " was not pruned", rewrittenRepo.getObjectDatabase().has(translation.getKey()));
+				
+				Assert.assertTrue(rewrittenRepo.getObjectDatabase().has(translation.getValue()));
+			}
+		}
+		finally {
+			rewrittenRepo.close();
+		}
+		
+		File packDirectory = new File (REWRITE, "objects/pack");
+		
+		int packs = 0;
+		int bitmaps = 0;
+		
+		for (String name : packDirectory.list()) {
+			
+			if (name.endsWith(".pack"))
+				packs++;
+			else if (name.endsWith(".bitmap"))
+				bitmaps++;
+		}
+		
+		Assert.assertEquals(1, packs);
+		Assert.assertEquals(1, bitmaps);
+		
+		// no loose objects are left, only the info and pack directories
+		Assert.assertEquals(2, new File (REWRITE, "objects").list().length);
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.svndump_to_git.git.cleaner.model.CountingObjectInserter;
+import io.github.svndump_to_git.git.cleaner.model.ReplacementBlobCache;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check that each replacement content is inserted once and that file contents are streamed into the inserter.
+ *
+ * @author ocleirig
+ *
+ */
+public class TestReplacementBlobCache extends AbstractGitRespositoryTestCase {
+	
+	private static final File REPLACEMENT_FILE = new File ("target/test-replacement-blob-cache-content.txt");
+	
+	/**
+	 * Counts the blobs given to the repository inserter as a stream.
+	 */
+	private static class StreamCountingObjectInserter extends CountingObjectInserter {
+		
+		private int streamedObjects = 0;
+		
+		public StreamCountingObjectInserter(ObjectInserter delegate, AtomicLong insertedObjects) {
+			super(delegate, insertedObjects);
+		}
+		
+		/* (non-Javadoc)
+		 * @see io.github.svndump_to_git.git.cleaner.model.CountingObjectInserter#insert(int, long, java.io.InputStream)
+		 */
+		@Override
+		public ObjectId insert(int type, long length, InputStream in) throws IOException {
+			streamedObjects++;
+			return super.insert(type, length, in);
+		}
+	}
+	
+	public TestReplacementBlobCache() {
+		super("test-replacement-blob-cache");
+	}
+	
+	@After
+	public void deleteReplacementFile() {
+		FileUtils.deleteQuietly(REPLACEMENT_FILE);
+	}
+	
+	private ObjectId idFor(byte[] content) {
+		return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, content);
+	}
+	
+	@Test
+	public void testEachContentInsertedOnce() throws IOException {
+		
+		AtomicLong insertedObjects = new AtomicLong();
+		
+		ObjectInserter inserter = new CountingObjectInserter(repo.newObjectInserter(), insertedObjects);
+		
+		ReplacementBlobCache cache = new ReplacementBlobCache();
+		
+		try {
+			for (int i = 0; i < 5; i++) {
+				
+				Assert.assertEquals(idFor(Constants.encode("scrubbed")), cache.getBlobId("scrubbed", inserter));
+				
+				Assert.assertEquals(idFor(Constants.encode("removed")), cache.getBlobId("removed", inserter));
+			}
+			
+			inserter.flush();
+		}
+		finally {
+			inserter.close();
+		}
+		
+		Assert.assertEquals(2, insertedObjects.get());
+		
+		Assert.assertTrue(repo.getObjectDatabase().has(idFor(Constants.encode("scrubbed"))));
+		Assert.assertTrue(repo.getObjectDatabase().has(idFor(Constants.encode("removed"))));
+	}
+	
+	@Test
+	public void testFileContentIsStreamed() throws IOException {
+		
+		byte[] content = new byte[256 * 1024];
+		
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) ('a' + i % 26);
+		}
+		
+		FileUtils.writeByteArrayToFile(REPLACEMENT_FILE, content);
+		
+		String replacement = "@" + REPLACEMENT_FILE.getPath();
+		
+		ReplacementBlobCache.validate(replacement);
+		
+		AtomicLong insertedObjects = new AtomicLong();
+		
+		StreamCountingObjectInserter inserter = new StreamCountingObjectInserter(repo.newObjectInserter(), insertedObjects);
+		
+		ReplacementBlobCache cache = new ReplacementBlobCache();
+		
+		try {
+			Assert.assertEquals(idFor(content), cache.getBlobId(replacement, inserter));
+			
+			Assert.assertEquals(idFor(content), cache.getBlobId(replacement, inserter));
+			
+			inserter.flush();
+		}
+		finally {
+			inserter.close();
+		}
+		
+		Assert.assertEquals(1, inserter.streamedObjects);
+		Assert.assertEquals(1, insertedObjects.get());
+		
+		Assert.assertArrayEquals(content, repo.open(idFor(content)).getBytes());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingFileIsRejected() {
+		ReplacementBlobCache.validate("@" + REPLACEMENT_FILE.getPath());
+	}
+	
+	@Test
+	public void testConcurrentCallersInsertOnce() throws Exception {
+		
+		final int threads = 8;
+		
+		final ReplacementBlobCache cache = new ReplacementBlobCache();
+		
+		final AtomicLong insertedObjects = new AtomicLong();
+		
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
+		List<Future<ObjectId>> results = new ArrayList<Future<ObjectId>>();
+		
+		try {
+			for (int i = 0; i < threads; i++) {
+				
+				results.add(executor.submit(new Callable<ObjectId>() {
+					
+					@Override
+					public ObjectId call() throws Exception {
+						
+						// each worker has its own inserter like the tree processing workers
+						ObjectInserter inserter = new CountingObjectInserter(repo.newObjectInserter(), insertedObjects);
+						
+						try {
+							start.await();
+							
+							ObjectId blobId = cache.getBlobId("scrubbed", inserter);
+							
+							inserter.flush();
+							
+							return blobId;
+						}
+						finally {
+							inserter.close();
+						}
+					}
+				}));
+			}
+			
+			start.countDown();
+			
+			for (Future<ObjectId> result : results) {
+				Assert.assertEquals(idFor(Constants.encode("scrubbed")), result.get());
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		
+		Assert.assertEquals(1, insertedObjects.get());
+	}
+}
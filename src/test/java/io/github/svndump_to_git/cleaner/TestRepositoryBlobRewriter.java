@@ -0,0 +1,387 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import io.github.svndump_to_git.cleaner.model.CleanerOutputFiles;
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
+import io.github.svndump_to_git.git.cleaner.RepositoryBlobRewriter;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Scrub several blobs found at different paths of a branching history and compare the rewritten trees against
+ * replacing every file of every commit.
+ *
+ * @author ocleirig
+ *
+ */
+public class TestRepositoryBlobRewriter extends AbstractGitRespositoryTestCase {
+	
+	private static final String FILE_NAME_SUFFIX = "blob-rewrite";
+	
+	private static final File REPLACEMENTS = new File ("target/test-blob-rewrite-replacements.txt");
+	
+	private static final File REWRITE = new File ("target/test-blob-rewrite-copy.git");
+	
+	private static final File REPLACEMENT_FILE = new File ("target/test-blob-rewrite-replacement-content.txt");
+	
+	/*
+	 * The path to blob id of every file of each commit on the branches of the test repository.
+	 */
+	private Map<ObjectId, Map<String, ObjectId>> originalFiles;
+	
+	public TestRepositoryBlobRewriter() {
+		super("test-blob-rewrite");
+	}
+	
+	/* (non-Javadoc)
+	 * @see io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase#onBefore()
+	 */
+	@Override
+	protected void onBefore() throws Exception {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(repo);
+		
+		builder.writeBranchingHistory(43L, 200, 3, 7);
+		
+		builder.close();
+		
+		originalFiles = listAllFiles(repo);
+	}
+	
+	@After
+	public void deleteRewrite() {
+		
+		FileUtils.deleteQuietly(REWRITE);
+		FileUtils.deleteQuietly(REPLACEMENTS);
+		FileUtils.deleteQuietly(REPLACEMENT_FILE);
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+	}
+	
+	private Map<ObjectId, Map<String, ObjectId>> listAllFiles(Repository source) throws IOException {
+		
+		Map<ObjectId, Map<String, ObjectId>> files = new HashMap<ObjectId, Map<String, ObjectId>>();
+		
+		RevWalk walk = new RevWalk(source);
+		
+		try {
+			for (Ref ref : source.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+				walk.markStart(walk.parseCommit(ref.getObjectId()));
+			}
+			
+			for (RevCommit commit : walk) {
+				files.put(commit.getId(), listFiles(source, commit));
+			}
+		}
+		finally {
+			walk.close();
+		}
+		
+		return files;
+	}
+	
+	/*
+	 * The path to blob id of every file in the tree.
+	 */
+	private Map<String, ObjectId> listFiles(Repository source, RevCommit commit) throws IOException {
+		
+		Map<String, ObjectId> files = new TreeMap<String, ObjectId>();
+		
+		TreeWalk treeWalk = new TreeWalk(source);
+		
+		try {
+			treeWalk.addTree(commit.getTree());
+			treeWalk.setRecursive(true);
+			
+			while (treeWalk.next()) {
+				files.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+			}
+		}
+		finally {
+			treeWalk.close();
+		}
+		
+		return files;
+	}
+	
+	/*
+	 * The blobs found at more than one path and a few others, so the targets meet in the same trees.
+	 */
+	private List<ObjectId> selectTargets() {
+		
+		Map<ObjectId, Set<String>> blobPaths = new TreeMap<ObjectId, Set<String>>();
+		
+		for (Map<String, ObjectId> files : originalFiles.values()) {
+			
+			for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+				
+				Set<String> paths = blobPaths.get(file.getValue());
+				
+				if (paths == null) {
+					paths = new TreeSet<String>();
+					blobPaths.put(file.getValue(), paths);
+				}
+				
+				paths.add(file.getKey());
+			}
+		}
+		
+		List<ObjectId> targets = new ArrayList<ObjectId>();
+		
+		int blobIndex = 0;
+		
+		for (Map.Entry<ObjectId, Set<String>> entry : blobPaths.entrySet()) {
+			
+			if ((entry.getValue().size() > 1 && targets.size() < 4) || blobIndex % 9 == 0)
+				targets.add(entry.getKey());
+			
+			blobIndex++;
+		}
+		
+		return targets;
+	}
+	
+	/*
+	 * Rewrite a copy of the test repository with the given replacements.
+	 *
+	 * @return the original to new commit translations.
+	 */
+	private Map<ObjectId, ObjectId> rewrite(Map<ObjectId, String> replacements, int threads) throws Exception {
+		return rewrite(replacements, threads, new RepositoryBlobRewriter().getObjectFlushInterval());
+	}
+	
+	private Map<ObjectId, ObjectId> rewrite(Map<ObjectId, String> replacements, int threads, int objectFlushInterval) throws Exception {
+		
+		List<String> lines = new ArrayList<String>();
+		
+		lines.add("# blob id :: replacement");
+		
+		for (Map.Entry<ObjectId, String> replacement : replacements.entrySet()) {
+			lines.add(replacement.getKey().name() + "::" + replacement.getValue());
+		}
+		
+		FileUtils.writeLines(REPLACEMENTS, "UTF-8", lines);
+		
+		FileUtils.deleteQuietly(REWRITE);
+		FileUtils.copyDirectory(repo.getDirectory(), REWRITE);
+		
+		RepositoryBlobRewriter rewriter = new RepositoryBlobRewriter();
+		
+		rewriter.setTreeProcessingThreads(threads);
+		rewriter.setObjectFlushInterval(objectFlushInterval);
+		
+		rewriter.validateArgs(Arrays.asList(REWRITE.getAbsolutePath(), REPLACEMENTS.getAbsolutePath()));
+		
+		rewriter.execute();
+		
+		Map<ObjectId, ObjectId> translations = CleanerOutputFiles.readTranslations(FILE_NAME_SUFFIX);
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+		
+		return translations;
+	}
+	
+	/*
+	 * Replace the target blobs of every file of every original commit and compare with the rewritten trees and branches.
+	 *
+	 * @return the number of original commits holding a target.
+	 */
+	private int assertMatchesBruteForce(Map<ObjectId, ObjectId> replacementBlobIds, Map<ObjectId, ObjectId> translations) throws IOException {
+		
+		Repository rewrittenRepo = new FileRepositoryBuilder().setGitDir(REWRITE).build();
+		
+		RevWalk walk = new RevWalk(rewrittenRepo);
+		
+		int affectedCommits = 0;
+		
+		try {
+			for (Map.Entry<ObjectId, Map<String, ObjectId>> commitFiles : originalFiles.entrySet()) {
+				
+				Map<String, ObjectId> expectedFiles = new TreeMap<String, ObjectId>();
+				
+				boolean affected = false;
+				
+				for (Map.Entry<String, ObjectId> file : commitFiles.getValue().entrySet()) {
+					
+					ObjectId replacementBlobId = replacementBlobIds.get(file.getValue());
+					
+					if (replacementBlobId == null)
+						expectedFiles.put(file.getKey(), file.getValue());
+					else {
+						expectedFiles.put(file.getKey(), replacementBlobId);
+						affected = true;
+					}
+				}
+				
+				ObjectId newCommitId = translations.get(commitFiles.getKey());
+				
+				if (affected) {
+					affectedCommits++;
+					Assert.assertNotNull(commitFiles.getKey().name() + " contains a target but was not rewritten", newCommitId);
+				}
+				
+				if (newCommitId == null)
+					newCommitId = commitFiles.getKey();
+				
+				Assert.assertEquals(commitFiles.getKey().name(), expectedFiles, listFiles(rewrittenRepo, walk.parseCommit(newCommitId)));
+			}
+			
+			// the branches point at the rewritten heads
+			for (Ref ref : repo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+				
+				ObjectId expectedHead = translations.get(ref.getObjectId());
+				
+				if (expectedHead == null)
+					expectedHead = ref.getObjectId();
+				
+				Assert.assertEquals(ref.getName(), expectedHead, rewrittenRepo.resolve(ref.getName()));
+			}
+		}
+		finally {
+			walk.close();
+			rewrittenRepo.close();
+		}
+		
+		return affectedCommits;
+	}
+	
+	@Test
+	public void testScrubSeveralBlobsMatchesBruteForce() throws Exception {
+		
+		List<ObjectId> targets = selectTargets();
+		
+		Assert.assertTrue(targets.size() > 4);
+		
+		Map<ObjectId, String> replacements = new HashMap<ObjectId, String>();
+		
+		Map<ObjectId, ObjectId> replacementBlobIds = new HashMap<ObjectId, ObjectId>();
+		
+		ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+		
+		// two replacement contents shared by all of the targets
+		for (int i = 0; i < targets.size(); i++) {
+			
+			String content = (i % 2 == 0) ? "scrubbed" : "removed for legal reasons";
+			
+			replacements.put(targets.get(i), content);
+			
+			replacementBlobIds.put(targets.get(i), formatter.idFor(Constants.OBJ_BLOB, Constants.encode(content)));
+		}
+		
+		Map<ObjectId, ObjectId> translations = rewrite(replacements, 1);
+		
+		int affectedCommits = assertMatchesBruteForce(replacementBlobIds, translations);
+		
+		// some but not all of the history holds a target
+		Assert.assertTrue(affectedCommits > 0);
+		Assert.assertTrue(affectedCommits < originalFiles.size());
+		
+		// the parallel tree processing gives the same commits
+		Assert.assertEquals(translations, rewrite(replacements, 4));
+		
+		assertMatchesBruteForce(replacementBlobIds, translations);
+	}
+	
+	@Test
+	public void testFileReplacementWithFrequentFlushes() throws Exception {
+		
+		byte[] content = new byte[128 * 1024];
+		
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) ('a' + i % 26);
+		}
+		
+		FileUtils.writeByteArrayToFile(REPLACEMENT_FILE, content);
+		
+		ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+		
+		ObjectId fileBlobId = formatter.idFor(Constants.OBJ_BLOB, content);
+		
+		List<ObjectId> targets = selectTargets();
+		
+		Map<ObjectId, String> replacements = new HashMap<ObjectId, String>();
+		
+		Map<ObjectId, ObjectId> replacementBlobIds = new HashMap<ObjectId, ObjectId>();
+		
+		// the file content replaces every other target
+		for (int i = 0; i < targets.size(); i++) {
+			
+			if (i % 2 == 0) {
+				replacements.put(targets.get(i), "@" + REPLACEMENT_FILE.getAbsolutePath());
+				replacementBlobIds.put(targets.get(i), fileBlobId);
+			}
+			else {
+				replacements.put(targets.get(i), "scrubbed");
+				replacementBlobIds.put(targets.get(i), formatter.idFor(Constants.OBJ_BLOB, Constants.encode("scrubbed")));
+			}
+		}
+		
+		Map<ObjectId, ObjectId> sequential = rewrite(replacements, 1);
+		
+		// the shared inserter and the worker inserters are flushed after every commit and stay usable
+		Map<ObjectId, ObjectId> translations = rewrite(replacements, 4, 1);
+		
+		Assert.assertEquals(sequential, translations);
+		
+		Assert.assertTrue(assertMatchesBruteForce(replacementBlobIds, translations) > 0);
+		
+		Repository rewrittenRepo = new FileRepositoryBuilder().setGitDir(REWRITE).build();
+		
+		try {
+			Assert.assertArrayEquals(content, rewrittenRepo.open(fileBlobId).getBytes());
+		}
+		finally {
+			rewrittenRepo.close();
+		}
+	}
+	
+	@Test
+	public void testUnknownBlobLeavesHistoryUnchanged() throws Exception {
+		
+		Map<ObjectId, String> replacements = new HashMap<ObjectId, String>();
+		
+		replacements.put(new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, Constants.encode("not in the history")), "scrubbed");
+		
+		Map<ObjectId, ObjectId> translations = rewrite(replacements, 1);
+		
+		Assert.assertTrue(translations.isEmpty());
+		
+		Assert.assertEquals(0, assertMatchesBruteForce(new HashMap<ObjectId, ObjectId>(), translations));
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.github.svndump_to_git.cleaner.model.CleanerOutputFiles;
+import io.github.svndump_to_git.cleaner.model.GitHistoryBuilder;
+import io.github.svndump_to_git.git.cleaner.RepositoryPathPatternRewriter;
+import io.github.svndump_to_git.git.cleaner.model.PathPatternRules;
+import io.github.svndump_to_git.git.cleaner.model.PathPatternTreeFilter;
+import io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Rewrite a branching history with path rules and compare the result with a removal that walks every file of every commit.
+ *
+ * @author ocleirig
+ *
+ */
+public class TestRepositoryPathPatternRewriter extends AbstractGitRespositoryTestCase {
+	
+	private static final String FILE_NAME_SUFFIX = "path-pattern-rewrite";
+	
+	private static final File RULES = new File ("target/test-path-pattern-rules.txt");
+	
+	private static final File REPLACEMENT_FILE = new File ("target/test-path-pattern-replacement.txt");
+	
+	private static final File REWRITE = new File ("target/test-path-pattern-copy.git");
+	
+	private static final String MPX_REPLACEMENT = "mpx removed during the conversion";
+	
+	public TestRepositoryPathPatternRewriter() {
+		super("test-path-pattern-rewrite");
+	}
+	
+	/* (non-Javadoc)
+	 * @see io.github.svndump_to_git.svn.model.AbstractGitRespositoryTestCase#onBefore()
+	 */
+	@Override
+	protected void onBefore() throws Exception {
+		
+		GitHistoryBuilder builder = new GitHistoryBuilder(repo);
+		
+		builder.writeBranchingHistory(47L, 200, 3, 7);
+		
+		builder.close();
+	}
+	
+	@After
+	public void deleteRewrite() {
+		
+		FileUtils.deleteQuietly(REWRITE);
+		FileUtils.deleteQuietly(RULES);
+		FileUtils.deleteQuietly(REPLACEMENT_FILE);
+		
+		CleanerOutputFiles.delete(FILE_NAME_SUFFIX);
+	}
+	
+	private List<String> ruleLines() {
+		return Arrays.asList(
+				"# rules for the test history",
+				"   # an indented comment",
+				"",
+				"remove glob:module-1/renamed-*.txt",
+				"replace iglob:**/*.MPX " + MPX_REPLACEMENT,
+				"replace regex:module-2/file-[0-9]+\\.txt @" + REPLACEMENT_FILE.getAbsolutePath());
+	}
+	
+	/*
+	 * The path to blob id of every file in the tree.
+	 */
+	private Map<String, ObjectId> listFiles(Repository source, RevCommit commit, TreeFilter filter) throws IOException {
+		
+		Map<String, ObjectId> files = new TreeMap<String, ObjectId>();
+		
+		TreeWalk treeWalk = new TreeWalk(source);
+		
+		try {
+			treeWalk.addTree(commit.getTree());
+			treeWalk.setRecursive(true);
+			
+			if (filter != null)
+				treeWalk.setFilter(filter);
+			
+			while (treeWalk.next()) {
+				files.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+			}
+		}
+		finally {
+			treeWalk.close();
+		}
+		
+		return files;
+	}
+	
+	/*
+	 * The rules applied by hand to every file of the tree.
+	 */
+	private Map<String, ObjectId> expectedFiles(Map<String, ObjectId> originalFiles, ObjectId mpxBlobId, ObjectId fileBlobId) {
+		
+		Map<String, ObjectId> files = new TreeMap<String, ObjectId>();
+		
+		for (Map.Entry<String, ObjectId> file : originalFiles.entrySet()) {
+			
+			String path = file.getKey();
+			
+			String name = path.substring(path.lastIndexOf('/') + 1);
+			
+			if (path.startsWith("module-1/renamed-") && path.endsWith(".txt") && path.indexOf('/') == path.lastIndexOf('/'))
+				continue;
+			
+			if (name.toLowerCase().endsWith(".mpx"))
+				files.put(path, mpxBlobId);
+			else if (path.matches("module-2/file-[0-9]+\\.txt"))
+				files.put(path, fileBlobId);
+			else
+				files.put(path, file.getValue());
+		}
+		
+		return files;
+	}
+	
+	private RevWalk walkAllBranches() throws IOException {
+		
+		for (Ref ref : repo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+			rw.markStart(rw.parseCommit(ref.getObjectId()));
+		}
+		
+		return rw;
+	}
+	
+	@Test
+	public void testRewriteMatchesFullTreeWalkRemoval() throws Exception {
+		
+		FileUtils.writeLines(RULES, "UTF-8", ruleLines());
+		
+		FileUtils.writeStringToFile(REPLACEMENT_FILE, "replaced by the content of a file\n", "UTF-8");
+		
+		FileUtils.deleteQuietly(REWRITE);
+		FileUtils.copyDirectory(repo.getDirectory(), REWRITE);
+		
+		RepositoryPathPatternRewriter rewriter = new RepositoryPathPatternRewriter();
+		
+		rewriter.validateArgs(Arrays.asList(REWRITE.getAbsolutePath(), RULES.getAbsolutePath()));
+		
+		rewriter.execute();
+		
+		Map<ObjectId, ObjectId> translations = CleanerOutputFiles.readTranslations(FILE_NAME_SUFFIX);
+		
+		ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+		
+		ObjectId mpxBlobId = formatter.idFor(Constants.OBJ_BLOB, Constants.encode(MPX_REPLACEMENT));
+		
+		ObjectId fileBlobId = formatter.idFor(Constants.OBJ_BLOB, FileUtils.readFileToByteArray(REPLACEMENT_FILE));
+		
+		Repository rewrittenRepo = new FileRepositoryBuilder().setGitDir(REWRITE).build();
+		
+		RevWalk rewrittenWalk = new RevWalk(rewrittenRepo);
+		
+		int changedCommits = 0, removedFiles = 0, commits = 0;
+		
+		try {
+			for (RevCommit commit : walkAllBranches()) {
+				
+				commits++;
+				
+				Map<String, ObjectId> originalFiles = listFiles(repo, commit, null);
+				
+				Map<String, ObjectId> expected = expectedFiles(originalFiles, mpxBlobId, fileBlobId);
+				
+				ObjectId newCommitId = translations.get(commit.getId());
+				
+				if (!expected.equals(originalFiles)) {
+					
+					changedCommits++;
+					
+					removedFiles += originalFiles.size() - expected.size();
+					
+					Assert.assertNotNull(commit.name() + " has matching paths but was not rewritten", newCommitId);
+				}
+				
+				if (newCommitId == null)
+					newCommitId = commit.getId();
+				
+				Assert.assertEquals(commit.name(), expected, listFiles(rewrittenRepo, rewrittenWalk.parseCommit(newCommitId), null));
+			}
+			
+			for (Ref ref : repo.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+				
+				ObjectId expectedHead = translations.get(ref.getObjectId());
+				
+				if (expectedHead == null)
+					expectedHead = ref.getObjectId();
+				
+				Assert.assertEquals(ref.getName(), expectedHead, rewrittenRepo.resolve(ref.getName()));
+			}
+		}
+		finally {
+			rewrittenWalk.close();
+			rewrittenRepo.close();
+		}
+		
+		// each rule had something to do in part of the history
+		Assert.assertTrue(changedCommits > 0);
+		Assert.assertTrue(changedCommits < commits);
+		Assert.assertTrue(removedFiles > 0);
+	}
+	
+	@Test
+	public void testPushdownFilterMatchesFullTreeWalk() throws Exception {
+		
+		PathPatternRules rules = PathPatternRules.parse(ruleLines());
+		
+		// anchored rules only enter the directories they name
+		PathPatternRules anchoredRules = PathPatternRules.parse(Arrays.asList("remove glob:module-1/renamed-*.txt"));
+		
+		Map<PathPatternRules, Integer> matchedPaths = new HashMap<PathPatternRules, Integer>();
+		
+		for (RevCommit commit : walkAllBranches()) {
+			
+			Map<String, ObjectId> allFiles = listFiles(repo, commit, null);
+			
+			for (PathPatternRules ruleSet : Arrays.asList(rules, anchoredRules)) {
+				
+				Map<String, ObjectId> expected = new TreeMap<String, ObjectId>();
+				
+				for (Map.Entry<String, ObjectId> file : allFiles.entrySet()) {
+					
+					if (ruleSet.match(file.getKey()) != null)
+						expected.put(file.getKey(), file.getValue());
+				}
+				
+				Assert.assertEquals(commit.name(), expected, listFiles(repo, commit, new PathPatternTreeFilter(ruleSet)));
+				
+				Integer matched = matchedPaths.get(ruleSet);
+				
+				matchedPaths.put(ruleSet, (matched == null ? 0 : matched) + expected.size());
+			}
+		}
+		
+		Assert.assertTrue(matchedPaths.get(rules) > matchedPaths.get(anchoredRules));
+		Assert.assertTrue(matchedPaths.get(anchoredRules) > 0);
+		
+		// the anchored rules prune the other directories without opening them
+		Assert.assertTrue(anchoredRules.couldMatchBelow("module-1"));
+		Assert.assertFalse(anchoredRules.couldMatchBelow("module-0"));
+		Assert.assertFalse(anchoredRules.couldMatchBelow("module-2"));
+		Assert.assertFalse(anchoredRules.couldMatchBelow("module-1/nested"));
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.github.svndump_to_git.cleaner.model.GitSvnId;
+import io.github.svndump_to_git.cleaner.model.GitSvnIdUtils;
+import io.github.svndump_to_git.git.cleaner.model.SyntheticRepositoryGenerator;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Generate a small synthetic repository and check its shape and that it only depends on the seed.
+ * 
+ * @author ocleirig
+ *
+ */
+public class TestSyntheticRepositoryGenerator {
+
+	private SyntheticRepositoryGenerator createGenerator(long seed) {
+		
+		SyntheticRepositoryGenerator generator = new SyntheticRepositoryGenerator();
+		
+		generator.setSeed(seed);
+		generator.setCommitCount(200);
+		generator.setBranchCount(3);
+		generator.setTagCount(2);
+		generator.setModuleCount(3);
+		generator.setTreeWidth(3);
+		generator.setTreeDepth(1);
+		
+		return generator;
+	}
+	
+	@Test
+	public void testGenerateIsDeterministic() throws IOException {
+		
+		File firstDirectory = new File ("target/test-synthetic-first.git");
+		File secondDirectory = new File ("target/test-synthetic-second.git");
+		
+		createGenerator(7L).generate(firstDirectory);
+		createGenerator(7L).generate(secondDirectory);
+		
+		Repository first = new FileRepositoryBuilder().setGitDir(firstDirectory).build();
+		Repository second = new FileRepositoryBuilder().setGitDir(secondDirectory).build();
+		
+		Assert.assertEquals(3 + 1 + 2 + 1, first.getRefDatabase().getRefs(Constants.R_HEADS).size());
+		
+		for (Ref ref : first.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+			Assert.assertEquals(ref.getName(), ref.getObjectId(), second.resolve(ref.getName()));
+		}
+		
+		RevWalk walk = new RevWalk(first);
+		
+		for (Ref ref : first.getRefDatabase().getRefs(Constants.R_HEADS).values()) {
+			walk.markStart(walk.parseCommit(ref.getObjectId()));
+		}
+		
+		int commits = 0;
+		
+		int emptyCommits = 0;
+		
+		for (RevCommit commit : walk) {
+			
+			commits++;
+			
+			if (commit.getParentCount() == 1 && commit.getTree().equals(walk.parseCommit(commit.getParent(0)).getTree()))
+				emptyCommits++;
+		}
+		
+		Assert.assertEquals(200, commits);
+		
+		// the empty commit interval, the branch copies and the tags
+		Assert.assertTrue(emptyCommits >= 5);
+		
+		RevCommit trunkHead = walk.parseCommit(first.resolve("trunk"));
+		
+		GitSvnId gitSvnId = GitSvnIdUtils.extractGitSvnId(SyntheticRepositoryGenerator.SVN_URL, trunkHead.getFullMessage());
+		
+		Assert.assertEquals("/trunk", gitSvnId.getBranchPath());
+		
+		ObjectId aggregateTreeId = walk.parseCommit(first.resolve("aggregate_trunk")).getTree();
+		
+		Assert.assertNotNull(TreeWalk.forPath(first, SyntheticRepositoryGenerator.FUSION_DATA_FILE, aggregateTreeId));
+		
+		walk.close();
+		
+		first.close();
+		second.close();
+		
+		FileUtils.deleteQuietly(firstDirectory);
+		FileUtils.deleteQuietly(secondDirectory);
+	}
+}
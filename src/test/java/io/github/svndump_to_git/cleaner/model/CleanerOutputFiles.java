@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * The files a cleaner writes into the working directory, found by the file name suffix of the cleaner.
+ *
+ * @author ocleirig
+ *
+ */
+public final class CleanerOutputFiles {
+	
+	private CleanerOutputFiles() {
+	}
+	
+	private static boolean isOutputFile(File file, String fileNameSuffix) {
+		return file.getName().contains("-" + fileNameSuffix + "-") || file.getName().startsWith(fileNameSuffix + "-");
+	}
+	
+	/**
+	 * @param fileNameSuffix
+	 * @param extension txt or bin
+	 * @return the object translation file of the last run or null if there is none.
+	 */
+	public static File findTranslationFile(String fileNameSuffix, String extension) {
+		
+		for (File file : new File (".").listFiles()) {
+			
+			if (isOutputFile(file, fileNameSuffix) && file.getName().startsWith("object-translations-") && file.getName().endsWith("." + extension))
+				return file;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * @param fileNameSuffix
+	 * @return the lines of the text translation file, new commit id first, in the order they were written.
+	 * @throws IOException
+	 */
+	public static List<String> readTranslationLines(String fileNameSuffix) throws IOException {
+		
+		File file = findTranslationFile(fileNameSuffix, "txt");
+		
+		if (file == null)
+			throw new IOException("no object translation file written for " + fileNameSuffix);
+		
+		List<String> translations = new ArrayList<String>();
+		
+		for (String line : FileUtils.readLines(file, "UTF-8")) {
+			
+			if (!line.startsWith("#"))
+				translations.add(line);
+		}
+		
+		return translations;
+	}
+	
+	/**
+	 * @param fileNameSuffix
+	 * @return the original commit id to new commit id translations of the text translation file.
+	 * @throws IOException
+	 */
+	public static Map<ObjectId, ObjectId> readTranslations(String fileNameSuffix) throws IOException {
+		
+		Map<ObjectId, ObjectId> translations = new LinkedHashMap<ObjectId, ObjectId>();
+		
+		for (String line : readTranslationLines(fileNameSuffix)) {
+			
+			String[] parts = line.split(" ");
+			
+			translations.put(ObjectId.fromString(parts[1]), ObjectId.fromString(parts[0]));
+		}
+		
+		return translations;
+	}
+	
+	/**
+	 * Delete everything the cleaner wrote into the working directory.
+	 *
+	 * @param fileNameSuffix
+	 */
+	public static void delete(String fileNameSuffix) {
+		
+		for (File file : new File (".").listFiles()) {
+			
+			if (isOutputFile(file, fileNameSuffix))
+				FileUtils.deleteQuietly(file);
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ *  Copyright 2014 The Kuali Foundation Licensed under the
+ *	Educational Community License, Version 2.0 (the "License"); you may
+ *	not use this file except in compliance with the License. You may
+ *	obtain a copy of the License at
+ *
+ *	http://www.osedu.org/licenses/ECL-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing,
+ *	software distributed under the License is distributed on an "AS IS"
+ *	BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *	or implied. See the License for the specific language governing
+ *	permissions and limitations under the License.
+ */
+package io.github.svndump_to_git.cleaner.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+
+/**
+ * Writes small histories with branches, merges, renames and mpx files into the repository of a 
+ * cleaner test.
+ * 
+ * The files of a commit are given as a map of path to content, the paths are at most one directory deep.
+ * 
+ * @author ocleirig
+ *
+ */
+public class GitHistoryBuilder {
+	
+	private final Repository repo;
+	
+	private final ObjectInserter inserter;
+	
+	private final Map<String, ObjectId> branchHeads = new HashMap<String, ObjectId>();
+	
+	private long commitTime = 1400000000L;
+	
+	/**
+	 * @param repo the empty repository of the test, it stays open when the builder is closed.
+	 */
+	public GitHistoryBuilder(Repository repo) {
+		
+		this.repo = repo;
+		
+		inserter = repo.newObjectInserter();
+	}
+	
+	/**
+	 * @param branch
+	 * @return the head of the branch or null if it has no commits yet.
+	 */
+	public ObjectId getBranchHead(String branch) {
+		return branchHeads.get(branch);
+	}
+	
+	/**
+	 * Commit the files onto the branch and move the branch to the new commit.
+	 * 
+	 * @param branch the branch name without refs/heads/
+	 * @param message
+	 * @param files the complete content of the commit.
+	 * @param otherParents merged after the current head of the branch.
+	 * @return the new commit id.
+	 * @throws IOException
+	 */
+	public ObjectId commit(String branch, String message, Map<String, String> files, ObjectId... otherParents) throws IOException {
+		
+		List<ObjectId> parents = new ArrayList<ObjectId>();
+		
+		ObjectId head = branchHeads.get(branch);
+		
+		if (head != null)
+			parents.add(head);
+		
+		parents.addAll(Arrays.asList(otherParents));
+		
+		return commit(branch, message, files, parents);
+	}
+	
+	/**
+	 * Start a branch from an existing commit without a new commit.
+	 * 
+	 * @param branch
+	 * @param commitId
+	 * @throws IOException
+	 */
+	public void branch(String branch, ObjectId commitId) throws IOException {
+		
+		branchHeads.put(branch, commitId);
+		
+		updateRef(branch, commitId);
+	}
+	
+	private ObjectId commit(String branch, String message, Map<String, String> files, List<ObjectId> parents) throws IOException {
+		
+		PersonIdent ident = new PersonIdent("cleaner test", "cleaner@example.com", new Date(commitTime++ * 1000L), TimeZone.getTimeZone("UTC"));
+		
+		CommitBuilder builder = new CommitBuilder();
+		
+		builder.setTreeId(insertTree(files));
+		builder.setParentIds(parents);
+		builder.setAuthor(ident);
+		builder.setCommitter(ident);
+		builder.setMessage(message);
+		
+		ObjectId commitId = inserter.insert(builder);
+		
+		inserter.flush();
+		
+		branchHeads.put(branch, commitId);
+		
+		updateRef(branch, commitId);
+		
+		return commitId;
+	}
+	
+	private void updateRef(String branch, ObjectId commitId) throws IOException {
+		
+		RefUpdate update = repo.updateRef(Constants.R_HEADS + branch);
+		
+		update.setNewObjectId(commitId);
+		
+		update.forceUpdate();
+	}
+	
+	private ObjectId insertTree(Map<String, String> files) throws IOException {
+		
+		// the directory or file name to its entries, a file has a null map
+		TreeMap<String, TreeMap<String, String>> rootEntries = new TreeMap<String, TreeMap<String, String>>();
+		
+		for (Map.Entry<String, String> file : files.entrySet()) {
+			
+			String path = file.getKey();
+			
+			int slash = path.indexOf('/');
+			
+			if (slash == -1) {
+				rootEntries.put(path, null);
+				continue;
+			}
+			
+			String directory = path.substring(0, slash);
+			
+			TreeMap<String, String> directoryFiles = rootEntries.get(directory);
+			
+			if (directoryFiles == null) {
+				directoryFiles = new TreeMap<String, String>();
+				rootEntries.put(directory, directoryFiles);
+			}
+			
+			directoryFiles.put(path.substring(slash + 1), file.getValue());
+		}
+		
+		TreeFormatter root = new TreeFormatter();
+		
+		// the directory names never prefix a file name so the map order is the git tree order
+		for (Map.Entry<String, TreeMap<String, String>> entry : rootEntries.entrySet()) {
+			
+			if (entry.getValue() == null) {
+				root.append(entry.getKey(), FileMode.REGULAR_FILE, insertBlob(files.get(entry.getKey())));
+				continue;
+			}
+			
+			TreeFormatter directory = new TreeFormatter();
+			
+			for (Map.Entry<String, String> file : entry.getValue().entrySet()) {
+				directory.append(file.getKey(), FileMode.REGULAR_FILE, insertBlob(file.getValue()));
+			}
+			
+			root.append(entry.getKey(), FileMode.TREE, inserter.insert(directory));
+		}
+		
+		return inserter.insert(root);
+	}
+	
+	private ObjectId insertBlob(String content) throws IOException {
+		return inserter.insert(Constants.OBJ_BLOB, Constants.encode(content));
+	}
+	
+	/**
+	 * Write a history of commitCount commits over branchCount branches.
+	 * 
+	 * Each commit edits, adds, deletes or renames a file below one of three module directories and adds or 
+	 * removes project.mpx files.  Every mergeInterval commits a branch merges the head of another branch.
+	 * 
+	 * @param seed the same seed gives the same commit ids.
+	 * @param commitCount
+	 * @param branchCount
+	 * @param mergeInterval
+	 * @throws IOException
+	 */
+	public void writeBranchingHistory(long seed, int commitCount, int branchCount, int mergeInterval) throws IOException {
+		
+		Random random = new Random(seed);
+		
+		List<Map<String, String>> branchFiles = new ArrayList<Map<String, String>>();
+		
+		Map<String, String> files = new TreeMap<String, String>();
+		
+		files.put("readme.txt", "initial");
+		files.put("module-0/file-0.txt", "initial");
+		
+		commit("branch-0", "initial commit", files);
+		
+		branchFiles.add(files);
+		
+		for (int b = 1; b < branchCount; b++) {
+			
+			branch("branch-" + b, getBranchHead("branch-0"));
+			
+			branchFiles.add(new TreeMap<String, String>(files));
+		}
+		
+		for (int i = 1; i < commitCount; i++) {
+			
+			int b = random.nextInt(branchCount);
+			
+			files = branchFiles.get(b);
+			
+			String module = "module-" + random.nextInt(3) + "/";
+			
+			List<String> paths = new ArrayList<String>(files.keySet());
+			
+			String existing = paths.get(random.nextInt(paths.size()));
+			
+			switch (random.nextInt(6)) {
+			
+			case 0:
+				// add
+				files.put(module + "file-" + i + ".txt", "added in " + i);
+				break;
+			case 1:
+				// delete
+				if (files.size() > 2)
+					files.remove(existing);
+				break;
+			case 2:
+				// rename
+				files.put(module + "renamed-" + i + ".txt", files.remove(existing));
+				break;
+			case 3:
+				// add or remove an mpx file
+				if (files.containsKey(module + "project.mpx"))
+					files.remove(module + "project.mpx");
+				else
+					files.put(module + "project.mpx", "mpx " + i);
+				break;
+			default:
+				// edit
+				files.put(existing, "edited in " + i);
+			}
+			
+			String branch = "branch-" + b;
+			
+			if (branchCount > 1 && mergeInterval > 0 && i % mergeInterval == 0) {
+				
+				String other = "branch-" + ((b + 1 + random.nextInt(branchCount - 1)) % branchCount);
+				
+				commit(branch, "merge " + other + " into " + branch + " " + i, files, getBranchHead(other));
+			}
+			else
+				commit(branch, "commit " + i + " on " + branch, files);
+		}
+	}
+	
+	/**
+	 * Release the inserter, the repository stays open.
+	 */
+	public void close() {
+		inserter.close();
+	}
+}
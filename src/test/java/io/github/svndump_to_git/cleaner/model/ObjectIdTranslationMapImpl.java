@@ -25,7 +25,7 @@ import org.eclipse.jgit.lib.ObjectId;
  *
  */
 public class ObjectIdTranslationMapImpl implements ObjectIdTranslation {
-
+	
 	private Map<ObjectId, ObjectId>translationMap = new HashMap<ObjectId, ObjectId>();
 	
 	/**
@@ -34,7 +34,7 @@ public class ObjectIdTranslationMapImpl implements ObjectIdTranslation {
 	public ObjectIdTranslationMapImpl() {
 		// TODO Auto-generated constructor stub
 	}
-
+	
 	/* (non-Javadoc)
 	 * @see ObjectIdTranslation#translateObjectId(org.eclipse.jgit.lib.ObjectId)
 	 */
@@ -52,5 +52,5 @@ public class ObjectIdTranslationMapImpl implements ObjectIdTranslation {
 	public void addTranslation (ObjectId original, ObjectId translation) {
 		this.translationMap.put(original, translation);
 	}
-
+	
 }